@@ -17,6 +17,7 @@ import org.lwing.ofs.core.impl.view.ViewSchemaRepository;
 import org.lwing.ofs.core.impl.view.ViewRepository;
 import org.janusgraph.core.JanusGraph;
 import org.lwing.ofs.core.impl.state.StateManager;
+import org.lwing.ofs.core.impl.statistics.StatisticsRepository;
 
 /**
  *
@@ -46,6 +47,8 @@ public class OpenFeatureStore {
     
     private final StateManager stateManager;
 
+    private final StatisticsRepository statisticsRepository;
+
     /**
      * Creates the OpenFeatureStore object repositories. Use this object to get the
      * repositories for all of your operations.
@@ -62,7 +65,8 @@ public class OpenFeatureStore {
         this.featureSchemaRepository = new FeatureSchemaRepository(graph, propertyRepository, config);
         this.viewSchemaRepository = new ViewSchemaRepository(graph, propertyRepository, config);
         this.modelRepository = new ModelRepository(graph, modelSchemaRepository, featureSchemaRepository, config, propertyRepository);
-        this.featureRepository = new FeatureRepository(graph, config, modelRepository, propertyRepository);
+        this.statisticsRepository = new StatisticsRepository(graph, config);
+        this.featureRepository = new FeatureRepository(graph, config, modelRepository, propertyRepository, statisticsRepository);
         this.viewRepository = new ViewRepository(graph, config, propertyRepository, viewSchemaRepository, modelRepository);
         this.openFeatureStoreInstaller = new OFSInstaller(graph, config, indexRepository);
         this.stateManager = new StateManager(indexRepository, propertyRepository, featureRepository, 
@@ -113,4 +117,8 @@ public class OpenFeatureStore {
         return stateManager;
     }
 
+    public StatisticsRepository getStatisticsRepository() {
+        return statisticsRepository;
+    }
+
 }
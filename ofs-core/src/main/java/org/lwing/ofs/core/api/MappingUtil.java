@@ -4,41 +4,188 @@
  */
 package org.lwing.ofs.core.api;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.janusgraph.core.schema.Parameter;
 import org.lwing.ofs.core.api.index.ParameterDeserializer;
 import org.lwing.ofs.core.api.index.ParameterSerializer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
+ * Shared JSON mapping for OFS objects. Jackson mappers, readers and writers are
+ * thread-safe once configured, so they are built once and reused instead of
+ * per call (building them per call throws away Jackson's serializer caches).
  *
  * @author Lucas Wing
  */
 public class MappingUtil {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(MappingUtil.class);
+    private static final ObjectMapper MAPPER = buildMapper();
+
+    // writer which leaves caller owned streams open
+    private static final ObjectWriter WRITER = MAPPER.writer()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    // reader for untyped json trees which leaves caller owned streams open
+    private static final ObjectReader TREE_READER = MAPPER.reader()
+            .without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    // mapper for generic values (ex. index Parameter values) which need their type kept
+    private static final ObjectMapper TYPED_MAPPER = buildTypedMapper();
+
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
 
     private MappingUtil() {
 
     }
-    
+
     public static <E> E jsonStringToObject(String input, Class<E> output) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        SimpleModule simpleModule = new SimpleModule();
-        simpleModule.addDeserializer(Parameter.class,new ParameterDeserializer());
-        mapper.registerModule(simpleModule);
-        return mapper.readValue(input, output);
+        return getReader(output).readValue(input);
+    }
+
+    /**
+     * Reads an object from a stream. The stream is not closed.
+     *
+     * @param <E> type of the object to read
+     * @param input stream to read json from
+     * @param output type of the object to read
+     * @return object read from the stream
+     * @throws IOException if the stream fails or the json is invalid
+     */
+    public static <E> E jsonStreamToObject(InputStream input, Class<E> output) throws IOException {
+        return getReader(output).readValue(input);
+    }
+
+    /**
+     * Reads an object from a reader. The reader is not closed.
+     *
+     * @param <E> type of the object to read
+     * @param input reader to read json from
+     * @param output type of the object to read
+     * @return object read from the reader
+     * @throws IOException if the reader fails or the json is invalid
+     */
+    public static <E> E jsonReaderToObject(Reader input, Class<E> output) throws IOException {
+        return getReader(output).readValue(input);
     }
 
     public static String turnObjToJsonString(Object obj) throws JsonProcessingException {
+        return WRITER.writeValueAsString(obj);
+    }
+
+    /**
+     * Writes an object as json directly to a stream. The stream is flushed but
+     * not closed.
+     *
+     * @param obj object to write
+     * @param output stream to write the json to
+     * @throws IOException if the stream fails or the obj can't be serialized
+     */
+    public static void writeObjToJson(Object obj, OutputStream output) throws IOException {
+        WRITER.writeValue(output, obj);
+    }
+
+    /**
+     * Writes an object as json directly to a writer. The writer is flushed but
+     * not closed.
+     *
+     * @param obj object to write
+     * @param output writer to write the json to
+     * @throws IOException if the writer fails or the obj can't be serialized
+     */
+    public static void writeObjToJson(Object obj, Writer output) throws IOException {
+        WRITER.writeValue(output, obj);
+    }
+
+    /**
+     * @param obj object to convert
+     * @return json tree of the object
+     */
+    public static JsonNode objToTree(Object obj) {
+        return MAPPER.valueToTree(obj);
+    }
+
+    /**
+     * Reads a json tree from a stream. The stream is not closed.
+     *
+     * @param input stream to read json from
+     * @return json tree read from the stream
+     * @throws IOException if the stream fails or the json is invalid
+     */
+    public static JsonNode jsonStreamToTree(InputStream input) throws IOException {
+        return TREE_READER.readTree(input);
+    }
+
+    public static <E> E treeToObject(JsonNode tree, Class<E> output) throws IOException {
+        return getReader(output).readValue(tree);
+    }
+
+    public static byte[] treeToBytes(JsonNode tree) throws JsonProcessingException {
+        return WRITER.writeValueAsBytes(tree);
+    }
+
+    public static ObjectNode createObjectNode() {
+        return MAPPER.createObjectNode();
+    }
+
+    /**
+     * @param <E> type the reader is for
+     * @param type type the reader is for
+     * @return cached reader for the type
+     */
+    public static <E> ObjectReader getReader(Class<E> type) {
+        return READERS.computeIfAbsent(type, t -> MAPPER.readerFor(t)
+                .without(JsonParser.Feature.AUTO_CLOSE_SOURCE));
+    }
+
+    /**
+     * @return shared writer used for all OFS objects
+     */
+    public static ObjectWriter getWriter() {
+        return WRITER;
+    }
+
+    /**
+     * Mapper with default typing enabled, used for generic values which need
+     * their type kept through serialization. Do not reconfigure it.
+     *
+     * @return shared typed mapper
+     */
+    public static ObjectMapper getTypedMapper() {
+        return TYPED_MAPPER;
+    }
+
+    private static ObjectMapper buildMapper() {
         ObjectMapper mapper = new ObjectMapper();
         SimpleModule simpleModule = new SimpleModule();
         simpleModule.addSerializer(Parameter.class, new ParameterSerializer());
+        simpleModule.addDeserializer(Parameter.class, new ParameterDeserializer());
         mapper.registerModule(simpleModule);
-        return mapper.writeValueAsString(obj);
+        return mapper;
+    }
+
+    private static ObjectMapper buildTypedMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        // enable default typing since values are generic objs
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        mapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL_AND_ENUMS);
+        return mapper;
     }
 
 }
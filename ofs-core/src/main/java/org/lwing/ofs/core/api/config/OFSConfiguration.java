@@ -4,7 +4,10 @@
  */
 package org.lwing.ofs.core.api.config;
 
+import java.nio.file.Path;
+import java.util.Set;
 import org.lwing.ofs.core.api.lock.ResourceLock;
+import org.lwing.ofs.core.api.state.ChangeLog;
 import org.lwing.ofs.core.api.state.ImportCacheProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,12 +49,44 @@ public class OFSConfiguration {
     // stores which resources have been imported during a state import
     private final ImportCacheProvider importCacheProvider;
 
+    // records mutated resources, used for delta state exports
+    private final ChangeLog changeLog;
+
+    // threads used to read the graph during a state export
+    private final int exportThreads;
+
+    // if exports deduplicate objects into content addressed blobs
+    private final boolean contentAddressedStorage;
+
+    // Geoshape properties kept in the in memory spatial index
+    private final Set<String> spatialIndexProperties;
+
+    // width & height of a spatial index grid cell in degrees
+    private final double spatialIndexCellDegrees;
+
+    // enumerated (allowable value) properties kept in the in memory bitmap index
+    private final Set<String> bitmapIndexProperties;
+
+    // file the feature statistics are persisted to, null to keep them in memory only
+    private final Path statisticsFile;
+
+    // feature writes between persists of the feature statistics
+    private final int statisticsPersistInterval;
+
     public OFSConfiguration(OFSConfigurationParams params) {
         this.mixedIndexName = params.getMixedIndexName();
         this.resourceLock = params.getResourceLock();
         this.allowInternalFieldActions = false;
         this.graphStorageProvider = params.getGraphStorageProvider();
         this.importCacheProvider = params.getImportCacheProvider();
+        this.changeLog = params.getChangeLog();
+        this.exportThreads = params.getExportThreads();
+        this.contentAddressedStorage = params.isContentAddressedStorage();
+        this.spatialIndexProperties = params.getSpatialIndexProperties();
+        this.spatialIndexCellDegrees = params.getSpatialIndexCellDegrees();
+        this.bitmapIndexProperties = params.getBitmapIndexProperties();
+        this.statisticsFile = params.getStatisticsFile();
+        this.statisticsPersistInterval = params.getStatisticsPersistInterval();
     }
     
     public OFSConfiguration() {
@@ -61,6 +96,14 @@ public class OFSConfiguration {
         this.allowInternalFieldActions = false;
         this.graphStorageProvider = params.getGraphStorageProvider();
         this.importCacheProvider = params.getImportCacheProvider();
+        this.changeLog = params.getChangeLog();
+        this.exportThreads = params.getExportThreads();
+        this.contentAddressedStorage = params.isContentAddressedStorage();
+        this.spatialIndexProperties = params.getSpatialIndexProperties();
+        this.spatialIndexCellDegrees = params.getSpatialIndexCellDegrees();
+        this.bitmapIndexProperties = params.getBitmapIndexProperties();
+        this.statisticsFile = params.getStatisticsFile();
+        this.statisticsPersistInterval = params.getStatisticsPersistInterval();
     }
 
     public String getMixedIndexName() {
@@ -83,6 +126,38 @@ public class OFSConfiguration {
         return importCacheProvider;
     }
 
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    public int getExportThreads() {
+        return exportThreads;
+    }
+
+    public boolean isContentAddressedStorage() {
+        return contentAddressedStorage;
+    }
+
+    public Set<String> getSpatialIndexProperties() {
+        return spatialIndexProperties;
+    }
+
+    public double getSpatialIndexCellDegrees() {
+        return spatialIndexCellDegrees;
+    }
+
+    public Set<String> getBitmapIndexProperties() {
+        return bitmapIndexProperties;
+    }
+
+    public Path getStatisticsFile() {
+        return statisticsFile;
+    }
+
+    public int getStatisticsPersistInterval() {
+        return statisticsPersistInterval;
+    }
+
     /**
      * ONLY THE INSTALLER CLASS SHOULD FLIP THIS TO TRUE DURING INSTALLATION
      *
@@ -4,7 +4,11 @@
  */
 package org.lwing.ofs.core.api.config;
 
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
 import org.lwing.ofs.core.api.lock.ResourceLock;
+import org.lwing.ofs.core.api.state.ChangeLog;
 import org.lwing.ofs.core.api.state.ImportCacheProvider;
 import org.lwing.ofs.core.impl.lock.ResourceLockImpl;
 import org.lwing.ofs.core.impl.state.impls.GraphFilesystemStorage;
@@ -30,10 +34,43 @@ public class OFSConfigurationParams {
     // stores which resources have been imported during a state import
     private ImportCacheProvider importCacheProvider;
 
+    // records mutated resources, needed for delta state exports & to keep full exports consistent with writes made
+    // during them. null to not record changes
+    private ChangeLog changeLog;
+
+    // threads used to read the graph during a state export
+    private int exportThreads;
+
+    // if exports deduplicate objects into content addressed blobs
+    private boolean contentAddressedStorage;
+
+    // Geoshape properties kept in the in memory spatial index
+    private Set<String> spatialIndexProperties;
+
+    // width & height of a spatial index grid cell in degrees
+    private double spatialIndexCellDegrees;
+
+    // enumerated (allowable value) properties kept in the in memory bitmap index
+    private Set<String> bitmapIndexProperties;
+
+    // file the feature statistics are persisted to, null to keep them in memory only
+    private Path statisticsFile;
+
+    // feature writes between persists of the feature statistics
+    private int statisticsPersistInterval;
+
     public OFSConfigurationParams() {
         this.resourceLock = new ResourceLockImpl();
         this.graphStorageProvider = new GraphFilesystemStorage();
         this.importCacheProvider = new MapImportCacheProvider();
+        this.changeLog = null;
+        this.exportThreads = 4;
+        this.contentAddressedStorage = false;
+        this.spatialIndexProperties = new HashSet<>();
+        this.spatialIndexCellDegrees = 1.0;
+        this.bitmapIndexProperties = new HashSet<>();
+        this.statisticsFile = null;
+        this.statisticsPersistInterval = 1000;
         this.mixedIndexName = null;
     }
     
@@ -76,5 +113,77 @@ public class OFSConfigurationParams {
         this.importCacheProvider = importCacheProvider;
         return this;
     }
+
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    public OFSConfigurationParams setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+        return this;
+    }
+
+    public int getExportThreads() {
+        return exportThreads;
+    }
+
+    public OFSConfigurationParams setExportThreads(int exportThreads) {
+        this.exportThreads = exportThreads;
+        return this;
+    }
+
+    public boolean isContentAddressedStorage() {
+        return contentAddressedStorage;
+    }
+
+    public OFSConfigurationParams setContentAddressedStorage(boolean contentAddressedStorage) {
+        this.contentAddressedStorage = contentAddressedStorage;
+        return this;
+    }
+
+    public Set<String> getSpatialIndexProperties() {
+        return spatialIndexProperties;
+    }
+
+    public OFSConfigurationParams setSpatialIndexProperties(Set<String> spatialIndexProperties) {
+        this.spatialIndexProperties = spatialIndexProperties;
+        return this;
+    }
+
+    public double getSpatialIndexCellDegrees() {
+        return spatialIndexCellDegrees;
+    }
+
+    public OFSConfigurationParams setSpatialIndexCellDegrees(double spatialIndexCellDegrees) {
+        this.spatialIndexCellDegrees = spatialIndexCellDegrees;
+        return this;
+    }
+
+    public Set<String> getBitmapIndexProperties() {
+        return bitmapIndexProperties;
+    }
+
+    public OFSConfigurationParams setBitmapIndexProperties(Set<String> bitmapIndexProperties) {
+        this.bitmapIndexProperties = bitmapIndexProperties;
+        return this;
+    }
+
+    public Path getStatisticsFile() {
+        return statisticsFile;
+    }
+
+    public OFSConfigurationParams setStatisticsFile(Path statisticsFile) {
+        this.statisticsFile = statisticsFile;
+        return this;
+    }
+
+    public int getStatisticsPersistInterval() {
+        return statisticsPersistInterval;
+    }
+
+    public OFSConfigurationParams setStatisticsPersistInterval(int statisticsPersistInterval) {
+        this.statisticsPersistInterval = statisticsPersistInterval;
+        return this;
+    }
     
 }
@@ -10,5 +10,13 @@ package org.lwing.ofs.core.api.exception;
  * @author Lucas Wing
  */
 public abstract class GraphSearchException extends Exception {
-    
+
+    protected GraphSearchException() {
+        super();
+    }
+
+    protected GraphSearchException(String message) {
+        super(message);
+    }
+
 }
@@ -0,0 +1,20 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api.exception;
+
+/**
+ * Exception which occurs if a search needs an index which does not exist or
+ * is not enabled. An example of this would be a geospatial search against a
+ * Geoshape property which is not in an enabled mixed index.
+ *
+ * @author Lucas Wing
+ */
+public class MissingIndexException extends GraphSearchException {
+
+    public MissingIndexException(String message, Object... messageArgs) {
+        super(String.format(message, messageArgs));
+    }
+
+}
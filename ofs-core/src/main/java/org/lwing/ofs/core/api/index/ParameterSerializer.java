@@ -4,16 +4,12 @@
  */
 package org.lwing.ofs.core.api.index;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectMapper.DefaultTyping;
 import com.fasterxml.jackson.databind.SerializerProvider;
-import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import java.io.IOException;
 import org.janusgraph.core.schema.Parameter;
+import org.lwing.ofs.core.api.MappingUtil;
 
 /**
  *
@@ -39,12 +35,8 @@ public class ParameterSerializer extends StdSerializer<Parameter> {
         gen.writeStartObject();
         gen.writeStringField(NAME_KEY, param.key());
         gen.writeFieldName(VAL_KEY);
-        ObjectMapper om = new ObjectMapper();
-        // enable default typing since value is a generic obj
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        om.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, DefaultTyping.NON_FINAL_AND_ENUMS);
-        // write param value to output
-        gen.writeRawValue(om.writeValueAsString(param.value()));
+        // write param value to output (typed since value is a generic obj)
+        gen.writeRawValue(MappingUtil.getTypedMapper().writeValueAsString(param.value()));
         gen.writeEndObject();
     }
 
@@ -15,6 +15,8 @@ public interface ResourceLock {
     /**
      * Acquires locks for a set of resources
      * @param resources resources to lock
+     * @throws IllegalStateException if the locks could not be acquired, in
+     * which case none of them are held
      */
     public void acquireLocks(Set<String> resources);
     
@@ -6,25 +6,43 @@ package org.lwing.ofs.core.api.property;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.janusgraph.core.attribute.Geoshape;
 import static org.lwing.ofs.core.api.property.PropertySerializer.CLASS_KEY;
 import static org.lwing.ofs.core.api.property.PropertySerializer.NAME_KEY;
 import static org.lwing.ofs.core.api.property.PropertySerializer.VAL_KEY;
 
 /**
+ * Reads properties straight off the parser's tokens rather than building a
+ * tree per property. Since the serializer writes the value before the class,
+ * the value's text is held until the class is known, then decoded with the
+ * decoder cached for that class name.
+ *
  * https://www.baeldung.com/jackson-deserialization
  *
  * @author Lucas Wing
  */
 public class PropertyDeserializer extends StdDeserializer<Property> {
 
+    // decoders for every supported type, in lookup order for subclasses
+    private static final Map<Class<?>, ValueDecoder> TYPE_DECODERS = buildTypeDecoders();
+
+    // class name -> decoder, filled as new class names are seen
+    private static final Map<String, ValueDecoder> NAME_DECODERS = new ConcurrentHashMap<>();
+
+    static {
+        TYPE_DECODERS.forEach((clazz, decoder) -> NAME_DECODERS.put(clazz.getCanonicalName(), decoder));
+    }
+
     public PropertyDeserializer() {
         this(null);
     }
@@ -36,48 +54,83 @@ public class PropertyDeserializer extends StdDeserializer<Property> {
     @Override
     public Property deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException, JsonProcessingException {
         String name = null;
+        String value = null;
+        String className = null;
+        JsonToken token = jp.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = jp.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            String field = jp.currentName();
+            jp.nextToken();
+            switch (field) {
+                case NAME_KEY ->
+                    name = jp.getValueAsString();
+                case VAL_KEY ->
+                    value = jp.getValueAsString();
+                case CLASS_KEY ->
+                    className = jp.getValueAsString();
+                default ->
+                    jp.skipChildren();
+            }
+        }
+        if (className == null) {
+            throw new JsonException("Failed to deserialize obj, no class provided on property: " + name);
+        }
+        ValueDecoder decoder = getDecoder(className);
+        if (value == null) {
+            return new Property(name);
+        }
         try {
-            JsonNode node = jp.getCodec().readTree(jp);
-            name = node.get(NAME_KEY).textValue();
-            Class<?> clazz = Class.forName(node.get(CLASS_KEY).textValue());
-            return new Property(name, getValue(node.get(VAL_KEY), clazz));
-        } catch (ClassNotFoundException ex) {
-            throw new JsonClassNotFoundException("Failed to deserialize obj because of classNotFound", ex);
+            return new Property(name, decoder.decode(value));
         } catch (ParseException ex) {
             throw new JsonException("Failed to deserialize Geoshape obj on property: " + name);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new JsonException("Failed to deserialize value of type " + className + " on property: " + name);
         }
     }
 
-    private Object getValue(JsonNode input, Class<?> clazz) throws JsonException, ParseException {
-        Object output;
-        if (String.class.isAssignableFrom(clazz)) {
-            output = input.asText();
-        } else if (Character.class.isAssignableFrom(clazz)) {
-            output = input.asText().charAt(0);
-        } else if (Boolean.class.isAssignableFrom(clazz)) {
-            output = input.asBoolean();
-        } else if (Byte.class.isAssignableFrom(clazz)) {
-            output = Byte.parseByte(input.textValue());
-        } else if (Short.class.isAssignableFrom(clazz)) {
-            output = Short.parseShort(input.asText());
-        } else if (Integer.class.isAssignableFrom(clazz)) {
-            output = input.asInt();
-        } else if (Long.class.isAssignableFrom(clazz)) {
-            output = input.asLong();
-        } else if (Float.class.isAssignableFrom(clazz)) {
-            output = Float.parseFloat(input.asText());
-        } else if (Double.class.isAssignableFrom(clazz)) {
-            output = input.asDouble();
-        } else if (Date.class.isAssignableFrom(clazz)) {
-            output = new Date(input.asLong());
-        } else if (Geoshape.class.isAssignableFrom(clazz)) {
-            output = Geoshape.fromWkt(input.asText());
-        } else if (UUID.class.isAssignableFrom(clazz)) {
-           output = UUID.fromString(input.asText());
-        } else {
-            throw new JsonException("Cannot find class to deserialize property value " + clazz.getCanonicalName());
+    private ValueDecoder getDecoder(String className) throws JsonProcessingException {
+        ValueDecoder decoder = NAME_DECODERS.get(className);
+        if (decoder != null) {
+            return decoder;
         }
-        return output;
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(className);
+        } catch (ClassNotFoundException ex) {
+            throw new JsonClassNotFoundException("Failed to deserialize obj because of classNotFound", ex);
+        }
+        for (Map.Entry<Class<?>, ValueDecoder> entry : TYPE_DECODERS.entrySet()) {
+            if (entry.getKey().isAssignableFrom(clazz)) {
+                NAME_DECODERS.put(className, entry.getValue());
+                return entry.getValue();
+            }
+        }
+        throw new JsonException("Cannot find class to deserialize property value " + clazz.getCanonicalName());
+    }
+
+    private static Map<Class<?>, ValueDecoder> buildTypeDecoders() {
+        Map<Class<?>, ValueDecoder> decoders = new LinkedHashMap<>();
+        decoders.put(String.class, text -> text);
+        decoders.put(Character.class, text -> text.charAt(0));
+        decoders.put(Boolean.class, Boolean::parseBoolean);
+        decoders.put(Byte.class, Byte::parseByte);
+        decoders.put(Short.class, Short::parseShort);
+        decoders.put(Integer.class, Integer::parseInt);
+        decoders.put(Long.class, Long::parseLong);
+        decoders.put(Float.class, Float::parseFloat);
+        decoders.put(Double.class, Double::parseDouble);
+        decoders.put(Date.class, text -> new Date(Long.parseLong(text)));
+        decoders.put(Geoshape.class, Geoshape::fromWkt);
+        decoders.put(UUID.class, UUID::fromString);
+        return decoders;
+    }
+
+    @FunctionalInterface
+    private interface ValueDecoder {
+
+        Object decode(String text) throws ParseException;
     }
 
     class JsonClassNotFoundException extends JsonProcessingException {
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api.state;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Log of the resources mutated through the OFS repositories. Changes are
+ * recorded before the mutation commits so a committed mutation is never
+ * missing from the log, which means a logged resource may not have actually
+ * changed. Delta exports resolve each logged resource against the graph's
+ * current state so this is safe.
+ *
+ * @author Lucas Wing
+ */
+public interface ChangeLog {
+
+    /**
+     * Records a change to a resource
+     *
+     * @param type type of change made to the resource
+     * @param resource resource being changed
+     * @throws IOException if the change could not be stored
+     */
+    public void recordChange(ChangeType type, DependencyResource resource) throws IOException;
+
+    /**
+     * @param since earliest time (inclusive) of changes to return
+     * @return changes recorded at or after the since time, in the order they
+     * were recorded
+     * @throws IOException if the log could not be read
+     */
+    public List<ChangeEntry> readChangesSince(Instant since) throws IOException;
+
+    /**
+     * Drops the changes recorded before the input time, ex. once every delta
+     * export needing them has been made
+     *
+     * @param before changes recorded before this time are dropped
+     * @throws IOException if the log could not be rewritten
+     */
+    public void truncateBefore(Instant before) throws IOException;
+
+    public enum ChangeType {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    public class ChangeEntry {
+
+        private final long timestamp;
+
+        private final ChangeType type;
+
+        private final String resource;
+
+        public ChangeEntry(long timestamp, ChangeType type, String resource) {
+            this.timestamp = timestamp;
+            this.type = type;
+            this.resource = resource;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api.state;
+
+import java.util.Set;
+import org.lwing.ofs.core.api.search.GraphSearch;
+
+/**
+ * Picks the objects a filtered export starts from. Everything those objects
+ * depend on is exported along with them, so the export can be imported on its
+ * own.
+ *
+ * @author Lucas Wing
+ */
+public class ExportFilter {
+
+    public enum FilterType {
+        // models & every feature implementing them
+        MODELS,
+        // a view & its child views
+        VIEW,
+        // features found by a search
+        FEATURE_SEARCH
+    }
+
+    private final FilterType filterType;
+
+    private final Set<String> ids;
+
+    private final GraphSearch featureSearch;
+
+    private ExportFilter(FilterType filterType, Set<String> ids, GraphSearch featureSearch) {
+        this.filterType = filterType;
+        this.ids = ids;
+        this.featureSearch = featureSearch;
+    }
+
+    /**
+     * @param modelIds models to export
+     * @return filter for the models & all features which inherit from them
+     */
+    public static ExportFilter forModels(Set<String> modelIds) {
+        return new ExportFilter(FilterType.MODELS, modelIds, null);
+    }
+
+    /**
+     * @param viewId view to export
+     * @return filter for the view tree under the view
+     */
+    public static ExportFilter forView(String viewId) {
+        return new ExportFilter(FilterType.VIEW, Set.of(viewId), null);
+    }
+
+    /**
+     * @param featureSearch search for the features to export
+     * @return filter for the features found by the search
+     */
+    public static ExportFilter forFeatureSearch(GraphSearch featureSearch) {
+        return new ExportFilter(FilterType.FEATURE_SEARCH, Set.of(), featureSearch);
+    }
+
+    public FilterType getFilterType() {
+        return filterType;
+    }
+
+    public Set<String> getIds() {
+        return ids;
+    }
+
+    public GraphSearch getFeatureSearch() {
+        return featureSearch;
+    }
+
+}
@@ -4,7 +4,12 @@
  */
 package org.lwing.ofs.core.api.state;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
 
@@ -25,4 +30,48 @@ public interface GraphStorageSystem {
     public DirectoryStream<Path> listFilesInDirectory(Path location, String glob) throws IOException;
     
     public ResourceToIdStore getResourceToFileIdStore(Path location) throws IOException;
+
+    /**
+     * Opens a stream to write a file to. The file is stored once the stream is
+     * closed. The default impl buffers the file and hands it to
+     * {@link #storeStringFile}, implementations should override this to write
+     * directly to storage.
+     *
+     * @param location file to write
+     * @return stream to write the file contents to
+     * @throws IOException if the file can't be opened
+     */
+    default OutputStream openFileOutputStream(Path location) throws IOException {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                storeStringFile(location, toString(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    /**
+     * Opens a stream to read a file from. The default impl reads the file via
+     * {@link #readStringFile}, implementations should override this to read
+     * directly from storage.
+     *
+     * @param location file to read
+     * @return stream of the file contents
+     * @throws IOException if the file can't be opened
+     */
+    default InputStream openFileInputStream(Path location) throws IOException {
+        return new ByteArrayInputStream(readStringFile(location).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes a file if it exists. Storage which can't delete files keeps the
+     * default, which leaves the file in place.
+     *
+     * @param location file to delete
+     * @return if the file was deleted
+     * @throws IOException if the file exists but can't be deleted
+     */
+    default boolean deleteFile(Path location) throws IOException {
+        return false;
+    }
 }
@@ -4,24 +4,57 @@
  */
 package org.lwing.ofs.core.api.state;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * Cache used during import to keep track of what resources have already been imported.
  * This is used because some graphs might have long commit times so checking the graph
  * may not be sufficient.
- * 
+ *
  * @author Lucas Wing
  */
 public interface ImportCacheProvider {
 
     public ImportCache getImportCache();
 
+    /**
+     * Gets the cache for an import of the state at the input location. A
+     * persistent provider returns the resources already imported by an earlier
+     * import of the same location which did not finish, so the import resumes
+     * from where it left off.
+     *
+     * @param stateLocation location of the state being imported
+     * @return cache for the import
+     * @throws IOException if a persisted cache could not be opened
+     */
+    public default ImportCache getImportCache(Path stateLocation) throws IOException {
+        return getImportCache();
+    }
+
+    /**
+     * Called once an import has finished, the cache is not needed afterwards.
+     *
+     * @param cache cache of the finished import
+     */
     public void deleteImportCache(ImportCache cache);
 
-    public interface ImportCache {
+    public interface ImportCache extends Closeable {
 
-        public void storeResource(String resource);
+        public void storeResource(String resource) throws IOException;
 
         public boolean containsResource(String resource);
+
+        /**
+         * Releases any resources held by the cache without deleting it
+         *
+         * @throws IOException if the cache fails to persist
+         */
+        @Override
+        public default void close() throws IOException {
+            // nothing to release by default
+        }
     }
 
 }
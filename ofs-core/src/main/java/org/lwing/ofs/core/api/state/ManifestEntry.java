@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api.state;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Set;
+
+/**
+ * Line of the manifest stored alongside an export. The manifest lists the
+ * exported resources in import order, each with its dependencies already
+ * resolved to their primitive or ref property, and grouped into layers where
+ * each layer only depends on the layers before it. This lets an import plan
+ * its work without reading object bodies for their dependencies or probing
+ * the storage, and without reading the whole manifest at once.
+ *
+ * @author Lucas Wing
+ */
+public class ManifestEntry {
+
+    private final String resource;
+
+    private final int layer;
+
+    // resources it depends on, which may be outside of the export
+    private final Set<String> dependencies;
+
+    // if the resource is in the last layer, left over from a dependency cycle
+    private final boolean cycle;
+
+    public ManifestEntry(
+            @JsonProperty("resource") String resource,
+            @JsonProperty("layer") int layer,
+            @JsonProperty("dependencies") Set<String> dependencies,
+            @JsonProperty("cycle") boolean cycle
+    ) {
+        this.resource = resource;
+        this.layer = layer;
+        this.dependencies = dependencies == null ? Set.of() : dependencies;
+        this.cycle = cycle;
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    public boolean isCycle() {
+        return cycle;
+    }
+
+}
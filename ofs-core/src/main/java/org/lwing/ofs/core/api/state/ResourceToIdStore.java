@@ -4,6 +4,7 @@
  */
 package org.lwing.ofs.core.api.state;
 
+import java.io.Closeable;
 import java.io.IOException;
 
 /**
@@ -13,20 +14,48 @@ import java.io.IOException;
  * 
  * @author Lucas Wing
  */
-public interface ResourceToIdStore {
+public interface ResourceToIdStore extends Closeable {
     
     public void storeResourceToFileSafeId(String resource, String fileSafeId) throws IOException;
     
     /**
      * @param fileSafeId
      * @return The resource from the file safe id. null if it does not exist.
+     * @throws IOException if the store could not be read
      */
-    public String getResourceFromFileSafeId(String fileSafeId);
+    public String getResourceFromFileSafeId(String fileSafeId) throws IOException;
     
     /**
      * @param resource
      * @return The file safe id for a resource. null if it does not exist.
+     * @throws IOException if the store could not be read
      */
-    public String getFileSafeIdFromResource(String resource);
+    public String getFileSafeIdFromResource(String resource) throws IOException;
+
+    /**
+     * Drops the mapping of a resource whose object was removed from the
+     * export. Mappings are kept by default.
+     *
+     * @param resource
+     * @throws IOException if the store could not be written
+     */
+    public default void removeResource(String resource) throws IOException {
+        // mappings are kept by default
+    }
+
+    /**
+     * Writes out any stored mappings which are still buffered. Called once an
+     * export has stored all of its objects.
+     *
+     * @throws IOException if the mappings could not be written
+     */
+    public default void flush() throws IOException {
+        // nothing buffered by default
+    }
+
+    @Override
+    public default void close() throws IOException {
+        flush();
+    }
     
 }
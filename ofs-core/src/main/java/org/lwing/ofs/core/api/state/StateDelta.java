@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api.state;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Set;
+
+/**
+ * Stored alongside a delta export. Records the window of changes the delta
+ * covers and the resources which were deleted in that window (tombstones).
+ *
+ * @author Lucas Wing
+ */
+public class StateDelta {
+
+    // epoch millis of the earliest change included in the delta
+    private final long since;
+
+    // epoch millis of when the delta was exported, use as the next delta's since
+    private final long exportedAt;
+
+    // resources which no longer exist in the graph
+    private final Set<String> deletedResources;
+
+    public StateDelta(
+            @JsonProperty("since") long since,
+            @JsonProperty("exportedAt") long exportedAt,
+            @JsonProperty("deletedResources") Set<String> deletedResources
+    ) {
+        this.since = since;
+        this.exportedAt = exportedAt;
+        this.deletedResources = deletedResources;
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    public long getExportedAt() {
+        return exportedAt;
+    }
+
+    public Set<String> getDeletedResources() {
+        return deletedResources;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api.state;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+
+/**
+ * Differences between two exported states, grouped by the type of object.
+ *
+ * @author Lucas Wing
+ */
+public class StateDiff {
+
+    private final Map<OFSType, TypeDiff> typeDiffs;
+
+    public StateDiff(Map<OFSType, TypeDiff> typeDiffs) {
+        this.typeDiffs = typeDiffs;
+    }
+
+    public Map<OFSType, TypeDiff> getTypeDiffs() {
+        return typeDiffs;
+    }
+
+    /**
+     * @param type type of object
+     * @return differences for the type, empty if the type wasn't compared
+     */
+    public TypeDiff getTypeDiff(OFSType type) {
+        return typeDiffs.getOrDefault(type, new TypeDiff());
+    }
+
+    /**
+     * @return if both states hold the same objects
+     */
+    public boolean isEmpty() {
+        return typeDiffs.values().stream().allMatch(TypeDiff::isEmpty);
+    }
+
+    public static class TypeDiff {
+
+        // resources only in the second state
+        private final Set<String> added;
+
+        // resources only in the first state
+        private final Set<String> removed;
+
+        // resources in both states -> top level fields which differ
+        private final Map<String, Set<String>> changed;
+
+        public TypeDiff() {
+            this.added = new HashSet<>();
+            this.removed = new HashSet<>();
+            this.changed = new HashMap<>();
+        }
+
+        public Set<String> getAdded() {
+            return added;
+        }
+
+        public Set<String> getRemoved() {
+            return removed;
+        }
+
+        public Map<String, Set<String>> getChanged() {
+            return changed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+
+    }
+
+}
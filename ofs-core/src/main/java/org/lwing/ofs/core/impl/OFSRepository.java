@@ -4,7 +4,9 @@
  */
 package org.lwing.ofs.core.impl;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import org.lwing.ofs.core.api.JGMgntProvider;
@@ -13,6 +15,7 @@ import static org.lwing.ofs.core.api.config.OFSConfiguration.INTERNAL_FIELD_PREF
 import org.lwing.ofs.core.api.exception.InternalKeywordException;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
 import org.janusgraph.core.JanusGraph;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
 import org.lwing.ofs.core.api.state.DependencyResource;
 import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
 import org.lwing.ofs.core.api.state.StatefulResource;
@@ -43,6 +46,15 @@ public abstract class OFSRepository {
         return graph.traversal();
     }
 
+    /**
+     * Rolls back the calling thread's transaction. JanusGraph transactions are
+     * per thread, so pooled threads call this once done so their reads aren't
+     * left open.
+     */
+    public void rollbackTx() {
+        graph.tx().rollback();
+    }
+
     /**
      * @return Provider of a JanusGraph Management Object
      */
@@ -107,6 +119,63 @@ public abstract class OFSRepository {
         return getOpenClosableResourceLock(resource.calcDependencies());
     }
 
+    /**
+     * Get lock on resources that are affected by an operation on several
+     * resources. Shared dependencies are only locked once.
+     *
+     * @param resources resources to lock
+     * @return closable semaphore for try with statements
+     */
+    protected CloseableResourceLock acquireLock(Collection<? extends StatefulResource> resources) {
+        Set<DependencyResource> dependencies = new HashSet<>();
+        for (StatefulResource resource : resources) {
+            dependencies.addAll(resource.calcDependencies());
+        }
+        return getOpenClosableResourceLock(dependencies);
+    }
+
+    /**
+     * Records a change to a node in the configured change log. Call this
+     * before committing the change so a committed change is never left out of
+     * the log.
+     *
+     * @param changeType type of change being made
+     * @param type type of node being changed
+     * @param nodeId id of the node being changed
+     * @throws IOException if the change log fails to store the change
+     */
+    protected void recordChange(ChangeType changeType, OFSType type, String nodeId) throws IOException {
+        recordChange(changeType, DependencyResource.fromNodeId(type, nodeId));
+    }
+
+    /**
+     * Records a change to a property in the configured change log. Call this
+     * before committing the change so a committed change is never left out of
+     * the log.
+     *
+     * @param changeType type of change being made
+     * @param type type of property being changed
+     * @param property name of the property being changed
+     * @throws IOException if the change log fails to store the change
+     */
+    protected void recordPropertyChange(ChangeType changeType, OFSType type, String property) throws IOException {
+        recordChange(changeType, DependencyResource.fromProperty(type, property));
+    }
+
+    /**
+     * Records a change to a resource in the configured change log, if one is
+     * configured
+     *
+     * @param changeType type of change being made
+     * @param resource resource being changed
+     * @throws IOException if the change log fails to store the change
+     */
+    protected void recordChange(ChangeType changeType, DependencyResource resource) throws IOException {
+        if (config.getChangeLog() != null) {
+            config.getChangeLog().recordChange(changeType, resource);
+        }
+    }
+
     private CloseableResourceLock getOpenClosableResourceLock(Set<DependencyResource> resources) {
         return (new CloseableResourceLock(
                 config.getResourceLock(),
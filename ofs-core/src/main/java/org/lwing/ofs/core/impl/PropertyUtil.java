@@ -88,6 +88,7 @@ public class PropertyUtil {
     public static void addRefProperties(Vertex e, List<Property> out, Optional<Set<String>> select, GraphTraversalSource g, String edgeName) {
         GraphTraversal<Vertex, Edge> outEdges = g.V(e.id()).outE(edgeName);
         if (!select.isEmpty()) {
+            // served by the vertex centric index on the property name for reference property edges
             outEdges.has(REF_PROP_NAME_EDGE_PROP, P.within(select.get()));
         }
         outEdges.forEachRemaining(edge -> {
@@ -121,9 +122,8 @@ public class PropertyUtil {
     }
 
     private static void addEdgeToFeature(GraphTraversalSource g, String schemaId, Property prop, String edgeName) {
-        GraphTraversal<Edge, Edge> edge = g.addE(edgeName).from(V(schemaId)).to(V(prop.getValue()));
-        edge = g.E(edge.next().id()).property(REF_PROP_NAME_EDGE_PROP, prop.getName());
-        edge.next();
+        // named as it is added, JanusGraph replaces an edge when its properties are changed
+        g.addE(edgeName).from(V(schemaId)).to(V(prop.getValue())).property(REF_PROP_NAME_EDGE_PROP, prop.getName()).next();
     }
 
     /**
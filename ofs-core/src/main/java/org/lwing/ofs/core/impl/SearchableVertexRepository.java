@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
 import static org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__.has;
 import org.apache.tinkerpop.gremlin.process.traversal.strategy.decoration.SubgraphStrategy;
@@ -87,18 +88,14 @@ public abstract class SearchableVertexRepository<E extends OFSIdVertex> extends
      * @throws Exception JanusGraph generic exception
      */
     public void search(GraphSearch graphSearch, GraphSearchResponseHandler<E> responseHandler, Optional<Set<String>> select) throws GraphSearchException, Exception {
-        // do a search traversal (aka only search for the nodes that are of this type & fit user input strategies)
-        try ( GraphTraversalSource g = getSearchTraversalSource()) {
-            // also need a more general traversal source to also resolve nodes of other types like schemas when building objs like Models
-            try ( GraphTraversalSource rog = getReadOnlyTraversalSource()) {
-                responseHandler.handleResponse(new VertexIterator<E>(graphSearch.search(g), g) {
-                    @Override
-                    public E next() {
-                        return buildType(traversal.next(), rog, select);
-                    }
-                });
-            }
-        }
+        searchVertices(graphSearch, (results, g, rog) -> {
+            responseHandler.handleResponse(new VertexIterator<E>(results, g) {
+                @Override
+                public E next() {
+                    return buildType(traversal.next(), rog, select);
+                }
+            });
+        });
     }
 
     /**
@@ -122,6 +119,26 @@ public abstract class SearchableVertexRepository<E extends OFSIdVertex> extends
         search(graphSearch, responseHandler, PropertyUtil.ALL_SELECT);
     }
     
+    /**
+     * Executes a search operation handing the raw result vertices to the
+     * handler, for callers which read the vertices directly rather than
+     * building OFS objects from them.
+     *
+     * @param graphSearch search to be executed
+     * @param handler handles the result vertices
+     * @throws GraphSearchException OFS related exceptions
+     * @throws Exception JanusGraph generic exception
+     */
+    protected void searchVertices(GraphSearch graphSearch, SearchVertexHandler handler) throws GraphSearchException, Exception {
+        // do a search traversal (aka only search for the nodes that are of this type & fit user input strategies)
+        try ( GraphTraversalSource g = getSearchTraversalSource()) {
+            // also need a more general traversal source to also resolve nodes of other types like schemas when building objs like Models
+            try ( GraphTraversalSource rog = getReadOnlyTraversalSource()) {
+                handler.handle(graphSearch.search(g), g, rog);
+            }
+        }
+    }
+
     /**
      * Builds the type of object that this repository primarily supports. For
      * example, it builds the Model object for the ModelRepository. This is
@@ -149,4 +166,21 @@ public abstract class SearchableVertexRepository<E extends OFSIdVertex> extends
                 .withStrategies(ReadOnlyStrategy.instance());
     }
     
+    /**
+     * Handles the raw result vertices of a search
+     */
+    @FunctionalInterface
+    protected interface SearchVertexHandler {
+
+        /**
+         * @param results result vertices of the search
+         * @param g traversal source the search was executed with
+         * @param rog read only traversal source which is not restricted to
+         * this repository's vertex type
+         * @throws Exception if handling the results fails
+         */
+        void handle(GraphTraversal<Vertex, Vertex> results, GraphTraversalSource g, GraphTraversalSource rog) throws Exception;
+
+    }
+
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of the features of a search per model & per value of the faceted
+ * properties, for showing next to a result list. A feature is counted once
+ * for every model it inherits from & once for every distinct value it has of
+ * a faceted property.
+ *
+ * @author Lucas Wing
+ */
+public class FacetCounts {
+
+    private long totalCount;
+
+    // model id -> count
+    private final Map<String, Long> modelCounts;
+
+    // property -> value -> count
+    private final Map<String, Map<Object, Long>> valueCounts;
+
+    FacetCounts() {
+        this.modelCounts = new HashMap<>();
+        this.valueCounts = new HashMap<>();
+    }
+
+    /**
+     * @return number of features in the search
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return model id -> number of features of the model, features of
+     * models inheriting from it are included
+     */
+    public Map<String, Long> getModelCounts() {
+        return Collections.unmodifiableMap(modelCounts);
+    }
+
+    /**
+     * @param property faceted property
+     * @return value -> number of features with the value, allowable values
+     * of the property are included even when no feature has them
+     */
+    public Map<Object, Long> getValueCounts(String property) {
+        return Collections.unmodifiableMap(valueCounts.getOrDefault(property, Collections.emptyMap()));
+    }
+
+    /**
+     * @return property -> value -> number of features with the value
+     */
+    public Map<String, Map<Object, Long>> getValueCounts() {
+        return Collections.unmodifiableMap(valueCounts);
+    }
+
+    /**
+     * Adds a facet with a zero count for every given value
+     */
+    void initFacet(String property, Iterable<?> values) {
+        Map<Object, Long> counts = valueCounts.computeIfAbsent(property, k -> new HashMap<>());
+        for (Object value : values) {
+            counts.putIfAbsent(value, 0L);
+        }
+    }
+
+    void addFeature() {
+        totalCount++;
+    }
+
+    void addModel(String modelId) {
+        modelCounts.merge(modelId, 1L, Long::sum);
+    }
+
+    void addValue(String property, Object value) {
+        valueCounts.computeIfAbsent(property, k -> new HashMap<>()).merge(value, 1L, Long::sum);
+    }
+
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In memory bitmap index of the features' enumerated (allowable value)
+ * properties, so facet filters & counts are answered without touching the
+ * graph. Every feature is given a dense ordinal, & each value of an indexed
+ * property has a bitmap of the ordinals of the features with that value.
+ * Ordinals of deleted features are reused so the bitmaps stay dense.
+ *
+ * The index starts unbuilt. It's filled from the graph by a rebuild, after
+ * which the FeatureRepository keeps it in sync as features are written.
+ * Writers don't wait on a rebuild, their updates are buffered while it scans
+ * the graph & applied to the rebuilt index before it's swapped in.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureBitmapIndex {
+
+    private final Set<String> properties;
+
+    private final ReadWriteLock lock;
+
+    // held by a rebuild so rebuilds don't overlap, updates never take it
+    private final Object buildMonitor;
+
+    private Bitmaps bitmaps;
+
+    // feature id -> latest values, null if removed, of updates made while a rebuild scans, null when not rebuilding
+    private Map<String, Map<String, List<Object>>> rebuildUpdates;
+
+    private volatile boolean built;
+
+    /**
+     * @param properties enumerated properties to index
+     */
+    public FeatureBitmapIndex(Set<String> properties) {
+        this.properties = Collections.unmodifiableSet(new LinkedHashSet<>(properties));
+        this.lock = new ReentrantReadWriteLock();
+        this.buildMonitor = new Object();
+        this.bitmaps = new Bitmaps();
+    }
+
+    /**
+     * @return true if any property is indexed
+     */
+    public boolean isEnabled() {
+        return !properties.isEmpty();
+    }
+
+    public boolean isIndexed(String property) {
+        return properties.contains(property);
+    }
+
+    public Set<String> getProperties() {
+        return properties;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Replaces the index with the values given by the loader
+     *
+     * @param loader loads the indexed property values of every feature
+     * @throws Exception if the loader fails, the index is left as it was
+     */
+    public void rebuild(FeatureValueLoader loader) throws Exception {
+        synchronized (buildMonitor) {
+            lock.writeLock().lock();
+            try {
+                rebuildUpdates = new LinkedHashMap<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            Bitmaps rebuilt = new Bitmaps();
+            try {
+                loader.load(rebuilt::put);
+            } catch (Exception ex) {
+                lock.writeLock().lock();
+                try {
+                    // the buffered updates were already applied to the current index
+                    rebuildUpdates = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw ex;
+            }
+            lock.writeLock().lock();
+            try {
+                // the scan may have read a feature before an update, so the update wins
+                rebuildUpdates.forEach((featureId, values) -> {
+                    if (values == null) {
+                        rebuilt.remove(featureId);
+                    } else {
+                        rebuilt.put(featureId, values);
+                    }
+                });
+                rebuildUpdates = null;
+                bitmaps = rebuilt;
+                built = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Builds the index if it has not been built yet
+     *
+     * @param loader loads the indexed property values of every feature
+     * @throws Exception if the loader fails
+     */
+    public void ensureBuilt(FeatureValueLoader loader) throws Exception {
+        if (built) {
+            return;
+        }
+        synchronized (buildMonitor) {
+            if (!built) {
+                rebuild(loader);
+            }
+        }
+    }
+
+    /**
+     * Replaces the indexed values of a feature. Ignored until the index is
+     * built or being rebuilt, since the build reads the feature from the
+     * graph.
+     *
+     * @param featureId id of the feature
+     * @param values property -> values of the feature
+     */
+    public void update(String featureId, Map<String, List<Object>> values) {
+        lock.writeLock().lock();
+        try {
+            if (rebuildUpdates != null) {
+                rebuildUpdates.put(featureId, values);
+            }
+            if (built) {
+                bitmaps.put(featureId, values);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a feature from the index
+     *
+     * @param featureId id of the feature
+     */
+    public void remove(String featureId) {
+        lock.writeLock().lock();
+        try {
+            if (rebuildUpdates != null) {
+                rebuildUpdates.put(featureId, null);
+            }
+            if (built) {
+                bitmaps.remove(featureId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the features matching the filters. A feature matches if, for
+     * every filtered property, it has any of the property's filter values.
+     *
+     * @param filters property -> values, ANDed across properties & ORed
+     * within a property. Empty matches every feature.
+     * @return ids of the matching features
+     */
+    public Set<String> search(Map<String, Set<Object>> filters) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = bitmaps.filter(filters);
+            Set<String> out = new LinkedHashSet<>();
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                out.add(bitmaps.featureIds.get(ordinal));
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the features matching the filters
+     *
+     * @param filters property -> values, ANDed across properties & ORed
+     * within a property. Empty matches every feature.
+     * @return number of matching features
+     */
+    public long count(Map<String, Set<Object>> filters) {
+        lock.readLock().lock();
+        try {
+            return bitmaps.filter(filters).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the features matching the filters per value of a property
+     *
+     * @param property indexed property to count the values of
+     * @param filters property -> values, ANDed across properties & ORed
+     * within a property. Empty matches every feature.
+     * @return value -> number of matching features with the value, values
+     * without any matching features are left out
+     */
+    public Map<Object, Long> facetCounts(String property, Map<String, Set<Object>> filters) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = bitmaps.filter(filters);
+            Map<Object, Long> out = new HashMap<>();
+            for (Map.Entry<Object, BitSet> valueBitmap : bitmaps.values.getOrDefault(property, Collections.emptyMap()).entrySet()) {
+                BitSet valueMatches = (BitSet) valueBitmap.getValue().clone();
+                valueMatches.and(matches);
+                if (!valueMatches.isEmpty()) {
+                    out.put(valueBitmap.getKey(), (long) valueMatches.cardinality());
+                }
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private class Bitmaps {
+
+        // feature id -> ordinal
+        private final Map<String, Integer> ordinals = new HashMap<>();
+
+        // ordinal -> feature id, null for a free ordinal
+        private final List<String> featureIds = new ArrayList<>();
+
+        private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+        // ordinals in use
+        private final BitSet live = new BitSet();
+
+        // property -> value -> ordinals of the features with the value
+        private final Map<String, Map<Object, BitSet>> values = new HashMap<>();
+
+        public void put(String featureId, Map<String, List<Object>> featureValues) {
+            Integer ordinal = ordinals.get(featureId);
+            if (ordinal == null) {
+                ordinal = freeOrdinals.isEmpty() ? featureIds.size() : freeOrdinals.pop();
+                if (ordinal == featureIds.size()) {
+                    featureIds.add(featureId);
+                } else {
+                    featureIds.set(ordinal, featureId);
+                }
+                ordinals.put(featureId, ordinal);
+                live.set(ordinal);
+            } else {
+                clearValues(ordinal);
+            }
+            for (String property : properties) {
+                for (Object value : featureValues.getOrDefault(property, Collections.emptyList())) {
+                    values.computeIfAbsent(property, k -> new HashMap<>()).computeIfAbsent(value, k -> new BitSet()).set(ordinal);
+                }
+            }
+        }
+
+        public void remove(String featureId) {
+            Integer ordinal = ordinals.remove(featureId);
+            if (ordinal == null) {
+                return;
+            }
+            clearValues(ordinal);
+            live.clear(ordinal);
+            featureIds.set(ordinal, null);
+            freeOrdinals.push(ordinal);
+        }
+
+        public BitSet filter(Map<String, Set<Object>> filters) {
+            BitSet matches = (BitSet) live.clone();
+            for (Map.Entry<String, Set<Object>> filter : filters.entrySet()) {
+                Map<Object, BitSet> propValues = values.getOrDefault(filter.getKey(), Collections.emptyMap());
+                BitSet anyValue = new BitSet();
+                for (Object value : filter.getValue()) {
+                    BitSet valueBitmap = propValues.get(value);
+                    if (valueBitmap != null) {
+                        anyValue.or(valueBitmap);
+                    }
+                }
+                matches.and(anyValue);
+            }
+            return matches;
+        }
+
+        private void clearValues(int ordinal) {
+            // enumerated properties have few values, so clearing every value's bit is cheap
+            for (Map<Object, BitSet> propValues : values.values()) {
+                propValues.values().removeIf(bitmap -> {
+                    bitmap.clear(ordinal);
+                    return bitmap.isEmpty();
+                });
+            }
+        }
+
+    }
+
+}
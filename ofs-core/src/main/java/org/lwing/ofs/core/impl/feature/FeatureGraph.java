@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.lwing.ofs.core.api.feature.Feature;
+
+/**
+ * A feature read together with the features it references, resolved through
+ * its reference properties down to a max depth. Every feature is read once,
+ * so features referenced from several places are the same node.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureGraph {
+
+    private final String rootId;
+
+    // feature id -> node, in the order the features were read
+    private final Map<String, FeatureNode> nodes;
+
+    FeatureGraph(String rootId) {
+        this.rootId = rootId;
+        this.nodes = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return node of the feature the graph was read from
+     */
+    public FeatureNode getRoot() {
+        return nodes.get(rootId);
+    }
+
+    /**
+     * @param featureId id of a feature in the graph
+     * @return node of the feature, empty if it was not read
+     */
+    public Optional<FeatureNode> getNode(String featureId) {
+        return Optional.ofNullable(nodes.get(featureId));
+    }
+
+    /**
+     * @return every node in the graph, level by level from the root
+     */
+    public Collection<FeatureNode> getNodes() {
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+    boolean contains(String featureId) {
+        return nodes.containsKey(featureId);
+    }
+
+    void addFeature(Feature feature) {
+        nodes.put(feature.getId(), new FeatureNode(feature));
+    }
+
+    void addReference(String featureId, String property, String referencedId) {
+        nodes.get(featureId).references.computeIfAbsent(property, k -> new ArrayList<>()).add(referencedId);
+    }
+
+    public class FeatureNode {
+
+        private final Feature feature;
+
+        // property -> referenced feature ids, empty on the features at the max depth
+        private final Map<String, List<String>> references;
+
+        private FeatureNode(Feature feature) {
+            this.feature = feature;
+            this.references = new LinkedHashMap<>();
+        }
+
+        public Feature getFeature() {
+            return feature;
+        }
+
+        /**
+         * @return reference properties resolved on this feature
+         */
+        public Set<String> getReferenceProperties() {
+            return Collections.unmodifiableSet(references.keySet());
+        }
+
+        /**
+         * @param property reference property of the feature
+         * @return nodes of the features referenced through the property, in
+         * the order of the property's values
+         */
+        public List<FeatureNode> getReferences(String property) {
+            List<FeatureNode> out = new ArrayList<>();
+            for (String referencedId : references.getOrDefault(property, Collections.emptyList())) {
+                FeatureNode node = nodes.get(referencedId);
+                if (node != null) {
+                    out.add(node);
+                }
+            }
+            return out;
+        }
+
+    }
+
+}
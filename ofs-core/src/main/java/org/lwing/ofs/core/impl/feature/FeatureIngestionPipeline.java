@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.exception.InternalKeywordException;
+import org.lwing.ofs.core.api.exception.VertexNotFoundException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
+import org.lwing.ofs.core.impl.feature.FeatureWriteAheadLog.LogRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous front end for feature writes. A write is acknowledged as soon
+ * as it is durably appended to a write ahead log, then a pool of workers
+ * applies the logged writes to the graph in batches through the
+ * FeatureRepository. This keeps a caller's latency independent of the graph's
+ * commit latency.
+ *
+ * Writes are partitioned across the workers by feature id, so the writes to a
+ * feature are applied in the order they were logged. The number of logged but
+ * not yet applied writes is bounded, submitting blocks while the bound is
+ * reached. When the pipeline is opened on a log which has unapplied writes,
+ * say after a crash, they are replayed before any new writes.
+ *
+ * Since a write is acknowledged before it is applied, a write which can never
+ * apply (ex. its properties do not match its model's schema) is counted &
+ * appended to a dead letter file next to the log rather than returned to the
+ * caller. A write which fails for any other reason, ex. the storage backend
+ * being unavailable, is retried with backoff & stays pending until it applies,
+ * so the log is never marked applied past it. A write the log fails to sync
+ * is reported to its caller & dropped from the log, after which submits fail
+ * until the pipeline is reopened.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureIngestionPipeline implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureIngestionPipeline.class);
+
+    private static final String DEAD_LETTER_EXT = ".dead";
+
+    // first wait before retrying a write which failed for a reason other than the write itself
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 10000;
+
+    private final FeatureRepository featureRepository;
+
+    private final FeatureWriteAheadLog log;
+
+    // writes which can never apply, one json write per line
+    private final Path deadLetterFile;
+
+    private final int batchSize;
+
+    // one queue per worker
+    private final List<BlockingQueue<PendingWrite>> queues;
+
+    private final List<Thread> workers;
+
+    // bounds the writes logged but not yet applied
+    private final Semaphore pendingPermits;
+
+    // offset -> offset after, of every logged write not yet applied
+    private final TreeMap<Long, Long> pendingOffsets;
+
+    private final AtomicLong failedWrites;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens the pipeline, replaying any writes in the log which were not
+     * applied
+     *
+     * @param featureRepository repository to apply the writes with
+     * @param logFile file of the write ahead log
+     * @param workerCount number of workers applying writes
+     * @param maxPendingWrites max writes logged but not yet applied before
+     * submitting blocks
+     * @param batchSize max writes a worker commits in one transaction
+     * @throws IOException if the write ahead log fails to open
+     * @throws InterruptedException if interrupted while queueing replayed
+     * writes
+     */
+    public FeatureIngestionPipeline(FeatureRepository featureRepository, Path logFile, int workerCount,
+            int maxPendingWrites, int batchSize) throws IOException, InterruptedException {
+        if (workerCount < 1 || maxPendingWrites < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Worker count, max pending writes & batch size must be at least 1");
+        }
+        this.featureRepository = featureRepository;
+        this.log = new FeatureWriteAheadLog(logFile);
+        this.deadLetterFile = logFile.resolveSibling(logFile.getFileName() + DEAD_LETTER_EXT);
+        this.batchSize = batchSize;
+        this.pendingPermits = new Semaphore(maxPendingWrites);
+        this.pendingOffsets = new TreeMap<>();
+        this.failedWrites = new AtomicLong();
+        this.queues = new ArrayList<>();
+        this.workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+            Thread worker = new Thread(() -> runWorker(queue), "ofs-feature-ingest-" + i);
+            worker.setDaemon(true);
+            queues.add(queue);
+            workers.add(worker);
+            worker.start();
+        }
+        replay();
+    }
+
+    /**
+     * Logs the creation of a feature, the feature is created asynchronously
+     *
+     * @param feature feature to create
+     * @return id of the feature, generated if the feature has none
+     * @throws IOException if the write could not be logged
+     * @throws InterruptedException if interrupted while waiting for room for
+     * the write
+     */
+    public String submitFeature(Feature feature) throws IOException, InterruptedException {
+        // ids are assigned up front so a replayed create can tell if it was applied
+        String featureId = feature.getId() != null ? feature.getId() : UUID.randomUUID().toString().replace("-", "");
+        submit(FeatureWrite.create(new Feature(featureId, feature.getModelId(), feature.getProperties())));
+        return featureId;
+    }
+
+    /**
+     * Logs an update of a feature, the feature is updated asynchronously
+     *
+     * @param featureId identifier of the feature to update
+     * @param updateProperties properties to apply on the feature
+     * @throws IOException if the write could not be logged
+     * @throws InterruptedException if interrupted while waiting for room for
+     * the write
+     */
+    public void submitUpdate(String featureId, List<Property> updateProperties) throws IOException, InterruptedException {
+        submit(FeatureWrite.update(featureId, updateProperties));
+    }
+
+    /**
+     * Waits for every write logged so far to be applied
+     *
+     * @param timeoutMillis max time to wait
+     * @return true if every write was applied, false if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitApplied(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (pendingOffsets) {
+            while (!pendingOffsets.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                pendingOffsets.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return number of logged writes which could never apply & were dead
+     * lettered
+     */
+    public long getFailedWriteCount() {
+        return failedWrites.get();
+    }
+
+    /**
+     * @return file the writes which could never apply are appended to
+     */
+    public Path getDeadLetterFile() {
+        return deadLetterFile;
+    }
+
+    /**
+     * Stops accepting writes, applies the writes already logged & closes the
+     * log.
+     *
+     * @throws IOException if the log fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    private void submit(FeatureWrite write) throws IOException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Feature ingestion pipeline is closed");
+        }
+        pendingPermits.acquire();
+        LogRecord record;
+        try {
+            // registered as pending with the append, so the applied offset can't pass it before it's synced
+            synchronized (pendingOffsets) {
+                long offset = log.append(write);
+                record = new LogRecord(offset, log.getEndOffset(), write);
+                pendingOffsets.put(record.getOffset(), record.getNextOffset());
+            }
+        } catch (IOException | RuntimeException ex) {
+            pendingPermits.release();
+            throw ex;
+        }
+        try {
+            // synced outside the monitor, so concurrent submits share one sync
+            log.sync(record.getNextOffset());
+        } catch (IOException | RuntimeException ex) {
+            // not acknowledged, so it's dropped rather than applied
+            synchronized (pendingOffsets) {
+                pendingOffsets.remove(record.getOffset());
+                pendingOffsets.notifyAll();
+            }
+            pendingPermits.release();
+            throw ex;
+        }
+        enqueue(new PendingWrite(record, false));
+    }
+
+    private void replay() throws IOException, InterruptedException {
+        List<LogRecord> records = log.readFrom(log.readAppliedOffset());
+        if (records.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Replaying {} feature writes which were not applied", records.size());
+        for (LogRecord record : records) {
+            pendingPermits.acquire();
+            synchronized (pendingOffsets) {
+                pendingOffsets.put(record.getOffset(), record.getNextOffset());
+            }
+            enqueue(new PendingWrite(record, true));
+        }
+    }
+
+    private void enqueue(PendingWrite pending) {
+        int worker = Math.floorMod(pending.record.getWrite().getFeatureId().hashCode(), queues.size());
+        queues.get(worker).add(pending);
+    }
+
+    private void runWorker(BlockingQueue<PendingWrite> queue) {
+        List<PendingWrite> batch = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (!applyBatch(batch)) {
+                    // later writes to the same feature can't be applied ahead of the unapplied one
+                    return;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            // unapplied writes stay in the log & are replayed on the next open
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return false if the pipeline closed before every write of the batch
+     * could be applied, the unapplied writes stay pending in the log
+     */
+    private boolean applyBatch(List<PendingWrite> batch) throws InterruptedException {
+        List<FeatureWrite> writes = new ArrayList<>();
+        for (PendingWrite pending : batch) {
+            writes.add(pending.resolveWrite());
+        }
+        try {
+            featureRepository.writeFeatures(writes);
+            markApplied(batch);
+            return true;
+        } catch (Exception ex) {
+            if (batch.size() > 1) {
+                LOGGER.debug("Failed to apply batch of {} feature writes, applying them one at a time", batch.size(), ex);
+            }
+        }
+        List<PendingWrite> applied = new ArrayList<>();
+        try {
+            for (PendingWrite pending : batch) {
+                if (!applyWithRetry(pending)) {
+                    return false;
+                }
+                applied.add(pending);
+            }
+            return true;
+        } finally {
+            markApplied(applied);
+        }
+    }
+
+    /**
+     * Applies a single write, retrying with backoff until it applies or is
+     * found to never be able to apply
+     *
+     * @return false if the pipeline closed before the write could be applied
+     */
+    private boolean applyWithRetry(PendingWrite pending) throws InterruptedException {
+        String featureId = pending.record.getWrite().getFeatureId();
+        long backoff = RETRY_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                featureRepository.writeFeatures(Arrays.asList(pending.resolveWrite()));
+                return true;
+            } catch (GraphIntegrityException | VertexNotFoundException | InternalKeywordException | IllegalArgumentException ex) {
+                // the write itself is bad, retrying won't help
+                deadLetter(pending, ex);
+                return true;
+            } catch (Exception ex) {
+                if (closed) {
+                    LOGGER.warn("Closed before the logged write to feature {} applied, it's replayed on the next open", featureId, ex);
+                    return false;
+                }
+                LOGGER.warn("Failed to apply logged write to feature {}, retrying in {}ms", featureId, backoff, ex);
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private synchronized void deadLetter(PendingWrite pending, Exception cause) {
+        failedWrites.incrementAndGet();
+        FeatureWrite write = pending.record.getWrite();
+        LOGGER.error("Logged write to feature {} can't be applied, moving it to {}", write.getFeatureId(), deadLetterFile, cause);
+        try {
+            String line = MappingUtil.turnObjToJsonString(write) + System.lineSeparator();
+            Files.writeString(deadLetterFile, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to dead letter the write to feature {}", write.getFeatureId(), ex);
+        }
+    }
+
+    private void markApplied(List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        synchronized (pendingOffsets) {
+            for (PendingWrite pending : batch) {
+                pendingOffsets.remove(pending.record.getOffset());
+            }
+            long appliedOffset = pendingOffsets.isEmpty() ? log.getEndOffset() : pendingOffsets.firstKey();
+            try {
+                log.storeAppliedOffset(appliedOffset);
+            } catch (IOException ex) {
+                // the writes are replayed on the next open, which is safe since replays are idempotent
+                LOGGER.warn("Failed to store applied offset {}", appliedOffset, ex);
+            }
+            pendingOffsets.notifyAll();
+        }
+        pendingPermits.release(batch.size());
+    }
+
+    private class PendingWrite {
+
+        private final LogRecord record;
+
+        // true if the write was read back from the log when the pipeline opened
+        private final boolean replayed;
+
+        public PendingWrite(LogRecord record, boolean replayed) {
+            this.record = record;
+            this.replayed = replayed;
+        }
+
+        /**
+         * A replayed create may have been applied before the crash, in which
+         * case it's applied as an update so the replay is idempotent
+         */
+        public FeatureWrite resolveWrite() {
+            FeatureWrite write = record.getWrite();
+            if (replayed && write.getChangeType() == ChangeType.CREATE) {
+                try {
+                    if (featureRepository.vertexExists(write.getFeatureId())) {
+                        return FeatureWrite.update(write.getFeatureId(), write.getProperties());
+                    }
+                } catch (Exception ex) {
+                    LOGGER.warn("Failed to check if feature {} exists, replaying it as a create", write.getFeatureId(), ex);
+                }
+            }
+            return write;
+        }
+
+    }
+
+}
@@ -7,29 +7,75 @@ package org.lwing.ofs.core.impl.feature;
 import org.lwing.ofs.core.api.feature.Feature;
 import org.lwing.ofs.core.api.config.OFSConfiguration;
 import static org.lwing.ofs.core.api.config.OFSConfiguration.INTERNAL_FIELD_PREFIX;
+import org.lwing.ofs.core.api.JGMgntProvider;
+import org.lwing.ofs.core.api.MappingUtil;
 import org.lwing.ofs.core.api.VertexType;
 import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.exception.GraphSearchException;
+import org.lwing.ofs.core.api.exception.MissingIndexException;
 import org.lwing.ofs.core.api.exception.VertexNotFoundException;
 import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
 import org.lwing.ofs.core.api.property.Property;
 import org.lwing.ofs.core.api.schema.Schema;
+import org.lwing.ofs.core.api.search.GraphSearch;
 import org.lwing.ofs.core.impl.OFSRepository;
+import org.lwing.ofs.core.impl.feature.FeatureStreamWriter.StreamFormat;
 import org.lwing.ofs.core.impl.PropertyUtil;
 import org.lwing.ofs.core.impl.SchemaVertexRepository;
 import org.lwing.ofs.core.impl.lock.CloseableResourceLock;
 import org.lwing.ofs.core.impl.model.ModelRepository;
 import org.lwing.ofs.core.impl.model.RepoModel;
 import org.lwing.ofs.core.impl.property.PropertyRepository;
+import org.lwing.ofs.core.impl.schema.SchemaRepository;
+import org.lwing.ofs.core.impl.statistics.StatisticsRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.apache.tinkerpop.gremlin.process.traversal.Order;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
 import static org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__.V;
+import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Transaction;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
 import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphIndexQuery;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.attribute.Geo;
+import org.janusgraph.core.attribute.Geoshape;
+import org.janusgraph.core.schema.JanusGraphIndex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.Mapping;
+import org.janusgraph.core.schema.Parameter;
+import org.janusgraph.graphdb.types.ParameterType;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.shape.Point;
+import org.locationtech.spatial4j.shape.Shape;
+import org.locationtech.spatial4j.shape.SpatialRelation;
 import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
 
 /**
  *
@@ -39,11 +85,29 @@ public class FeatureRepository extends SchemaVertexRepository<Feature> {
 
     private final ModelRepository modelRepo;
 
+    private final FeatureSpatialIndex spatialIndex;
+
+    private final FeatureBitmapIndex bitmapIndex;
+
+    private final StatisticsRepository statisticsRepository;
+
     public static final String INHERITS_FROM_PROP = INTERNAL_FIELD_PREFIX + "inheritsFrom";
 
-    public FeatureRepository(JanusGraph graph, OFSConfiguration config, ModelRepository modelRepo, PropertyRepository propertyRepository) {
+    private static final double INITIAL_NEAREST_RADIUS_KM = 10;
+
+    // about half the earth's circumference, a circle this size covers the globe
+    private static final double MAX_NEAREST_RADIUS_KM = 20000;
+
+    // max features read in one traversal when hydrating spatial index results
+    private static final int HYDRATE_BATCH_SIZE = 500;
+
+    public FeatureRepository(JanusGraph graph, OFSConfiguration config, ModelRepository modelRepo, PropertyRepository propertyRepository,
+            StatisticsRepository statisticsRepository) {
         super(VertexType.FEATURE, graph, propertyRepository, config);
         this.modelRepo = modelRepo;
+        this.statisticsRepository = statisticsRepository;
+        this.spatialIndex = new FeatureSpatialIndex(config.getSpatialIndexProperties(), config.getSpatialIndexCellDegrees());
+        this.bitmapIndex = new FeatureBitmapIndex(config.getBitmapIndexProperties());
     }
 
     /**
@@ -57,16 +121,7 @@ public class FeatureRepository extends SchemaVertexRepository<Feature> {
      * @throws Exception generic JanusGraph exception
      */
     public String addFeature(Feature feature) throws GraphIntegrityException, Exception {
-        try ( GraphTraversalSource g = getTraversalSource()) {
-            try ( Transaction tx = g.tx()) {
-                String featureId = (String) addVertex(g, feature.getId()).next().id();
-                try ( CloseableResourceLock lock = acquireLock(feature)) {
-                    applyFeatureAttributes(g, feature.getModelId(), featureId, feature.getProperties());
-                    tx.commit();
-                }
-                return featureId;
-            }
-        }
+        return writeFeatures(Arrays.asList(FeatureWrite.create(feature))).get(0);
     }
 
     /**
@@ -78,13 +133,61 @@ public class FeatureRepository extends SchemaVertexRepository<Feature> {
      * @throws Exception generic JanusGraph exception
      */
     public void updateFeature(String featureId, List<Property> updateProperties) throws Exception {
+        writeFeatures(Arrays.asList(FeatureWrite.update(featureId, updateProperties)));
+    }
+
+    /**
+     * Applies feature creates & updates in a single transaction, so the
+     * writes share one commit. Either all of the writes are committed or none
+     * are.
+     *
+     * @param writes creates & updates to apply, in order
+     * @return ids of the written features, in the order of the writes
+     * @throws GraphIntegrityException if a feature's properties do not match
+     * the schema associated with its Model
+     * @throws VertexNotFoundException if an updated feature does not exist
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<String> writeFeatures(List<FeatureWrite> writes) throws GraphIntegrityException, VertexNotFoundException, Exception {
         try ( GraphTraversalSource g = getTraversalSource()) {
             try ( Transaction tx = g.tx()) {
-                Feature currFeature = readFeature(featureId);
-                try ( CloseableResourceLock lock = acquireLock(currFeature)) {
-                    updateFeature(currFeature.getId(), currFeature.getModelId(), updateProperties, g);
+                // resolve the id & model of every write so they can all be locked at once
+                List<Feature> features = new ArrayList<>();
+                List<Feature> lockFeatures = new ArrayList<>();
+                for (FeatureWrite write : writes) {
+                    if (write.getChangeType() == ChangeType.CREATE) {
+                        String featureId = (String) addVertex(g, write.getFeatureId()).next().id();
+                        features.add(new Feature(featureId, write.getModelId(), write.getProperties()));
+                        lockFeatures.add(new Feature(write.getFeatureId(), write.getModelId(), write.getProperties()));
+                    } else {
+                        Feature currFeature = readFeature(write.getFeatureId(), g, PropertyUtil.EMPTY_SELECT);
+                        features.add(new Feature(currFeature.getId(), currFeature.getModelId(), write.getProperties()));
+                        lockFeatures.add(currFeature);
+                    }
+                }
+                List<String> featureIds = new ArrayList<>();
+                List<WrittenFeature> writtenFeatures = new ArrayList<>();
+                try ( CloseableResourceLock lock = acquireLock(lockFeatures)) {
+                    for (int i = 0; i < writes.size(); i++) {
+                        Feature feature = features.get(i);
+                        ChangeType changeType = writes.get(i).getChangeType();
+                        List<String> oldModelIds;
+                        if (changeType == ChangeType.CREATE) {
+                            oldModelIds = Collections.emptyList();
+                            applyFeatureAttributes(g, feature.getModelId(), feature.getId(), feature.getProperties());
+                        } else {
+                            oldModelIds = StatisticsRepository.readModelIds(g.V(feature.getId()).next());
+                            updateFeature(feature.getId(), feature.getModelId(), feature.getProperties(), g);
+                        }
+                        recordChange(changeType, OFSType.FEATURE, feature.getId());
+                        featureIds.add(feature.getId());
+                        writtenFeatures.add(new WrittenFeature(feature.getId(), oldModelIds, g.V(feature.getId()).next()));
+                    }
                     tx.commit();
+                    // recorded under the lock so the indices see writes in commit order
+                    writtenFeatures.forEach(this::recordWritten);
                 }
+                return featureIds;
             }
         }
     }
@@ -142,6 +245,813 @@ public class FeatureRepository extends SchemaVertexRepository<Feature> {
         return new RepoFeature(readVertexFromGraph(id, g), select, g);
     }
 
+    /**
+     * Finds the features referencing the input feature through a reference
+     * property. The reference edges are looked up through the vertex centric
+     * index on the property name, so only the edges of that property are read
+     * no matter how many other references the feature has.
+     *
+     * @param featureId id of the referenced feature
+     * @param propertyName reference property the referrers hold the feature in
+     * @return ids of the referencing features, each listed once
+     * @throws VertexNotFoundException if the feature does not exist
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<String> findReferrers(String featureId, String propertyName) throws VertexNotFoundException, Exception {
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            return findReferrerVertices(featureId, propertyName, g).id().toStream()
+                    .map(String.class::cast).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Finds the features referencing the input feature through a reference
+     * property
+     *
+     * @param featureId id of the referenced feature
+     * @param propertyName reference property the referrers hold the feature in
+     * @param select optional set of fields to return on the features, empty
+     * optional means all fields
+     * @return referencing features, each listed once
+     * @throws VertexNotFoundException if the feature does not exist
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> findReferrers(String featureId, String propertyName, Optional<Set<String>> select)
+            throws VertexNotFoundException, Exception {
+        List<Feature> out = new ArrayList<>();
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            findReferrerVertices(featureId, propertyName, g).forEachRemaining(v -> out.add(new RepoFeature(v, select, g)));
+        }
+        return out;
+    }
+
+    private GraphTraversal<Vertex, Vertex> findReferrerVertices(String featureId, String propertyName, GraphTraversalSource g)
+            throws VertexNotFoundException, Exception {
+        Vertex feature = readVertexFromGraph(featureId, g);
+        // models & views hold references through the same edge, a list property may hold the feature more than once
+        return g.V(feature).inE(REF_PROP_EDGE).has(SchemaRepository.REF_PROP_NAME_EDGE_PROP, propertyName).outV()
+                .has(OFSRepository.NODE_TYPE_FIELD, vertexType.name()).dedup();
+    }
+
+    /**
+     * Reads a feature together with the features it references, resolved
+     * through its reference properties down to the input depth
+     *
+     * @param id identifier of the Feature to read
+     * @param depth number of reference hops to resolve, 0 reads only the
+     * feature
+     * @return graph of the read features
+     * @throws VertexNotFoundException if the feature does not exist
+     * @throws Exception generic JanusGraph exception
+     */
+    public FeatureGraph readFeatureGraph(String id, int depth) throws VertexNotFoundException, Exception {
+        return readFeatureGraph(id, depth, Collections.emptyList());
+    }
+
+    /**
+     * Reads a feature together with the features it references, resolved
+     * through its reference properties down to the input depth. Features are
+     * read level by level, a level costing a couple of batched traversals no
+     * matter how many references it holds. A feature referenced more than
+     * once is read once, at the shallowest level it is referenced from.
+     *
+     * @param id identifier of the Feature to read
+     * @param depth number of reference hops to resolve, 0 reads only the
+     * feature
+     * @param perLevelSelect optional set of fields to read per level, starting
+     * with the feature itself. only selected reference properties are
+     * followed, levels past the end of the list read all fields.
+     * @return graph of the read features
+     * @throws VertexNotFoundException if the feature does not exist
+     * @throws Exception generic JanusGraph exception
+     */
+    public FeatureGraph readFeatureGraph(String id, int depth, List<Optional<Set<String>>> perLevelSelect)
+            throws VertexNotFoundException, Exception {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Feature graph depth must not be negative");
+        }
+        FeatureGraph featureGraph = new FeatureGraph(id);
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            // every id queued so far, so shared references are only read once
+            Set<String> queued = new HashSet<>(Arrays.asList(id));
+            List<String> level = Arrays.asList(id);
+            for (int i = 0; i <= depth && !level.isEmpty(); i++) {
+                Optional<Set<String>> select = i < perLevelSelect.size() ? perLevelSelect.get(i) : PropertyUtil.ALL_SELECT;
+                boolean resolveReferences = i < depth;
+                List<String> nextLevel = new ArrayList<>();
+                for (int j = 0; j < level.size(); j += HYDRATE_BATCH_SIZE) {
+                    List<String> batch = level.subList(j, Math.min(j + HYDRATE_BATCH_SIZE, level.size()));
+                    for (String referencedId : readFeatureGraphBatch(batch, select, resolveReferences, featureGraph, g)) {
+                        if (queued.add(referencedId)) {
+                            nextLevel.add(referencedId);
+                        }
+                    }
+                }
+                level = nextLevel;
+            }
+        }
+        if (!featureGraph.contains(id)) {
+            throw new VertexNotFoundException(id);
+        }
+        return featureGraph;
+    }
+
+    /**
+     * Reads a batch of features into the graph with one traversal for the
+     * vertices & one for all of their reference edges
+     *
+     * @return ids of the features referenced by the batch if references are
+     * resolved, otherwise empty
+     */
+    private List<String> readFeatureGraphBatch(List<String> batch, Optional<Set<String>> select, boolean resolveReferences,
+            FeatureGraph featureGraph, GraphTraversalSource g) {
+        Map<String, Vertex> vertices = new LinkedHashMap<>();
+        Map<String, List<Property>> properties = new HashMap<>();
+        g.V(batch.toArray()).has(OFSRepository.NODE_TYPE_FIELD, vertexType.name()).forEachRemaining(v -> {
+            List<Property> props = new ArrayList<>();
+            PropertyUtil.addPrimitiveProperties(v, props, select);
+            vertices.put((String) v.id(), v);
+            properties.put((String) v.id(), props);
+        });
+        List<String[]> references = new ArrayList<>();
+        if (!vertices.isEmpty()) {
+            GraphTraversal<Vertex, Edge> edges = g.V(vertices.keySet().toArray()).outE(REF_PROP_EDGE);
+            if (select.isPresent()) {
+                edges.has(SchemaRepository.REF_PROP_NAME_EDGE_PROP, P.within(select.get()));
+            }
+            edges.project("from", "name", "to")
+                    .by(__.outV().id())
+                    .by(SchemaRepository.REF_PROP_NAME_EDGE_PROP)
+                    .by(__.inV().id())
+                    .forEachRemaining(edge -> {
+                        String from = (String) edge.get("from");
+                        String name = (String) edge.get("name");
+                        String to = (String) edge.get("to");
+                        properties.get(from).add(new Property(name, to));
+                        references.add(new String[]{from, name, to});
+                    });
+        }
+        vertices.forEach((featureId, v) -> featureGraph.addFeature(new RepoFeature(v, properties.get(featureId))));
+        List<String> out = new ArrayList<>();
+        if (resolveReferences) {
+            for (String[] reference : references) {
+                featureGraph.addReference(reference[0], reference[1], reference[2]);
+                out.add(reference[2]);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Executes a search & writes the resulting features to the output as they
+     * are read, serializing straight from the vertices instead of building
+     * Feature objects, so large result sets can be exported without holding
+     * them in memory.
+     *
+     * @param graphSearch search to be executed
+     * @param output stream the features are written to, left open
+     * @param format GeoJSON FeatureCollection or one GeoJSON feature per line
+     * @param geometryProperty Geoshape property written as each feature's
+     * geometry, null to write the features without geometries
+     * @param select optional set of properties to write, empty optional means
+     * all properties
+     * @return number of features written
+     * @throws GraphSearchException OFS related exceptions
+     * @throws Exception generic JanusGraph exception
+     */
+    public long writeSearch(GraphSearch graphSearch, OutputStream output, StreamFormat format, String geometryProperty,
+            Optional<Set<String>> select) throws GraphSearchException, Exception {
+        try ( JsonGenerator generator = MappingUtil.getWriter().getFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            FeatureStreamWriter writer = new FeatureStreamWriter(generator, format, geometryProperty, select);
+            writer.writeStart();
+            searchVertices(graphSearch, (results, g, rog) -> {
+                while (results.hasNext()) {
+                    writer.writeFeature(results.next(), rog);
+                }
+            });
+            writer.writeEnd();
+            return writer.getWrittenCount();
+        }
+    }
+
+    /**
+     * Searches for the features of a model whose Geoshape property lies
+     * within the given shape
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property Geoshape property to search on
+     * @param shape shape the property must lie within
+     * @param filters primitive properties the features must also have
+     * @return features within the shape
+     * @throws MissingIndexException if the property is not in an enabled
+     * mixed index
+     * @throws GraphIntegrityException if the property is not a Geoshape
+     * property
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchWithin(String modelId, String property, Geoshape shape, List<Property> filters)
+            throws MissingIndexException, GraphIntegrityException, Exception {
+        return searchWithin(modelId, property, shape, filters, PropertyUtil.ALL_SELECT);
+    }
+
+    /**
+     * Searches for the features of a model whose Geoshape property lies
+     * within the given shape
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property Geoshape property to search on
+     * @param shape shape the property must lie within
+     * @param filters primitive properties the features must also have
+     * @param select optional set of fields to return on the features, empty
+     * optional means all fields
+     * @return features within the shape
+     * @throws MissingIndexException if the property is not in an enabled
+     * mixed index
+     * @throws GraphIntegrityException if the property is not a Geoshape
+     * property
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchWithin(String modelId, String property, Geoshape shape, List<Property> filters,
+            Optional<Set<String>> select) throws MissingIndexException, GraphIntegrityException, Exception {
+        verifyGeoIndexed(property);
+        return search(g -> buildGeoSearch(g, modelId, property, Geo.geoWithin(shape), filters), select);
+    }
+
+    /**
+     * Searches for the k features of a model whose Geoshape property is
+     * nearest to the given point, nearest first. The distance to a feature is
+     * measured to the center of its shape.
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property Geoshape property to search on
+     * @param point point to measure distances from
+     * @param k max number of features to return
+     * @param filters primitive properties the features must also have
+     * @return up to k features, nearest first
+     * @throws MissingIndexException if the property is not in an enabled
+     * mixed index
+     * @throws GraphIntegrityException if the property is not a Geoshape
+     * property
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchNearest(String modelId, String property, Geoshape point, int k, List<Property> filters)
+            throws MissingIndexException, GraphIntegrityException, Exception {
+        return searchNearest(modelId, property, point, k, filters, PropertyUtil.ALL_SELECT);
+    }
+
+    /**
+     * Searches for the k features of a model whose Geoshape property is
+     * nearest to the given point, nearest first. The distance to a feature is
+     * measured to the center of its shape.
+     *
+     * The mixed index can't order by distance, so the search looks within a
+     * circle around the point which grows until it holds the k nearest
+     * features, then only those features are read.
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property Geoshape property to search on
+     * @param point point to measure distances from
+     * @param k max number of features to return, none are returned if less
+     * than 1
+     * @param filters primitive properties the features must also have
+     * @param select optional set of fields to return on the features, empty
+     * optional means all fields
+     * @return up to k features, nearest first
+     * @throws MissingIndexException if the property is not in an enabled
+     * mixed index
+     * @throws GraphIntegrityException if the property is not a Geoshape
+     * property
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchNearest(String modelId, String property, Geoshape point, int k, List<Property> filters,
+            Optional<Set<String>> select) throws MissingIndexException, GraphIntegrityException, Exception {
+        verifyGeoIndexed(property);
+        if (k < 1) {
+            return new ArrayList<>();
+        }
+        Point center = point.getShape().getCenter();
+        double radiusKm = INITIAL_NEAREST_RADIUS_KM;
+        List<NearestCandidate> candidates = new ArrayList<>();
+        while (true) {
+            Geoshape circle = Geoshape.circle(center.getY(), center.getX(), radiusKm);
+            candidates.clear();
+            searchVertices(g -> buildGeoSearch(g, modelId, property, Geo.geoIntersect(circle), filters), (results, g, rog) -> {
+                while (results.hasNext()) {
+                    Vertex v = results.next();
+                    candidates.add(new NearestCandidate((String) v.id(), calcDistanceKm(center, v, property)));
+                }
+            });
+            candidates.sort(Comparator.comparingDouble(c -> c.distanceKm));
+            // every feature nearer than the radius intersects the circle, so the k nearest are found once the kth is inside it
+            boolean foundK = candidates.size() >= k;
+            if ((foundK && candidates.get(k - 1).distanceKm <= radiusKm) || radiusKm >= MAX_NEAREST_RADIUS_KM) {
+                break;
+            }
+            radiusKm = Math.min(foundK ? candidates.get(k - 1).distanceKm : radiusKm * 4, MAX_NEAREST_RADIUS_KM);
+        }
+        List<Feature> out = new ArrayList<>();
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            for (NearestCandidate candidate : candidates.subList(0, Math.min(k, candidates.size()))) {
+                out.add(readFeature(candidate.featureId, g, select));
+            }
+        }
+        return out;
+    }
+
+    private GraphTraversal<Vertex, Vertex> buildGeoSearch(GraphTraversalSource g, String modelId, String property,
+            P<?> geoPredicate, List<Property> filters) {
+        GraphTraversal<Vertex, Vertex> traversal = g.V().has(property, geoPredicate).has(INHERITS_FROM_PROP, modelId);
+        for (Property filter : filters) {
+            traversal.has(filter.getName(), filter.getValue());
+        }
+        return traversal;
+    }
+
+    private static double calcDistanceKm(Point center, Vertex v, String property) {
+        double distanceKm = Double.MAX_VALUE;
+        Iterator<VertexProperty<Geoshape>> shapes = v.properties(property);
+        while (shapes.hasNext()) {
+            Point shapeCenter = shapes.next().value().getShape().getCenter();
+            double distanceDeg = Geoshape.HELPER.getContext().getDistCalc().distance(center, shapeCenter);
+            distanceKm = Math.min(distanceKm, distanceDeg * DistanceUtils.DEG_TO_KM);
+        }
+        return distanceKm;
+    }
+
+    /**
+     * Counts the features of a model per grid cell, over the features whose
+     * Geoshape property has its center within the bounds. Only the property
+     * values of the features are read, no Feature objects are built. If the
+     * property is in an enabled mixed index the bounds are applied by the
+     * index, otherwise every feature of the model is scanned.
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property Geoshape property to aggregate on
+     * @param bounds box to aggregate within, ex. the map's viewport
+     * @param cellDegrees width & height of a cell in degrees
+     * @param maxSampleIds max feature ids to keep per cell
+     * @return feature count, centroid & sample ids per cell
+     * @throws GraphIntegrityException if the property is not a Geoshape
+     * property
+     * @throws Exception generic JanusGraph exception
+     */
+    public GridAggregation aggregateGrid(String modelId, String property, Geoshape bounds, double cellDegrees, int maxSampleIds)
+            throws GraphIntegrityException, Exception {
+        verifyGeoProperty(property);
+        if (bounds.getType() != Geoshape.Type.BOX) {
+            throw new IllegalArgumentException("Grid aggregation bounds must be a box");
+        }
+        GridAggregation aggregation = new GridAggregation(cellDegrees, maxSampleIds);
+        Shape boundsShape = bounds.getShape();
+        GraphSearch graphSearch = isGeoIndexed(property)
+                ? g -> buildGeoSearch(g, modelId, property, Geo.geoIntersect(bounds), Collections.emptyList())
+                : g -> g.V().has(INHERITS_FROM_PROP, modelId);
+        searchVertices(graphSearch, (results, g, rog) -> {
+            Set<Long> countedCells = new HashSet<>();
+            while (results.hasNext()) {
+                Vertex v = results.next();
+                countedCells.clear();
+                Iterator<VertexProperty<Object>> shapes = v.properties(property);
+                while (shapes.hasNext()) {
+                    if (!(shapes.next().value() instanceof Geoshape shape)) {
+                        continue;
+                    }
+                    Point center = shape.getShape().getCenter();
+                    // a feature with many shapes in a cell is only counted once in it
+                    if (boundsShape.relate(center) != SpatialRelation.DISJOINT
+                            && countedCells.add(aggregation.calcCellKey(center.getY(), center.getX()))) {
+                        aggregation.add((String) v.id(), center.getY(), center.getX());
+                    }
+                }
+            }
+        });
+        return aggregation;
+    }
+
+    /**
+     * Counts the features of a search per model & per value of the faceted
+     * properties in one pass over the results. Only the model ids & faceted
+     * property values of the features are read, no Feature objects are built.
+     *
+     * @param base search to count the features of
+     * @param facetProperties primitive properties to count the values of
+     * @return feature counts per model & per faceted property value
+     * @throws GraphIntegrityException if a faceted property is not a
+     * primitive property
+     * @throws GraphSearchException OFS related exceptions
+     * @throws Exception generic JanusGraph exception
+     */
+    public FacetCounts facetCounts(GraphSearch base, Set<String> facetProperties)
+            throws GraphIntegrityException, GraphSearchException, Exception {
+        FacetCounts counts = new FacetCounts();
+        for (String property : facetProperties) {
+            if (!(popertyRepository.getProperty(property) instanceof PrimitivePropertyKey propKey)) {
+                throw new GraphIntegrityException("Property [%s] is not a primitive property", property);
+            }
+            counts.initFacet(property, propKey.getAllowableValues());
+        }
+        searchVertices(base, (results, g, rog) -> {
+            Set<Object> featureValues = new HashSet<>();
+            while (results.hasNext()) {
+                Vertex v = results.next();
+                counts.addFeature();
+                v.properties(INHERITS_FROM_PROP).forEachRemaining(p -> counts.addModel((String) p.value()));
+                for (String property : facetProperties) {
+                    // a feature with a value many times is only counted once for it
+                    featureValues.clear();
+                    v.properties(property).forEachRemaining(p -> {
+                        if (featureValues.add(p.value())) {
+                            counts.addValue(property, p.value());
+                        }
+                    });
+                }
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Aggregates a numeric property over the features of a search. Only the
+     * property values are read, no Feature objects are built.
+     *
+     * @param graphSearch search to aggregate the features of
+     * @param property numeric primitive property to aggregate
+     * @return sum, avg, min, max & percentiles of the property's values
+     * @throws GraphIntegrityException if the property is not a numeric
+     * primitive property
+     * @throws GraphSearchException OFS related exceptions
+     * @throws Exception generic JanusGraph exception
+     */
+    public NumericAggregation aggregateNumeric(GraphSearch graphSearch, String property)
+            throws GraphIntegrityException, GraphSearchException, Exception {
+        return aggregateNumeric(graphSearch, property, null);
+    }
+
+    /**
+     * Aggregates a numeric property over the features of a search, grouped by
+     * the model each feature is of
+     *
+     * @param graphSearch search to aggregate the features of
+     * @param property numeric primitive property to aggregate
+     * @return sum, avg, min, max & percentiles of the property's values, in
+     * total & per model id
+     * @throws GraphIntegrityException if the property is not a numeric
+     * primitive property
+     * @throws GraphSearchException OFS related exceptions
+     * @throws Exception generic JanusGraph exception
+     */
+    public NumericAggregation aggregateNumericByModel(GraphSearch graphSearch, String property)
+            throws GraphIntegrityException, GraphSearchException, Exception {
+        verifyNumericProperty(property);
+        return aggregateNumeric(graphSearch, property, OFSConfiguration.MODEL_ID, new NumericAggregation());
+    }
+
+    /**
+     * Aggregates a numeric property over the features of a search, grouped by
+     * the values of another property. Only the aggregated & grouped property
+     * values are read, no Feature objects are built.
+     *
+     * @param graphSearch search to aggregate the features of
+     * @param property numeric primitive property to aggregate
+     * @param groupProperty primitive property to group by, ex. an enumerated
+     * property. A feature is in a group for each of its values, features
+     * without a value are only in the total. Null to not group.
+     * @return sum, avg, min, max & percentiles of the property's values, in
+     * total & per group property value
+     * @throws GraphIntegrityException if the property is not a numeric
+     * primitive property or the group property is not a primitive property
+     * @throws GraphSearchException OFS related exceptions
+     * @throws Exception generic JanusGraph exception
+     */
+    public NumericAggregation aggregateNumeric(GraphSearch graphSearch, String property, String groupProperty)
+            throws GraphIntegrityException, GraphSearchException, Exception {
+        verifyNumericProperty(property);
+        if (groupProperty != null && !(popertyRepository.getProperty(groupProperty) instanceof PrimitivePropertyKey)) {
+            throw new GraphIntegrityException("Property [%s] is not a primitive property", groupProperty);
+        }
+        return aggregateNumeric(graphSearch, property, groupProperty, new NumericAggregation());
+    }
+
+    private NumericAggregation aggregateNumeric(GraphSearch graphSearch, String property, String groupProperty,
+            NumericAggregation aggregation) throws GraphSearchException, Exception {
+        searchVertices(graphSearch, (results, g, rog) -> {
+            List<Object> groups = new ArrayList<>();
+            while (results.hasNext()) {
+                Vertex v = results.next();
+                groups.clear();
+                if (groupProperty != null) {
+                    Iterator<Object> groupValues = v.values(groupProperty);
+                    while (groupValues.hasNext()) {
+                        Object group = groupValues.next();
+                        // a feature is only in a group once, however many times it has the value
+                        if (!groups.contains(group)) {
+                            groups.add(group);
+                        }
+                    }
+                }
+                Iterator<Object> values = v.values(property);
+                while (values.hasNext()) {
+                    Number value = (Number) values.next();
+                    aggregation.add(value);
+                    for (int i = 0; i < groups.size(); i++) {
+                        aggregation.add(groups.get(i), value);
+                    }
+                }
+            }
+        });
+        return aggregation;
+    }
+
+    private void verifyNumericProperty(String property) throws GraphIntegrityException, Exception {
+        if (!(popertyRepository.getProperty(property) instanceof PrimitivePropertyKey propKey)
+                || !Number.class.isAssignableFrom(propKey.getDataType())) {
+            throw new GraphIntegrityException("Property [%s] is not a numeric property", property);
+        }
+    }
+
+    /**
+     * Searches for the top k features of a model ordered by a property, ex.
+     * the latest 100 features by a date property. Features without the
+     * property are left out.
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property primitive property with comparable values to order by
+     * @param order ascending or descending
+     * @param k max number of features to return
+     * @param filters primitive properties the features must also have
+     * @return up to k features, in order
+     * @throws GraphIntegrityException if the property is not a primitive
+     * property with comparable values
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchOrdered(String modelId, String property, Order order, int k, List<Property> filters)
+            throws GraphIntegrityException, Exception {
+        return searchOrdered(modelId, property, order, k, filters, PropertyUtil.ALL_SELECT);
+    }
+
+    /**
+     * Searches for the top k features of a model ordered by a property, ex.
+     * the latest 100 features by a date property. Features without the
+     * property are left out.
+     *
+     * If the property is in an enabled mixed index which isn't text mapped the
+     * ordering & limit are pushed down to the index. Otherwise only the id &
+     * property values of each feature are streamed through a bounded heap, &
+     * just the top k features are read. A feature with many values is ordered
+     * by its smallest value ascending & its largest descending.
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property primitive property with comparable values to order by
+     * @param order ascending or descending
+     * @param k max number of features to return, none are returned if less
+     * than 1
+     * @param filters primitive properties the features must also have
+     * @param select optional set of fields to return on the features, empty
+     * optional means all fields
+     * @return up to k features, in order
+     * @throws GraphIntegrityException if the property is not a primitive
+     * property with comparable values
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchOrdered(String modelId, String property, Order order, int k, List<Property> filters,
+            Optional<Set<String>> select) throws GraphIntegrityException, Exception {
+        if (!(popertyRepository.getProperty(property) instanceof PrimitivePropertyKey propKey)
+                || !Comparable.class.isAssignableFrom(propKey.getDataType())) {
+            throw new GraphIntegrityException("Property [%s] is not a primitive property with comparable values", property);
+        }
+        if (k < 1) {
+            return new ArrayList<>();
+        }
+        boolean stringProperty = String.class.equals(propKey.getDataType());
+        Optional<String> orderIndex = findMixedIndex(property, params -> {
+            // text mapped values are tokenized so can't be ordered by, default maps Strings as text
+            Object mapping = ParameterType.MAPPING.findParameter(params, null);
+            return mapping == Mapping.STRING || (!stringProperty && (mapping == null || mapping == Mapping.DEFAULT));
+        });
+        if (orderIndex.isPresent()) {
+            return search(g -> buildOrderedSearch(g, modelId, property, filters).order().by(property, order).limit(k), select);
+        }
+        Comparator<OrderedCandidate> comparator = (a, b) -> {
+            int compared = a.compareTo(b);
+            return order == Order.desc ? -compared : compared;
+        };
+        // the head of the heap is the worst of the kept candidates
+        PriorityQueue<OrderedCandidate> heap = new PriorityQueue<>(k, comparator.reversed());
+        searchVertices(g -> buildOrderedSearch(g, modelId, property, filters), (results, g, rog) -> {
+            while (results.hasNext()) {
+                Vertex v = results.next();
+                OrderedCandidate candidate = null;
+                Iterator<Object> values = v.values(property);
+                while (values.hasNext()) {
+                    OrderedCandidate valueCandidate = new OrderedCandidate((String) v.id(), values.next());
+                    if (candidate == null || comparator.compare(valueCandidate, candidate) < 0) {
+                        candidate = valueCandidate;
+                    }
+                }
+                if (candidate == null) {
+                    continue;
+                }
+                if (heap.size() < k) {
+                    heap.add(candidate);
+                } else if (comparator.compare(candidate, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            }
+        });
+        List<OrderedCandidate> topK = new ArrayList<>(heap);
+        topK.sort(comparator);
+        List<Feature> out = new ArrayList<>(topK.size());
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            for (OrderedCandidate candidate : topK) {
+                out.add(readFeature(candidate.featureId, g, select));
+            }
+        }
+        return out;
+    }
+
+    private GraphTraversal<Vertex, Vertex> buildOrderedSearch(GraphTraversalSource g, String modelId, String property, List<Property> filters) {
+        GraphTraversal<Vertex, Vertex> traversal = g.V().has(INHERITS_FROM_PROP, modelId).has(property);
+        for (Property filter : filters) {
+            traversal.has(filter.getName(), filter.getValue());
+        }
+        return traversal;
+    }
+
+    /**
+     * Full text search of a model's features on a String property, ordered
+     * by the index backend's relevance score. The query is treated as plain
+     * terms, any query syntax in it is escaped.
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property String property to search
+     * @param query terms to search for
+     * @param limit max features to return
+     * @return up to limit features, most relevant first
+     * @throws MissingIndexException if no enabled text mapped mixed index
+     * covers the property
+     * @throws GraphIntegrityException if the property is not a String
+     * property
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchText(String modelId, String property, String query, int limit)
+            throws MissingIndexException, GraphIntegrityException, Exception {
+        return searchText(modelId, property, query, limit, PropertyUtil.ALL_SELECT);
+    }
+
+    /**
+     * Full text search of a model's features on a String property, ordered
+     * by the index backend's relevance score. The query is treated as plain
+     * terms, any query syntax in it is escaped.
+     *
+     * @param modelId model the features are of, features of models inheriting
+     * from it are included
+     * @param property String property to search
+     * @param query terms to search for
+     * @param limit max features to return
+     * @param select optional set of fields to return on the features, empty
+     * optional means all fields
+     * @return up to limit features, most relevant first
+     * @throws MissingIndexException if no enabled text mapped mixed index
+     * covers the property
+     * @throws GraphIntegrityException if the property is not a String
+     * property
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchText(String modelId, String property, String query, int limit, Optional<Set<String>> select)
+            throws MissingIndexException, GraphIntegrityException, Exception {
+        if (!(popertyRepository.getProperty(property) instanceof PrimitivePropertyKey propKey)
+                || !String.class.equals(propKey.getDataType())) {
+            throw new GraphIntegrityException("Property [%s] is not a String property", property);
+        }
+        // strings are text mapped by default, a STRING mapping only supports exact matches
+        String indexName = findMixedIndex(property, params -> {
+            Object mapping = ParameterType.MAPPING.findParameter(params, null);
+            return mapping == null || mapping == Mapping.DEFAULT || mapping == Mapping.TEXT || mapping == Mapping.TEXTSTRING;
+        }).orElseThrow(() -> new MissingIndexException("Property [%s] is not in an enabled text mapped mixed index of [%s]",
+                property, config.getMixedIndexName()));
+        String terms = escapeTextQuery(query);
+        List<Feature> out = new ArrayList<>();
+        if (terms.isBlank() || limit < 1) {
+            return out;
+        }
+        String indexQuery = "v.\"" + property + "\":(" + terms + ")";
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            // results of other models are skipped, so page through the index until the limit is filled
+            int offset = 0;
+            while (out.size() < limit) {
+                List<JanusGraphIndexQuery.Result<JanusGraphVertex>> page = graph.indexQuery(indexName, indexQuery)
+                        .offset(offset).limit(limit).vertexStream().collect(Collectors.toList());
+                for (JanusGraphIndexQuery.Result<JanusGraphVertex> result : page) {
+                    Vertex v = result.getElement();
+                    if (out.size() < limit && isFeatureOfModel(v, modelId)) {
+                        out.add(new RepoFeature(v, select, g));
+                    }
+                }
+                if (page.size() < limit) {
+                    break;
+                }
+                offset += page.size();
+            }
+        }
+        return out;
+    }
+
+    private boolean isFeatureOfModel(Vertex v, String modelId) {
+        if (!v.property(OFSRepository.NODE_TYPE_FIELD).orElse("").equals(vertexType.name())) {
+            return false;
+        }
+        Iterator<VertexProperty<Object>> modelIds = v.properties(INHERITS_FROM_PROP);
+        while (modelIds.hasNext()) {
+            if (modelId.equals(modelIds.next().value())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Escapes the query syntax of the index backends (Lucene & Elasticsearch
+     * query strings) so user input is only ever matched as terms
+     */
+    private static String escapeTextQuery(String query) {
+        StringBuilder out = new StringBuilder(query.length());
+        for (String token : query.trim().split("\\s+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (out.length() > 0) {
+                out.append(' ');
+            }
+            // lower case so AND, OR & NOT aren't read as operators
+            for (char c : token.toLowerCase().toCharArray()) {
+                if ("+-&|!(){}[]^\"~*?:\\/".indexOf(c) >= 0) {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private void verifyGeoIndexed(String property) throws MissingIndexException, GraphIntegrityException, Exception {
+        verifyGeoProperty(property);
+        if (!isGeoIndexed(property)) {
+            throw new MissingIndexException("Property [%s] is not in an enabled mixed index of [%s]", property, config.getMixedIndexName());
+        }
+    }
+
+    private void verifyGeoProperty(String property) throws GraphIntegrityException, Exception {
+        if (!(popertyRepository.getProperty(property) instanceof PrimitivePropertyKey propKey)
+                || !Geoshape.class.equals(propKey.getDataType())) {
+            throw new GraphIntegrityException("Property [%s] is not a Geoshape property", property);
+        }
+    }
+
+    /**
+     * Geo predicates are only supported by mixed indices, so checks if the
+     * property is in an enabled mixed index of the configured index backend
+     */
+    private boolean isGeoIndexed(String property) {
+        return findMixedIndex(property, params -> true).isPresent();
+    }
+
+    /**
+     * Finds an enabled mixed index of the configured index backend covering
+     * the property
+     *
+     * @param property property the index must cover
+     * @param paramFilter filter on the parameters the index has for the
+     * property
+     * @return name of the index, empty if none cover the property
+     */
+    private Optional<String> findMixedIndex(String property, Predicate<Parameter[]> paramFilter) {
+        try ( JGMgntProvider management = useManagement()) {
+            JanusGraphManagement mgmt = management.getMgnt();
+            for (JanusGraphIndex index : mgmt.getGraphIndexes(Vertex.class)) {
+                if (!index.isMixedIndex() || !index.getBackingIndex().equals(config.getMixedIndexName())) {
+                    continue;
+                }
+                for (PropertyKey key : index.getFieldKeys()) {
+                    if (key.name().equals(property) && index.getIndexStatus(key) == SchemaStatus.ENABLED
+                            && paramFilter.test(index.getParametersFor(key))) {
+                        return Optional.of(index.name());
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
     /**
      * Deletes the feature associated to the input featureId in the Graph
      *
@@ -150,7 +1060,178 @@ public class FeatureRepository extends SchemaVertexRepository<Feature> {
      * @throws Exception generic JanusGraph exception
      */
     public void deleteFeature(String featureId) throws GraphIntegrityException, Exception {
+        List<String> modelIds;
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            modelIds = g.V(featureId).tryNext().map(StatisticsRepository::readModelIds).orElse(Collections.emptyList());
+        }
+        recordChange(ChangeType.DELETE, OFSType.FEATURE, featureId);
         deleteVertex(featureId, OFSType.FEATURE);
+        spatialIndex.remove(featureId);
+        bitmapIndex.remove(featureId);
+        statisticsRepository.recordDelete(featureId, modelIds);
+    }
+
+    /**
+     * Searches the in memory spatial index for the features whose indexed
+     * Geoshape property intersects the given shape. Shapes other than points
+     * are matched by their bounding box. The index is built from the graph on
+     * first use.
+     *
+     * @param property Geoshape property configured for the spatial index
+     * @param shape shape to search within, ex. a box for a viewport or a
+     * circle for a radius
+     * @return ids of the matching features
+     * @throws MissingIndexException if the property is not in the spatial
+     * index
+     * @throws Exception generic JanusGraph exception
+     */
+    public Set<String> searchSpatialIndexIds(String property, Geoshape shape) throws MissingIndexException, Exception {
+        if (!spatialIndex.isIndexed(property)) {
+            throw new MissingIndexException("Property [%s] is not in the spatial index", property);
+        }
+        spatialIndex.ensureBuilt(consumer -> loadIndexedValues(spatialIndex.getProperties(), consumer));
+        return spatialIndex.search(property, shape);
+    }
+
+    /**
+     * Searches the in memory spatial index for the features whose indexed
+     * Geoshape property intersects the given shape, reading the matching
+     * features in batches
+     *
+     * @param property Geoshape property configured for the spatial index
+     * @param shape shape to search within, ex. a box for a viewport or a
+     * circle for a radius
+     * @param select optional set of fields to return on the features, empty
+     * optional means all fields
+     * @return matching features
+     * @throws MissingIndexException if the property is not in the spatial
+     * index
+     * @throws Exception generic JanusGraph exception
+     */
+    public List<Feature> searchSpatialIndex(String property, Geoshape shape, Optional<Set<String>> select) throws MissingIndexException, Exception {
+        List<String> featureIds = new ArrayList<>(searchSpatialIndexIds(property, shape));
+        List<Feature> out = new ArrayList<>(featureIds.size());
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            for (int i = 0; i < featureIds.size(); i += HYDRATE_BATCH_SIZE) {
+                Object[] batch = featureIds.subList(i, Math.min(i + HYDRATE_BATCH_SIZE, featureIds.size())).toArray();
+                g.V(batch).forEachRemaining(v -> out.add(new RepoFeature(v, select, g)));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Rebuilds the in memory spatial index from the graph, ex. after features
+     * were written by another OpenFeatureStore instance
+     *
+     * @throws Exception generic JanusGraph exception
+     */
+    public void rebuildSpatialIndex() throws Exception {
+        spatialIndex.rebuild(consumer -> loadIndexedValues(spatialIndex.getProperties(), consumer));
+    }
+
+    /**
+     * Searches the in memory bitmap index for the features matching the
+     * filters on enumerated properties, without touching the graph. The index
+     * is built from the graph on first use.
+     *
+     * @param filters property -> values, a feature matches if it has any of
+     * the values of every filtered property
+     * @return ids of the matching features
+     * @throws MissingIndexException if a filtered property is not in the
+     * bitmap index
+     * @throws Exception generic JanusGraph exception
+     */
+    public Set<String> searchBitmapIndexIds(Map<String, Set<Object>> filters) throws MissingIndexException, Exception {
+        ensureBitmapIndexed(filters.keySet());
+        return bitmapIndex.search(filters);
+    }
+
+    /**
+     * Counts the features matching the filters on enumerated properties with
+     * the in memory bitmap index
+     *
+     * @param filters property -> values, a feature matches if it has any of
+     * the values of every filtered property
+     * @return number of matching features
+     * @throws MissingIndexException if a filtered property is not in the
+     * bitmap index
+     * @throws Exception generic JanusGraph exception
+     */
+    public long countBitmapIndex(Map<String, Set<Object>> filters) throws MissingIndexException, Exception {
+        ensureBitmapIndexed(filters.keySet());
+        return bitmapIndex.count(filters);
+    }
+
+    /**
+     * Counts the features matching the filters per value of an enumerated
+     * property with the in memory bitmap index
+     *
+     * @param property enumerated property to count the values of
+     * @param filters property -> values, a feature matches if it has any of
+     * the values of every filtered property
+     * @return value -> number of matching features with the value, values
+     * without any matching features are left out
+     * @throws MissingIndexException if the property or a filtered property is
+     * not in the bitmap index
+     * @throws Exception generic JanusGraph exception
+     */
+    public Map<Object, Long> countBitmapIndexFacets(String property, Map<String, Set<Object>> filters) throws MissingIndexException, Exception {
+        Set<String> properties = new HashSet<>(filters.keySet());
+        properties.add(property);
+        ensureBitmapIndexed(properties);
+        return bitmapIndex.facetCounts(property, filters);
+    }
+
+    /**
+     * Rebuilds the in memory bitmap index from the graph, ex. at startup or
+     * after features were written by another OpenFeatureStore instance
+     *
+     * @throws Exception generic JanusGraph exception
+     */
+    public void rebuildBitmapIndex() throws Exception {
+        bitmapIndex.rebuild(consumer -> loadIndexedValues(bitmapIndex.getProperties(), consumer));
+    }
+
+    private void ensureBitmapIndexed(Set<String> properties) throws MissingIndexException, Exception {
+        for (String property : properties) {
+            if (!bitmapIndex.isIndexed(property)) {
+                throw new MissingIndexException("Property [%s] is not in the bitmap index", property);
+            }
+        }
+        bitmapIndex.ensureBuilt(consumer -> loadIndexedValues(bitmapIndex.getProperties(), consumer));
+    }
+
+    private void loadIndexedValues(Set<String> properties, BiConsumer<String, Map<String, List<Object>>> consumer) throws Exception {
+        try ( GraphTraversalSource g = getTraversalSource()) {
+            // start from a fresh transaction so features committed by other threads are seen
+            g.tx().rollback();
+            try {
+                g.V().has(OFSRepository.NODE_TYPE_FIELD, vertexType.name()).forEachRemaining(v -> {
+                    consumer.accept((String) v.id(), readPropertyValues(v, properties));
+                });
+            } finally {
+                g.tx().rollback();
+            }
+        }
+    }
+
+    private static Map<String, List<Object>> readPropertyValues(Vertex v, Set<String> properties) {
+        Map<String, List<Object>> values = new HashMap<>();
+        for (String property : properties) {
+            v.properties(property).forEachRemaining(p -> values.computeIfAbsent(property, k -> new ArrayList<>()).add(p.value()));
+        }
+        return values;
+    }
+
+    /**
+     * Brings the in memory indices & statistics up to date with a committed
+     * feature write
+     */
+    private void recordWritten(WrittenFeature written) {
+        spatialIndex.update(written.featureId, written.values);
+        bitmapIndex.update(written.featureId, written.values);
+        statisticsRepository.recordWrite(written.featureId, written.oldModelIds, written.newModelIds, written.values);
     }
 
     /**
@@ -186,10 +1267,14 @@ public class FeatureRepository extends SchemaVertexRepository<Feature> {
                         List<Property> inpProps = calcPropsToUse(fullFeatureSchema, updatedProperties);
                         // verify feature is not in use (prevents messing up fetures as properties on other features or models)
                         verifyIntegretyBeforeMutation(g, featureId);
+                        List<String> oldModelIds = StatisticsRepository.readModelIds(g.V(featureId).next());
                         // update feature with new props & model
                         updateFeature(featureId, newModelId, inpProps, g);
+                        recordChange(ChangeType.UPDATE, OFSType.FEATURE, featureId);
+                        WrittenFeature written = new WrittenFeature(featureId, oldModelIds, g.V(featureId).next());
                         // done, commit
                         tx.commit();
+                        recordWritten(written);
                     }
                 }
             }
@@ -231,4 +1316,59 @@ public class FeatureRepository extends SchemaVertexRepository<Feature> {
         return new RepoFeature(v, select, g);
     }
 
+    /**
+     * Model ids & property values of a written feature, read before the
+     * write commits
+     */
+    private static class WrittenFeature {
+
+        private final String featureId;
+
+        private final List<String> oldModelIds;
+
+        private final List<String> newModelIds;
+
+        private final Map<String, List<Object>> values;
+
+        public WrittenFeature(String featureId, List<String> oldModelIds, Vertex v) {
+            this.featureId = featureId;
+            this.oldModelIds = oldModelIds;
+            this.newModelIds = StatisticsRepository.readModelIds(v);
+            this.values = StatisticsRepository.readValues(v);
+        }
+
+    }
+
+    private static class OrderedCandidate implements Comparable<OrderedCandidate> {
+
+        private final String featureId;
+
+        private final Object value;
+
+        public OrderedCandidate(String featureId, Object value) {
+            this.featureId = featureId;
+            this.value = value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compareTo(OrderedCandidate other) {
+            return ((Comparable<Object>) value).compareTo(other.value);
+        }
+
+    }
+
+    private static class NearestCandidate {
+
+        private final String featureId;
+
+        private final double distanceKm;
+
+        public NearestCandidate(String featureId, double distanceKm) {
+            this.featureId = featureId;
+            this.distanceKm = distanceKm;
+        }
+
+    }
+
 }
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.janusgraph.core.attribute.Geoshape;
+import org.locationtech.spatial4j.shape.Rectangle;
+import org.locationtech.spatial4j.shape.Shape;
+import org.locationtech.spatial4j.shape.ShapeFactory;
+import org.locationtech.spatial4j.shape.SpatialRelation;
+
+/**
+ * In memory spatial index of the features' Geoshape properties, so viewport
+ * style queries don't need a round trip to the mixed index. Each indexed
+ * property has a uniform grid of cells, where a cell packs the bounding boxes
+ * of its shapes into a primitive array alongside an array of their feature
+ * ids. Points are stored as zero area boxes, other shapes are stored in every
+ * cell their bounding box overlaps.
+ *
+ * The index starts unbuilt. It's filled from the graph by a rebuild, after
+ * which the FeatureRepository keeps it in sync as features are written.
+ * Writers don't wait on a rebuild, their updates are buffered while it scans
+ * the graph & applied to the rebuilt index before it's swapped in.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureSpatialIndex {
+
+    // values packed per entry in a cell: minLat, minLon, maxLat, maxLon
+    private static final int BOX_SIZE = 4;
+
+    private final Set<String> properties;
+
+    private final double cellDegrees;
+
+    private final ReadWriteLock lock;
+
+    // held by a rebuild so rebuilds don't overlap, updates never take it
+    private final Object buildMonitor;
+
+    // property -> grid
+    private Map<String, GridIndex> grids;
+
+    // feature id -> latest values, of updates made while a rebuild scans, null when not rebuilding
+    private Map<String, Map<String, List<Object>>> rebuildUpdates;
+
+    private volatile boolean built;
+
+    /**
+     * @param properties Geoshape properties to index
+     * @param cellDegrees width & height of a grid cell in degrees
+     */
+    public FeatureSpatialIndex(Set<String> properties, double cellDegrees) {
+        if (cellDegrees <= 0) {
+            throw new IllegalArgumentException("Spatial index cell degrees must be positive");
+        }
+        this.properties = Collections.unmodifiableSet(new LinkedHashSet<>(properties));
+        this.cellDegrees = cellDegrees;
+        this.lock = new ReentrantReadWriteLock();
+        this.buildMonitor = new Object();
+        this.grids = new HashMap<>();
+    }
+
+    /**
+     * @return true if any property is indexed
+     */
+    public boolean isEnabled() {
+        return !properties.isEmpty();
+    }
+
+    public boolean isIndexed(String property) {
+        return properties.contains(property);
+    }
+
+    public Set<String> getProperties() {
+        return properties;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Replaces the index with the shapes given by the loader
+     *
+     * @param loader loads the indexed property values of every feature
+     * @throws Exception if the loader fails, the index is left as it was
+     */
+    public void rebuild(FeatureValueLoader loader) throws Exception {
+        synchronized (buildMonitor) {
+            lock.writeLock().lock();
+            try {
+                rebuildUpdates = new LinkedHashMap<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            Map<String, GridIndex> rebuilt = new HashMap<>();
+            for (String property : properties) {
+                rebuilt.put(property, new GridIndex());
+            }
+            try {
+                loader.load((featureId, values) -> putShapes(rebuilt, featureId, values));
+            } catch (Exception ex) {
+                lock.writeLock().lock();
+                try {
+                    // the buffered updates were already applied to the current index
+                    rebuildUpdates = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw ex;
+            }
+            lock.writeLock().lock();
+            try {
+                // the scan may have read a feature before an update, so the update wins
+                rebuildUpdates.forEach((featureId, values) -> putShapes(rebuilt, featureId, values));
+                rebuildUpdates = null;
+                grids = rebuilt;
+                built = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Builds the index if it has not been built yet
+     *
+     * @param loader loads the indexed property values of every feature
+     * @throws Exception if the loader fails
+     */
+    public void ensureBuilt(FeatureValueLoader loader) throws Exception {
+        if (built) {
+            return;
+        }
+        synchronized (buildMonitor) {
+            if (!built) {
+                rebuild(loader);
+            }
+        }
+    }
+
+    /**
+     * Replaces the indexed shapes of a feature. Ignored until the index is
+     * built or being rebuilt, since the build reads the feature from the
+     * graph.
+     *
+     * @param featureId id of the feature
+     * @param values property -> values of the feature, values which aren't
+     * Geoshapes are ignored & a missing property removes the feature's shapes
+     * for that property
+     */
+    public void update(String featureId, Map<String, List<Object>> values) {
+        lock.writeLock().lock();
+        try {
+            if (rebuildUpdates != null) {
+                rebuildUpdates.put(featureId, values);
+            }
+            if (built) {
+                putShapes(grids, featureId, values);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every indexed shape of a feature
+     *
+     * @param featureId id of the feature
+     */
+    public void remove(String featureId) {
+        update(featureId, Collections.emptyMap());
+    }
+
+    /**
+     * Finds the features with a shape of the property intersecting the given
+     * shape. Shapes other than points are matched by their bounding box.
+     *
+     * @param property indexed property to search
+     * @param shape shape to search within
+     * @return ids of the matching features
+     */
+    public Set<String> search(String property, Geoshape shape) {
+        Shape queryShape = shape.getShape();
+        // a box query is answered by the bounding boxes alone
+        boolean exact = shape.getType() == Geoshape.Type.BOX;
+        Rectangle bounds = queryShape.getBoundingBox();
+        Set<String> out = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            GridIndex grid = grids.get(property);
+            if (grid == null) {
+                return out;
+            }
+            if (bounds.getCrossesDateLine()) {
+                grid.search(bounds.getMinY(), bounds.getMinX(), bounds.getMaxY(), 180, exact ? null : queryShape, out);
+                grid.search(bounds.getMinY(), -180, bounds.getMaxY(), bounds.getMaxX(), exact ? null : queryShape, out);
+            } else {
+                grid.search(bounds.getMinY(), bounds.getMinX(), bounds.getMaxY(), bounds.getMaxX(), exact ? null : queryShape, out);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    private void putShapes(Map<String, GridIndex> target, String featureId, Map<String, List<Object>> values) {
+        for (Map.Entry<String, GridIndex> grid : target.entrySet()) {
+            grid.getValue().remove(featureId);
+            List<Geoshape> shapes = new ArrayList<>();
+            for (Object value : values.getOrDefault(grid.getKey(), Collections.emptyList())) {
+                if (value instanceof Geoshape shape) {
+                    shapes.add(shape);
+                }
+            }
+            if (!shapes.isEmpty()) {
+                grid.getValue().put(featureId, shapes);
+            }
+        }
+    }
+
+    private class GridIndex {
+
+        // row << 32 | col -> cell
+        private final Map<Long, Cell> cells = new HashMap<>();
+
+        // feature id -> packed boxes of its shapes, used to find its cells on removal
+        private final Map<String, double[]> featureBoxes = new HashMap<>();
+
+        public void put(String featureId, Collection<Geoshape> shapes) {
+            double[] boxes = new double[0];
+            for (Geoshape shape : shapes) {
+                Rectangle bounds = shape.getShape().getBoundingBox();
+                if (bounds.getCrossesDateLine()) {
+                    boxes = appendBox(boxes, bounds.getMinY(), bounds.getMinX(), bounds.getMaxY(), 180);
+                    boxes = appendBox(boxes, bounds.getMinY(), -180, bounds.getMaxY(), bounds.getMaxX());
+                } else {
+                    boxes = appendBox(boxes, bounds.getMinY(), bounds.getMinX(), bounds.getMaxY(), bounds.getMaxX());
+                }
+            }
+            featureBoxes.put(featureId, boxes);
+            for (int i = 0; i < boxes.length; i += BOX_SIZE) {
+                for (long cellKey : calcCellKeys(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3])) {
+                    cells.computeIfAbsent(cellKey, k -> new Cell()).add(featureId, boxes, i);
+                }
+            }
+        }
+
+        public void remove(String featureId) {
+            double[] boxes = featureBoxes.remove(featureId);
+            if (boxes == null) {
+                return;
+            }
+            for (int i = 0; i < boxes.length; i += BOX_SIZE) {
+                for (long cellKey : calcCellKeys(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3])) {
+                    Cell cell = cells.get(cellKey);
+                    if (cell != null && cell.remove(featureId)) {
+                        cells.remove(cellKey);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param exactShape shape candidates must intersect, null if
+         * intersecting the box is enough
+         */
+        public void search(double minLat, double minLon, double maxLat, double maxLon, Shape exactShape, Set<String> out) {
+            ShapeFactory shapeFactory = Geoshape.HELPER.getContext().getShapeFactory();
+            int minRow = calcRow(minLat);
+            int maxRow = calcRow(maxLat);
+            int minCol = calcCol(minLon);
+            int maxCol = calcCol(maxLon);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    Cell cell = cells.get(toCellKey(row, col));
+                    if (cell == null) {
+                        continue;
+                    }
+                    double[] boxes = cell.boxes;
+                    for (int i = 0; i < cell.size; i++) {
+                        int offset = i * BOX_SIZE;
+                        double entryMinLat = boxes[offset];
+                        double entryMinLon = boxes[offset + 1];
+                        double entryMaxLat = boxes[offset + 2];
+                        double entryMaxLon = boxes[offset + 3];
+                        if (entryMaxLat < minLat || entryMinLat > maxLat || entryMaxLon < minLon || entryMinLon > maxLon) {
+                            continue;
+                        }
+                        if (exactShape != null) {
+                            Shape entryShape = entryMinLat == entryMaxLat && entryMinLon == entryMaxLon
+                                    ? shapeFactory.pointXY(entryMinLon, entryMinLat)
+                                    : shapeFactory.rect(entryMinLon, entryMaxLon, entryMinLat, entryMaxLat);
+                            if (exactShape.relate(entryShape) == SpatialRelation.DISJOINT) {
+                                continue;
+                            }
+                        }
+                        out.add(cell.featureIds[i]);
+                    }
+                }
+            }
+        }
+
+        private long[] calcCellKeys(double minLat, double minLon, double maxLat, double maxLon) {
+            int minRow = calcRow(minLat);
+            int maxRow = calcRow(maxLat);
+            int minCol = calcCol(minLon);
+            int maxCol = calcCol(maxLon);
+            long[] keys = new long[(maxRow - minRow + 1) * (maxCol - minCol + 1)];
+            int i = 0;
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    keys[i++] = toCellKey(row, col);
+                }
+            }
+            return keys;
+        }
+
+        private int calcRow(double lat) {
+            return (int) Math.min(Math.floor((lat + 90) / cellDegrees), Math.floor(180 / cellDegrees));
+        }
+
+        private int calcCol(double lon) {
+            return (int) Math.min(Math.floor((lon + 180) / cellDegrees), Math.floor(360 / cellDegrees));
+        }
+
+        private long toCellKey(int row, int col) {
+            return ((long) row << 32) | (col & 0xffffffffL);
+        }
+
+        private double[] appendBox(double[] boxes, double minLat, double minLon, double maxLat, double maxLon) {
+            double[] out = Arrays.copyOf(boxes, boxes.length + BOX_SIZE);
+            out[boxes.length] = minLat;
+            out[boxes.length + 1] = minLon;
+            out[boxes.length + 2] = maxLat;
+            out[boxes.length + 3] = maxLon;
+            return out;
+        }
+
+    }
+
+    /**
+     * Entries of a grid cell, the boxes are packed BOX_SIZE values per entry
+     */
+    private static class Cell {
+
+        private double[] boxes = new double[BOX_SIZE * 4];
+
+        private String[] featureIds = new String[4];
+
+        private int size;
+
+        public void add(String featureId, double[] source, int sourceOffset) {
+            if (size == featureIds.length) {
+                featureIds = Arrays.copyOf(featureIds, size * 2);
+                boxes = Arrays.copyOf(boxes, size * 2 * BOX_SIZE);
+            }
+            System.arraycopy(source, sourceOffset, boxes, size * BOX_SIZE, BOX_SIZE);
+            featureIds[size++] = featureId;
+        }
+
+        /**
+         * Removes every entry of the feature by moving the last entry into its
+         * place
+         *
+         * @return true if the cell is now empty
+         */
+        public boolean remove(String featureId) {
+            int i = 0;
+            while (i < size) {
+                if (!featureIds[i].equals(featureId)) {
+                    i++;
+                    continue;
+                }
+                size--;
+                featureIds[i] = featureIds[size];
+                featureIds[size] = null;
+                System.arraycopy(boxes, size * BOX_SIZE, boxes, i * BOX_SIZE, BOX_SIZE);
+            }
+            return size == 0;
+        }
+
+    }
+
+}
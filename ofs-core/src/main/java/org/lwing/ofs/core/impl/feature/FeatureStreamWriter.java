@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.janusgraph.core.attribute.Geoshape;
+import org.lwing.ofs.core.api.config.OFSConfiguration;
+import static org.lwing.ofs.core.impl.SchemaVertexRepository.REF_PROP_EDGE;
+import static org.lwing.ofs.core.impl.schema.SchemaRepository.REF_PROP_NAME_EDGE_PROP;
+
+/**
+ * Writes feature vertices as GeoJSON features straight from the vertex
+ * properties & ref edges, without building Feature objects. Each feature is
+ * written as
+ * {"type": "Feature", "id": ..., "modelId": ..., "geometry": ..., "properties": {...}}
+ * where a property with more than one value is written as an array, & a
+ * geometry property with more than one value as a GeometryCollection.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureStreamWriter {
+
+    /**
+     * Layout of the written features
+     */
+    public enum StreamFormat {
+        // a single FeatureCollection
+        GEOJSON,
+        // one GeoJSON feature per line
+        NDJSON
+    }
+
+    private final JsonGenerator generator;
+
+    private final StreamFormat format;
+
+    private final String geometryProperty;
+
+    private final Optional<Set<String>> select;
+
+    private long writtenCount;
+
+    /**
+     * @param generator generator to write to
+     * @param format layout of the written features
+     * @param geometryProperty Geoshape property written as each feature's
+     * geometry, null to write every feature without a geometry
+     * @param select optional set of properties to write, empty optional means
+     * all properties
+     */
+    public FeatureStreamWriter(JsonGenerator generator, StreamFormat format, String geometryProperty, Optional<Set<String>> select) {
+        this.generator = generator;
+        this.format = format;
+        this.geometryProperty = geometryProperty;
+        this.select = select;
+        if (format == StreamFormat.NDJSON) {
+            // lines are separated explicitly
+            generator.setRootValueSeparator(null);
+        }
+    }
+
+    public void writeStart() throws IOException {
+        if (format == StreamFormat.GEOJSON) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "FeatureCollection");
+            generator.writeArrayFieldStart("features");
+        }
+    }
+
+    /**
+     * Writes a feature vertex
+     *
+     * @param v feature vertex
+     * @param g traversal source used to read the feature's ref edges
+     * @throws IOException if writing fails
+     */
+    public void writeFeature(Vertex v, GraphTraversalSource g) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "Feature");
+        generator.writeStringField("id", (String) v.id());
+        generator.writeStringField("modelId", (String) v.property(OFSConfiguration.MODEL_ID).value());
+        generator.writeFieldName("geometry");
+        writeGeometry(v);
+        generator.writeObjectFieldStart("properties");
+        writePrimitiveProperties(v);
+        writeRefProperties(v, g);
+        generator.writeEndObject();
+        generator.writeEndObject();
+        if (format == StreamFormat.NDJSON) {
+            generator.writeRaw('\n');
+        }
+        writtenCount++;
+    }
+
+    public void writeEnd() throws IOException {
+        if (format == StreamFormat.GEOJSON) {
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.flush();
+    }
+
+    /**
+     * @return number of features written so far
+     */
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    private void writeGeometry(Vertex v) throws IOException {
+        List<Geoshape> shapes = new ArrayList<>();
+        if (geometryProperty != null) {
+            Iterator<VertexProperty<Object>> props = v.properties(geometryProperty);
+            while (props.hasNext()) {
+                if (props.next().value() instanceof Geoshape shape) {
+                    shapes.add(shape);
+                }
+            }
+        }
+        if (shapes.isEmpty()) {
+            generator.writeNull();
+        } else if (shapes.size() == 1) {
+            generator.writeRawValue(shapes.get(0).toGeoJson());
+        } else {
+            generator.writeStartObject();
+            generator.writeStringField("type", "GeometryCollection");
+            generator.writeArrayFieldStart("geometries");
+            for (Geoshape shape : shapes) {
+                generator.writeRawValue(shape.toGeoJson());
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private void writePrimitiveProperties(Vertex v) throws IOException {
+        for (String key : select.isPresent() ? select.get() : v.keys()) {
+            if (key.startsWith(OFSConfiguration.INTERNAL_FIELD_PREFIX) || key.equals(geometryProperty)) {
+                continue;
+            }
+            Iterator<VertexProperty<Object>> props = v.properties(key);
+            if (!props.hasNext()) {
+                // not set on this feature, or a ref property
+                continue;
+            }
+            Object first = props.next().value();
+            generator.writeFieldName(key);
+            if (!props.hasNext()) {
+                writeValue(first);
+                continue;
+            }
+            generator.writeStartArray();
+            writeValue(first);
+            while (props.hasNext()) {
+                writeValue(props.next().value());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeRefProperties(Vertex v, GraphTraversalSource g) throws IOException {
+        GraphTraversal<Vertex, Edge> outEdges = g.V(v.id()).outE(REF_PROP_EDGE);
+        if (select.isPresent()) {
+            outEdges.has(REF_PROP_NAME_EDGE_PROP, P.within(select.get()));
+        }
+        // edges come back grouped by name so the values of a prop can be written as they're read
+        outEdges.order().by(REF_PROP_NAME_EDGE_PROP);
+        String currName = null;
+        Object firstValue = null;
+        boolean multiValued = false;
+        while (outEdges.hasNext()) {
+            Edge edge = outEdges.next();
+            String name = (String) edge.value(REF_PROP_NAME_EDGE_PROP);
+            Object value = edge.inVertex().id();
+            if (!name.equals(currName)) {
+                endRefProperty(currName, firstValue, multiValued);
+                generator.writeFieldName(name);
+                currName = name;
+                firstValue = value;
+                multiValued = false;
+            } else {
+                if (!multiValued) {
+                    generator.writeStartArray();
+                    writeValue(firstValue);
+                    multiValued = true;
+                }
+                writeValue(value);
+            }
+        }
+        endRefProperty(currName, firstValue, multiValued);
+    }
+
+    private void endRefProperty(String name, Object firstValue, boolean multiValued) throws IOException {
+        if (name == null) {
+            return;
+        }
+        if (multiValued) {
+            generator.writeEndArray();
+        } else {
+            writeValue(firstValue);
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value instanceof String s) {
+            generator.writeString(s);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (value instanceof Long l) {
+            generator.writeNumber(l);
+        } else if (value instanceof Double d) {
+            generator.writeNumber(d);
+        } else if (value instanceof Float f) {
+            generator.writeNumber(f);
+        } else if (value instanceof BigDecimal d) {
+            generator.writeNumber(d);
+        } else if (value instanceof Boolean b) {
+            generator.writeBoolean(b);
+        } else if (value instanceof Date d) {
+            // dates are written as millis, same as the PropertySerializer
+            generator.writeNumber(d.getTime());
+        } else if (value instanceof Geoshape shape) {
+            generator.writeRawValue(shape.toGeoJson());
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+}
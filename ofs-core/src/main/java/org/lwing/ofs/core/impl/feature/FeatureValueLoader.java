@@ -0,0 +1,22 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads the property values of every feature into a consumer of feature id &
+ * property -> values, used to build the in memory feature indices
+ *
+ * @author Lucas Wing
+ */
+@FunctionalInterface
+public interface FeatureValueLoader {
+
+    void load(BiConsumer<String, Map<String, List<Object>>> consumer) throws Exception;
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
+
+/**
+ * A create or update of a feature, used to apply several writes in one
+ * transaction.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureWrite {
+
+    // CREATE or UPDATE
+    private final ChangeType changeType;
+
+    // null on a create means the id is generated
+    private final String featureId;
+
+    // only used on a create, updates keep the feature's model
+    private final String modelId;
+
+    private final List<Property> properties;
+
+    @JsonCreator
+    private FeatureWrite(
+            @JsonProperty("changeType") ChangeType changeType,
+            @JsonProperty("featureId") String featureId,
+            @JsonProperty("modelId") String modelId,
+            @JsonProperty("properties") List<Property> properties
+    ) {
+        this.changeType = changeType;
+        this.featureId = featureId;
+        this.modelId = modelId;
+        this.properties = properties;
+    }
+
+    /**
+     * @param feature feature to create
+     * @return write which creates the feature
+     */
+    public static FeatureWrite create(Feature feature) {
+        return new FeatureWrite(ChangeType.CREATE, feature.getId(), feature.getModelId(), feature.getProperties());
+    }
+
+    /**
+     * @param featureId id of the feature to update
+     * @param properties properties to apply on the feature
+     * @return write which updates the feature
+     */
+    public static FeatureWrite update(String featureId, List<Property> properties) {
+        return new FeatureWrite(ChangeType.UPDATE, featureId, null, properties);
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public String getFeatureId() {
+        return featureId;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+}
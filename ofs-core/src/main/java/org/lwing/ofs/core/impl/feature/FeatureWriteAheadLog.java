@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write ahead log of feature writes, stored in a single file. Each record is
+ * its length, a checksum of its payload & the write as json. Records are
+ * addressed by the offset they start at.
+ *
+ * The offset up to which records have been applied to the graph is kept in a
+ * file next to the log, so records after it can be replayed when the log is
+ * reopened. A partial record left at the end of the log by a crash is
+ * dropped on open.
+ *
+ * A failed sync truncates the log back to the last synced record, so writes
+ * reported as failed aren't replayed, & fails the log. A retried sync can't
+ * be trusted to write what the failed one didn't, so the log has to be
+ * reopened to take writes again.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureWriteAheadLog implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureWriteAheadLog.class);
+
+    private static final String APPLIED_EXT = ".applied";
+
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    private final Path logFile;
+
+    private final Path appliedFile;
+
+    private final FileChannel channel;
+
+    // offset the next record is appended at
+    private long endOffset;
+
+    // held while syncing, separate from the log's monitor so appends don't wait on syncs
+    private final Object syncMonitor = new Object();
+
+    // offset every record before is synced to disk
+    private long syncedOffset;
+
+    // times the log was emptied, offsets restart from 0 on each
+    private long truncates;
+
+    // cause of the failed sync which failed the log, null if none has failed
+    private IOException syncFailure;
+
+    public FeatureWriteAheadLog(Path logFile) throws IOException {
+        this.logFile = logFile;
+        this.appliedFile = logFile.resolveSibling(logFile.getFileName() + APPLIED_EXT);
+        if (logFile.getParent() != null) {
+            Files.createDirectories(logFile.getParent());
+        }
+        this.channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.endOffset = findValidEnd();
+        channel.truncate(endOffset);
+        this.syncedOffset = endOffset;
+        if (readStoredAppliedOffset() > endOffset) {
+            // crashed after emptying the log but before resetting the applied offset
+            writeAppliedOffset(endOffset);
+        }
+    }
+
+    /**
+     * Appends a write to the log, the write is durable once the log is synced
+     * past it
+     *
+     * @param write write to append
+     * @return offset the record was appended at
+     * @throws IOException if the write could not be stored
+     * @see #sync
+     */
+    public synchronized long append(FeatureWrite write) throws IOException {
+        verifyNotFailed();
+        byte[] payload = MappingUtil.getWriter().writeValueAsBytes(write);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putLong(crc.getValue()).put(payload).flip();
+        long offset = endOffset;
+        while (record.hasRemaining()) {
+            endOffset += channel.write(record, endOffset);
+        }
+        return offset;
+    }
+
+    /**
+     * Syncs the log to disk up to at least the input offset. Appends aren't
+     * blocked while syncing, & callers waiting on a sync in progress are
+     * covered by it or share the next one, so concurrent appends are group
+     * committed.
+     *
+     * @param offset offset every record before has to be durable
+     * @throws IOException if the log could not be synced, the records after
+     * the last synced one are dropped from the log
+     */
+    public void sync(long offset) throws IOException {
+        synchronized (syncMonitor) {
+            long syncTo;
+            long truncatesBefore;
+            synchronized (this) {
+                if (syncedOffset >= offset) {
+                    return;
+                }
+                verifyNotFailed();
+                syncTo = endOffset;
+                truncatesBefore = truncates;
+            }
+            try {
+                force();
+            } catch (IOException ex) {
+                synchronized (this) {
+                    failSync(ex);
+                }
+                throw ex;
+            }
+            synchronized (this) {
+                // a truncate while syncing restarted the offsets
+                if (truncates == truncatesBefore) {
+                    syncedOffset = Math.max(syncedOffset, syncTo);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param offset offset of the first record to read
+     * @return records from the offset to the end of the log
+     * @throws IOException if the log could not be read
+     */
+    public synchronized List<LogRecord> readFrom(long offset) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        while (offset < endOffset) {
+            LogRecord record = readRecord(offset);
+            records.add(record);
+            offset = record.getNextOffset();
+        }
+        return records;
+    }
+
+    /**
+     * @return offset after the last record in the log
+     */
+    public synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return offset up to which every record has been applied
+     * @throws IOException if the applied offset could not be read
+     */
+    public synchronized long readAppliedOffset() throws IOException {
+        return readStoredAppliedOffset();
+    }
+
+    /**
+     * Stores the offset up to which every record has been applied. Once all
+     * records are applied the log is emptied.
+     *
+     * @param offset offset up to which every record has been applied
+     * @throws IOException if the applied offset could not be stored
+     */
+    public synchronized void storeAppliedOffset(long offset) throws IOException {
+        if (offset == endOffset && offset > 0) {
+            channel.truncate(0);
+            channel.force(true);
+            endOffset = 0;
+            syncedOffset = 0;
+            truncates++;
+            writeAppliedOffset(0);
+        } else {
+            writeAppliedOffset(offset);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Forces the log's content to disk
+     *
+     * @throws IOException if the content could not be forced
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    private void failSync(IOException cause) {
+        syncFailure = cause;
+        LOGGER.error("Failed to sync {}, dropping the {} bytes of records after the last synced one", logFile, endOffset - syncedOffset, cause);
+        try {
+            channel.truncate(syncedOffset);
+            endOffset = syncedOffset;
+        } catch (IOException ex) {
+            LOGGER.error("Failed to drop the unsynced records from {}, they may be replayed on the next open", logFile, ex);
+        }
+    }
+
+    private void verifyNotFailed() throws IOException {
+        if (syncFailure != null) {
+            throw new IOException("Write ahead log " + logFile + " failed to sync, it has to be reopened", syncFailure);
+        }
+    }
+
+    private long readStoredAppliedOffset() throws IOException {
+        if (!Files.exists(appliedFile)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(appliedFile).trim());
+    }
+
+    private void writeAppliedOffset(long offset) throws IOException {
+        Path tmpFile = appliedFile.resolveSibling(appliedFile.getFileName() + ".tmp");
+        Files.writeString(tmpFile, Long.toString(offset), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+        Files.move(tmpFile, appliedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private LogRecord readRecord(long offset) throws IOException {
+        // checksums were verified when the log was opened
+        int length = readFully(offset, HEADER_BYTES).getInt();
+        byte[] payload = readFully(offset + HEADER_BYTES, length).array();
+        FeatureWrite write = MappingUtil.getReader(FeatureWrite.class).readValue(payload);
+        return new LogRecord(offset, offset + HEADER_BYTES + length, write);
+    }
+
+    /**
+     * @return offset after the last complete record whose checksum matches
+     */
+    private long findValidEnd() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        while (offset + HEADER_BYTES <= size) {
+            ByteBuffer header = readFully(offset, HEADER_BYTES);
+            int length = header.getInt();
+            long checksum = header.getLong();
+            if (length < 0 || offset + HEADER_BYTES + length > size) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(readFully(offset + HEADER_BYTES, length));
+            if (crc.getValue() != checksum) {
+                break;
+            }
+            offset += HEADER_BYTES + length;
+        }
+        if (offset < size) {
+            LOGGER.warn("Dropping {} bytes of partially written records from {}", size - offset, logFile);
+        }
+        return offset;
+    }
+
+    private ByteBuffer readFully(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of write ahead log " + logFile);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public static class LogRecord {
+
+        private final long offset;
+
+        private final long nextOffset;
+
+        private final FeatureWrite write;
+
+        public LogRecord(long offset, long nextOffset, FeatureWrite write) {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.write = write;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getNextOffset() {
+            return nextOffset;
+        }
+
+        public FeatureWrite getWrite() {
+            return write;
+        }
+
+    }
+
+}
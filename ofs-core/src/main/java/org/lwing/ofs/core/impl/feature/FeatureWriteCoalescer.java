@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.property.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional front end to the FeatureRepository for callers making many single
+ * feature writes from many threads. Writes submitted within a short window of
+ * each other, up to a max batch size, are committed in one transaction rather
+ * than paying for a commit each.
+ *
+ * Each caller gets its own future. If a batch fails to commit its writes are
+ * retried one at a time, so only the writes which actually fail complete
+ * exceptionally & each with its own error.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureWriteCoalescer implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureWriteCoalescer.class);
+
+    private final FeatureRepository featureRepository;
+
+    // how long to wait for more writes after the first write of a batch
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final BlockingQueue<PendingWrite> queue;
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    /**
+     * @param featureRepository repository to commit the writes with
+     * @param windowMillis how long to wait for more writes after the first
+     * write of a batch
+     * @param maxBatchSize max number of writes committed in one transaction
+     */
+    public FeatureWriteCoalescer(FeatureRepository featureRepository, long windowMillis, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be at least 1");
+        }
+        this.featureRepository = featureRepository;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>();
+        this.writer = new Thread(this::runWriter, "ofs-feature-write-coalescer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the creation of a feature
+     *
+     * @see FeatureRepository#addFeature(org.lwing.ofs.core.api.feature.Feature)
+     * @param feature the feature object to input into the graph
+     * @return future of the created feature's id
+     */
+    public CompletableFuture<String> addFeature(Feature feature) {
+        return submit(FeatureWrite.create(feature));
+    }
+
+    /**
+     * Queues an update of a feature
+     *
+     * @see FeatureRepository#updateFeature(java.lang.String, java.util.List)
+     * @param featureId identifier of the feature to update
+     * @param updateProperties properties to apply on the feature
+     * @return future completed once the update is committed
+     */
+    public CompletableFuture<Void> updateFeature(String featureId, List<Property> updateProperties) {
+        return submit(FeatureWrite.update(featureId, updateProperties)).thenApply(id -> null);
+    }
+
+    /**
+     * Stops accepting writes, commits the writes already queued & waits for
+     * the writer to finish.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized CompletableFuture<String> submit(FeatureWrite write) {
+        if (closed) {
+            throw new IllegalStateException("Feature write coalescer is closed");
+        }
+        PendingWrite pending = new PendingWrite(write);
+        queue.add(pending);
+        return pending.result;
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingWrite next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commitBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // only left over if the writer was interrupted
+        batch.addAll(queue);
+        for (PendingWrite pending : batch) {
+            pending.result.completeExceptionally(new IllegalStateException("Feature write coalescer stopped before the write was committed"));
+        }
+    }
+
+    private void commitBatch(List<PendingWrite> batch) {
+        List<FeatureWrite> writes = new ArrayList<>();
+        for (PendingWrite pending : batch) {
+            writes.add(pending.write);
+        }
+        try {
+            List<String> featureIds = featureRepository.writeFeatures(writes);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(featureIds.get(i));
+            }
+            return;
+        } catch (Exception ex) {
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(ex);
+                return;
+            }
+            LOGGER.debug("Failed to commit batch of {} feature writes, committing them one at a time", batch.size(), ex);
+        }
+        for (PendingWrite pending : batch) {
+            try {
+                pending.result.complete(featureRepository.writeFeatures(Arrays.asList(pending.write)).get(0));
+            } catch (Exception ex) {
+                pending.result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private static class PendingWrite {
+
+        private final FeatureWrite write;
+
+        private final CompletableFuture<String> result;
+
+        public PendingWrite(FeatureWrite write) {
+            this.write = write;
+            this.result = new CompletableFuture<>();
+        }
+
+    }
+
+}
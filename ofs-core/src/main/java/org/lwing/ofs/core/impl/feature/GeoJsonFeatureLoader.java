@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.janusgraph.core.attribute.Geoshape;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.property.JProperty;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.impl.model.ModelRepository;
+import org.lwing.ofs.core.impl.property.PropertyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads a GeoJSON FeatureCollection as features of a model. The collection
+ * is read with a streaming parser, one GeoJSON feature at a time, and the
+ * mapped features are handed to a pool of workers in batches through a
+ * bounded queue. Memory use depends on the batch size & worker count, not on
+ * the size of the file.
+ *
+ * A GeoJSON feature's properties are mapped onto the model's feature schema
+ * by name, properties not in the schema are ignored. Its geometry is stored as
+ * a Geoshape on the given geometry property, & its id (if it has one) is used
+ * as the feature's id.
+ *
+ * @author Lucas Wing
+ */
+public class GeoJsonFeatureLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeoJsonFeatureLoader.class);
+
+    private static final String FEATURES_FIELD = "features";
+
+    private static final String ID_FIELD = "id";
+
+    private static final String GEOMETRY_FIELD = "geometry";
+
+    private static final String PROPERTIES_FIELD = "properties";
+
+    // tells the workers there are no more batches
+    private static final List<LoadItem> END_OF_BATCHES = Collections.emptyList();
+
+    private final FeatureRepository featureRepository;
+
+    private final ModelRepository modelRepository;
+
+    private final PropertyRepository propertyRepository;
+
+    public GeoJsonFeatureLoader(FeatureRepository featureRepository, ModelRepository modelRepository, PropertyRepository propertyRepository) {
+        this.featureRepository = featureRepository;
+        this.modelRepository = modelRepository;
+        this.propertyRepository = propertyRepository;
+    }
+
+    /**
+     * Loads every feature in a GeoJSON FeatureCollection
+     *
+     * @param input GeoJSON FeatureCollection, left open
+     * @param modelId model the features are created under
+     * @param geometryProperty property of the model's feature schema to store
+     * the geometry on
+     * @param workers number of workers creating features
+     * @param batchSize max features created in one transaction
+     * @return number of features loaded & the features which failed
+     * @throws GraphIntegrityException if the geometry property is not a
+     * Geoshape property of the model's feature schema
+     * @throws Exception if the input is not a FeatureCollection
+     */
+    public LoadResult load(InputStream input, String modelId, String geometryProperty, int workers, int batchSize)
+            throws GraphIntegrityException, Exception {
+        Map<String, JProperty> schemaProps = readSchemaProps(modelId, geometryProperty);
+        LoadResult result = new LoadResult();
+        BlockingQueue<List<LoadItem>> batches = new ArrayBlockingQueue<>(workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> workerFutures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                workerFutures.add(executor.submit(() -> {
+                    runWorker(batches, result);
+                    return null;
+                }));
+            }
+            try {
+                readFeatures(input, modelId, geometryProperty, schemaProps, batchSize, batches, result);
+            } finally {
+                for (int i = 0; i < workers; i++) {
+                    batches.put(END_OF_BATCHES);
+                }
+            }
+            for (Future<?> future : workerFutures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw ex;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private Map<String, JProperty> readSchemaProps(String modelId, String geometryProperty) throws Exception {
+        Map<String, JProperty> schemaProps = new HashMap<>();
+        for (String key : modelRepository.getRequiredFeatureProperties(modelId).getPropertyKeys()) {
+            schemaProps.put(key, propertyRepository.getProperty(key));
+        }
+        if (!(schemaProps.get(geometryProperty) instanceof PrimitivePropertyKey geometryKey)
+                || !Geoshape.class.equals(geometryKey.getDataType())) {
+            throw new GraphIntegrityException("Property [%s] is not a Geoshape property of model [%s]'s feature schema", geometryProperty, modelId);
+        }
+        return schemaProps;
+    }
+
+    private void readFeatures(InputStream input, String modelId, String geometryProperty, Map<String, JProperty> schemaProps,
+            int batchSize, BlockingQueue<List<LoadItem>> batches, LoadResult result) throws Exception {
+        try ( JsonParser parser = MappingUtil.getReader(JsonNode.class).createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("GeoJSON input is not a FeatureCollection");
+            }
+            boolean foundFeatures = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (!FEATURES_FIELD.equals(field) || token != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                foundFeatures = true;
+                List<LoadItem> batch = new ArrayList<>(batchSize);
+                long index = 0;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode geoJsonFeature = parser.readValueAsTree();
+                    String ref = calcFeatureRef(geoJsonFeature, index++);
+                    try {
+                        batch.add(new LoadItem(ref, toFeature(geoJsonFeature, modelId, geometryProperty, schemaProps)));
+                    } catch (Exception ex) {
+                        result.addFailure(ref, ex);
+                        continue;
+                    }
+                    if (batch.size() >= batchSize) {
+                        batches.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            }
+            if (!foundFeatures) {
+                throw new IllegalArgumentException("GeoJSON input has no features array");
+            }
+        }
+    }
+
+    private Feature toFeature(JsonNode geoJsonFeature, String modelId, String geometryProperty, Map<String, JProperty> schemaProps) throws Exception {
+        List<Property> properties = new ArrayList<>();
+        JsonNode geoJsonProps = geoJsonFeature.path(PROPERTIES_FIELD);
+        Iterator<Map.Entry<String, JsonNode>> fields = geoJsonProps.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JProperty propKey = schemaProps.get(field.getKey());
+            if (propKey == null || field.getKey().equals(geometryProperty) || field.getValue().isNull()) {
+                continue;
+            }
+            if (field.getValue().isArray()) {
+                // multi valued props are stored as a property per value
+                for (JsonNode value : field.getValue()) {
+                    properties.add(new Property(field.getKey(), toValue(value, propKey)));
+                }
+            } else {
+                properties.add(new Property(field.getKey(), toValue(field.getValue(), propKey)));
+            }
+        }
+        JsonNode geometry = geoJsonFeature.path(GEOMETRY_FIELD);
+        if (geometry.isObject()) {
+            properties.add(new Property(geometryProperty, toGeoshape(geometry)));
+        }
+        JsonNode id = geoJsonFeature.path(ID_FIELD);
+        return new Feature(id.isValueNode() && !id.isNull() ? id.asText() : null, modelId, properties);
+    }
+
+    private static Object toValue(JsonNode value, JProperty propKey) throws Exception {
+        if (!(propKey instanceof PrimitivePropertyKey primKey)) {
+            // ref props hold the id of the feature referenced
+            return value.asText();
+        }
+        Class<?> dataType = primKey.getDataType();
+        if (String.class.equals(dataType)) {
+            return value.isTextual() ? value.asText() : value.toString();
+        } else if (Long.class.equals(dataType)) {
+            return value.asLong();
+        } else if (Integer.class.equals(dataType)) {
+            return value.asInt();
+        } else if (Double.class.equals(dataType)) {
+            return value.asDouble();
+        } else if (Float.class.equals(dataType)) {
+            return (float) value.asDouble();
+        } else if (Short.class.equals(dataType)) {
+            return (short) value.asInt();
+        } else if (Byte.class.equals(dataType)) {
+            return (byte) value.asInt();
+        } else if (Boolean.class.equals(dataType)) {
+            return value.asBoolean();
+        } else if (Date.class.equals(dataType)) {
+            return value.isNumber() ? new Date(value.asLong()) : Date.from(Instant.parse(value.asText()));
+        } else if (Geoshape.class.equals(dataType)) {
+            return value.isObject() ? toGeoshape(value) : Geoshape.fromWkt(value.asText());
+        }
+        return MappingUtil.treeToObject(value, dataType);
+    }
+
+    private static Geoshape toGeoshape(JsonNode geometry) throws Exception {
+        return Geoshape.geoshape(Geoshape.HELPER.getGeojsonReader().read(geometry.toString()));
+    }
+
+    private static String calcFeatureRef(JsonNode geoJsonFeature, long index) {
+        JsonNode id = geoJsonFeature.path(ID_FIELD);
+        return id.isValueNode() && !id.isNull() ? id.asText() : "features[" + index + "]";
+    }
+
+    private void runWorker(BlockingQueue<List<LoadItem>> batches, LoadResult result) throws InterruptedException {
+        while (true) {
+            List<LoadItem> batch = batches.take();
+            if (batch == END_OF_BATCHES) {
+                return;
+            }
+            List<FeatureWrite> writes = new ArrayList<>();
+            for (LoadItem item : batch) {
+                writes.add(FeatureWrite.create(item.feature));
+            }
+            try {
+                featureRepository.writeFeatures(writes);
+                result.loaded.addAndGet(batch.size());
+                continue;
+            } catch (Exception ex) {
+                LOGGER.debug("Failed to load batch of {} features, loading them one at a time", batch.size(), ex);
+            }
+            for (LoadItem item : batch) {
+                try {
+                    featureRepository.writeFeatures(Arrays.asList(FeatureWrite.create(item.feature)));
+                    result.loaded.incrementAndGet();
+                } catch (Exception ex) {
+                    result.addFailure(item.ref, ex);
+                }
+            }
+        }
+    }
+
+    private static class LoadItem {
+
+        // GeoJSON feature id, or position if it has none
+        private final String ref;
+
+        private final Feature feature;
+
+        public LoadItem(String ref, Feature feature) {
+            this.ref = ref;
+            this.feature = feature;
+        }
+
+    }
+
+    public static class LoadResult {
+
+        private final AtomicLong loaded = new AtomicLong();
+
+        // GeoJSON feature id (or position if it has none) -> error
+        private final Map<String, String> failedFeatures = new HashMap<>();
+
+        public long getLoadedCount() {
+            return loaded.get();
+        }
+
+        public synchronized Map<String, String> getFailedFeatures() {
+            return new HashMap<>(failedFeatures);
+        }
+
+        private synchronized void addFailure(String ref, Exception ex) {
+            LOGGER.warn("Failed to load GeoJSON feature {}", ref, ex);
+            failedFeatures.put(ref, ex.getMessage());
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of features per grid cell, for drawing clusters at zoom levels where
+ * individual features are too dense to draw. The grid is aligned to latitude
+ * -90 & longitude -180, so a cell covers the same area in every aggregation
+ * of the same cell size. A feature is counted in the cell holding the center
+ * of its shape.
+ *
+ * @author Lucas Wing
+ */
+public class GridAggregation {
+
+    private final double cellDegrees;
+
+    private final int maxSampleIds;
+
+    // row << 32 | col -> cell
+    private final Map<Long, GridCell> cells;
+
+    GridAggregation(double cellDegrees, int maxSampleIds) {
+        if (cellDegrees <= 0) {
+            throw new IllegalArgumentException("Grid cell degrees must be positive");
+        }
+        this.cellDegrees = cellDegrees;
+        this.maxSampleIds = maxSampleIds;
+        this.cells = new HashMap<>();
+    }
+
+    /**
+     * @return width & height of a cell in degrees
+     */
+    public double getCellDegrees() {
+        return cellDegrees;
+    }
+
+    /**
+     * @return every cell holding at least one feature
+     */
+    public Collection<GridCell> getCells() {
+        return Collections.unmodifiableCollection(cells.values());
+    }
+
+    /**
+     * @return number of features counted across all cells
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (GridCell cell : cells.values()) {
+            total += cell.count;
+        }
+        return total;
+    }
+
+    /**
+     * @return key of the cell holding the point
+     */
+    long calcCellKey(double lat, double lon) {
+        int row = (int) Math.min(Math.floor((lat + 90) / cellDegrees), Math.floor(180 / cellDegrees));
+        int col = (int) Math.min(Math.floor((lon + 180) / cellDegrees), Math.floor(360 / cellDegrees));
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    /**
+     * Counts a feature in the cell holding the point
+     */
+    void add(String featureId, double lat, double lon) {
+        long key = calcCellKey(lat, lon);
+        GridCell cell = cells.computeIfAbsent(key, k -> new GridCell((int) (k >> 32), (int) (long) k));
+        cell.count++;
+        cell.latSum += lat;
+        cell.lonSum += lon;
+        if (cell.sampleIds.size() < maxSampleIds) {
+            cell.sampleIds.add(featureId);
+        }
+    }
+
+    public class GridCell {
+
+        private final int row;
+
+        private final int col;
+
+        private long count;
+
+        private double latSum;
+
+        private double lonSum;
+
+        private final List<String> sampleIds;
+
+        private GridCell(int row, int col) {
+            this.row = row;
+            this.col = col;
+            this.sampleIds = new ArrayList<>();
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getCol() {
+            return col;
+        }
+
+        public double getMinLat() {
+            return row * cellDegrees - 90;
+        }
+
+        public double getMinLon() {
+            return col * cellDegrees - 180;
+        }
+
+        public double getMaxLat() {
+            return Math.min(getMinLat() + cellDegrees, 90);
+        }
+
+        public double getMaxLon() {
+            return Math.min(getMinLon() + cellDegrees, 180);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return mean latitude of the features in the cell
+         */
+        public double getCentroidLat() {
+            return latSum / count;
+        }
+
+        /**
+         * @return mean longitude of the features in the cell
+         */
+        public double getCentroidLon() {
+            return lonSum / count;
+        }
+
+        /**
+         * @return ids of up to the max sample ids features in the cell
+         */
+        public List<String> getSampleIds() {
+            return Collections.unmodifiableList(sampleIds);
+        }
+
+    }
+
+}
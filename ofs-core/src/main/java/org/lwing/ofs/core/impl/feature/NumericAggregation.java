@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sum, average, min, max & percentiles of a numeric property over the
+ * features of a search, in total & optionally per group. Every value of a
+ * feature is counted, so a feature with a list of values adds each of them.
+ * Integral values, ex. of a Long property, are summed as a long so large sums
+ * stay exact.
+ *
+ * @author Lucas Wing
+ */
+public class NumericAggregation {
+
+    // relative error of the percentiles
+    private static final double PERCENTILE_ACCURACY = 0.01;
+
+    private final NumericStats total;
+
+    // group value -> stats
+    private final Map<Object, NumericStats> groups;
+
+    NumericAggregation() {
+        this.total = new NumericStats();
+        this.groups = new HashMap<>();
+    }
+
+    /**
+     * @return stats over every value in the search
+     */
+    public NumericStats getTotal() {
+        return total;
+    }
+
+    /**
+     * @return group value -> stats over the values of the features in the
+     * group, empty if the aggregation isn't grouped
+     */
+    public Map<Object, NumericStats> getGroups() {
+        return Collections.unmodifiableMap(groups);
+    }
+
+    void add(Number value) {
+        total.add(value);
+    }
+
+    void add(Object group, Number value) {
+        groups.computeIfAbsent(group, k -> new NumericStats()).add(value);
+    }
+
+    public static class NumericStats {
+
+        private long count;
+
+        // sum of the integral values
+        private long longSum;
+
+        // sum of the other values
+        private double doubleSum;
+
+        private double min;
+
+        private double max;
+
+        private final QuantileSketch sketch;
+
+        private NumericStats() {
+            this.min = Double.NaN;
+            this.max = Double.NaN;
+            this.sketch = new QuantileSketch(PERCENTILE_ACCURACY);
+        }
+
+        private void add(Number number) {
+            double value = number.doubleValue();
+            if (count == 0 || value < min) {
+                min = value;
+            }
+            if (count == 0 || value > max) {
+                max = value;
+            }
+            count++;
+            if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+                longSum += number.longValue();
+            } else {
+                doubleSum += value;
+            }
+            sketch.add(value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return longSum + doubleSum;
+        }
+
+        /**
+         * @return exact sum of the integral values, ex. of a Long property
+         */
+        public long getLongSum() {
+            return longSum;
+        }
+
+        /**
+         * @return mean of the values, NaN if there are none
+         */
+        public double getAvg() {
+            return count == 0 ? Double.NaN : getSum() / count;
+        }
+
+        /**
+         * @return smallest value, NaN if there are none
+         */
+        public double getMin() {
+            return min;
+        }
+
+        /**
+         * @return largest value, NaN if there are none
+         */
+        public double getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile percentile between 0 & 100, ex. 50 for the median
+         * @return estimate of the value at the percentile within 1% of the
+         * true value, NaN if there are no values
+         */
+        public double getPercentile(double percentile) {
+            return sketch.getPercentile(percentile);
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Arrays;
+
+/**
+ * Sketch of a stream of doubles for estimating percentiles with a bounded
+ * relative error. Values are counted in logarithmically sized buckets, so a
+ * percentile is off by at most the relative accuracy of its true value no
+ * matter how many values are added. Counts are held in primitive arrays which
+ * only grow to span the range of the bucket indices seen.
+ *
+ * @author Lucas Wing
+ */
+class QuantileSketch {
+
+    private static final int INITIAL_BUCKETS = 64;
+
+    private final double gamma;
+
+    private final double logGamma;
+
+    private final Buckets positive;
+
+    private final Buckets negative;
+
+    private long zeroCount;
+
+    private long count;
+
+    /**
+     * @param relativeAccuracy max relative error of a percentile, ex. 0.01
+     */
+    QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 & 1");
+        }
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positive = new Buckets();
+        this.negative = new Buckets();
+    }
+
+    void add(double value) {
+        if (value > Double.MIN_NORMAL) {
+            positive.increment(calcIndex(value));
+        } else if (value < -Double.MIN_NORMAL) {
+            negative.increment(calcIndex(-value));
+        } else {
+            zeroCount++;
+        }
+        count++;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile percentile between 0 & 100
+     * @return estimate of the value at the percentile, NaN if empty
+     */
+    double getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 & 100");
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(percentile / 100 * (count - 1));
+        // negative values from the most negative up, then zeros, then positive values
+        long seen = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -calcValue(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return calcValue(positive.offset + i);
+            }
+        }
+        return calcValue(positive.offset + positive.counts.length - 1);
+    }
+
+    private int calcIndex(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    /**
+     * @return value in the middle of the bucket's bounds, relative to its size
+     */
+    private double calcValue(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private static class Buckets {
+
+        private long[] counts = new long[0];
+
+        // bucket index of counts[0]
+        private int offset;
+
+        private void increment(int index) {
+            if (counts.length == 0) {
+                counts = new long[INITIAL_BUCKETS];
+                offset = index - INITIAL_BUCKETS / 2;
+            } else if (index < offset) {
+                int grow = Math.max(offset - index, counts.length / 2);
+                long[] grown = new long[counts.length + grow];
+                System.arraycopy(counts, 0, grown, grow, counts.length);
+                counts = grown;
+                offset -= grow;
+            } else if (index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(index - offset + 1, counts.length + counts.length / 2));
+            }
+            counts[index - offset]++;
+        }
+
+    }
+
+}
@@ -6,8 +6,10 @@ package org.lwing.ofs.core.impl.feature;
 
 import org.lwing.ofs.core.api.feature.Feature;
 import org.lwing.ofs.core.api.config.OFSConfiguration;
+import org.lwing.ofs.core.api.property.Property;
 import org.lwing.ofs.core.impl.PropertyUtil;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
@@ -22,6 +24,10 @@ public class RepoFeature extends Feature {
     public RepoFeature(Vertex v, Optional<Set<String>> select, GraphTraversalSource g) {
         super((String) v.id(), deriveModelId(v), PropertyUtil.getProperties(v, select, g), calcInheritsFrom(v));
     }
+
+    RepoFeature(Vertex v, List<Property> properties) {
+        super((String) v.id(), deriveModelId(v), properties, calcInheritsFrom(v));
+    }
     
     private static String deriveModelId(Vertex v) {
         return (String) v.property(OFSConfiguration.MODEL_ID).value();
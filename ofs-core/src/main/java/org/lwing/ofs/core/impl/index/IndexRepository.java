@@ -32,6 +32,8 @@ import org.janusgraph.graphdb.database.management.ManagementSystem;
 import org.lwing.ofs.core.impl.lock.CloseableResourceLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
 
 /**
  *
@@ -92,6 +94,7 @@ public class IndexRepository extends OFSRepository {
             verifyNotReservedField(index.getName());
         }
         try ( CloseableResourceLock lock = acquireLock(index)) {
+            recordChange(ChangeType.CREATE, DependencyResource.fromIndex(index.getName()));
             IndexBuilder ib = mgmt.buildIndex(index.getName(), index.getFieldType().getElementType());
             for (Entry<String, Parameter[]> entry : index.getProperties().entrySet()) {
                 PropertyKey key = mgmt.getPropertyKey(entry.getKey());
@@ -147,11 +150,13 @@ public class IndexRepository extends OFSRepository {
      * @throws ExecutionException
      * @throws InternalKeywordException if the index name is considered an
      * internal index
+     * @throws IOException if the change log fails to store the removal
      */
-    public void removeIndex(String indexName) throws InterruptedException, ExecutionException, InternalKeywordException {
+    public void removeIndex(String indexName) throws InterruptedException, ExecutionException, InternalKeywordException, IOException {
         if (!config.isAllowInternalFieldActions()) {
             verifyNotReservedField(indexName);
         }
+        recordChange(ChangeType.DELETE, DependencyResource.fromIndex(indexName));
         // disable
         updateIndex(indexName, SchemaAction.DISABLE_INDEX);
         awaitIndexStatus(indexName, SchemaStatus.DISABLED);
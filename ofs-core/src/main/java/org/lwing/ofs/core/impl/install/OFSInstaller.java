@@ -30,9 +30,12 @@ import static java.util.Map.entry;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.EdgeLabel;
 import org.janusgraph.core.JanusGraph;
 import org.janusgraph.core.Multiplicity;
+import org.janusgraph.core.PropertyKey;
 import org.janusgraph.core.attribute.Geoshape;
 import org.janusgraph.core.schema.ConsistencyModifier;
 import org.janusgraph.core.schema.JanusGraphManagement;
@@ -52,6 +55,9 @@ public class OFSInstaller {
 
     private final IndexRepository indexRepository;
 
+    // vertex centric index of reference property edges by property name
+    public static final String REF_PROP_NAME_EDGE_INDEX = "_ref_prop_name_by_vertex";
+
     public OFSInstaller(JanusGraph graph, OFSConfiguration config, IndexRepository indexRepository) {
         this.graph = graph;
         this.config = config;
@@ -198,10 +204,15 @@ public class OFSInstaller {
                     .dataType(String.class).cardinality(Cardinality.SET).make());
             locker.lock(management.makePropertyKey(SchemaRepository.REFERENCE_PROPERTIES)
                     .dataType(String.class).cardinality(Cardinality.SET).make());
-            locker.lock(management.makePropertyKey(SchemaRepository.REF_PROP_NAME_EDGE_PROP)
-                    .dataType(String.class).cardinality(Cardinality.SET).make());
+            // only ever set on edges, which hold a single value per key, & vertex centric indices need single valued keys
+            PropertyKey refPropName = management.makePropertyKey(SchemaRepository.REF_PROP_NAME_EDGE_PROP)
+                    .dataType(String.class).cardinality(Cardinality.SINGLE).make();
+            locker.lock(refPropName);
             locker.lock(management.makeEdgeLabel(SchemaRepository.REF_SCHEMA_DEFALT_EDGE).multiplicity(Multiplicity.MULTI).make());
-            locker.lock(management.makeEdgeLabel(SchemaVertexRepository.REF_PROP_EDGE).multiplicity(Multiplicity.MULTI).make());
+            EdgeLabel refPropEdge = management.makeEdgeLabel(SchemaVertexRepository.REF_PROP_EDGE).multiplicity(Multiplicity.MULTI).make();
+            locker.lock(refPropEdge);
+            // lets a feature's references of a property be found without scanning all of its edges, in either direction
+            management.buildEdgeIndex(refPropEdge, REF_PROP_NAME_EDGE_INDEX, Direction.BOTH, refPropName);
             locker.lock(management.makeEdgeLabel(SchemaRepository.USED_SCHEMA_PROP_EDGE).multiplicity(Multiplicity.SIMPLE).make());
             // install model
             locker.lock(management.makeEdgeLabel(ModelRepository.MODEL_SCHEMA).multiplicity(Multiplicity.SIMPLE).make());
@@ -7,72 +7,122 @@ package org.lwing.ofs.core.impl.lock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import org.lwing.ofs.core.api.lock.ResourceLock;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Reentrant lock per resource. Resources are locked in sorted order so
+ * callers locking overlapping resources can't deadlock each other, & a
+ * caller waiting on a resource gives up once the holder has kept it locked
+ * past the max locked time, failing without holding any of its resources.
+ *
+ * A resource's lock is kept while anyone holds or waits on it, then dropped.
  *
  * @author Lucas Wing
  */
 public class ResourceLockImpl implements ResourceLock {
 
-    private final Map<String, ReentrantLock> lockMap;
-    private final Map<String, Instant> resourceToTimeLockedMap;
+    private final Map<String, LockEntry> lockMap;
     private final long maxLockedTimeSeconds;
 
     public ResourceLockImpl() {
-        this.lockMap = new ConcurrentHashMap<>();
-        this.resourceToTimeLockedMap = new ConcurrentHashMap<>();
-        this.maxLockedTimeSeconds = 120;
+        this(120L);
     }
 
     public ResourceLockImpl(Long maxLockedTimeSeconds) {
         this.lockMap = new ConcurrentHashMap<>();
-        this.resourceToTimeLockedMap = new ConcurrentHashMap<>();
         this.maxLockedTimeSeconds = maxLockedTimeSeconds;
     }
 
+    /**
+     * @throws IllegalStateException if a resource's holder kept it locked
+     * past the max locked time, or the caller was interrupted while waiting.
+     * None of the resources are left locked by the caller.
+     */
     @Override
-    public synchronized void acquireLocks(Set<String> resources) {
-        for (var resource : resources) {
-            ReentrantLock lock;
-            lock = lockMap.getOrDefault(resource, new ReentrantLock());
-            unlockIfPastMaxElapsedTime(resource, lock);
-            lock.lock(); // NOSONAR
-            lockMap.put(resource, lock);
-            resourceToTimeLockedMap.put(resource, Instant.now());
+    public void acquireLocks(Set<String> resources) {
+        Set<String> acquired = new HashSet<>();
+        for (var resource : new TreeSet<>(resources)) {
+            LockEntry entry = lockMap.compute(resource, (r, e) -> {
+                LockEntry out = e == null ? new LockEntry() : e;
+                out.users++;
+                return out;
+            });
+            if (!lockUntilExpired(entry)) {
+                removeUser(resource);
+                releaseLocks(acquired);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IllegalStateException(String.format("Interrupted waiting on the lock of [%s]", resource));
+                }
+                throw new IllegalStateException(String.format("Gave up waiting on the lock of [%s], its holder kept it past %ss",
+                        resource, maxLockedTimeSeconds));
+            }
+            entry.lockedTime = Instant.now();
+            acquired.add(resource);
         }
     }
 
     @Override
-    public synchronized void releaseLocks(Set<String> resources) {
+    public void releaseLocks(Set<String> resources) {
         for (var resource : resources) {
-            if (lockMap.containsKey(resource)) {
-                ReentrantLock lock = lockMap.get(resource);
-                lock.unlock();
-                lockMap.remove(resource);
-                resourceToTimeLockedMap.remove(resource);
+            LockEntry entry = lockMap.get(resource);
+            if (entry != null && entry.lock.isHeldByCurrentThread()) {
+                entry.lock.unlock();
+                removeUser(resource);
             }
         }
     }
-    
+
     protected boolean isResourceLocked(String resource) {
-        ReentrantLock lock = lockMap.getOrDefault(resource, new ReentrantLock());
-        unlockIfPastMaxElapsedTime(resource, lock);
-        return lock.isLocked();
+        LockEntry entry = lockMap.get(resource);
+        return entry != null && entry.lock.isLocked() && !isPastMaxElapsedTime(entry);
     }
 
-    private void unlockIfPastMaxElapsedTime(String resource, ReentrantLock lock) {
-        if (lock.isLocked()) {
-            Instant currentTime = Instant.now();
-            Instant lockedTime = resourceToTimeLockedMap.getOrDefault(resource, currentTime);
-            Long elapsedSeconds = ChronoUnit.SECONDS.between(lockedTime, currentTime);
-            if (elapsedSeconds > maxLockedTimeSeconds) {
-                lock.unlock();
+    boolean hasLockEntry(String resource) {
+        return lockMap.containsKey(resource);
+    }
+
+    /**
+     * @return true if the lock was acquired, false if the holder kept it past
+     * the max locked time
+     */
+    private boolean lockUntilExpired(LockEntry entry) {
+        try {
+            while (!entry.lock.tryLock(1, TimeUnit.SECONDS)) {
+                if (isPastMaxElapsedTime(entry)) {
+                    return false;
+                }
             }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
+    private void removeUser(String resource) {
+        lockMap.computeIfPresent(resource, (r, e) -> --e.users == 0 ? null : e);
+    }
+
+    private boolean isPastMaxElapsedTime(LockEntry entry) {
+        Instant lockedTime = entry.lockedTime;
+        return lockedTime != null && ChronoUnit.SECONDS.between(lockedTime, Instant.now()) > maxLockedTimeSeconds;
+    }
+
+    private static class LockEntry {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // callers holding or waiting on the lock, guarded by the lock map
+        private int users;
+
+        private volatile Instant lockedTime;
+
+    }
+
 }
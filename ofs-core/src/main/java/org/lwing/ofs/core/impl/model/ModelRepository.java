@@ -29,6 +29,7 @@ import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.janusgraph.core.JanusGraph;
 import org.lwing.ofs.core.api.schema.FeatureSchema;
 import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
 
 /**
  *
@@ -82,6 +83,7 @@ public class ModelRepository extends SchemaVertexRepository<Model> {
                     for (String parentModelId : model.getInheritsFromIds()) {
                         g.addE(EXTENDS_EDGE_ID).from(V(modelId)).to(V(parentModelId)).next();
                     }
+                    recordChange(ChangeType.CREATE, OFSType.MODEL, modelId);
                     // done & return
                     tx.commit();
                 }
@@ -162,6 +164,7 @@ public class ModelRepository extends SchemaVertexRepository<Model> {
                     try ( CloseableResourceLock lock2 = acquireLock(OFSType.FEATURE_SCHEMA, featureSchemaId)) {
                         deleteVertex(modelId, g);
                         featureSchemaRepo.deleteSchema(featureSchemaId, g);
+                        recordChange(ChangeType.DELETE, OFSType.MODEL, modelId);
                         tx.commit();
                     }
                 }
@@ -19,6 +19,8 @@ import java.util.List;
 import java.util.Optional;
 import org.janusgraph.core.JanusGraph;
 import org.lwing.ofs.core.api.JGMgntProvider;
+import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
 
 /**
  *
@@ -57,6 +59,7 @@ public class PropertyRepository extends OFSRepository {
      * @throws Exception generic JanusGraph exception
      */
     public void createProperty(RefPropertyKey property) throws InternalKeywordException, GraphIntegrityException, Exception {
+        recordPropertyChange(ChangeType.CREATE, OFSType.REF_PROPERTY, property.getName());
         refPropRepo.createProperty(property);
     }
 
@@ -69,6 +72,7 @@ public class PropertyRepository extends OFSRepository {
      * @throws Exception
      */
     public void createProperty(PrimitivePropertyKey property) throws GraphIntegrityException, Exception {
+        recordPropertyChange(ChangeType.CREATE, OFSType.PRIM_PROPERTY, property.getName());
         primPropRepo.createProperty(property);
     }
 
@@ -186,6 +190,7 @@ public class PropertyRepository extends OFSRepository {
      * @throws Exception generic JanusGraph exception
      */
     public String deleteProperty(String name) throws GraphIntegrityException, Exception {
+        recordPropertyChange(ChangeType.DELETE, OFSType.JPROPERTY, name);
         return primPropRepo.deleteProperty(name);
     }
 
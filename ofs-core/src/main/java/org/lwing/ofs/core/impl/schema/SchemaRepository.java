@@ -37,6 +37,7 @@ import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.apache.tinkerpop.gremlin.structure.VertexProperty;
 import org.janusgraph.core.JanusGraph;
 import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
 
 /**
  *
@@ -85,6 +86,7 @@ public abstract class SchemaRepository<E extends Schema> extends SearchableVerte
                 String schemaId;
                 // create
                 schemaId = createSchema(schema, g);
+                recordChange(ChangeType.CREATE, OFSType.getTypeFromClazz(schema.getClass()), schemaId);
                 // done
                 tx.commit();
                 return schemaId;
@@ -146,6 +148,7 @@ public abstract class SchemaRepository<E extends Schema> extends SearchableVerte
      * @throws Exception
      */
     protected void deleteSchema(String schemaId, OFSType type) throws GraphIntegrityException, Exception {
+        recordChange(ChangeType.DELETE, type, schemaId);
         deleteVertex(schemaId, type);
     }
     
@@ -5,16 +5,22 @@
 package org.lwing.ofs.core.impl.state;
 
 import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Callable;
 import org.lwing.ofs.core.api.config.OFSConfiguration;
 import org.lwing.ofs.core.api.exception.GraphIntegrityException;
 import org.lwing.ofs.core.api.exception.InternalException;
 import org.lwing.ofs.core.api.exception.InternalKeywordException;
+import org.lwing.ofs.core.api.state.ExportFilter;
 import org.lwing.ofs.core.api.state.GraphStateResponse;
+import org.lwing.ofs.core.api.state.ImportCacheProvider.ImportCache;
+import org.lwing.ofs.core.api.state.StateDiff;
 import org.lwing.ofs.core.impl.feature.FeatureRepository;
 import org.lwing.ofs.core.impl.index.IndexRepository;
 import org.lwing.ofs.core.impl.model.ModelRepository;
 import org.lwing.ofs.core.impl.model.ModelSchemaRepository;
 import org.lwing.ofs.core.impl.property.PropertyRepository;
+import org.lwing.ofs.core.impl.state.manager.DiffStateManager;
 import org.lwing.ofs.core.impl.state.manager.ExportStateManager;
 import org.lwing.ofs.core.impl.state.manager.ImportStateManager;
 import org.lwing.ofs.core.impl.state.storage.GraphStorage;
@@ -64,7 +70,9 @@ public class StateManager {
     }
 
     /**
-     * Exports all graph objects into a given path to a folder.
+     * Exports all graph objects into a given path to a folder. Changes made
+     * while the export runs are picked up from the configured change log so
+     * the export is self consistent.
      * This can later be used to re-assemble the graph via 
      * @see #importOFSState
      * 
@@ -74,18 +82,79 @@ public class StateManager {
      * @throws Exception
      */
     public GraphStateResponse exportOFSState(Path location) throws InternalException, Exception {
-        GraphStorage ofsGraphStorage = new GraphStorage(location, config.getGraphStorageProvider());
-        ExportStateManager exportStateManager = new ExportStateManager(
-                ofsGraphStorage,
-                indexRepository,
-                propertyRepository,
-                featureRepository,
-                modelRepository,
-                viewRepository,
-                modelSchemaRepository,
-                viewSchemaRepository
-        );
-        return exportStateManager.exportState();
+        try ( GraphStorage ofsGraphStorage = new GraphStorage(location, config.getGraphStorageProvider(), config.isContentAddressedStorage())) {
+            ExportStateManager exportStateManager = new ExportStateManager(
+                    ofsGraphStorage,
+                    indexRepository,
+                    propertyRepository,
+                    featureRepository,
+                    modelRepository,
+                    viewRepository,
+                    modelSchemaRepository,
+                    viewSchemaRepository
+            );
+            return exportStateManager.exportState(config.getChangeLog(), config.getExportThreads());
+        }
+    }
+
+    /**
+     * Exports the graph objects picked by the filter, along with every object
+     * they depend on, into a given path to a folder. The export can be
+     * imported on its own via
+     * @see #importOFSState
+     * 
+     * @param location place to export the graph state to, expected to be empty
+     * @param filter picks the objects to export
+     * @return
+     * @throws InternalException if the location already holds objects
+     * @throws Exception
+     */
+    public GraphStateResponse exportOFSState(Path location, ExportFilter filter) throws InternalException, Exception {
+        try ( GraphStorage ofsGraphStorage = new GraphStorage(location, config.getGraphStorageProvider(), config.isContentAddressedStorage())) {
+            ExportStateManager exportStateManager = new ExportStateManager(
+                    ofsGraphStorage,
+                    indexRepository,
+                    propertyRepository,
+                    featureRepository,
+                    modelRepository,
+                    viewRepository,
+                    modelSchemaRepository,
+                    viewSchemaRepository
+            );
+            return exportStateManager.exportState(filter);
+        }
+    }
+
+    /**
+     * Exports only the graph objects changed since the input time, along with
+     * tombstones for the objects deleted since then. Changes are read from the
+     * configured change log. Apply the delta on top of an earlier export via
+     * @see #importOFSStateDelta
+     * 
+     * @param location place to export the delta to
+     * @param since time of the earliest change to export, typically the time
+     * the previous export was started
+     * @return
+     * @throws InternalException if no change log is configured
+     * @throws Exception
+     */
+    public GraphStateResponse exportOFSStateDelta(Path location, Instant since) throws InternalException, Exception {
+        if (config.getChangeLog() == null) {
+            throw new InternalException("Delta exports need a change log to be configured");
+        }
+        try ( GraphStorage ofsGraphStorage = new GraphStorage(location, config.getGraphStorageProvider(), config.isContentAddressedStorage())) {
+            ExportStateManager exportStateManager = new ExportStateManager(
+                    ofsGraphStorage,
+                    indexRepository,
+                    propertyRepository,
+                    featureRepository,
+                    modelRepository,
+                    viewRepository,
+                    modelSchemaRepository,
+                    viewSchemaRepository
+            );
+            return exportStateManager.exportStateDelta(since, config.getChangeLog().readChangesSince(since));
+        }
     }
 
     /**
@@ -100,19 +169,86 @@ public class StateManager {
      * @throws Exception
      */
     public GraphStateResponse importOFSState(Path location) throws InternalException, GraphIntegrityException, InternalKeywordException, Exception {
-        GraphStorage ofsGraphStorage = new GraphStorage(location, config.getGraphStorageProvider());
-        ImportStateManager importStateManager = new ImportStateManager(
-                ofsGraphStorage,
-                indexRepository,
-                propertyRepository,
-                featureRepository,
-                modelRepository,
-                viewRepository,
-                modelSchemaRepository,
-                viewSchemaRepository,
-                config.getImportCacheProvider().getImportCache()
-        );
-        return importStateManager.importState();
+        try ( GraphStorage ofsGraphStorage = new GraphStorage(location, config.getGraphStorageProvider())) {
+            ImportCache importCache = config.getImportCacheProvider().getImportCache(location);
+            ImportStateManager importStateManager = new ImportStateManager(
+                    ofsGraphStorage,
+                    indexRepository,
+                    propertyRepository,
+                    featureRepository,
+                    modelRepository,
+                    viewRepository,
+                    modelSchemaRepository,
+                    viewSchemaRepository,
+                    importCache
+            );
+            return runImport(importStateManager::importState, importCache);
+        }
+    }
+
+    /**
+     * Applies a delta export from the specified folder path on top of the
+     * current graph state. The graph is expected to already hold the state the
+     * delta was taken from, such as an import of an earlier full export.
+     * @see #exportOFSStateDelta on how to export a delta.
+     * 
+     * @param location
+     * @return
+     * @throws InternalException if the location does not hold a delta
+     * @throws GraphIntegrityException
+     * @throws InternalKeywordException
+     * @throws Exception
+     */
+    public GraphStateResponse importOFSStateDelta(Path location) throws InternalException, GraphIntegrityException, InternalKeywordException, Exception {
+        try ( GraphStorage ofsGraphStorage = new GraphStorage(location, config.getGraphStorageProvider())) {
+            ImportCache importCache = config.getImportCacheProvider().getImportCache(location);
+            ImportStateManager importStateManager = new ImportStateManager(
+                    ofsGraphStorage,
+                    indexRepository,
+                    propertyRepository,
+                    featureRepository,
+                    modelRepository,
+                    viewRepository,
+                    modelSchemaRepository,
+                    viewSchemaRepository,
+                    importCache
+            );
+            return runImport(importStateManager::importStateDelta, importCache);
+        }
+    }
+
+    /**
+     * Compares two exported states without importing them. Each object is
+     * compared field by field, objects are read one pair at a time so neither
+     * state is loaded into memory.
+     * 
+     * @param from location of the earlier state
+     * @param to location of the later state
+     * @return objects added, removed & changed going from one state to the
+     * other, per type of object
+     * @throws Exception if either state fails to read
+     */
+    public StateDiff diff(Path from, Path to) throws Exception {
+        try ( GraphStorage fromStorage = new GraphStorage(from, config.getGraphStorageProvider());
+                GraphStorage toStorage = new GraphStorage(to, config.getGraphStorageProvider())) {
+            return new DiffStateManager(fromStorage, toStorage).diff(config.getExportThreads());
+        }
+    }
+
+    /**
+     * Runs an import, deleting its cache once the import finishes. If the
+     * import throws, the cache is kept so a persistent cache can resume the
+     * import of the same location.
+     */
+    private GraphStateResponse runImport(Callable<GraphStateResponse> run, ImportCache importCache) throws Exception {
+        GraphStateResponse response;
+        try {
+            response = run.call();
+        } finally {
+            importCache.close();
+        }
+        config.getImportCacheProvider().deleteImportCache(importCache);
+        return response;
     }
 
 }
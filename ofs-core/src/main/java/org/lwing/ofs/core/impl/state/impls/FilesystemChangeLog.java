@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.impls;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.StringUtils;
+import org.lwing.ofs.core.api.state.ChangeLog;
+import org.lwing.ofs.core.api.state.DependencyResource;
+
+/**
+ * Change log appended to a file, one change per line in the form
+ * timestamp|type|resource. The file is kept open for appends & each change
+ * is synced to disk before the mutation it records commits. Changes are kept
+ * until truncated, or for the retention if one is given.
+ *
+ * @author Lucas Wing
+ */
+public class FilesystemChangeLog implements ChangeLog, Closeable {
+
+    private static final String SEP = "|";
+
+    // changes recorded between drops of the changes past the retention
+    private static final int COMPACT_INTERVAL = 10000;
+
+    private final Path logFile;
+
+    // how long changes are kept, null to keep them until truncated
+    private final Duration retention;
+
+    // open for appends, null until the first change or after a truncate
+    private FileChannel channel;
+
+    private int recordedSinceCompact;
+
+    public FilesystemChangeLog(Path logFile) {
+        this(logFile, null);
+    }
+
+    public FilesystemChangeLog(Path logFile, Duration retention) {
+        this.logFile = logFile;
+        this.retention = retention;
+    }
+
+    @Override
+    public synchronized void recordChange(ChangeType type, DependencyResource resource) throws IOException {
+        long now = System.currentTimeMillis();
+        if (retention != null && recordedSinceCompact++ >= COMPACT_INTERVAL) {
+            truncateBefore(Instant.ofEpochMilli(now).minus(retention));
+        }
+        if (channel == null) {
+            channel = FileChannel.open(logFile, StandardOpenOption.APPEND, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+        }
+        String line = now + SEP + type.name() + SEP + resource.getResource() + System.lineSeparator();
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized List<ChangeEntry> readChangesSince(Instant since) throws IOException {
+        List<ChangeEntry> changes = new ArrayList<>();
+        if (!logFile.toFile().exists()) {
+            return changes;
+        }
+        long sinceMillis = since.toEpochMilli();
+        try ( Stream<String> stream = Files.lines(logFile, StandardCharsets.UTF_8)) {
+            stream.filter(StringUtils::isNotBlank).forEach(line -> {
+                String[] parts = StringUtils.split(line, SEP, 3);
+                long timestamp = Long.parseLong(parts[0]);
+                if (timestamp >= sinceMillis) {
+                    changes.add(new ChangeEntry(timestamp, ChangeType.valueOf(parts[1]), parts[2]));
+                }
+            });
+        }
+        return changes;
+    }
+
+    /**
+     * Rewrites the log without the changes recorded before the input time,
+     * swapping the rewritten log in atomically
+     */
+    @Override
+    public synchronized void truncateBefore(Instant before) throws IOException {
+        recordedSinceCompact = 0;
+        if (!logFile.toFile().exists()) {
+            return;
+        }
+        close();
+        long beforeMillis = before.toEpochMilli();
+        Path tmpFile = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try ( Stream<String> stream = Files.lines(logFile, StandardCharsets.UTF_8);  BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            for (String line : (Iterable<String>) stream::iterator) {
+                if (StringUtils.isNotBlank(line) && Long.parseLong(StringUtils.split(line, SEP, 2)[0]) >= beforeMillis) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(tmpFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.impls;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import org.lwing.ofs.core.api.state.ImportCacheProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Import cache persisted to disk so an import which dies part way through can
+ * be resumed. Each import location gets its own cache in the cache folder.
+ *
+ * Resources are stored as 128 bit fingerprints, which keeps the in memory
+ * lookup table small for imports of millions of objects. New fingerprints are
+ * appended to a log which is synced to disk every checkpoint interval, and the
+ * log is periodically compacted into a snapshot of the whole table.
+ *
+ * @author Lucas Wing
+ */
+public class FilesystemImportCacheProvider implements ImportCacheProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilesystemImportCacheProvider.class);
+
+    private static final String LOG_EXT = ".log";
+
+    private static final String SNAPSHOT_EXT = ".idx";
+
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    private static final int DEFAULT_COMPACTION_INTERVAL = 100000;
+
+    private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+
+    private final Path cacheFolder;
+
+    // number of stored resources between syncs of the log to disk
+    private final int checkpointInterval;
+
+    // number of stored resources between compactions of the log into the snapshot
+    private final int compactionInterval;
+
+    public FilesystemImportCacheProvider(Path cacheFolder) {
+        this(cacheFolder, DEFAULT_CHECKPOINT_INTERVAL, DEFAULT_COMPACTION_INTERVAL);
+    }
+
+    public FilesystemImportCacheProvider(Path cacheFolder, int checkpointInterval, int compactionInterval) {
+        this.cacheFolder = cacheFolder;
+        this.checkpointInterval = checkpointInterval;
+        this.compactionInterval = compactionInterval;
+    }
+
+    /**
+     * Since a cache is only resumable when it's tied to an import location,
+     * this cache is named randomly and will never be resumed.
+     *
+     * @return cache for an import
+     */
+    @Override
+    public ImportCache getImportCache() {
+        try {
+            return new FilesystemImportCache(UUID.randomUUID().toString().replace("-", ""));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to open import cache in " + cacheFolder, ex);
+        }
+    }
+
+    @Override
+    public ImportCache getImportCache(Path stateLocation) throws IOException {
+        String name = UUID.nameUUIDFromBytes(stateLocation.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+        return new FilesystemImportCache(name);
+    }
+
+    @Override
+    public void deleteImportCache(ImportCache cache) {
+        FilesystemImportCache fsCache = (FilesystemImportCache) cache;
+        try {
+            fsCache.close();
+            Files.deleteIfExists(fsCache.logFile);
+            Files.deleteIfExists(fsCache.snapshotFile);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to delete import cache {}", fsCache.logFile, ex);
+        }
+    }
+
+    class FilesystemImportCache implements ImportCache {
+
+        private final Path logFile;
+
+        private final Path snapshotFile;
+
+        private final FingerprintSet fingerprints;
+
+        private FileChannel log;
+
+        private final ByteBuffer record;
+
+        private int sinceCheckpoint;
+
+        private int sinceCompaction;
+
+        public FilesystemImportCache(String name) throws IOException {
+            Files.createDirectories(cacheFolder);
+            this.logFile = cacheFolder.resolve(name + LOG_EXT);
+            this.snapshotFile = cacheFolder.resolve(name + SNAPSHOT_EXT);
+            this.fingerprints = new FingerprintSet();
+            this.record = ByteBuffer.allocate(FingerprintSet.RECORD_BYTES).order(ByteOrder.BIG_ENDIAN);
+            loadSnapshot();
+            this.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replayLog();
+            if (fingerprints.size() > 0) {
+                LOGGER.info("Resuming import with {} resources already imported", fingerprints.size());
+            }
+        }
+
+        @Override
+        public synchronized void storeResource(String resource) throws IOException {
+            HashCode hash = FINGERPRINT.hashString(resource, StandardCharsets.UTF_8);
+            ByteBuffer bytes = ByteBuffer.wrap(hash.asBytes());
+            long hi = bytes.getLong();
+            long lo = bytes.getLong();
+            if (!fingerprints.add(hi, lo)) {
+                return;
+            }
+            record.clear();
+            record.putLong(hi).putLong(lo).flip();
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+            if (++sinceCheckpoint >= checkpointInterval) {
+                log.force(false);
+                sinceCheckpoint = 0;
+            }
+            if (++sinceCompaction >= compactionInterval) {
+                compact();
+            }
+        }
+
+        @Override
+        public synchronized boolean containsResource(String resource) {
+            ByteBuffer bytes = ByteBuffer.wrap(FINGERPRINT.hashString(resource, StandardCharsets.UTF_8).asBytes());
+            return fingerprints.contains(bytes.getLong(), bytes.getLong());
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (log.isOpen()) {
+                log.force(false);
+                log.close();
+            }
+        }
+
+        /**
+         * Writes the full table to the snapshot then empties the log. A crash
+         * between the two only leaves duplicates in the log, which are ignored
+         * on replay.
+         */
+        private void compact() throws IOException {
+            Path tmpSnapshot = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpSnapshot)))) {
+                fingerprints.write(out);
+            }
+            try ( FileChannel tmp = FileChannel.open(tmpSnapshot, StandardOpenOption.WRITE)) {
+                tmp.force(true);
+            }
+            Files.move(tmpSnapshot, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.truncate(0);
+            log.position(0);
+            log.force(true);
+            sinceCheckpoint = 0;
+            sinceCompaction = 0;
+        }
+
+        private void loadSnapshot() throws IOException {
+            if (!Files.exists(snapshotFile)) {
+                return;
+            }
+            try ( DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+                while (true) {
+                    long hi;
+                    try {
+                        hi = in.readLong();
+                    } catch (EOFException ex) {
+                        break;
+                    }
+                    fingerprints.add(hi, in.readLong());
+                }
+            }
+        }
+
+        private void replayLog() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(FingerprintSet.RECORD_BYTES * 4096);
+            long readPosition = 0;
+            long validEnd = 0;
+            int read;
+            while ((read = log.read(buffer, readPosition)) > 0) {
+                readPosition += read;
+                buffer.flip();
+                while (buffer.remaining() >= FingerprintSet.RECORD_BYTES) {
+                    fingerprints.add(buffer.getLong(), buffer.getLong());
+                    validEnd += FingerprintSet.RECORD_BYTES;
+                }
+                buffer.compact();
+            }
+            // drop a partially written record left by a crash
+            log.truncate(validEnd);
+            log.position(validEnd);
+        }
+
+    }
+
+    /**
+     * Open addressing hash set of 128 bit fingerprints, stored as pairs of
+     * longs in a single array.
+     */
+    private static class FingerprintSet {
+
+        private static final int RECORD_BYTES = 2 * Long.BYTES;
+
+        private long[] table;
+
+        private int size;
+
+        public FingerprintSet() {
+            this.table = new long[2 * 1024];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(long hi, long lo) {
+            lo = normalize(hi, lo);
+            int mask = capacity() - 1;
+            for (int slot = slot(hi, mask);; slot = (slot + 1) & mask) {
+                long slotHi = table[2 * slot];
+                long slotLo = table[2 * slot + 1];
+                if (slotHi == 0 && slotLo == 0) {
+                    return false;
+                }
+                if (slotHi == hi && slotLo == lo) {
+                    return true;
+                }
+            }
+        }
+
+        public boolean add(long hi, long lo) {
+            if (2 * (size + 1) > capacity()) {
+                resize();
+            }
+            if (!insert(table, hi, normalize(hi, lo))) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        public void write(DataOutputStream out) throws IOException {
+            for (int i = 0; i < table.length; i += 2) {
+                if (table[i] != 0 || table[i + 1] != 0) {
+                    out.writeLong(table[i]);
+                    out.writeLong(table[i + 1]);
+                }
+            }
+        }
+
+        private int capacity() {
+            return table.length / 2;
+        }
+
+        private void resize() {
+            long[] newTable = new long[table.length * 2];
+            for (int i = 0; i < table.length; i += 2) {
+                if (table[i] != 0 || table[i + 1] != 0) {
+                    insert(newTable, table[i], table[i + 1]);
+                }
+            }
+            table = newTable;
+        }
+
+        private static boolean insert(long[] into, long hi, long lo) {
+            int mask = into.length / 2 - 1;
+            for (int slot = slot(hi, mask);; slot = (slot + 1) & mask) {
+                long slotHi = into[2 * slot];
+                long slotLo = into[2 * slot + 1];
+                if (slotHi == 0 && slotLo == 0) {
+                    into[2 * slot] = hi;
+                    into[2 * slot + 1] = lo;
+                    return true;
+                }
+                if (slotHi == hi && slotLo == lo) {
+                    return false;
+                }
+            }
+        }
+
+        private static int slot(long hi, int mask) {
+            return (int) (hi ^ (hi >>> 32)) & mask;
+        }
+
+        // all zeros marks an empty slot
+        private static long normalize(long hi, long lo) {
+            return hi == 0 && lo == 0 ? 1 : lo;
+        }
+
+    }
+
+}
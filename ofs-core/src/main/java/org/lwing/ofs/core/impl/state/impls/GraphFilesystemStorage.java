@@ -4,8 +4,12 @@
  */
 package org.lwing.ofs.core.impl.state.impls;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -43,6 +47,22 @@ public class GraphFilesystemStorage implements GraphStorageSystem {
         return Files.readString(location);
     }
 
+    @Override
+    public OutputStream openFileOutputStream(Path location) throws IOException {
+        Files.createDirectories(location.getParent());
+        return new BufferedOutputStream(Files.newOutputStream(location));
+    }
+
+    @Override
+    public InputStream openFileInputStream(Path location) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(location));
+    }
+
+    @Override
+    public boolean deleteFile(Path location) throws IOException {
+        return Files.deleteIfExists(location);
+    }
+
     @Override
     public ResourceToIdStore getResourceToFileIdStore(Path location) throws IOException {
         return new ResourceToIdFilesystemStore(location);
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.impls;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import org.lwing.ofs.core.api.state.ChangeLog;
+import org.lwing.ofs.core.api.state.DependencyResource;
+
+/**
+ * Change log held in memory, it is lost when the OpenFeatureStore is. Use
+ * {@link FilesystemChangeLog} to keep changes between restarts. Changes are
+ * kept until truncated, or for the retention if one is given.
+ *
+ * @author Lucas Wing
+ */
+public class MemoryChangeLog implements ChangeLog {
+
+    // oldest change first
+    private final Deque<ChangeEntry> changes;
+
+    // how long changes are kept, null to keep them until truncated
+    private final Duration retention;
+
+    public MemoryChangeLog() {
+        this(null);
+    }
+
+    public MemoryChangeLog(Duration retention) {
+        this.changes = new ArrayDeque<>();
+        this.retention = retention;
+    }
+
+    @Override
+    public synchronized void recordChange(ChangeType type, DependencyResource resource) {
+        long now = System.currentTimeMillis();
+        changes.addLast(new ChangeEntry(now, type, resource.getResource()));
+        if (retention != null) {
+            truncateBefore(Instant.ofEpochMilli(now).minus(retention));
+        }
+    }
+
+    @Override
+    public synchronized List<ChangeEntry> readChangesSince(Instant since) {
+        // changes are in time order, so only walk back over the ones being returned
+        long sinceMillis = since.toEpochMilli();
+        List<ChangeEntry> out = new ArrayList<>();
+        Iterator<ChangeEntry> newestFirst = changes.descendingIterator();
+        while (newestFirst.hasNext()) {
+            ChangeEntry change = newestFirst.next();
+            if (change.getTimestamp() < sinceMillis) {
+                break;
+            }
+            out.add(change);
+        }
+        Collections.reverse(out);
+        return out;
+    }
+
+    @Override
+    public synchronized void truncateBefore(Instant before) {
+        long beforeMillis = before.toEpochMilli();
+        while (!changes.isEmpty() && changes.peekFirst().getTimestamp() < beforeMillis) {
+            changes.removeFirst();
+        }
+    }
+
+}
@@ -4,63 +4,435 @@
  */
 package org.lwing.ofs.core.impl.state.impls;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.stream.Stream;
-import org.apache.commons.collections.BidiMap;
-import org.apache.commons.collections.bidimap.DualHashBidiMap;
-import org.apache.commons.lang3.StringUtils;
 import org.lwing.ofs.core.api.state.ResourceToIdStore;
 
 /**
+ * Stores the resource to file id mappings as resource=fileId lines in
+ * resToField.properties.
+ *
+ * Lines are appended through a write buffer which is flushed when full, when a
+ * lookup needs a buffered line, and on flush/close. Rather than holding every
+ * mapping as Strings, each direction is indexed by an off-heap open addressing
+ * table of (key hash, line offset) slots, and the line is read back from the
+ * file to confirm the key and get the value. This keeps the heap flat no matter
+ * how many objects an export has. Like a bidirectional map, re-mapping a
+ * resource or file id drops the mapping it replaces from both directions. A
+ * removed resource is appended as a resource= line with no file id.
  *
  * @author Lucas Wing
  */
 public class ResourceToIdFilesystemStore implements ResourceToIdStore {
 
-    private final BidiMap resourceToFileSafeIdMap;
+    private static final String RESOURCE_TO_FILE_FILE = "resToField.properties";
+
+    private static final byte KEY_VAL_SEP = '=';
+
+    private static final byte LINE_END = '\n';
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private static final HashFunction KEY_HASH = Hashing.murmur3_128();
 
     private final Path resToFieldPath;
 
-    private static final String RESOURCE_TO_FILE_FILE = "resToField.properties";
+    // resource -> line
+    private final OffsetTable resourceIndex;
+
+    // file id -> line
+    private final OffsetTable fileIdIndex;
 
-    private static final String KEY_VAL_SEP = "=";
+    private final ByteBuffer writeBuffer;
+
+    private ByteBuffer readBuffer;
+
+    private FileChannel channel;
+
+    private boolean channelWritable;
+
+    // bytes written to the file, lines past this are still in the write buffer
+    private long flushedSize;
 
     public ResourceToIdFilesystemStore(Path location) throws IOException {
         this.resToFieldPath = location.resolve(RESOURCE_TO_FILE_FILE);
-        this.resourceToFileSafeIdMap = initializeResourceCache();
+        this.resourceIndex = new OffsetTable();
+        this.fileIdIndex = new OffsetTable();
+        this.writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        this.readBuffer = ByteBuffer.allocate(512);
+        this.flushedSize = 0;
+        initializeResourceIndex();
     }
 
     @Override
-    public void storeResourceToFileSafeId(String resource, String fileSafeId) throws IOException {
-        String input = resource + KEY_VAL_SEP + fileSafeId + System.lineSeparator();
-        Files.writeString(resToFieldPath, input, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+    public synchronized void storeResourceToFileSafeId(String resource, String fileSafeId) throws IOException {
+        if (fileSafeId.equals(getFileSafeIdFromResource(resource))) {
+            return;
+        }
+        byte[] line = (resource + (char) KEY_VAL_SEP + fileSafeId + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        long offset = flushedSize + writeBuffer.position();
+        if (line.length > writeBuffer.remaining()) {
+            flush();
+            offset = flushedSize;
+        }
+        if (line.length > writeBuffer.capacity()) {
+            writeFully(ByteBuffer.wrap(line));
+        } else {
+            writeBuffer.put(line);
+        }
+        indexMapping(resource, fileSafeId, offset);
     }
 
     @Override
-    public String getResourceFromFileSafeId(String fileSafeId) {
-        return (String) this.resourceToFileSafeIdMap.inverseBidiMap().getOrDefault(fileSafeId, null);
+    public synchronized void removeResource(String resource) throws IOException {
+        if (getFileSafeIdFromResource(resource) == null) {
+            return;
+        }
+        byte[] line = (resource + (char) KEY_VAL_SEP + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        if (line.length > writeBuffer.remaining()) {
+            flush();
+        }
+        if (line.length > writeBuffer.capacity()) {
+            writeFully(ByteBuffer.wrap(line));
+        } else {
+            writeBuffer.put(line);
+        }
+        unindexMapping(resource);
+    }
+
+    @Override
+    public synchronized String getResourceFromFileSafeId(String fileSafeId) throws IOException {
+        String[] line = findLine(fileIdIndex, fileSafeId, false);
+        return line == null ? null : line[0];
+    }
+
+    @Override
+    public synchronized String getFileSafeIdFromResource(String resource) throws IOException {
+        String[] line = findLine(resourceIndex, resource, true);
+        return line == null ? null : line[1];
     }
 
     @Override
-    public String getFileSafeIdFromResource(String resource) {
-        return (String) this.resourceToFileSafeIdMap.getOrDefault(resource, null);
+    public synchronized void flush() throws IOException {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        writeFully(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
     }
 
-    private BidiMap initializeResourceCache() throws IOException {
-        BidiMap resMap = new DualHashBidiMap();
-        if (resToFieldPath.toFile().exists()) {
-            try ( Stream<String> stream = Files.lines(resToFieldPath)) {
-                stream.forEach(line -> {
-                    String resource = StringUtils.substringBeforeLast(line, KEY_VAL_SEP);
-                    String fileId = StringUtils.substringAfterLast(line, KEY_VAL_SEP);
-                    resMap.put(resource, fileId);
-                });
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        FileChannel out = openChannel(true);
+        while (bytes.hasRemaining()) {
+            flushedSize += out.write(bytes, flushedSize);
+        }
+    }
+
+    /**
+     * Indexes the line at the offset, first dropping the mappings of the
+     * resource's previous file id & the file id's previous resource
+     */
+    private void indexMapping(String resource, String fileSafeId, long offset) throws IOException {
+        String[] oldResourceLine = findLine(resourceIndex, resource, true);
+        if (oldResourceLine != null && !oldResourceLine[1].equals(fileSafeId)) {
+            removeOffset(fileIdIndex, oldResourceLine[1], false);
+        }
+        String[] oldFileIdLine = findLine(fileIdIndex, fileSafeId, false);
+        if (oldFileIdLine != null && !oldFileIdLine[0].equals(resource)) {
+            removeOffset(resourceIndex, oldFileIdLine[0], true);
+        }
+        putOffset(resourceIndex, resource, offset, true);
+        putOffset(fileIdIndex, fileSafeId, offset, false);
+    }
+
+    /**
+     * Drops the mapping of the resource from both directions
+     */
+    private void unindexMapping(String resource) throws IOException {
+        String[] oldResourceLine = findLine(resourceIndex, resource, true);
+        if (oldResourceLine != null) {
+            removeOffset(fileIdIndex, oldResourceLine[1], false);
+            removeOffset(resourceIndex, resource, true);
+        }
+    }
+
+    private void putOffset(OffsetTable table, String key, long offset, boolean keyIsResource) throws IOException {
+        long hash = hash(key);
+        for (int slot = table.firstSlot(hash);; slot = table.nextSlot(slot)) {
+            long slotOffset = table.offsetAt(slot);
+            if (slotOffset == OffsetTable.EMPTY) {
+                table.set(slot, hash, offset);
+                table.grew();
+                return;
+            }
+            // removed slots are left in place so the keys probed past them are still found
+            if (slotOffset == OffsetTable.REMOVED) {
+                continue;
+            }
+            if (table.hashAt(slot) == hash && key.equals(readLine(slotOffset)[keyIsResource ? 0 : 1])) {
+                // key was re-mapped, latest line wins
+                table.set(slot, hash, offset);
+                return;
             }
         }
-        return resMap;
+    }
+
+    private void removeOffset(OffsetTable table, String key, boolean keyIsResource) throws IOException {
+        int slot = findSlot(table, key, keyIsResource);
+        if (slot >= 0) {
+            table.set(slot, table.hashAt(slot), OffsetTable.REMOVED);
+        }
+    }
+
+    private String[] findLine(OffsetTable table, String key, boolean keyIsResource) throws IOException {
+        int slot = findSlot(table, key, keyIsResource);
+        return slot < 0 ? null : readLine(table.offsetAt(slot));
+    }
+
+    /**
+     * @return slot holding the key, -1 if the key isn't in the table
+     */
+    private int findSlot(OffsetTable table, String key, boolean keyIsResource) throws IOException {
+        long hash = hash(key);
+        for (int slot = table.firstSlot(hash);; slot = table.nextSlot(slot)) {
+            long slotOffset = table.offsetAt(slot);
+            if (slotOffset == OffsetTable.EMPTY) {
+                return -1;
+            }
+            if (slotOffset != OffsetTable.REMOVED && table.hashAt(slot) == hash
+                    && key.equals(readLine(slotOffset)[keyIsResource ? 0 : 1])) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * @return the line at the offset split into {resource, fileId}
+     */
+    private String[] readLine(long offset) throws IOException {
+        if (offset >= flushedSize) {
+            flush();
+        }
+        FileChannel in = openChannel(false);
+        readBuffer.clear();
+        while (true) {
+            int read = in.read(readBuffer, offset + readBuffer.position());
+            int end = indexOf(readBuffer, LINE_END);
+            if (end >= 0 || read <= 0) {
+                return splitLine(readBuffer.array(), 0, end >= 0 ? end : readBuffer.position());
+            }
+            if (!readBuffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                bigger.put(readBuffer);
+                readBuffer = bigger;
+            }
+        }
+    }
+
+    private void initializeResourceIndex() throws IOException {
+        if (!resToFieldPath.toFile().exists()) {
+            return;
+        }
+        FileChannel in = openChannel(false);
+        flushedSize = in.size();
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+        long position = 0;
+        while (position < flushedSize) {
+            buffer.clear();
+            int read = in.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == LINE_END) {
+                    indexLine(bytes, lineStart, i, position + lineStart);
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart == 0 && read == buffer.capacity()) {
+                // line is longer than the buffer, grow & re-read
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            } else if (lineStart == 0 || position + read >= flushedSize) {
+                // last line without a line end
+                indexLine(bytes, lineStart, read, position + lineStart);
+                position += read;
+            } else {
+                position += lineStart;
+            }
+        }
+    }
+
+    private void indexLine(byte[] bytes, int start, int end, long offset) throws IOException {
+        if (end <= start) {
+            return;
+        }
+        String[] line = splitLine(bytes, start, end);
+        if (line[0].isEmpty()) {
+            return;
+        }
+        if (line[1].isEmpty()) {
+            // removed resource
+            unindexMapping(line[0]);
+            return;
+        }
+        indexMapping(line[0], line[1], offset);
+    }
+
+    private FileChannel openChannel(boolean forWrite) throws IOException {
+        if (channel != null && (channelWritable || !forWrite)) {
+            return channel;
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        if (forWrite) {
+            Files.createDirectories(resToFieldPath.getParent());
+            channel = FileChannel.open(resToFieldPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            channel = FileChannel.open(resToFieldPath, StandardOpenOption.READ);
+        }
+        channelWritable = forWrite;
+        return channel;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < buffer.position(); i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] splitLine(byte[] bytes, int start, int end) {
+        // handle lines written with a windows line separator
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        int sep = -1;
+        for (int i = end - 1; i >= start; i--) {
+            if (bytes[i] == KEY_VAL_SEP) {
+                sep = i;
+                break;
+            }
+        }
+        if (sep < 0) {
+            return new String[]{"", ""};
+        }
+        return new String[]{
+            new String(bytes, start, sep - start, StandardCharsets.UTF_8),
+            new String(bytes, sep + 1, end - sep - 1, StandardCharsets.UTF_8)
+        };
+    }
+
+    private static long hash(String key) {
+        return KEY_HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * Off-heap open addressing table of (hash, offset) slots. An offset of -1
+     * marks an empty slot & -2 a removed one.
+     */
+    private static class OffsetTable {
+
+        private static final int SLOT_BYTES = 2 * Long.BYTES;
+
+        private static final long EMPTY = -1;
+
+        private static final long REMOVED = -2;
+
+        private ByteBuffer slots;
+
+        private int capacity;
+
+        private int size;
+
+        public OffsetTable() {
+            allocate(1024);
+        }
+
+        public int firstSlot(long hash) {
+            return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+        }
+
+        public int nextSlot(int slot) {
+            return (slot + 1) & (capacity - 1);
+        }
+
+        public long hashAt(int slot) {
+            return slots.getLong(slot * SLOT_BYTES);
+        }
+
+        public long offsetAt(int slot) {
+            return slots.getLong(slot * SLOT_BYTES + Long.BYTES);
+        }
+
+        public void set(int slot, long hash, long offset) {
+            slots.putLong(slot * SLOT_BYTES, hash);
+            slots.putLong(slot * SLOT_BYTES + Long.BYTES, offset);
+        }
+
+        /**
+         * Called after a new key is added, rehashes the table past 60% load of
+         * used & removed slots, dropping the removed ones
+         */
+        public void grew() {
+            size++;
+            if (size * 10L < capacity * 6L) {
+                return;
+            }
+            ByteBuffer oldSlots = slots;
+            int oldCapacity = capacity;
+            int live = 0;
+            for (int i = 0; i < oldCapacity; i++) {
+                if (oldSlots.getLong(i * SLOT_BYTES + Long.BYTES) >= 0) {
+                    live++;
+                }
+            }
+            allocate(live * 10L >= capacity * 3L ? capacity * 2 : capacity);
+            size = live;
+            for (int i = 0; i < oldCapacity; i++) {
+                long offset = oldSlots.getLong(i * SLOT_BYTES + Long.BYTES);
+                if (offset >= 0) {
+                    long hash = oldSlots.getLong(i * SLOT_BYTES);
+                    int slot = firstSlot(hash);
+                    while (offsetAt(slot) != EMPTY) {
+                        slot = nextSlot(slot);
+                    }
+                    set(slot, hash, offset);
+                }
+            }
+        }
+
+        private void allocate(int newCapacity) {
+            this.capacity = newCapacity;
+            this.slots = ByteBuffer.allocateDirect(newCapacity * SLOT_BYTES);
+            for (int i = 0; i < newCapacity; i++) {
+                slots.putLong(i * SLOT_BYTES + Long.BYTES, EMPTY);
+            }
+        }
+
     }
 
 }
@@ -4,8 +4,8 @@
  */
 package org.lwing.ofs.core.impl.state.manager;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.lwing.ofs.core.impl.feature.FeatureRepository;
 import org.lwing.ofs.core.impl.index.IndexRepository;
 import org.lwing.ofs.core.impl.model.ModelRepository;
@@ -57,7 +57,8 @@ public abstract class AbsStateManager {
         this.modelSchemaRepository = modelSchemaRepository;
         this.viewSchemaRepository = viewSchemaRepository;
         this.ofsGraphStorage = ofsGraphStorage;
-        this.failedResources = new HashSet<>();
+        // export reads the graph from several threads
+        this.failedResources = ConcurrentHashMap.newKeySet();
     }
 
 }
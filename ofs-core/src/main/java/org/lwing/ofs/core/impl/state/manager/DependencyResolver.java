@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.manager;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.lwing.ofs.core.api.PropertiesVertex;
+import org.lwing.ofs.core.api.config.OFSConfiguration;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.StatefulResource;
+import org.lwing.ofs.core.impl.property.PropertyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Works out everything an exported object needs to exist before it can be
+ * imported. On top of {@link StatefulResource#calcDependencies()} this adds
+ * the properties set on the object, the features its ref properties point to,
+ * and resolves JProperty dependencies to the actual primitive or ref property.
+ *
+ * @author Lucas Wing
+ */
+public class DependencyResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DependencyResolver.class);
+
+    private final PropertyRepository propertyRepository;
+
+    // property name -> actual type of the property
+    private final Map<String, Optional<OFSType>> propertyTypes;
+
+    public DependencyResolver(PropertyRepository propertyRepository) {
+        this.propertyRepository = propertyRepository;
+        this.propertyTypes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param obj object to find the dependencies of
+     * @return resolved dependencies of the object, not including itself
+     * @throws Exception generic JanusGraph exception
+     */
+    public Set<DependencyResource> resolve(StatefulResource obj) throws Exception {
+        DependencyResource self = obj.calcResource();
+        Set<DependencyResource> out = new LinkedHashSet<>();
+        for (DependencyResource dep : obj.calcDependencies()) {
+            if (dep.getOfsType() == OFSType.JPROPERTY) {
+                addProperty(dep.getName(), null, self, out);
+            } else {
+                out.add(dep);
+            }
+        }
+        if (obj instanceof PropertiesVertex propsVertex && propsVertex.getProperties() != null) {
+            addProperties(propsVertex.getProperties(), self, out);
+        }
+        if (obj instanceof Model model && model.getFeatureSchema() != null) {
+            for (String name : model.getFeatureSchema().getPropertyKeys()) {
+                addProperty(name, null, self, out);
+            }
+            addProperties(model.getFeatureSchema().getDefaultProperties(), self, out);
+        }
+        out.removeIf(dep -> dep.getResource().equals(self.getResource()));
+        return out;
+    }
+
+    private void addProperties(List<Property> props, DependencyResource self, Set<DependencyResource> out) throws Exception {
+        for (Property prop : props) {
+            addProperty(prop.getName(), prop.getValue(), self, out);
+        }
+    }
+
+    private void addProperty(String name, Object value, DependencyResource self, Set<DependencyResource> out) throws Exception {
+        // internal properties are made on install, so they always exist
+        if (name.startsWith(OFSConfiguration.INTERNAL_FIELD_PREFIX)) {
+            return;
+        }
+        Optional<OFSType> type = getPropertyType(name);
+        if (type.isEmpty()) {
+            LOGGER.warn("Failed to find specific resource for property [{}], dependency of [{}]", name, self.getResource());
+            return;
+        }
+        out.add(DependencyResource.fromProperty(type.get(), name));
+        // ref property values are the ids of the features being referenced
+        if (type.get() == OFSType.REF_PROPERTY && value instanceof String featureId) {
+            out.add(DependencyResource.fromNodeId(OFSType.FEATURE, featureId));
+        }
+    }
+
+    private Optional<OFSType> getPropertyType(String name) throws Exception {
+        Optional<OFSType> type = propertyTypes.get(name);
+        if (type == null) {
+            // JProps don't actually exist, so need to find the ACTUAL type of the JProp
+            if (propertyRepository.readRefProperty(name).isPresent()) {
+                type = Optional.of(OFSType.REF_PROPERTY);
+            } else if (propertyRepository.readPrimitiveProperty(name).isPresent()) {
+                type = Optional.of(OFSType.PRIM_PROPERTY);
+            } else {
+                type = Optional.empty();
+            }
+            propertyTypes.put(name, type);
+        }
+        return type;
+    }
+
+}
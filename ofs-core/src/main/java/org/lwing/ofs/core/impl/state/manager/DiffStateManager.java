@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.manager;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.exception.InternalException;
+import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.StateDiff;
+import org.lwing.ofs.core.api.state.StateDiff.TypeDiff;
+import org.lwing.ofs.core.impl.state.storage.GraphStorage;
+
+/**
+ * Compares two exported states. Each type of object is compared on its own
+ * thread by walking both states' files, looking up the matching object in the
+ * other state through its resource to file id index. Only one pair of objects
+ * is held in memory at a time.
+ *
+ * @author Lucas Wing
+ */
+public class DiffStateManager {
+
+    // types of objects stored in an export
+    private static final List<OFSType> STORED_TYPES = Arrays.asList(
+            OFSType.PRIM_PROPERTY,
+            OFSType.REF_PROPERTY,
+            OFSType.INDEX,
+            OFSType.MODEL_SCHEMA,
+            OFSType.MODEL,
+            OFSType.VIEW_SCHEMA,
+            OFSType.VIEW,
+            OFSType.FEATURE
+    );
+
+    private final GraphStorage fromStorage;
+
+    private final GraphStorage toStorage;
+
+    public DiffStateManager(GraphStorage fromStorage, GraphStorage toStorage) {
+        this.fromStorage = fromStorage;
+        this.toStorage = toStorage;
+    }
+
+    /**
+     * @param threads number of types to compare at once
+     * @return what was added, removed & changed going from the first state
+     * to the second
+     * @throws Exception if either state fails to read
+     */
+    public StateDiff diff(int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, STORED_TYPES.size())));
+        try {
+            Map<OFSType, Future<TypeDiff>> futures = new EnumMap<>(OFSType.class);
+            for (OFSType type : STORED_TYPES) {
+                futures.put(type, executor.submit(() -> diffType(type)));
+            }
+            Map<OFSType, TypeDiff> typeDiffs = new EnumMap<>(OFSType.class);
+            for (Map.Entry<OFSType, Future<TypeDiff>> future : futures.entrySet()) {
+                try {
+                    typeDiffs.put(future.getKey(), future.getValue().get());
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw ex;
+                }
+            }
+            return new StateDiff(typeDiffs);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private TypeDiff diffType(OFSType type) throws IOException, InternalException {
+        TypeDiff typeDiff = new TypeDiff();
+        try ( DirectoryStream<Path> stream = fromStorage.streamPaths(type)) {
+            for (Path fromPath : stream) {
+                String resource = fromStorage.calcResourceFromPath(fromPath);
+                Path toPath = findPath(toStorage, type, resource);
+                if (toPath == null) {
+                    typeDiff.getRemoved().add(resource);
+                    continue;
+                }
+                Set<String> changedFields = diffFields(fromStorage.readTree(fromPath), toStorage.readTree(toPath));
+                if (!changedFields.isEmpty()) {
+                    typeDiff.getChanged().put(resource, changedFields);
+                }
+            }
+        }
+        try ( DirectoryStream<Path> stream = toStorage.streamPaths(type)) {
+            for (Path toPath : stream) {
+                String resource = toStorage.calcResourceFromPath(toPath);
+                if (findPath(fromStorage, type, resource) == null) {
+                    typeDiff.getAdded().add(resource);
+                }
+            }
+        }
+        return typeDiff;
+    }
+
+    /**
+     * @return path of the resource's file in the storage, null if it isn't
+     * stored there
+     */
+    private static Path findPath(GraphStorage storage, OFSType type, String resource) throws IOException, InternalException {
+        if (resource == null || !storage.objectExists(resource)) {
+            return null;
+        }
+        Path path = storage.calcResourceToPath(DependencyResource.fromResource(resource, type));
+        // objs removed from an export keep their file id
+        return storage.pathExists(path) ? path : null;
+    }
+
+    private static Set<String> diffFields(JsonNode from, JsonNode to) {
+        Set<String> fields = new HashSet<>();
+        from.fieldNames().forEachRemaining(fields::add);
+        to.fieldNames().forEachRemaining(fields::add);
+        Set<String> changed = new HashSet<>();
+        for (String field : fields) {
+            if (!normalize(from.path(field)).equals(normalize(to.path(field)))) {
+                changed.add(field);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Lists & sets come out of the graph in no particular order, so arrays
+     * are sorted before comparing.
+     */
+    private static JsonNode normalize(JsonNode node) {
+        if (node.isObject()) {
+            ObjectNode out = MappingUtil.createObjectNode();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                out.set(field.getKey(), normalize(field.getValue()));
+            }
+            return out;
+        }
+        if (node.isArray()) {
+            List<JsonNode> elements = new ArrayList<>();
+            node.forEach(element -> elements.add(normalize(element)));
+            elements.sort(Comparator.comparing(JsonNode::toString));
+            ArrayNode out = MappingUtil.createObjectNode().arrayNode();
+            out.addAll(elements);
+            return out;
+        }
+        return node;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.manager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.ManifestEntry;
+import org.lwing.ofs.core.impl.state.storage.GraphStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the dependencies of exported objects as they're stored, then
+ * layers them into the manifest of the export. The dependencies are spilled
+ * to the export's storage as they're recorded rather than held on the heap,
+ * one record per line in the form ["+", resource, dependencies...] or ["-",
+ * resource] for a removal.
+ *
+ * @author Lucas Wing
+ */
+public class ExportManifestBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportManifestBuilder.class);
+
+    private static final String ADDED = "+";
+
+    private static final String REMOVED = "-";
+
+    private final GraphStorage storage;
+
+    // open from the first record until the manifest is built
+    private BufferedWriter spill;
+
+    public ExportManifestBuilder(GraphStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * @param res exported resource
+     * @param deps resolved dependencies of the resource
+     * @throws IOException if the dependencies fail to spill
+     * @see DependencyResolver
+     */
+    public synchronized void addResource(DependencyResource res, Set<DependencyResource> deps) throws IOException {
+        List<String> record = new ArrayList<>(deps.size() + 2);
+        record.add(ADDED);
+        record.add(res.getResource());
+        for (DependencyResource dep : deps) {
+            record.add(dep.getResource());
+        }
+        writeRecord(record);
+    }
+
+    public synchronized void removeResource(DependencyResource res) throws IOException {
+        writeRecord(Arrays.asList(REMOVED, res.getResource()));
+    }
+
+    private void writeRecord(List<String> record) throws IOException {
+        if (spill == null) {
+            spill = storage.openManifestSpill();
+        }
+        spill.write(MappingUtil.turnObjToJsonString(record));
+        spill.newLine();
+    }
+
+    /**
+     * Layers the recorded resources & writes the manifest. The latest record
+     * of each resource wins. Only the resource names are held while layering,
+     * with dependencies held as ids into them.
+     *
+     * @throws IOException if the spill fails to read or the manifest to write
+     */
+    public synchronized void build() throws IOException {
+        ResourceGraph graph = new ResourceGraph();
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            graph.read(storage);
+        }
+        try ( BufferedWriter out = storage.openManifest()) {
+            graph.writeLayers(out);
+        }
+        storage.removeManifestSpill();
+    }
+
+    private static String[] readRecord(String line) throws IOException {
+        return MappingUtil.jsonStringToObject(line, String[].class);
+    }
+
+    /**
+     * Dependency graph of the exported resources, keyed by int ids
+     */
+    private static class ResourceGraph {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        // id -> index of the resource's latest record + 1, 0 if it isn't exported
+        private int[] latestRecord = new int[0];
+
+        // id -> dependency ids of an exported resource
+        private final List<int[]> dependencies = new ArrayList<>();
+
+        private void read(GraphStorage storage) throws IOException {
+            // first pass finds the latest record of each resource
+            try ( BufferedReader in = storage.readManifestSpill()) {
+                int index = 0;
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (StringUtils.isBlank(line)) {
+                        continue;
+                    }
+                    String[] record = readRecord(line);
+                    int id = intern(record[1]);
+                    latestRecord[id] = ADDED.equals(record[0]) ? index + 1 : 0;
+                    index++;
+                }
+            }
+            // second pass only keeps the dependencies of the latest records
+            try ( BufferedReader in = storage.readManifestSpill()) {
+                int index = 0;
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (StringUtils.isBlank(line)) {
+                        continue;
+                    }
+                    String[] record = readRecord(line);
+                    int id = ids.get(record[1]);
+                    if (latestRecord[id] == index + 1) {
+                        int[] deps = new int[record.length - 2];
+                        for (int i = 2; i < record.length; i++) {
+                            deps[i - 2] = intern(record[i]);
+                        }
+                        dependencies.set(id, deps);
+                    }
+                    index++;
+                }
+            }
+        }
+
+        private int intern(String resource) {
+            Integer id = ids.get(resource);
+            if (id == null) {
+                id = names.size();
+                ids.put(resource, id);
+                names.add(resource);
+                dependencies.add(null);
+                if (id == latestRecord.length) {
+                    latestRecord = Arrays.copyOf(latestRecord, Math.max(16, id * 2));
+                }
+            }
+            return id;
+        }
+
+        private boolean isExported(int id) {
+            return latestRecord[id] > 0;
+        }
+
+        /**
+         * Kahn's algorithm, each layer holds the resources whose exported
+         * dependencies are all in earlier layers. Dependencies outside of the
+         * export are expected to already exist where it's imported.
+         */
+        private void writeLayers(BufferedWriter out) throws IOException {
+            int size = names.size();
+            int[] remainingDeps = new int[size];
+            // dependents of each id, packed into one array by offset
+            int[] dependentOffsets = new int[size + 1];
+            for (int id = 0; id < size; id++) {
+                if (!isExported(id)) {
+                    continue;
+                }
+                for (int dep : dependencies.get(id)) {
+                    if (isExported(dep)) {
+                        dependentOffsets[dep + 1]++;
+                        remainingDeps[id]++;
+                    }
+                }
+            }
+            for (int id = 0; id < size; id++) {
+                dependentOffsets[id + 1] += dependentOffsets[id];
+            }
+            int[] dependents = new int[dependentOffsets[size]];
+            int[] filled = new int[size];
+            for (int id = 0; id < size; id++) {
+                if (!isExported(id)) {
+                    continue;
+                }
+                for (int dep : dependencies.get(id)) {
+                    if (isExported(dep)) {
+                        dependents[dependentOffsets[dep] + filled[dep]++] = id;
+                    }
+                }
+            }
+            int[] layerOf = new int[size];
+            Arrays.fill(layerOf, -1);
+            int[] ready = new int[size];
+            int readyCount = 0;
+            for (int id = 0; id < size; id++) {
+                if (isExported(id) && remainingDeps[id] == 0) {
+                    ready[readyCount++] = id;
+                }
+            }
+            int layer = 0;
+            int layerStart = 0;
+            while (layerStart < readyCount) {
+                int layerEnd = readyCount;
+                for (int i = layerStart; i < layerEnd; i++) {
+                    int id = ready[i];
+                    layerOf[id] = layer;
+                    writeEntry(out, id, layer, false);
+                    for (int j = dependentOffsets[id]; j < dependentOffsets[id + 1]; j++) {
+                        if (--remainingDeps[dependents[j]] == 0) {
+                            ready[readyCount++] = dependents[j];
+                        }
+                    }
+                }
+                layerStart = layerEnd;
+                layer++;
+            }
+            // cycle, put what's left last so it's still attempted
+            int cycleCount = 0;
+            for (int id = 0; id < size; id++) {
+                if (isExported(id) && layerOf[id] < 0) {
+                    writeEntry(out, id, layer, true);
+                    cycleCount++;
+                }
+            }
+            if (cycleCount > 0) {
+                LOGGER.warn("Found a dependency cycle between {} resources", cycleCount);
+            }
+        }
+
+        private void writeEntry(BufferedWriter out, int id, int layer, boolean cycle) throws IOException {
+            Set<String> deps = new LinkedHashSet<>();
+            for (int dep : dependencies.get(id)) {
+                deps.add(names.get(dep));
+            }
+            out.write(MappingUtil.turnObjToJsonString(new ManifestEntry(names.get(id), layer, deps, cycle)));
+            out.newLine();
+        }
+
+    }
+
+}
@@ -5,10 +5,35 @@
 package org.lwing.ofs.core.impl.state.manager;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.tinkerpop.gremlin.process.traversal.P;
 import org.lwing.ofs.core.api.OFSIdVertex;
 import org.lwing.ofs.core.api.exception.InternalException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.index.Index;
+import org.lwing.ofs.core.api.search.GraphSearch;
+import org.lwing.ofs.core.api.state.ChangeLog;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeEntry;
+import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.ExportFilter;
 import org.lwing.ofs.core.api.state.GraphStateResponse;
+import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.StateDelta;
 import org.lwing.ofs.core.api.state.StatefulResource;
 import org.lwing.ofs.core.impl.SearchableVertexRepository;
 import org.lwing.ofs.core.impl.feature.FeatureRepository;
@@ -30,6 +55,16 @@ public class ExportStateManager extends AbsStateManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ExportStateManager.class);
 
+    // how far before the start of an export to look for changes made during it
+    private static final Duration FENCE_GRACE = Duration.ofSeconds(10);
+
+    // max passes over changes made during an export
+    private static final int MAX_FENCE_PASSES = 5;
+
+    private final ExportManifestBuilder manifest;
+
+    private final DependencyResolver resolver;
+
     public ExportStateManager(
             GraphStorage ofsGraphStorage,
             IndexRepository indexRepository,
@@ -50,19 +85,331 @@ public class ExportStateManager extends AbsStateManager {
                 modelSchemaRepository,
                 viewSchemaRepository
         );
+        this.manifest = new ExportManifestBuilder(ofsGraphStorage);
+        this.resolver = new DependencyResolver(propertyRepository);
     }
 
-    public GraphStateResponse exportState() throws Exception {
-        addObjsFromSearch(featureRepository);
-        addObjsFromSearch(viewRepository);
-        addObjsFromSearch(modelRepository);
-        addObjsFromSearch(modelSchemaRepository);
-        addObjsFromSearch(viewSchemaRepository);
-        exportObjects(indexRepository.listIndices());
-        exportObjects(propertyRepository.listProperties());
+    /**
+     * Exports every object in the graph. Each type of object is read on its
+     * own thread. JanusGraph transactions aren't snapshots, so writes made
+     * while the export runs are caught with the change log instead: once
+     * everything is read, the objects changed since the export started are
+     * exported again as they currently are, and removed if they were deleted.
+     * This repeats until a pass sees no new changes, so the export holds a
+     * self consistent state as of its last pass.
+     *
+     * @param changeLog log of the changes made to the graph, null to export
+     * without catching writes made during the export
+     * @param threads number of threads to read the graph with
+     * @return response with any resources which failed to export
+     * @throws Exception generic JanusGraph exception
+     */
+    public GraphStateResponse exportState(ChangeLog changeLog, int threads) throws Exception {
+        if (changeLog == null) {
+            LOGGER.warn("No change log is configured, writes made during the export may leave it inconsistent");
+        }
+        // changes are logged before they commit, so look back far enough to catch ones mid commit
+        Instant fence = Instant.now().minus(FENCE_GRACE);
+        runInParallel(threads, Arrays.asList(
+                () -> addObjsFromSearch(featureRepository),
+                () -> addObjsFromSearch(viewRepository),
+                () -> addObjsFromSearch(modelRepository),
+                () -> addObjsFromSearch(modelSchemaRepository),
+                () -> addObjsFromSearch(viewSchemaRepository),
+                () -> exportObjects(indexRepository.listIndices()),
+                () -> exportObjects(propertyRepository.listProperties())
+        ));
+        // fences overlap by the grace, so changes already re-exported are read again & skipped
+        Set<String> seenChanges = new HashSet<>();
+        for (int pass = 0; changeLog != null && pass < MAX_FENCE_PASSES; pass++) {
+            // changes mid commit when this pass starts are caught by the next one
+            Instant nextFence = Instant.now().minus(FENCE_GRACE);
+            List<ChangeEntry> changes = takeUnseenChanges(changeLog.readChangesSince(fence), seenChanges);
+            if (changes.isEmpty()) {
+                break;
+            }
+            LOGGER.debug("Re-exporting {} changes made during the export", changes.size());
+            // JanusGraph txs are per thread, a new thread makes sure the changes aren't read from a stale tx
+            runInParallel(1, Arrays.asList(() -> reexportChanges(changes)));
+            fence = nextFence;
+            if (pass == MAX_FENCE_PASSES - 1 && !takeUnseenChanges(changeLog.readChangesSince(fence), seenChanges).isEmpty()) {
+                LOGGER.warn("The graph kept changing during the export, changes after [{}] may be missing", fence);
+            }
+        }
+        // objects deleted since a previous export into the location aren't stored again
+        ofsGraphStorage.sweepUnstored();
+        manifest.build();
+        ofsGraphStorage.flush();
         return new GraphStateResponse(failedResources);
     }
 
+    /**
+     * Exports the objects picked by the filter along with everything they
+     * depend on. The storage's resource to file id index is used to tell if an
+     * object was already exported, so only the objects still waiting to be
+     * exported are held in memory rather than the whole closure. That index
+     * would also hold the objects of an earlier export, so the location has to
+     * be empty.
+     *
+     * @param filter picks the objects to start the export from
+     * @return response with any resources which failed to export
+     * @throws InternalException if the location already holds objects
+     * @throws Exception generic JanusGraph exception
+     */
+    public GraphStateResponse exportState(ExportFilter filter) throws InternalException, Exception {
+        if (ofsGraphStorage.holdsObjects()) {
+            throw new InternalException("Filtered exports need an empty location, [%s] already holds objects",
+                    ofsGraphStorage.getStateLocation());
+        }
+        Deque<DependencyResource> pending = new ArrayDeque<>();
+        switch (filter.getFilterType()) {
+            case MODELS -> {
+                for (String modelId : filter.getIds()) {
+                    pending.push(DependencyResource.fromNodeId(OFSType.MODEL, modelId));
+                }
+                exportClosureFromSearch(g -> g.V().has(FeatureRepository.INHERITS_FROM_PROP, P.within(filter.getIds())), pending);
+            }
+            case VIEW -> {
+                pending.push(DependencyResource.fromNodeId(OFSType.VIEW, filter.getIds().iterator().next()));
+            }
+            case FEATURE_SEARCH -> {
+                exportClosureFromSearch(filter.getFeatureSearch(), pending);
+            }
+        }
+        exportClosure(pending);
+        // nothing depends on an index, so export the ones whose properties were all exported
+        for (Index index : indexRepository.listIndices()) {
+            try {
+                if (allExported(resolver.resolve(index))) {
+                    storeObject(index);
+                }
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to store index", ex);
+                failedResources.add(index.calcResource().getResource());
+            }
+        }
+        manifest.build();
+        ofsGraphStorage.flush();
+        return new GraphStateResponse(failedResources);
+    }
+
+    /**
+     * Exports only the resources in the input changes. Each changed resource
+     * is exported as it currently exists in the graph, or as a tombstone if it
+     * no longer exists.
+     *
+     * @param since earliest time of the changes being exported
+     * @param changes changes from the change log to export
+     * @return response with any resources which failed to export
+     * @throws Exception if the delta could not be stored
+     */
+    public GraphStateResponse exportStateDelta(Instant since, List<ChangeEntry> changes) throws Exception {
+        long exportedAt = System.currentTimeMillis();
+        // only the latest state matters, so each resource is exported once
+        Set<String> changedResources = new LinkedHashSet<>();
+        for (ChangeEntry change : changes) {
+            changedResources.add(change.getResource());
+        }
+        Set<String> deletedResources = new HashSet<>();
+        for (String resource : changedResources) {
+            DependencyResource res = DependencyResource.fromResource(resource);
+            if (res == null) {
+                LOGGER.warn("Failed to determine type of changed resource [{}]", resource);
+                failedResources.add(resource);
+                continue;
+            }
+            try {
+                Optional<? extends StatefulResource> current = readCurrentState(res);
+                if (current.isPresent()) {
+                    storeObject(current.get());
+                } else {
+                    deletedResources.add(calcTombstone(res));
+                }
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to store changed object", ex);
+                failedResources.add(resource);
+            }
+        }
+        ofsGraphStorage.storeStateDelta(new StateDelta(since.toEpochMilli(), exportedAt, deletedResources));
+        manifest.build();
+        ofsGraphStorage.flush();
+        return new GraphStateResponse(failedResources);
+    }
+
+    /**
+     * @return the changes not in the seen set, which are added to it
+     */
+    private static List<ChangeEntry> takeUnseenChanges(List<ChangeEntry> changes, Set<String> seenChanges) {
+        List<ChangeEntry> unseen = new ArrayList<>();
+        for (ChangeEntry change : changes) {
+            if (seenChanges.add(change.getTimestamp() + "|" + change.getType() + "|" + change.getResource())) {
+                unseen.add(change);
+            }
+        }
+        return unseen;
+    }
+
+    private void reexportChanges(List<ChangeEntry> changes) throws IOException, InternalException {
+        Set<String> changedResources = new LinkedHashSet<>();
+        for (ChangeEntry change : changes) {
+            changedResources.add(change.getResource());
+        }
+        for (String resource : changedResources) {
+            DependencyResource res = DependencyResource.fromResource(resource);
+            if (res == null) {
+                LOGGER.warn("Failed to determine type of changed resource [{}]", resource);
+                continue;
+            }
+            try {
+                Optional<? extends StatefulResource> current = readCurrentState(res);
+                if (current.isPresent()) {
+                    failedResources.remove(current.get().calcResource().getResource());
+                    storeObject(current.get());
+                } else {
+                    removeObject(res);
+                }
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to store changed object", ex);
+                failedResources.add(resource);
+            }
+        }
+    }
+
+    private void removeObject(DependencyResource res) throws IOException {
+        // deleted properties are logged by name
+        List<DependencyResource> possibleResources = res.getOfsType() == OFSType.JPROPERTY
+                ? Arrays.asList(DependencyResource.fromProperty(OFSType.PRIM_PROPERTY, res.getName()),
+                        DependencyResource.fromProperty(OFSType.REF_PROPERTY, res.getName()))
+                : Arrays.asList(res);
+        for (DependencyResource possibleRes : possibleResources) {
+            if (ofsGraphStorage.removeObject(possibleRes)) {
+                LOGGER.debug("Removed [{}] from export, it was deleted during the export", possibleRes.getResource());
+            }
+            manifest.removeResource(possibleRes);
+            failedResources.remove(possibleRes.getResource());
+        }
+    }
+
+    private void runInParallel(int threads, List<ExportTask> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (ExportTask task : tasks) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        // the graph's tx is per thread, don't leave one open on the pool's thread
+                        featureRepository.rollbackTx();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw ex;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Optional<? extends StatefulResource> readCurrentState(DependencyResource res) throws Exception {
+        String name = res.getName();
+        switch (res.getOfsType()) {
+            case FEATURE -> {
+                return featureRepository.vertexExists(name) ? Optional.of(featureRepository.readFeature(name)) : Optional.empty();
+            }
+            case MODEL -> {
+                return modelRepository.vertexExists(name) ? Optional.of(modelRepository.readModel(name)) : Optional.empty();
+            }
+            case VIEW -> {
+                return viewRepository.vertexExists(name) ? Optional.of(viewRepository.readView(name)) : Optional.empty();
+            }
+            case MODEL_SCHEMA -> {
+                return modelSchemaRepository.vertexExists(name) ? Optional.of(modelSchemaRepository.readSchema(name)) : Optional.empty();
+            }
+            case VIEW_SCHEMA -> {
+                return viewSchemaRepository.vertexExists(name) ? Optional.of(viewSchemaRepository.readSchema(name)) : Optional.empty();
+            }
+            case PRIM_PROPERTY, REF_PROPERTY, JPROPERTY -> {
+                return propertyRepository.propertyExists(name) ? Optional.of(propertyRepository.getProperty(name)) : Optional.empty();
+            }
+            case INDEX -> {
+                return indexRepository.containsIndex(name) ? Optional.of(indexRepository.readIndex(name)) : Optional.empty();
+            }
+            default -> {
+                throw new InternalException("Changes to resources of type [%s] can't be exported", res.getOfsType());
+            }
+        }
+    }
+
+    private String calcTombstone(DependencyResource res) {
+        // a deleted property is deleted by name no matter if it was a primitive or ref
+        if (res.getOfsType() == OFSType.PRIM_PROPERTY || res.getOfsType() == OFSType.REF_PROPERTY) {
+            return DependencyResource.fromProperty(OFSType.JPROPERTY, res.getName()).getResource();
+        }
+        return res.getResource();
+    }
+
+    private void exportClosureFromSearch(GraphSearch featureSearch, Deque<DependencyResource> pending) throws Exception {
+        featureRepository.search(featureSearch, outIterator -> {
+            while (outIterator.hasNext()) {
+                Feature feature = outIterator.next();
+                try {
+                    if (!ofsGraphStorage.objectExists(feature.calcResource().getResource())) {
+                        pending.addAll(storeObject(feature));
+                        exportClosure(pending);
+                    }
+                } catch (Exception ex) {
+                    LOGGER.warn("Failed to store object", ex);
+                    failedResources.add(feature.calcResource().getResource());
+                }
+            }
+        });
+    }
+
+    private void exportClosure(Deque<DependencyResource> pending) throws IOException, InternalException {
+        while (!pending.isEmpty()) {
+            DependencyResource res = pending.pop();
+            String resource = res.getResource();
+            if (failedResources.contains(resource) || ofsGraphStorage.objectExists(resource)) {
+                continue;
+            }
+            try {
+                Optional<? extends StatefulResource> obj = readCurrentState(res);
+                if (obj.isEmpty()) {
+                    LOGGER.warn("Dependency [{}] does not exist in the graph", resource);
+                    failedResources.add(resource);
+                    continue;
+                }
+                for (DependencyResource dep : storeObject(obj.get())) {
+                    if (!ofsGraphStorage.objectExists(dep.getResource())) {
+                        pending.push(dep);
+                    }
+                }
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to store dependency", ex);
+                failedResources.add(resource);
+            }
+        }
+    }
+
+    private boolean allExported(Set<DependencyResource> resources) throws IOException, InternalException {
+        for (DependencyResource res : resources) {
+            if (!ofsGraphStorage.objectExists(res.getResource())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private <E extends StatefulResource & OFSIdVertex> void addObjsFromSearch(SearchableVertexRepository<E> repo) throws Exception {
         repo.search(g -> {
             return g.V();
@@ -70,7 +417,7 @@ public class ExportStateManager extends AbsStateManager {
             while (outIterator.hasNext()) {
                 E outObj = outIterator.next();
                 try {
-                    ofsGraphStorage.storeObject(outObj);
+                    storeObject(outObj);
                 } catch (Exception ex) {
                     LOGGER.warn("Failed to store object", ex);
                     failedResources.add(outObj.calcResource().getResource());
@@ -79,10 +426,27 @@ public class ExportStateManager extends AbsStateManager {
         });
     }
 
-    private <E extends StatefulResource> void exportObjects(Collection<E> objs) throws InternalException, IOException {
+    private <E extends StatefulResource> void exportObjects(Collection<E> objs) throws Exception {
         for (E obj : objs) {
-            ofsGraphStorage.storeObject(obj);
+            storeObject(obj);
         }
     }
 
+    /**
+     * @return resolved dependencies of the stored object
+     */
+    private Set<DependencyResource> storeObject(StatefulResource obj) throws Exception {
+        Set<DependencyResource> deps = resolver.resolve(obj);
+        ofsGraphStorage.storeObject(obj);
+        manifest.addResource(obj.calcResource(), deps);
+        return deps;
+    }
+
+    @FunctionalInterface
+    private interface ExportTask {
+
+        public void run() throws Exception;
+
+    }
+
 }
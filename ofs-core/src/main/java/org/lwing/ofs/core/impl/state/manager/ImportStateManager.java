@@ -7,10 +7,17 @@ package org.lwing.ofs.core.impl.state.manager;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.collections.map.LRUMap;
 import static org.awaitility.Awaitility.await;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
 import org.lwing.ofs.core.api.exception.InternalException;
 import org.lwing.ofs.core.api.feature.Feature;
 import org.lwing.ofs.core.api.index.Index;
@@ -22,7 +29,9 @@ import org.lwing.ofs.core.api.schema.ViewSchema;
 import org.lwing.ofs.core.api.state.DependencyResource;
 import org.lwing.ofs.core.api.state.GraphStateResponse;
 import org.lwing.ofs.core.api.state.ImportCacheProvider.ImportCache;
+import org.lwing.ofs.core.api.state.ManifestEntry;
 import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.StateDelta;
 import org.lwing.ofs.core.api.state.StatefulResource;
 import org.lwing.ofs.core.api.view.View;
 import org.lwing.ofs.core.impl.feature.FeatureRepository;
@@ -31,6 +40,7 @@ import org.lwing.ofs.core.impl.model.ModelRepository;
 import org.lwing.ofs.core.impl.model.ModelSchemaRepository;
 import org.lwing.ofs.core.impl.property.PropertyRepository;
 import org.lwing.ofs.core.impl.state.storage.GraphStorage;
+import org.lwing.ofs.core.impl.state.storage.ManifestReader;
 import org.lwing.ofs.core.impl.view.ViewRepository;
 import org.lwing.ofs.core.impl.view.ViewSchemaRepository;
 import org.slf4j.Logger;
@@ -50,6 +60,22 @@ public class ImportStateManager extends AbsStateManager {
     
     private final LRUSet resExistsCache;
 
+    // order deletes are attempted in, dependents before what they depend on
+    private static final List<OFSType> DELETE_ORDER = Arrays.asList(
+            OFSType.FEATURE,
+            OFSType.VIEW,
+            OFSType.VIEW_SCHEMA,
+            OFSType.INDEX,
+            OFSType.REF_PROPERTY,
+            OFSType.MODEL,
+            OFSType.MODEL_SCHEMA,
+            OFSType.JPROPERTY,
+            OFSType.PRIM_PROPERTY
+    );
+
+    // if a delta is being applied on top of the existing graph
+    private boolean applyingDelta;
+
     public ImportStateManager(
             GraphStorage ofsGraphStorage,
             IndexRepository indexRepository,
@@ -73,9 +99,39 @@ public class ImportStateManager extends AbsStateManager {
         );
         this.importCache = importCache;
         this.resExistsCache = new LRUSet(5000);
+        this.applyingDelta = false;
     }
 
     public GraphStateResponse importState() throws InternalException, Exception {
+        importAllObjs();
+        return new GraphStateResponse(failedResources);
+    }
+
+    /**
+     * Applies a delta export on top of the graph. Changed objects are created,
+     * or updated if they already exist, then the delta's tombstones are
+     * deleted.
+     *
+     * @return response with any resources which failed to import
+     * @throws InternalException if the location is not a delta export
+     * @throws Exception generic JanusGraph exception
+     */
+    public GraphStateResponse importStateDelta() throws InternalException, Exception {
+        StateDelta delta = ofsGraphStorage.readStateDelta();
+        applyingDelta = true;
+        importAllObjs();
+        deleteObjs(delta.getDeletedResources());
+        return new GraphStateResponse(failedResources);
+    }
+
+    private void importAllObjs() throws InternalException, Exception {
+        Optional<ManifestReader> manifest = ofsGraphStorage.readManifest();
+        if (manifest.isPresent()) {
+            try ( ManifestReader reader = manifest.get()) {
+                importFromManifest(reader);
+            }
+            return;
+        }
         importObjsUnderType(OFSType.PRIM_PROPERTY);
         importObjsUnderType(OFSType.INDEX);
         importObjsUnderType(OFSType.REF_PROPERTY);
@@ -84,7 +140,45 @@ public class ImportStateManager extends AbsStateManager {
         importObjsUnderType(OFSType.VIEW_SCHEMA);
         importObjsUnderType(OFSType.VIEW);
         importObjsUnderType(OFSType.FEATURE);
-        return new GraphStateResponse(failedResources);
+    }
+
+    /**
+     * Imports the objs layer by layer, the manifest already holds each obj's
+     * resolved dependencies so every obj is only read once. The manifest is
+     * streamed in import order rather than read whole.
+     */
+    private void importFromManifest(ManifestReader manifest) throws InternalException, Exception {
+        for (ManifestEntry entry = manifest.next(); entry != null; entry = manifest.next()) {
+            importManifestObj(entry);
+        }
+    }
+
+    private void importManifestObj(ManifestEntry entry) throws InternalException, Exception {
+        String resource = entry.getResource();
+        if (importCache.containsResource(resource)) {
+            LOGGER.debug("Resource {} already exists in graph, skipping import", resource);
+            return;
+        }
+        for (String dependency : entry.getDependencies()) {
+            if (failedResources.contains(dependency)) {
+                LOGGER.warn("Skipping import of [{}], dependency [{}] failed to import", resource, dependency);
+                failedResources.add(resource);
+                return;
+            }
+            // only in the same layer for a dependency cycle, no point waiting for it
+            if (entry.isCycle() && !importCache.containsResource(dependency) && ofsGraphStorage.objectExists(dependency)) {
+                continue;
+            }
+            // earlier layers were imported, or for deltas it's already in the graph
+            waitForResExists(DependencyResource.fromResource(dependency));
+        }
+        DependencyResource res = DependencyResource.fromResource(resource);
+        Path fileLocation = res == null ? null : ofsGraphStorage.calcResourceToPath(res);
+        if (fileLocation == null) {
+            failedResources.add(resource);
+            return;
+        }
+        importObjIntoGraph(ofsGraphStorage.readObject(fileLocation, res.getOfsType()));
     }
 
     private void importObjsUnderType(OFSType type) throws InternalException, Exception {
@@ -123,8 +217,9 @@ public class ImportStateManager extends AbsStateManager {
                 LOGGER.debug("Skipping dependency resource {} import. Dependent on self.", typeSpecificResString);
                 continue;
             }
-            // run import obj on dependency
-            Path fileLocation = ofsGraphStorage.calcResourceToPath(typeSpecificRes);
+            // run import obj on dependency (deltas only hold changed objs, the rest is already in the graph)
+            Path fileLocation = applyingDelta && !ofsGraphStorage.objectExists(typeSpecificResString)
+                    ? null : ofsGraphStorage.calcResourceToPath(typeSpecificRes);
             if (fileLocation != null) {
                 LOGGER.debug("Importing dependency {} to resource {}", typeSpecificResString, resource);
                 importObj(fileLocation, typeSpecificRes.getOfsType());
@@ -137,9 +232,14 @@ public class ImportStateManager extends AbsStateManager {
         importObjIntoGraph(obj);
     }
 
-    private void importObjIntoGraph(StatefulResource obj) {
+    private void importObjIntoGraph(StatefulResource obj) throws IOException {
         DependencyResource res = obj.calcResource();
         try {
+            if (applyingDelta && checkResExists(res)) {
+                updateObjInGraph(obj);
+                importCache.storeResource(res.getResource());
+                return;
+            }
             switch (res.getOfsType()) {
                 case PRIM_PROPERTY -> {
                     LOGGER.debug(IMPORT_LOG_FORMAT, "primitive property", res.getName());
@@ -177,11 +277,118 @@ public class ImportStateManager extends AbsStateManager {
         } catch (Exception ex) {
             LOGGER.warn("Failed to import object into Graph", ex);
             failedResources.add(obj.calcResource().getResource());
+            // left out of the cache so a resumed import retries it
+            return;
         }
         importCache.storeResource(res.getResource());
     }
 
-    private DependencyResource determineSpecificDependency(DependencyResource res) throws IOException, InternalException {
+    private void updateObjInGraph(StatefulResource obj) throws Exception {
+        DependencyResource res = obj.calcResource();
+        // features are the only objs which can change after creation
+        if (res.getOfsType() != OFSType.FEATURE) {
+            LOGGER.debug("Resource {} already exists in graph, skipping import", res.getResource());
+            return;
+        }
+        LOGGER.debug("Updating feature [{}] in graph.", res.getName());
+        Feature feature = (Feature) obj;
+        Feature currFeature = featureRepository.readFeature(feature.getId());
+        if (currFeature.getModelId().equals(feature.getModelId())) {
+            featureRepository.updateFeature(feature.getId(), feature.getProperties());
+        } else {
+            featureRepository.castFeatureToModel(feature.getId(), feature.getModelId(), feature.getProperties());
+        }
+    }
+
+    private void deleteObjs(Set<String> resources) {
+        List<DependencyResource> remaining = new ArrayList<>();
+        for (String resource : resources) {
+            DependencyResource res = DependencyResource.fromResource(resource);
+            if (res == null) {
+                LOGGER.warn("Failed to determine type of deleted resource [{}]", resource);
+                failedResources.add(resource);
+            } else {
+                remaining.add(res);
+            }
+        }
+        remaining.sort(Comparator.comparingInt(res -> DELETE_ORDER.indexOf(res.getOfsType())));
+        // objs still referenced by other deleted objs are retried until no more can be deleted
+        boolean deletedAny = true;
+        while (!remaining.isEmpty() && deletedAny) {
+            deletedAny = false;
+            Iterator<DependencyResource> iter = remaining.iterator();
+            while (iter.hasNext()) {
+                DependencyResource res = iter.next();
+                try {
+                    deleteObjFromGraph(res);
+                    iter.remove();
+                    deletedAny = true;
+                } catch (GraphIntegrityException ex) {
+                    LOGGER.debug("Resource {} is still referenced, retrying delete later", res.getResource());
+                } catch (Exception ex) {
+                    LOGGER.warn("Failed to delete object from Graph", ex);
+                    failedResources.add(res.getResource());
+                    iter.remove();
+                }
+            }
+        }
+        for (DependencyResource res : remaining) {
+            LOGGER.warn("Failed to delete resource [{}], it is still referenced in the Graph", res.getResource());
+            failedResources.add(res.getResource());
+        }
+    }
+
+    private void deleteObjFromGraph(DependencyResource res) throws GraphIntegrityException, Exception {
+        String name = res.getName();
+        switch (res.getOfsType()) {
+            case FEATURE -> {
+                if (featureRepository.vertexExists(name)) {
+                    LOGGER.debug("Deleting feature [{}] from graph.", name);
+                    featureRepository.deleteFeature(name);
+                }
+            }
+            case VIEW -> {
+                if (viewRepository.vertexExists(name)) {
+                    LOGGER.debug("Deleting view [{}] from graph.", name);
+                    viewRepository.deleteView(name);
+                }
+            }
+            case MODEL -> {
+                if (modelRepository.vertexExists(name)) {
+                    LOGGER.debug("Deleting model [{}] from graph.", name);
+                    modelRepository.deleteModel(name);
+                }
+            }
+            case MODEL_SCHEMA -> {
+                if (modelSchemaRepository.vertexExists(name)) {
+                    LOGGER.debug("Deleting model schema [{}] from graph.", name);
+                    modelSchemaRepository.deleteSchema(name);
+                }
+            }
+            case VIEW_SCHEMA -> {
+                if (viewSchemaRepository.vertexExists(name)) {
+                    LOGGER.debug("Deleting view schema [{}] from graph.", name);
+                    viewSchemaRepository.deleteSchema(name);
+                }
+            }
+            case PRIM_PROPERTY, REF_PROPERTY, JPROPERTY -> {
+                if (propertyRepository.propertyExists(name)) {
+                    LOGGER.debug("Deleting property [{}] from graph.", name);
+                    propertyRepository.deleteProperty(name);
+                }
+            }
+            case INDEX -> {
+                if (indexRepository.containsIndex(name)) {
+                    LOGGER.debug("Deleting index [{}] from graph.", name);
+                    indexRepository.removeIndex(name);
+                }
+            }
+            default ->
+                throw new InternalException("Resources of type [%s] can't be deleted", res.getOfsType());
+        }
+    }
+
+    private DependencyResource determineSpecificDependency(DependencyResource res) throws IOException, InternalException, Exception {
         // JProps don't actually exist, so need to find the ACTUAL type of the JProp
         if (res.getOfsType().equals(OFSType.JPROPERTY)) {
             return findActualResource(
@@ -193,7 +400,7 @@ public class ImportStateManager extends AbsStateManager {
         return res;
     }
 
-    private DependencyResource findActualResource(DependencyResource... possibleResources) throws IOException, InternalException {
+    private DependencyResource findActualResource(DependencyResource... possibleResources) throws IOException, InternalException, Exception {
         // first try to check cache since that's faster than a filesystem check
         for (DependencyResource res : possibleResources) {
             if (importCache.containsResource(res.getResource())) {
@@ -206,6 +413,14 @@ public class ImportStateManager extends AbsStateManager {
                 return res;
             }
         }
+        // deltas only hold changed objs, so check what's already in the graph
+        if (applyingDelta) {
+            for (DependencyResource res : possibleResources) {
+                if (checkResExists(res)) {
+                    return res;
+                }
+            }
+        }
         // should never hit this case
         return null;
     }
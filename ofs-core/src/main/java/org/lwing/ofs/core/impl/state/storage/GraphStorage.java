@@ -4,15 +4,34 @@
  */
 package org.lwing.ofs.core.impl.state.storage;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang3.StringUtils;
 import org.lwing.ofs.core.api.MappingUtil;
 import org.lwing.ofs.core.api.exception.InternalException;
 import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.ManifestEntry;
+import org.lwing.ofs.core.api.state.StateDelta;
 import org.lwing.ofs.core.api.state.StatefulResource;
 import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
 import org.lwing.ofs.core.api.state.ResourceToIdStore;
@@ -24,44 +43,321 @@ import org.lwing.ofs.core.api.state.GraphStorageSystem;
  * 
  * @author Lucas Wing
  */
-public class GraphStorage {
+public class GraphStorage implements Closeable {
     
     private static final Logger LOGGER = LoggerFactory.getLogger(GraphStorage.class);
 
+    // file which marks an export as a delta & holds its tombstones
+    private static final String STATE_DELTA_FILE = "delta.json";
+
+    // folder holding the object payloads of a content addressed export
+    private static final String BLOB_FOLDER = "blobs";
+
+    private static final String BLOB_EXT = ".json";
+
+    // field of a blob entry holding the blob's hash
+    private static final String BLOB_FIELD = "ofsBlob";
+
+    // field kept out of blobs, since it's what makes otherwise identical objects differ
+    private static final String ID_FIELD = "id";
+
+    private static final HashFunction BLOB_HASH = Hashing.sha256();
+
+    // file which holds the import order & resolved dependencies of an export, one entry per line
+    private static final String MANIFEST_FILE = "manifest.jsonl";
+
+    // dependencies recorded as objects are exported, layered into the manifest once the export is done
+    private static final String MANIFEST_SPILL_FILE = "manifest-spill.jsonl";
+
     private final GraphStorageSystem ofsGraphStorageProvider;
 
     private final Path stateLocation;
     
     private final ResourceToIdStore resourceToIdStore;
 
+    // if objects are stored as entries pointing at content addressed blobs
+    private final boolean contentAddressed;
+
+    // if the location holds blobs, so stored objects may be blob entries
+    private final boolean readBlobs;
+
+    // blobs stored or found by this storage, saves checking storage for them again
+    private final Set<String> knownBlobs;
+
+    // file ids of the objects stored by this storage & not removed since
+    private final Set<String> storedFileIds;
+
     public GraphStorage(Path stateLocation, GraphStorageSystem ofsGraphStorageProvider) throws IOException {
+        this(stateLocation, ofsGraphStorageProvider, false);
+    }
+
+    /**
+     * @param stateLocation location of the state
+     * @param ofsGraphStorageProvider storage the state is in
+     * @param contentAddressed if stored objects should be deduplicated. Each
+     * object's json, minus its id, is stored once as a blob named by its hash &
+     * the object's file only holds the hash & id. Blobs which already exist
+     * are not written again, so repeated exports to the same location only
+     * write new or changed objects.
+     * @throws IOException if the resource to file id store fails to open
+     */
+    public GraphStorage(Path stateLocation, GraphStorageSystem ofsGraphStorageProvider, boolean contentAddressed) throws IOException {
         this.ofsGraphStorageProvider = ofsGraphStorageProvider;
         this.stateLocation = stateLocation;
         this.resourceToIdStore = ofsGraphStorageProvider.getResourceToFileIdStore(stateLocation);
+        this.contentAddressed = contentAddressed;
+        this.readBlobs = contentAddressed || ofsGraphStorageProvider.pathExists(stateLocation.resolve(BLOB_FOLDER));
+        this.knownBlobs = ConcurrentHashMap.newKeySet();
+        this.storedFileIds = ConcurrentHashMap.newKeySet();
     }
 
     public <E extends StatefulResource> E readObject(Path objToImport, OFSType type) throws IOException, InternalException {
-        String fileIn = ofsGraphStorageProvider.readStringFile(objToImport);
-        return MappingUtil.jsonStringToObject(fileIn, (Class<E>) type.getClazz());
-    } 
+        if (readBlobs) {
+            return MappingUtil.treeToObject(readTree(objToImport), (Class<E>) type.getClazz());
+        }
+        try ( InputStream in = ofsGraphStorageProvider.openFileInputStream(objToImport)) {
+            return MappingUtil.jsonStreamToObject(in, (Class<E>) type.getClazz());
+        }
+    }
+
+    /**
+     * @param objLocation stored object to read
+     * @return json of the stored object, read from its blob if it has one
+     * @throws IOException if the object fails to read
+     */
+    public JsonNode readTree(Path objLocation) throws IOException {
+        JsonNode tree;
+        try ( InputStream in = ofsGraphStorageProvider.openFileInputStream(objLocation)) {
+            tree = MappingUtil.jsonStreamToTree(in);
+        }
+        if (readBlobs && tree.has(BLOB_FIELD)) {
+            tree = readBlob(tree);
+        }
+        return tree;
+    }
     
     public boolean objectExists(String resource) throws IOException, InternalException {
         return getFileIdFromResource(resource) != null;
     } 
 
+    public boolean pathExists(Path location) throws IOException {
+        return ofsGraphStorageProvider.pathExists(location);
+    }
+
     public DirectoryStream<Path> streamPaths(OFSType type) throws IOException {
         return ofsGraphStorageProvider.listFilesInDirectory(type.getFolder(stateLocation), "*" + type.getType());
     }
     
+    /**
+     * @return if any object is already stored in the location
+     * @throws IOException if the location can't be listed
+     */
+    public boolean holdsObjects() throws IOException {
+        for (OFSType type : OFSType.values()) {
+            if (!ofsGraphStorageProvider.pathExists(type.getFolder(stateLocation))) {
+                continue;
+            }
+            try ( DirectoryStream<Path> paths = streamPaths(type)) {
+                if (paths.iterator().hasNext()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     public void storeObject(StatefulResource resource) throws InternalException, IOException {
-        String objOut = MappingUtil.turnObjToJsonString(resource);
         DependencyResource res = resource.calcResource();
         String objResource = res.getResource();
         String fileName = getFileSafeId(objResource);
         Path fileLocation = res.getOfsType().getFolder(stateLocation)
                 .resolve(fileName + "." + res.getOfsType().getType());
-        ofsGraphStorageProvider.storeStringFile(fileLocation, objOut);
+        if (contentAddressed) {
+            storeBlobEntry(resource, fileLocation);
+        } else {
+            try ( OutputStream out = ofsGraphStorageProvider.openFileOutputStream(fileLocation)) {
+                MappingUtil.writeObjToJson(resource, out);
+            }
+        }
         resourceToIdStore.storeResourceToFileSafeId(objResource, fileName);
+        storedFileIds.add(fileName);
+    }
+
+    private void storeBlobEntry(StatefulResource resource, Path fileLocation) throws IOException {
+        ObjectNode payload = (ObjectNode) MappingUtil.objToTree(resource);
+        JsonNode id = payload.remove(ID_FIELD);
+        byte[] payloadBytes = MappingUtil.treeToBytes(payload);
+        String hash = BLOB_HASH.hashBytes(payloadBytes).toString();
+        Path blobLocation = calcBlobPath(hash);
+        if (knownBlobs.add(hash) && !ofsGraphStorageProvider.pathExists(blobLocation)) {
+            try ( OutputStream out = ofsGraphStorageProvider.openFileOutputStream(blobLocation)) {
+                out.write(payloadBytes);
+            }
+        }
+        ObjectNode entry = MappingUtil.createObjectNode();
+        entry.put(BLOB_FIELD, hash);
+        if (id != null) {
+            entry.set(ID_FIELD, id);
+        }
+        byte[] entryBytes = MappingUtil.treeToBytes(entry);
+        // an unchanged object's entry is already stored
+        if (ofsGraphStorageProvider.pathExists(fileLocation)) {
+            try ( InputStream in = ofsGraphStorageProvider.openFileInputStream(fileLocation)) {
+                if (Arrays.equals(entryBytes, in.readAllBytes())) {
+                    return;
+                }
+            }
+        }
+        try ( OutputStream out = ofsGraphStorageProvider.openFileOutputStream(fileLocation)) {
+            out.write(entryBytes);
+        }
+    }
+
+    private JsonNode readBlob(JsonNode entry) throws IOException {
+        Path blobLocation = calcBlobPath(entry.get(BLOB_FIELD).asText());
+        ObjectNode payload;
+        try ( InputStream in = ofsGraphStorageProvider.openFileInputStream(blobLocation)) {
+            payload = (ObjectNode) MappingUtil.jsonStreamToTree(in);
+        }
+        if (entry.has(ID_FIELD)) {
+            payload.set(ID_FIELD, entry.get(ID_FIELD));
+        }
+        return payload;
+    }
+
+    private Path calcBlobPath(String hash) {
+        // fan out so no one folder gets too big
+        return stateLocation.resolve(BLOB_FOLDER).resolve(hash.substring(0, 2)).resolve(hash + BLOB_EXT);
+    }
+    
+    /**
+     * Removes the file & file id mapping of a stored object
+     *
+     * @param res resource of the object to remove
+     * @return if the object's file was removed
+     * @throws IOException if the file can't be removed
+     */
+    public boolean removeObject(DependencyResource res) throws IOException {
+        String fileId = getFileIdFromResource(res.getResource());
+        if (fileId == null) {
+            return false;
+        }
+        boolean removed = ofsGraphStorageProvider.deleteFile(calcResourceToPath(res));
+        resourceToIdStore.removeResource(res.getResource());
+        storedFileIds.remove(fileId);
+        return removed;
+    }
+
+    /**
+     * Removes the objects a previous export left in the location which this
+     * storage didn't store, along with the blobs none of its objects point at.
+     * Call at the end of a full export, so objects deleted from the graph
+     * since the last export into the location don't linger.
+     *
+     * @throws IOException if the location can't be listed or a file removed
+     */
+    public void sweepUnstored() throws IOException {
+        int sweptObjects = 0;
+        for (OFSType type : OFSType.values()) {
+            if (!ofsGraphStorageProvider.pathExists(type.getFolder(stateLocation))) {
+                continue;
+            }
+            List<Path> unstored = new ArrayList<>();
+            try ( DirectoryStream<Path> paths = streamPaths(type)) {
+                for (Path path : paths) {
+                    if (!storedFileIds.contains(StringUtils.substringBeforeLast(path.getFileName().toString(), "."))) {
+                        unstored.add(path);
+                    }
+                }
+            }
+            for (Path path : unstored) {
+                String resource = calcResourceFromPath(path);
+                ofsGraphStorageProvider.deleteFile(path);
+                if (resource != null) {
+                    resourceToIdStore.removeResource(resource);
+                }
+                sweptObjects++;
+            }
+        }
+        int sweptBlobs = 0;
+        if (readBlobs && ofsGraphStorageProvider.pathExists(stateLocation.resolve(BLOB_FOLDER))) {
+            List<Path> unknown = new ArrayList<>();
+            try ( DirectoryStream<Path> fanOuts = ofsGraphStorageProvider.listFilesInDirectory(stateLocation.resolve(BLOB_FOLDER), "*")) {
+                for (Path fanOut : fanOuts) {
+                    try ( DirectoryStream<Path> blobs = ofsGraphStorageProvider.listFilesInDirectory(fanOut, "*" + BLOB_EXT)) {
+                        for (Path blob : blobs) {
+                            if (!knownBlobs.contains(StringUtils.removeEnd(blob.getFileName().toString(), BLOB_EXT))) {
+                                unknown.add(blob);
+                            }
+                        }
+                    }
+                }
+            }
+            for (Path blob : unknown) {
+                ofsGraphStorageProvider.deleteFile(blob);
+                sweptBlobs++;
+            }
+        }
+        LOGGER.debug("Swept {} objects & {} blobs no longer in the export at [{}]", sweptObjects, sweptBlobs, stateLocation);
+    }
+    
+    public void storeStateDelta(StateDelta delta) throws IOException {
+        try ( OutputStream out = ofsGraphStorageProvider.openFileOutputStream(stateLocation.resolve(STATE_DELTA_FILE))) {
+            MappingUtil.writeObjToJson(delta, out);
+        }
+    }
+
+    public StateDelta readStateDelta() throws IOException, InternalException {
+        Path deltaLocation = stateLocation.resolve(STATE_DELTA_FILE);
+        if (!ofsGraphStorageProvider.pathExists(deltaLocation)) {
+            throw new InternalException("No state delta exists at [%s]", stateLocation);
+        }
+        try ( InputStream in = ofsGraphStorageProvider.openFileInputStream(deltaLocation)) {
+            return MappingUtil.jsonStreamToObject(in, StateDelta.class);
+        }
+    }
+    
+    /**
+     * @return writer to append the dependencies recorded during an export to
+     * @throws IOException if the spill file can't be opened
+     */
+    public BufferedWriter openManifestSpill() throws IOException {
+        return openWriter(stateLocation.resolve(MANIFEST_SPILL_FILE));
+    }
+
+    public BufferedReader readManifestSpill() throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                ofsGraphStorageProvider.openFileInputStream(stateLocation.resolve(MANIFEST_SPILL_FILE)), StandardCharsets.UTF_8));
+    }
+
+    public void removeManifestSpill() throws IOException {
+        ofsGraphStorageProvider.deleteFile(stateLocation.resolve(MANIFEST_SPILL_FILE));
+    }
+
+    /**
+     * @return writer for the manifest, one {@link ManifestEntry} per line
+     * @throws IOException if the manifest can't be opened
+     */
+    public BufferedWriter openManifest() throws IOException {
+        return openWriter(stateLocation.resolve(MANIFEST_FILE));
+    }
+
+    /**
+     * @return reader of the manifest of the export, empty for exports made
+     * before manifests were written
+     * @throws IOException if the manifest fails to open
+     */
+    public Optional<ManifestReader> readManifest() throws IOException {
+        Path manifestLocation = stateLocation.resolve(MANIFEST_FILE);
+        if (!ofsGraphStorageProvider.pathExists(manifestLocation)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ManifestReader(new BufferedReader(new InputStreamReader(
+                ofsGraphStorageProvider.openFileInputStream(manifestLocation), StandardCharsets.UTF_8))));
+    }
+
+    private BufferedWriter openWriter(Path location) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(ofsGraphStorageProvider.openFileOutputStream(location), StandardCharsets.UTF_8));
     }
     
     public String getResourceFromFileId(String fileId) throws IOException {
@@ -96,4 +392,19 @@ public class GraphStorage {
     public Path getStateLocation() {
         return stateLocation;
     }
+
+    /**
+     * Writes out any buffered resource to file id mappings, call once all
+     * objects are stored.
+     *
+     * @throws IOException if the mappings fail to write
+     */
+    public void flush() throws IOException {
+        resourceToIdStore.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        resourceToIdStore.close();
+    }
 }
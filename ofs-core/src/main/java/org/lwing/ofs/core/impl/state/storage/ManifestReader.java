@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.storage;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import org.apache.commons.lang3.StringUtils;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.state.ManifestEntry;
+
+/**
+ * Reads the manifest of an export one entry at a time, in import order.
+ *
+ * @author Lucas Wing
+ */
+public class ManifestReader implements Closeable {
+
+    private final BufferedReader reader;
+
+    ManifestReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return next entry of the manifest, null once all were read
+     * @throws IOException if the manifest fails to read
+     */
+    public ManifestEntry next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (StringUtils.isNotBlank(line)) {
+                return MappingUtil.jsonStringToObject(line, ManifestEntry.class);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
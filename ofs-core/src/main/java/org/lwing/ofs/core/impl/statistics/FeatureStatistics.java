@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.statistics;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Statistics of the features kept up to date from the feature write paths, so
+ * they can be read without scanning the graph. Holds the feature count per
+ * model, the min & max of numeric & date properties & a HyperLogLog sketch of
+ * the distinct values of String properties.
+ *
+ * Min & max only ever widen, so after deletes & updates they are bounds of
+ * the values rather than exact, until the statistics are rebuilt.
+ *
+ * @author Lucas Wing
+ */
+public class FeatureStatistics {
+
+    private static final int FORMAT_VERSION = 1;
+
+    // 2^12 registers, about 1.6% standard error
+    private static final int SKETCH_BITS = 12;
+
+    private static final int SKETCH_REGISTERS = 1 << SKETCH_BITS;
+
+    private static final HashFunction VALUE_HASH = Hashing.murmur3_128();
+
+    // model id -> feature count
+    private final Map<String, Long> modelCounts;
+
+    // property -> min & max
+    private final Map<String, Range> ranges;
+
+    // property -> distinct value sketch
+    private final Map<String, byte[]> sketches;
+
+    public FeatureStatistics() {
+        this.modelCounts = new HashMap<>();
+        this.ranges = new HashMap<>();
+        this.sketches = new HashMap<>();
+    }
+
+    /**
+     * Records a created or updated feature
+     *
+     * @param oldModelIds models the feature inherited from before the write,
+     * empty for a created feature
+     * @param newModelIds models the feature inherits from after the write
+     * @param values property -> values of the feature after the write
+     */
+    public synchronized void recordWrite(Collection<String> oldModelIds, Collection<String> newModelIds, Map<String, List<Object>> values) {
+        Set<String> removed = new HashSet<>(oldModelIds);
+        removed.removeAll(newModelIds);
+        Set<String> added = new HashSet<>(newModelIds);
+        added.removeAll(oldModelIds);
+        removed.forEach(this::decrementModel);
+        added.forEach(modelId -> modelCounts.merge(modelId, 1L, Long::sum));
+        for (Map.Entry<String, List<Object>> propValues : values.entrySet()) {
+            for (Object value : propValues.getValue()) {
+                recordValue(propValues.getKey(), value);
+            }
+        }
+    }
+
+    /**
+     * Records a deleted feature
+     *
+     * @param modelIds models the feature inherited from
+     */
+    public synchronized void recordDelete(Collection<String> modelIds) {
+        new HashSet<>(modelIds).forEach(this::decrementModel);
+    }
+
+    /**
+     * @param modelId id of the model
+     * @return number of features of the model, features of models inheriting
+     * from it are included
+     */
+    public synchronized long getFeatureCount(String modelId) {
+        return modelCounts.getOrDefault(modelId, 0L);
+    }
+
+    /**
+     * @param property numeric or date property
+     * @return smallest value seen, a Double for numeric properties & a Date
+     * for date properties. Empty if no values were seen.
+     */
+    public synchronized Optional<Object> getMin(String property) {
+        Range range = ranges.get(property);
+        return range == null ? Optional.empty() : Optional.of(range.toValue(range.min));
+    }
+
+    /**
+     * @param property numeric or date property
+     * @return largest value seen, a Double for numeric properties & a Date
+     * for date properties. Empty if no values were seen.
+     */
+    public synchronized Optional<Object> getMax(String property) {
+        Range range = ranges.get(property);
+        return range == null ? Optional.empty() : Optional.of(range.toValue(range.max));
+    }
+
+    /**
+     * @param property String property
+     * @return estimate of the number of distinct values seen
+     */
+    public synchronized long getDistinctEstimate(String property) {
+        byte[] registers = sketches.get(property);
+        if (registers == null) {
+            return 0;
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / SKETCH_REGISTERS);
+        double estimate = alpha * SKETCH_REGISTERS * SKETCH_REGISTERS / sum;
+        // linear counting is more accurate while many registers are empty
+        if (estimate <= 2.5 * SKETCH_REGISTERS && zeros > 0) {
+            estimate = SKETCH_REGISTERS * Math.log((double) SKETCH_REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Clears all statistics, ex. before a rebuild
+     */
+    public synchronized void clear() {
+        modelCounts.clear();
+        ranges.clear();
+        sketches.clear();
+    }
+
+    /**
+     * Replaces these statistics with a copy of the given statistics
+     *
+     * @param other statistics to copy
+     */
+    public void replaceWith(FeatureStatistics other) {
+        synchronized (other) {
+            synchronized (this) {
+                clear();
+                modelCounts.putAll(other.modelCounts);
+                other.ranges.forEach((property, range) -> ranges.put(property, new Range(range.date, range.min, range.max)));
+                other.sketches.forEach((property, registers) -> sketches.put(property, registers.clone()));
+            }
+        }
+    }
+
+    public synchronized void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(modelCounts.size());
+        for (Map.Entry<String, Long> count : modelCounts.entrySet()) {
+            out.writeUTF(count.getKey());
+            out.writeLong(count.getValue());
+        }
+        out.writeInt(ranges.size());
+        for (Map.Entry<String, Range> range : ranges.entrySet()) {
+            out.writeUTF(range.getKey());
+            out.writeBoolean(range.getValue().date);
+            out.writeDouble(range.getValue().min);
+            out.writeDouble(range.getValue().max);
+        }
+        out.writeInt(sketches.size());
+        for (Map.Entry<String, byte[]> sketch : sketches.entrySet()) {
+            out.writeUTF(sketch.getKey());
+            out.write(sketch.getValue());
+        }
+    }
+
+    public synchronized void read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported feature statistics version " + version);
+        }
+        clear();
+        int modelCount = in.readInt();
+        for (int i = 0; i < modelCount; i++) {
+            modelCounts.put(in.readUTF(), in.readLong());
+        }
+        int rangeCount = in.readInt();
+        for (int i = 0; i < rangeCount; i++) {
+            String property = in.readUTF();
+            ranges.put(property, new Range(in.readBoolean(), in.readDouble(), in.readDouble()));
+        }
+        int sketchCount = in.readInt();
+        for (int i = 0; i < sketchCount; i++) {
+            String property = in.readUTF();
+            byte[] registers = new byte[SKETCH_REGISTERS];
+            in.readFully(registers);
+            sketches.put(property, registers);
+        }
+    }
+
+    private void decrementModel(String modelId) {
+        modelCounts.computeIfPresent(modelId, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void recordValue(String property, Object value) {
+        if (value instanceof Number number) {
+            recordRange(property, false, number.doubleValue());
+        } else if (value instanceof Date date) {
+            recordRange(property, true, date.getTime());
+        } else if (value instanceof String string) {
+            long hash = VALUE_HASH.hashString(string, StandardCharsets.UTF_8).asLong();
+            int register = (int) (hash >>> (Long.SIZE - SKETCH_BITS));
+            // leading zeros of the bits not used for the register, plus one
+            byte rank = (byte) Math.min(Long.numberOfLeadingZeros(hash << SKETCH_BITS) + 1, Long.SIZE - SKETCH_BITS + 1);
+            byte[] registers = sketches.computeIfAbsent(property, k -> new byte[SKETCH_REGISTERS]);
+            if (rank > registers[register]) {
+                registers[register] = rank;
+            }
+        }
+    }
+
+    private void recordRange(String property, boolean date, double value) {
+        Range range = ranges.get(property);
+        if (range == null) {
+            ranges.put(property, new Range(date, value, value));
+        } else {
+            range.min = Math.min(range.min, value);
+            range.max = Math.max(range.max, value);
+        }
+    }
+
+    private static class Range {
+
+        private final boolean date;
+
+        private double min;
+
+        private double max;
+
+        public Range(boolean date, double min, double max) {
+            this.date = date;
+            this.min = min;
+            this.max = max;
+        }
+
+        public Object toValue(double bound) {
+            return date ? new Date((long) bound) : bound;
+        }
+
+    }
+
+}
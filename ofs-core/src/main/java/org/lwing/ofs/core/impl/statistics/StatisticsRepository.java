@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.lwing.ofs.core.api.VertexType;
+import org.lwing.ofs.core.api.config.OFSConfiguration;
+import org.lwing.ofs.core.impl.OFSRepository;
+import org.lwing.ofs.core.impl.feature.FeatureRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the feature statistics maintained by the FeatureRepository write
+ * paths in constant time. If a statistics file is configured the statistics
+ * are loaded from it on startup & written back to it every configured number
+ * of feature writes.
+ *
+ * @author Lucas Wing
+ */
+public class StatisticsRepository extends OFSRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsRepository.class);
+
+    private static final String TMP_EXT = ".tmp";
+
+    private final FeatureStatistics statistics;
+
+    private final Path statisticsFile;
+
+    private final int persistInterval;
+
+    // writes recorded since the statistics were last persisted
+    private final AtomicLong unpersistedWrites;
+
+    // held by a rebuild so rebuilds don't overlap, writes never take it
+    private final Object rebuildMonitor;
+
+    // statistics being rebuilt, null when not rebuilding. The rebuild fields are guarded by the statistics.
+    private FeatureStatistics rebuilding;
+
+    // ids of the features counted by the rebuild's scan
+    private Set<String> rebuildScanned;
+
+    // feature id -> latest write to a feature the scan hasn't counted, null if deleted
+    private Map<String, Consumer<FeatureStatistics>> rebuildWrites;
+
+    public StatisticsRepository(JanusGraph graph, OFSConfiguration config) {
+        super(graph, config);
+        this.statistics = new FeatureStatistics();
+        this.statisticsFile = config.getStatisticsFile();
+        this.persistInterval = config.getStatisticsPersistInterval();
+        this.unpersistedWrites = new AtomicLong();
+        this.rebuildMonitor = new Object();
+        load();
+    }
+
+    /**
+     * @param modelId id of the model
+     * @return number of features of the model, features of models inheriting
+     * from it are included
+     */
+    public long getFeatureCount(String modelId) {
+        return statistics.getFeatureCount(modelId);
+    }
+
+    /**
+     * @param property numeric or date property
+     * @return lower bound of the property's values, a Double for numeric
+     * properties & a Date for date properties. Empty if no values were seen.
+     */
+    public Optional<Object> getMin(String property) {
+        return statistics.getMin(property);
+    }
+
+    /**
+     * @param property numeric or date property
+     * @return upper bound of the property's values, a Double for numeric
+     * properties & a Date for date properties. Empty if no values were seen.
+     */
+    public Optional<Object> getMax(String property) {
+        return statistics.getMax(property);
+    }
+
+    /**
+     * @param property String property
+     * @return estimate of the number of distinct values of the property
+     */
+    public long getDistinctEstimate(String property) {
+        return statistics.getDistinctEstimate(property);
+    }
+
+    /**
+     * Recalculates the statistics from every feature in the graph, which
+     * tightens the min & max after deletes & picks up features written by
+     * other OpenFeatureStore instances. Writes recorded while the graph is
+     * scanned are carried onto the recalculated statistics, counting each
+     * feature once.
+     *
+     * @throws Exception generic JanusGraph exception
+     */
+    public void rebuild() throws Exception {
+        synchronized (rebuildMonitor) {
+            FeatureStatistics rebuilt = new FeatureStatistics();
+            try ( GraphTraversalSource g = getTraversalSource()) {
+                // start from a fresh transaction so features committed by other threads are seen
+                g.tx().rollback();
+                synchronized (statistics) {
+                    rebuilding = rebuilt;
+                    rebuildScanned = new HashSet<>();
+                    rebuildWrites = new LinkedHashMap<>();
+                }
+                try {
+                    g.V().has(OFSRepository.NODE_TYPE_FIELD, VertexType.FEATURE.name()).forEachRemaining(this::recordScanned);
+                } catch (Exception ex) {
+                    synchronized (statistics) {
+                        // the writes were already recorded to the current statistics
+                        endRebuild();
+                    }
+                    throw ex;
+                } finally {
+                    g.tx().rollback();
+                }
+            }
+            synchronized (statistics) {
+                // features written before the scan reached them are counted once, as they were last written
+                rebuildWrites.values().stream().filter(Objects::nonNull).forEach(write -> write.accept(rebuilt));
+                endRebuild();
+                statistics.replaceWith(rebuilt);
+            }
+            persist();
+        }
+    }
+
+    /**
+     * Writes the statistics to the configured statistics file, does nothing
+     * if no file is configured
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void persist() throws IOException {
+        if (statisticsFile == null) {
+            return;
+        }
+        unpersistedWrites.set(0);
+        synchronized (statistics) {
+            if (statisticsFile.getParent() != null) {
+                Files.createDirectories(statisticsFile.getParent());
+            }
+            Path tmpFile = statisticsFile.resolveSibling(statisticsFile.getFileName() + TMP_EXT);
+            try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                statistics.write(out);
+            }
+            Files.move(tmpFile, statisticsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Records a created or updated feature, called by the FeatureRepository
+     * once the write is committed
+     *
+     * @param featureId id of the feature
+     * @param oldModelIds models the feature inherited from before the write,
+     * empty for a created feature
+     * @param newModelIds models the feature inherits from after the write
+     * @param values property -> values of the feature after the write
+     */
+    public void recordWrite(String featureId, Collection<String> oldModelIds, Collection<String> newModelIds, Map<String, List<Object>> values) {
+        record(featureId, s -> s.recordWrite(oldModelIds, newModelIds, values),
+                s -> s.recordWrite(Collections.emptyList(), newModelIds, values));
+        recordedWrite();
+    }
+
+    /**
+     * Records a deleted feature, called by the FeatureRepository once the
+     * delete is committed
+     *
+     * @param featureId id of the feature
+     * @param modelIds models the feature inherited from
+     */
+    public void recordDelete(String featureId, Collection<String> modelIds) {
+        record(featureId, s -> s.recordDelete(modelIds), null);
+        recordedWrite();
+    }
+
+    /**
+     * @param v vertex of a feature
+     * @return models the feature inherits from
+     */
+    public static List<String> readModelIds(Vertex v) {
+        List<String> modelIds = new ArrayList<>();
+        v.properties(FeatureRepository.INHERITS_FROM_PROP).forEachRemaining(p -> modelIds.add((String) p.value()));
+        return modelIds;
+    }
+
+    /**
+     * @param v vertex of a feature
+     * @return property -> values of the feature, internal fields are left out
+     */
+    public static Map<String, List<Object>> readValues(Vertex v) {
+        Map<String, List<Object>> values = new HashMap<>();
+        v.properties().forEachRemaining(p -> {
+            if (!p.key().startsWith(OFSConfiguration.INTERNAL_FIELD_PREFIX)) {
+                values.computeIfAbsent(p.key(), k -> new ArrayList<>()).add(p.value());
+            }
+        });
+        return values;
+    }
+
+    /**
+     * Counts a feature read by a rebuild's scan of the graph, unless it was
+     * written since the scan started
+     *
+     * @param v vertex of the feature
+     */
+    void recordScanned(Vertex v) {
+        String featureId = (String) v.id();
+        List<String> modelIds = readModelIds(v);
+        Map<String, List<Object>> values = readValues(v);
+        synchronized (statistics) {
+            // the scan may have read the feature before the write, so the write wins
+            if (!rebuildWrites.containsKey(featureId)) {
+                rebuilding.recordWrite(Collections.emptyList(), modelIds, values);
+                rebuildScanned.add(featureId);
+            }
+        }
+    }
+
+    /**
+     * @param featureId id of the written feature
+     * @param change applies the write to statistics that counted the feature
+     * as it was before the write
+     * @param latest counts the feature as it is after the write, null if it
+     * was deleted
+     */
+    private void record(String featureId, Consumer<FeatureStatistics> change, Consumer<FeatureStatistics> latest) {
+        synchronized (statistics) {
+            change.accept(statistics);
+            if (rebuilding == null) {
+                return;
+            }
+            if (rebuildScanned.contains(featureId)) {
+                change.accept(rebuilding);
+            } else {
+                rebuildWrites.put(featureId, latest);
+            }
+        }
+    }
+
+    private void endRebuild() {
+        rebuilding = null;
+        rebuildScanned = null;
+        rebuildWrites = null;
+    }
+
+    private void recordedWrite() {
+        if (statisticsFile == null || unpersistedWrites.incrementAndGet() < persistInterval) {
+            return;
+        }
+        try {
+            persist();
+        } catch (IOException ex) {
+            // the write is already committed, the statistics are persisted again on the next interval
+            LOGGER.warn("Failed to persist feature statistics to {}", statisticsFile, ex);
+        }
+    }
+
+    private void load() {
+        if (statisticsFile == null || !Files.exists(statisticsFile)) {
+            return;
+        }
+        try ( DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(statisticsFile)))) {
+            statistics.read(in);
+        } catch (IOException ex) {
+            // statistics are estimates, start empty rather than failing the store
+            LOGGER.warn("Failed to load feature statistics from {}, call rebuild to recalculate them", statisticsFile, ex);
+            statistics.clear();
+        }
+    }
+
+}
@@ -28,6 +28,7 @@ import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.janusgraph.core.JanusGraph;
 import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
 import org.lwing.ofs.core.impl.model.ModelRepository;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
 
 /**
  *
@@ -97,6 +98,7 @@ public class ViewRepository extends SchemaVertexRepository<View> {
                         // add link to view
                         g.V(viewId).addE(ViewRepository.VIEWS_VIEW_LABEL).to(V(linkedViewId)).next();
                     }
+                    recordChange(ChangeType.CREATE, OFSType.VIEW, viewId);
                     tx.commit();
                 }
                 return viewId;
@@ -155,6 +157,7 @@ public class ViewRepository extends SchemaVertexRepository<View> {
      * @throws Exception for other JanusGraph related errors
      */
     public void deleteView(String viewId) throws GraphIntegrityException, Exception {
+        recordChange(ChangeType.DELETE, OFSType.VIEW, viewId);
         deleteVertex(viewId, OFSType.VIEW);
     }
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import org.janusgraph.core.schema.Mapping;
+import org.janusgraph.core.schema.Parameter;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.index.Index;
+import org.lwing.ofs.core.api.index.IndexElementType;
+import org.lwing.ofs.core.api.index.IndexType;
+import org.lwing.ofs.core.api.property.Property;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class MappingUtilTest {
+
+    @Test
+    public void testStreamRoundTrip() throws IOException {
+        Property prop = new Property("testKey", 10L);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MappingUtil.writeObjToJson(prop, out);
+        assertEquals(MappingUtil.turnObjToJsonString(prop), out.toString());
+        Property read = MappingUtil.jsonStreamToObject(new ByteArrayInputStream(out.toByteArray()), Property.class);
+        assertEquals(prop.getName(), read.getName());
+        assertEquals(prop.getValue(), read.getValue());
+    }
+
+    @Test
+    public void testWriterLeftOpen() throws IOException {
+        StringWriter writer = new StringWriter();
+        MappingUtil.writeObjToJson(new Property("a", "b"), writer);
+        writer.write("\n");
+        MappingUtil.writeObjToJson(new Property("c", "d"), writer);
+        assertEquals(2, writer.toString().split("\n").length);
+    }
+
+    @Test
+    public void testIndexParameterRoundTrip() throws IOException {
+        Map<String, Parameter[]> props = new HashMap<>();
+        props.put("prop", new Parameter[]{Mapping.TEXT.asParameter()});
+        Index index = new Index("ix", props, IndexElementType.VERTEX, IndexType.MIXED, false);
+        Index read = MappingUtil.jsonStringToObject(MappingUtil.turnObjToJsonString(index), Index.class);
+        assertArrayEquals(props.get("prop"), read.getProperties().get("prop"));
+    }
+
+    @Test
+    public void testReaderCached() {
+        assertSame(MappingUtil.getReader(Property.class), MappingUtil.getReader(Property.class));
+    }
+
+}
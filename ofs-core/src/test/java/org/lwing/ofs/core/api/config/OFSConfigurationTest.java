@@ -4,15 +4,21 @@
  */
 package org.lwing.ofs.core.api.config;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.lwing.ofs.core.api.lock.ResourceLock;
+import org.lwing.ofs.core.api.state.ChangeLog;
 import org.lwing.ofs.core.api.state.GraphStorageSystem;
 import org.lwing.ofs.core.api.state.ImportCacheProvider;
 import org.lwing.ofs.core.impl.lock.ResourceLockImpl;
 import org.lwing.ofs.core.impl.state.impls.GraphFilesystemStorage;
 import org.lwing.ofs.core.impl.state.impls.MapImportCacheProvider;
+import org.lwing.ofs.core.impl.state.impls.MemoryChangeLog;
 
 /**
  *
@@ -26,16 +32,29 @@ public class OFSConfigurationTest {
         ResourceLock lock = new ResourceLockImpl();
         ImportCacheProvider importCacheProvider = new MapImportCacheProvider();
         GraphStorageSystem graphStorageProvider = new GraphFilesystemStorage();
+        ChangeLog changeLog = new MemoryChangeLog();
         OFSConfigurationParams params = OFSConfigurationParams.build()
                 .setMixedIndexName("testName").setResourceLock(lock)
-                .setImportCacheProvider(importCacheProvider).setGraphStorageProvider(graphStorageProvider);
+                .setImportCacheProvider(importCacheProvider).setGraphStorageProvider(graphStorageProvider)
+                .setChangeLog(changeLog).setExportThreads(7).setContentAddressedStorage(true)
+                .setSpatialIndexProperties(new HashSet<>(Arrays.asList("location"))).setSpatialIndexCellDegrees(0.5)
+                .setBitmapIndexProperties(new HashSet<>(Arrays.asList("status")))
+                .setStatisticsFile(Paths.get("target/stats")).setStatisticsPersistInterval(10);
         // build cfg
         OFSConfiguration config = new OFSConfiguration(params);
         // verify ref equals to make sure the objs I set are the ones that exist
         assertTrue(lock == config.getResourceLock());
         assertTrue(importCacheProvider == config.getImportCacheProvider());
         assertTrue(graphStorageProvider == config.getGraphStorageProvider());
+        assertTrue(changeLog == config.getChangeLog());
         assertEquals("testName", config.getMixedIndexName());
+        assertEquals(7, config.getExportThreads());
+        assertTrue(config.isContentAddressedStorage());
+        assertEquals(new HashSet<>(Arrays.asList("location")), config.getSpatialIndexProperties());
+        assertEquals(0.5, config.getSpatialIndexCellDegrees());
+        assertEquals(new HashSet<>(Arrays.asList("status")), config.getBitmapIndexProperties());
+        assertEquals(Paths.get("target/stats"), config.getStatisticsFile());
+        assertEquals(10, config.getStatisticsPersistInterval());
     }
     
     @Test
@@ -46,7 +65,15 @@ public class OFSConfigurationTest {
         assertTrue(config.getResourceLock() != null);
         assertTrue(config.getImportCacheProvider() != null);
         assertTrue(config.getGraphStorageProvider() != null);
+        assertTrue(config.getChangeLog() == null);
         assertTrue(config.getMixedIndexName() == null);
+        assertTrue(config.getExportThreads() > 0);
+        assertFalse(config.isContentAddressedStorage());
+        assertTrue(config.getSpatialIndexProperties().isEmpty());
+        assertTrue(config.getSpatialIndexCellDegrees() > 0);
+        assertTrue(config.getBitmapIndexProperties().isEmpty());
+        assertTrue(config.getStatisticsFile() == null);
+        assertTrue(config.getStatisticsPersistInterval() > 0);
     }
     
 }
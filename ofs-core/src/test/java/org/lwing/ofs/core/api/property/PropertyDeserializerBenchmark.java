@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.api.property;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.janusgraph.core.attribute.Geoshape;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks decoding of exported features, which is the bulk of an import.
+ * Not run as part of the test suite, run it after a test-compile with:
+ * java -cp target/test-classes:target/classes:(test classpath)
+ * org.lwing.ofs.core.api.property.PropertyDeserializerBenchmark
+ *
+ * @author Lucas Wing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyDeserializerBenchmark {
+
+    @Param({"10", "100"})
+    private int propertiesPerFeature;
+
+    private List<String> features;
+
+    @Setup
+    public void setup() throws IOException {
+        features = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            List<Property> props = new ArrayList<>();
+            for (int p = 0; p < propertiesPerFeature; p++) {
+                props.add(new Property("prop" + p, buildValue(i, p)));
+            }
+            Feature feature = new Feature(UUID.randomUUID().toString(), "model", props, new HashSet<>());
+            features.add(MappingUtil.turnObjToJsonString(feature));
+        }
+    }
+
+    @Benchmark
+    public void decodeFeatures(Blackhole bh) throws IOException {
+        for (String feature : features) {
+            bh.consume(MappingUtil.jsonStringToObject(feature, Feature.class));
+        }
+    }
+
+    private static Object buildValue(int i, int p) {
+        return switch (p % 6) {
+            case 0 -> "value" + i;
+            case 1 -> (long) i * p;
+            case 2 -> i * 0.5d;
+            case 3 -> new Date(i * 1000L);
+            case 4 -> Geoshape.point(i % 90, p % 180);
+            default -> UUID.randomUUID();
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PropertyDeserializerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -6,6 +6,11 @@ package org.lwing.ofs.core.api.property;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import org.janusgraph.core.attribute.Geoshape;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.Test;
@@ -48,4 +53,30 @@ public class PropertyDeserializerTest {
         });
     }
 
+    @Test
+    public void testPropertyDeserializeAllTypes() throws JsonProcessingException {
+        List<Object> values = Arrays.asList("str", 'c', true, Byte.parseByte("3"), Short.parseShort("4"), 5, 6L,
+                7.5f, 8.25d, new Date(), Geoshape.point(10.0, 20.0), UUID.randomUUID());
+        for (Object value : values) {
+            Property out = MappingUtil.jsonStringToObject(MappingUtil.turnObjToJsonString(new Property("key", value)), Property.class);
+            assertEquals(value, out.getValue());
+        }
+    }
+
+    @Test
+    public void testPropertyDeserializeFieldOrder() throws JsonProcessingException {
+        String propStr = "{\"class\":\"java.lang.Long\",\"extra\":{\"a\":[1]},\"value\":\"12\",\"name\":\"testKey\"}";
+        Property out = MappingUtil.jsonStringToObject(propStr, Property.class);
+        assertEquals("testKey", out.getName());
+        assertEquals(12L, out.getValue());
+    }
+
+    @Test
+    public void testPropertyDeserializeBadNumber() {
+        String propStr = "{\"name\":\"testKey\",\"value\":\"abc\",\"class\":\"java.lang.Integer\"}";
+        assertThrows(JsonException.class, () -> {
+            MappingUtil.jsonStringToObject(propStr, Property.class);
+        });
+    }
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FacetCountsTest extends GraphTest {
+
+    @Test
+    public void testFacetCounts() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("status", String.class, Cardinality.SINGLE,
+                new HashSet<>(Arrays.asList("open", "closed", "pending"))));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("tags", String.class, Cardinality.LIST));
+        Model parent = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(
+                new Property("status", "open"),
+                new Property("tags", "a")
+        )));
+        Model child = createBasicModel(openFeatureStore, new FeatureSchema(new ArrayList<>()),
+                new HashSet<>(Arrays.asList(parent.getId())), false);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("f1", parent.getId(), Arrays.asList(new Property("status", "open"), new Property("tags", "a"))));
+        featureRepo.addFeature(new Feature("f2", parent.getId(), Arrays.asList(new Property("status", "closed"), new Property("tags", "b"))));
+        // a value held many times is only counted once
+        featureRepo.addFeature(new Feature("f3", child.getId(), Arrays.asList(new Property("status", "open"),
+                new Property("tags", "a"), new Property("tags", "a"))));
+        FacetCounts counts = featureRepo.facetCounts(g -> g.V().has(FeatureRepository.INHERITS_FROM_PROP, parent.getId()),
+                new HashSet<>(Arrays.asList("status", "tags")));
+        assertEquals(3, counts.getTotalCount());
+        assertEquals(3L, counts.getModelCounts().get(parent.getId()));
+        assertEquals(1L, counts.getModelCounts().get(child.getId()));
+        assertEquals(2L, counts.getValueCounts("status").get("open"));
+        assertEquals(1L, counts.getValueCounts("status").get("closed"));
+        // allowable values without features are still listed
+        assertEquals(0L, counts.getValueCounts("status").get("pending"));
+        assertEquals(2L, counts.getValueCounts("tags").get("a"));
+        assertEquals(1L, counts.getValueCounts("tags").get("b"));
+        assertThrows(GraphIntegrityException.class, () -> featureRepo.facetCounts(g -> g.V(), Collections.singleton("missingProp")));
+    }
+
+}
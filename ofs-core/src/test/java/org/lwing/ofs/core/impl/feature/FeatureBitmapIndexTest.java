@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.OpenFeatureStore;
+import org.lwing.ofs.core.api.config.OFSConfigurationParams;
+import org.lwing.ofs.core.api.exception.MissingIndexException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureBitmapIndexTest extends GraphTest {
+
+    @Test
+    public void testIndexKeptInSyncWithWrites() throws Exception {
+        OpenFeatureStore bitmapStore = getOpenFeatureStore(OFSConfigurationParams.build()
+                .setBitmapIndexProperties(new HashSet<>(Arrays.asList("status"))));
+        FeatureRepository featureRepo = bitmapStore.getFeatureRepository();
+        Model model = createStatusModel(bitmapStore);
+        // written before the index is built, so picked up by the build
+        addStatusFeature(featureRepo, model, "a", "open");
+        addStatusFeature(featureRepo, model, "b", "closed");
+        addStatusFeature(featureRepo, model, "c", "open");
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), featureRepo.searchBitmapIndexIds(filter("status", "open")));
+        // written after the index is built
+        addStatusFeature(featureRepo, model, "d", "pending");
+        featureRepo.updateFeature("a", Arrays.asList(new Property("status", "closed")));
+        featureRepo.deleteFeature("c");
+        assertTrue(featureRepo.searchBitmapIndexIds(filter("status", "open")).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "d")), featureRepo.searchBitmapIndexIds(filter("status", "closed", "pending")));
+        assertEquals(3, featureRepo.countBitmapIndex(Collections.emptyMap()));
+        Map<Object, Long> counts = featureRepo.countBitmapIndexFacets("status", Collections.emptyMap());
+        assertEquals(2L, counts.get("closed"));
+        assertEquals(1L, counts.get("pending"));
+        assertEquals(2, counts.size());
+        assertThrows(MissingIndexException.class, () -> featureRepo.searchBitmapIndexIds(filter("testprop", "test")));
+        // another store instance doesn't update this store's index
+        addStatusFeature(openFeatureStore.getFeatureRepository(), model, "e", "open");
+        assertEquals(0, featureRepo.countBitmapIndex(filter("status", "open")));
+        featureRepo.rebuildBitmapIndex();
+        assertEquals(new HashSet<>(Arrays.asList("e")), featureRepo.searchBitmapIndexIds(filter("status", "open")));
+    }
+
+    @Test
+    public void testFiltersAndFacetsAcrossProperties() throws Exception {
+        FeatureBitmapIndex index = new FeatureBitmapIndex(new HashSet<>(Arrays.asList("status", "color")));
+        index.rebuild(consumer -> {
+            consumer.accept("a", values("open", "red"));
+            consumer.accept("b", values("open", "blue"));
+            consumer.accept("c", values("closed", "red"));
+            consumer.accept("d", values("closed", "green"));
+        });
+        Map<String, Set<Object>> filters = new HashMap<>();
+        filters.put("status", new HashSet<>(Arrays.asList("open", "closed")));
+        filters.put("color", new HashSet<>(Arrays.asList("red", "green")));
+        assertEquals(new HashSet<>(Arrays.asList("a", "c", "d")), index.search(filters));
+        Map<Object, Long> counts = index.facetCounts("status", filter("color", "red"));
+        assertEquals(1L, counts.get("open"));
+        assertEquals(1L, counts.get("closed"));
+        // removed ordinals are reused by new features
+        index.remove("a");
+        index.update("e", values("open", "green"));
+        assertEquals(new HashSet<>(Arrays.asList("c", "d", "e")), index.search(filters));
+        assertEquals(4, index.count(Collections.emptyMap()));
+        assertTrue(index.search(filter("color", "purple")).isEmpty());
+    }
+
+    @Test
+    public void testUpdateDuringRebuild() throws Exception {
+        FeatureBitmapIndex index = new FeatureBitmapIndex(new HashSet<>(Arrays.asList("status", "color")));
+        index.rebuild(consumer -> {
+            consumer.accept("changed", values("open", "red"));
+            consumer.accept("removed", values("open", "blue"));
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            index.rebuild(consumer -> {
+                // the scan read the features before they were changed, removed & another one added
+                consumer.accept("changed", values("open", "red"));
+                consumer.accept("removed", values("open", "blue"));
+                Future<?> writer = executor.submit(() -> {
+                    index.update("changed", values("closed", "red"));
+                    index.remove("removed");
+                    index.update("added", values("open", "green"));
+                });
+                // writers don't wait for the rebuild to finish
+                writer.get(10, TimeUnit.SECONDS);
+                // the index being replaced stays current while the rebuild scans
+                assertEquals(new HashSet<>(Arrays.asList("added")), index.search(filter("status", "open")));
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+        // updates made during the rebuild aren't lost to it
+        assertEquals(new HashSet<>(Arrays.asList("added")), index.search(filter("status", "open")));
+        assertEquals(new HashSet<>(Arrays.asList("changed")), index.search(filter("status", "closed")));
+        assertEquals(2, index.count(Collections.emptyMap()));
+    }
+
+    private static Map<String, Set<Object>> filter(String property, Object... values) {
+        Map<String, Set<Object>> out = new HashMap<>();
+        out.put(property, new HashSet<>(Arrays.asList(values)));
+        return out;
+    }
+
+    private static Map<String, List<Object>> values(String status, String color) {
+        Map<String, List<Object>> out = new HashMap<>();
+        out.put("status", Arrays.asList(status));
+        out.put("color", Arrays.asList(color));
+        return out;
+    }
+
+    private Model createStatusModel(OpenFeatureStore store) throws Exception {
+        store.getPropertyRepository().createProperty(new PrimitivePropertyKey("status", String.class, Cardinality.SINGLE,
+                new HashSet<>(Arrays.asList("open", "closed", "pending"))));
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("testprop", "test"),
+                new Property("status", "open")
+        ));
+        store.getPropertyRepository().createProperty(new PrimitivePropertyKey("testprop", String.class, Cardinality.SINGLE));
+        return createBasicModel(store, featureSchema);
+    }
+
+    private void addStatusFeature(FeatureRepository featureRepo, Model model, String id, String status) throws Exception {
+        featureRepo.addFeature(new Feature(id, model.getId(), Arrays.asList(new Property("status", status))));
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import org.janusgraph.core.attribute.Geoshape;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.exception.InternalKeywordException;
+import org.lwing.ofs.core.api.exception.MissingIndexException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.index.Index;
+import org.lwing.ofs.core.api.index.IndexElementType;
+import org.lwing.ofs.core.api.index.IndexType;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.index.IndexRepository;
+import static org.lwing.ofs.core.impl.index.IndexTest.buildIndexMap;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureGeoSearchTest extends GraphTest {
+
+    private static final String GEO_INDEX = "geoSearchIndex";
+
+    private Model model;
+
+    @BeforeEach
+    @Override
+    public void setupTests() throws GraphIntegrityException, InterruptedException, ExecutionException, InternalKeywordException, IOException {
+        // geo predicates need a mixed index
+        setupTests(true);
+    }
+
+    @Test
+    public void testSearchWithin() throws Exception {
+        createGeoFeatures();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        Geoshape box = Geoshape.box(38, -78, 40, -76);
+        assertEquals(new HashSet<>(Arrays.asList("washington", "baltimore", "annapolis")),
+                toIds(featureRepo.searchWithin(model.getId(), "geoSearchShape", box, Collections.emptyList())));
+        assertEquals(new HashSet<>(Arrays.asList("washington", "annapolis")),
+                toIds(featureRepo.searchWithin(model.getId(), "geoSearchShape", box,
+                        Arrays.asList(new Property("geoSearchKind", "capital")))));
+        assertEquals(0, featureRepo.searchWithin(model.getId(), "geoSearchShape", Geoshape.box(0, 0, 1, 1), Collections.emptyList()).size());
+    }
+
+    @Test
+    public void testSearchNearest() throws Exception {
+        createGeoFeatures();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        Geoshape fromWashington = Geoshape.point(38.9, -77.0);
+        List<Feature> nearest = featureRepo.searchNearest(model.getId(), "geoSearchShape", fromWashington, 2, Collections.emptyList());
+        assertEquals(Arrays.asList("washington", "annapolis"), nearest.stream().map(Feature::getId).collect(Collectors.toList()));
+        // the search circle has to grow to reach the far away features
+        nearest = featureRepo.searchNearest(model.getId(), "geoSearchShape", fromWashington, 5, Collections.emptyList());
+        assertEquals(Arrays.asList("washington", "annapolis", "baltimore", "newyork", "london"),
+                nearest.stream().map(Feature::getId).collect(Collectors.toList()));
+        nearest = featureRepo.searchNearest(model.getId(), "geoSearchShape", fromWashington, 10,
+                Arrays.asList(new Property("geoSearchKind", "city")));
+        assertEquals(Arrays.asList("baltimore", "newyork"), nearest.stream().map(Feature::getId).collect(Collectors.toList()));
+        assertTrue(featureRepo.searchNearest(model.getId(), "geoSearchShape", fromWashington, 0, Collections.emptyList()).isEmpty());
+        assertTrue(featureRepo.searchNearest(model.getId(), "geoSearchShape", fromWashington, -1, Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testAggregateGridWithIndex() throws Exception {
+        createGeoFeatures();
+        GridAggregation aggregation = openFeatureStore.getFeatureRepository().aggregateGrid(model.getId(), "geoSearchShape",
+                Geoshape.box(30, -80, 45, -70), 5.0, 10);
+        assertEquals(4, aggregation.getTotalCount());
+        assertEquals(2, aggregation.getCells().size());
+        for (GridAggregation.GridCell cell : aggregation.getCells()) {
+            assertEquals(cell.getMinLat() == 35 ? 3 : 1, cell.getCount());
+        }
+    }
+
+    @Test
+    public void testSearchRequiresGeoIndex() throws Exception {
+        createGeoFeatures();
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("geoUnindexedShape", Geoshape.class, Cardinality.SINGLE));
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        assertThrows(MissingIndexException.class, () -> featureRepo.searchWithin(model.getId(), "geoUnindexedShape",
+                Geoshape.box(38, -78, 40, -76), Collections.emptyList()));
+        assertThrows(MissingIndexException.class, () -> featureRepo.searchNearest(model.getId(), "geoUnindexedShape",
+                Geoshape.point(0, 0), 1, Collections.emptyList()));
+        assertThrows(GraphIntegrityException.class, () -> featureRepo.searchWithin(model.getId(), "geoSearchKind",
+                Geoshape.box(38, -78, 40, -76), Collections.emptyList()));
+    }
+
+    private void createGeoFeatures() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("geoSearchShape", Geoshape.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("geoSearchKind", String.class, Cardinality.SINGLE));
+        IndexRepository indexRepo = openFeatureStore.getIndexRepository();
+        indexRepo.createIndex(new Index(GEO_INDEX, buildIndexMap("geoSearchShape", "geoSearchKind"), IndexElementType.VERTEX, IndexType.MIXED, false, null), true);
+        indexRepo.updateIndex(GEO_INDEX, SchemaAction.ENABLE_INDEX);
+        indexRepo.awaitIndexStatus(GEO_INDEX, SchemaStatus.ENABLED);
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("geoSearchShape", Geoshape.point(0, 0)),
+                new Property("geoSearchKind", "city")
+        ));
+        model = createBasicModel(openFeatureStore, featureSchema);
+        addGeoFeature("washington", 38.89, -77.03, "capital");
+        addGeoFeature("annapolis", 38.97, -76.50, "capital");
+        addGeoFeature("baltimore", 39.29, -76.61, "city");
+        addGeoFeature("newyork", 40.71, -74.00, "city");
+        addGeoFeature("london", 51.50, -0.12, "capital");
+    }
+
+    private void addGeoFeature(String id, double latitude, double longitude, String kind) throws Exception {
+        openFeatureStore.getFeatureRepository().addFeature(new Feature(id, model.getId(), Arrays.asList(
+                new Property("geoSearchShape", Geoshape.point(latitude, longitude)),
+                new Property("geoSearchKind", kind)
+        )));
+    }
+
+    private static Set<String> toIds(List<Feature> features) {
+        return features.stream().map(Feature::getId).collect(Collectors.toSet());
+    }
+
+}
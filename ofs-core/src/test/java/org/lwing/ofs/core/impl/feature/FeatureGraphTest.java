@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.VertexNotFoundException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.property.RefPropertyKey;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.PropertyUtil;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.feature.FeatureGraph.FeatureNode;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureGraphTest extends GraphTest {
+
+    @Test
+    public void testReadFeatureGraph() throws Exception {
+        Model countryModel = createBasicModel(openFeatureStore);
+        openFeatureStore.getPropertyRepository().createProperty(new RefPropertyKey("country", countryModel.getId(), Cardinality.SINGLE));
+        Model stateModel = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(
+                new Property("testprop", "test"),
+                new Property("country")
+        )), false);
+        openFeatureStore.getPropertyRepository().createProperty(new RefPropertyKey("state", stateModel.getId(), Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new RefPropertyKey("neighbors", stateModel.getId(), Cardinality.LIST));
+        Model countyModel = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(
+                new Property("testprop", "test"),
+                new Property("state"),
+                new Property("neighbors")
+        )), false);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("country", countryModel.getId(), Arrays.asList(new Property("testprop", "usa"))));
+        featureRepo.addFeature(new Feature("state", stateModel.getId(), Arrays.asList(new Property("testprop", "ohio"),
+                new Property("country", "country"))));
+        featureRepo.addFeature(new Feature("otherState", stateModel.getId(), Arrays.asList(new Property("testprop", "indiana"),
+                new Property("country", "country"))));
+        featureRepo.addFeature(new Feature("county", countyModel.getId(), Arrays.asList(new Property("testprop", "franklin"),
+                new Property("state", "state"), new Property("neighbors", "state"), new Property("neighbors", "otherState"))));
+        // full depth
+        FeatureGraph featureGraph = featureRepo.readFeatureGraph("county", 2);
+        FeatureNode county = featureGraph.getRoot();
+        assertEquals("county", county.getFeature().getId());
+        assertEquals(4, featureGraph.getNodes().size());
+        FeatureNode state = county.getReferences("state").get(0);
+        assertEquals("state", state.getFeature().getId());
+        assertEquals(new HashSet<>(Arrays.asList("state", "otherState")), new HashSet<>(toIds(county.getReferences("neighbors"))));
+        // shared references are read once
+        FeatureNode otherState = featureGraph.getNode("otherState").get();
+        assertTrue(county.getReferences("neighbors").stream().anyMatch(n -> n == state));
+        assertSame(state.getReferences("country").get(0), otherState.getReferences("country").get(0));
+        FeatureNode country = state.getReferences("country").get(0);
+        assertEquals("usa", country.getFeature().getProperties().get(0).getValue());
+        assertTrue(country.getReferenceProperties().isEmpty());
+        // references past the depth are left as ids
+        FeatureGraph shallow = featureRepo.readFeatureGraph("county", 1);
+        assertEquals(3, shallow.getNodes().size());
+        assertFalse(shallow.getNode("country").isPresent());
+        assertTrue(shallow.getNode("state").get().getReferences("country").isEmpty());
+        assertTrue(shallow.getNode("state").get().getFeature().getProperties().stream()
+                .anyMatch(p -> p.getName().equals("country") && p.getValue().equals("country")));
+        // only selected references are followed
+        FeatureGraph selected = featureRepo.readFeatureGraph("county", 2, Arrays.asList(
+                Optional.of(new HashSet<>(Arrays.asList("state"))),
+                Optional.of(new HashSet<>(Arrays.asList("testprop")))
+        ));
+        assertEquals(2, selected.getNodes().size());
+        assertEquals(1, selected.getRoot().getFeature().getProperties().size());
+        assertEquals(1, selected.getNode("state").get().getFeature().getProperties().size());
+        assertEquals(1, featureRepo.readFeatureGraph("county", 0, Arrays.asList(PropertyUtil.ALL_SELECT)).getNodes().size());
+        assertThrows(VertexNotFoundException.class, () -> featureRepo.readFeatureGraph("missing", 1));
+    }
+
+    private static List<String> toIds(List<FeatureNode> nodes) {
+        return nodes.stream().map(n -> n.getFeature().getId()).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.impl.GraphTest;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureIngestionPipelineTest extends GraphTest {
+
+    @BeforeEach
+    public void setupLogDir() throws IOException {
+        FileUtils.deleteDirectory(getLogFile().getParent().toFile());
+    }
+
+    @Test
+    public void testSubmittedWritesApplied() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        String updatedId = featureRepo.addFeature(new Feature(model.getId(), Arrays.asList(new Property("testprop", "test"))));
+        List<String> featureIds = new ArrayList<>();
+        try ( FeatureIngestionPipeline pipeline = new FeatureIngestionPipeline(featureRepo, getLogFile(), 2, 4, 3)) {
+            for (int i = 0; i < 10; i++) {
+                featureIds.add(pipeline.submitFeature(new Feature(model.getId(), Arrays.asList(new Property("testprop", "ingested" + i)))));
+            }
+            pipeline.submitUpdate(updatedId, Arrays.asList(new Property("testprop", "updated")));
+            // fails to apply since the feature does not exist
+            pipeline.submitUpdate("missingFeature", Arrays.asList(new Property("testprop", "updated")));
+            assertTrue(pipeline.awaitApplied(30000));
+            assertEquals(1, pipeline.getFailedWriteCount());
+            // the write which can never apply is kept in the dead letter file
+            assertEquals(1, Files.readAllLines(pipeline.getDeadLetterFile()).size());
+        }
+        for (int i = 0; i < featureIds.size(); i++) {
+            assertEquals("ingested" + i, featureRepo.readFeature(featureIds.get(i)).getProperties().get(0).getValue());
+        }
+        assertEquals("updated", featureRepo.readFeature(updatedId).getProperties().get(0).getValue());
+        // everything was applied, so the log was emptied
+        assertEquals(0, Files.size(getLogFile()));
+    }
+
+    @Test
+    public void testReplayUnappliedWrites() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        Feature appliedFeature = new Feature("appliedFeature", model.getId(), Arrays.asList(new Property("testprop", "applied")));
+        Feature unappliedFeature = new Feature("unappliedFeature", model.getId(), Arrays.asList(new Property("testprop", "unapplied")));
+        // simulate a crash after the writes were logged but before they were all applied
+        try ( FeatureWriteAheadLog log = new FeatureWriteAheadLog(getLogFile())) {
+            log.append(FeatureWrite.create(appliedFeature));
+            log.append(FeatureWrite.create(unappliedFeature));
+        }
+        featureRepo.addFeature(appliedFeature);
+        Files.write(getLogFile(), new byte[]{0, 0, 1}, StandardOpenOption.APPEND);
+        try ( FeatureIngestionPipeline pipeline = new FeatureIngestionPipeline(featureRepo, getLogFile(), 1, 10, 10)) {
+            assertTrue(pipeline.awaitApplied(30000));
+            // the applied create was replayed as an update rather than failing
+            assertEquals(0, pipeline.getFailedWriteCount());
+        }
+        assertEquals("unapplied", featureRepo.readFeature(unappliedFeature.getId()).getProperties().get(0).getValue());
+        assertTrue(featureRepo.vertexExists(appliedFeature.getId()));
+        // reopening doesn't replay anything
+        try ( FeatureWriteAheadLog log = new FeatureWriteAheadLog(getLogFile())) {
+            assertEquals(0, log.readFrom(log.readAppliedOffset()).size());
+        }
+    }
+
+    @Test
+    public void testFailedWriteRetried() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        FeatureRepository featureRepo = Mockito.spy(openFeatureStore.getFeatureRepository());
+        // fails as a batch & on the first write on its own, as if the storage backend was briefly down
+        Mockito.doThrow(new IllegalStateException("Storage backend unavailable"))
+                .doThrow(new IllegalStateException("Storage backend unavailable"))
+                .doCallRealMethod()
+                .when(featureRepo).writeFeatures(any());
+        String featureId;
+        try ( FeatureIngestionPipeline pipeline = new FeatureIngestionPipeline(featureRepo, getLogFile(), 1, 10, 10)) {
+            featureId = pipeline.submitFeature(new Feature(model.getId(), Arrays.asList(new Property("testprop", "retried"))));
+            assertTrue(pipeline.awaitApplied(30000));
+            assertEquals(0, pipeline.getFailedWriteCount());
+            assertFalse(Files.exists(pipeline.getDeadLetterFile()));
+        }
+        verify(featureRepo, times(3)).writeFeatures(any());
+        assertEquals("retried", featureRepo.readFeature(featureId).getProperties().get(0).getValue());
+        assertEquals(0, Files.size(getLogFile()));
+    }
+
+    @Test
+    public void testFailedSyncNotReplayed() throws Exception {
+        Feature syncedFeature = new Feature("syncedFeature", "testModel", Arrays.asList(new Property("testprop", "synced")));
+        Feature unsyncedFeature = new Feature("unsyncedFeature", "testModel", Arrays.asList(new Property("testprop", "unsynced")));
+        FeatureWriteAheadLog log = Mockito.spy(new FeatureWriteAheadLog(getLogFile()));
+        try {
+            log.append(FeatureWrite.create(syncedFeature));
+            log.sync(log.getEndOffset());
+            long syncedEnd = log.getEndOffset();
+            log.append(FeatureWrite.create(unsyncedFeature));
+            doThrow(new IOException("Disk failed")).when(log).force();
+            assertThrows(IOException.class, () -> log.sync(log.getEndOffset()));
+            // the write reported as failed is dropped & the log takes no more writes
+            assertEquals(syncedEnd, log.getEndOffset());
+            assertThrows(IOException.class, () -> log.append(FeatureWrite.create(unsyncedFeature)));
+        } finally {
+            log.close();
+        }
+        try ( FeatureWriteAheadLog reopened = new FeatureWriteAheadLog(getLogFile())) {
+            List<FeatureWriteAheadLog.LogRecord> records = reopened.readFrom(0);
+            assertEquals(1, records.size());
+            assertEquals(syncedFeature.getId(), records.get(0).getWrite().getFeatureId());
+        }
+    }
+
+    private Path getLogFile() {
+        return Paths.get("target/ingest-wal/features.wal").toAbsolutePath();
+    }
+
+}
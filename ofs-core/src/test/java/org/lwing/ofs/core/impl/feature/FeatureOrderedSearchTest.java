@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import org.apache.tinkerpop.gremlin.process.traversal.Order;
+import org.janusgraph.core.attribute.Geoshape;
+import org.janusgraph.core.schema.Mapping;
+import org.janusgraph.core.schema.Parameter;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.exception.InternalKeywordException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.index.Index;
+import org.lwing.ofs.core.api.index.IndexElementType;
+import org.lwing.ofs.core.api.index.IndexType;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.index.IndexRepository;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureOrderedSearchTest extends GraphTest {
+
+    private static final String ORDER_INDEX = "orderSearchIndex";
+
+    private static final String TEXT_INDEX = "orderTextIndex";
+
+    private Model model;
+
+    private Model otherModel;
+
+    @BeforeEach
+    @Override
+    public void setupTests() throws GraphIntegrityException, InterruptedException, ExecutionException, InternalKeywordException, IOException {
+        // the indexed path needs a mixed index
+        setupTests(true);
+    }
+
+    @Test
+    public void testSearchOrderedWithIndex() throws Exception {
+        createOrderedFeatures();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        assertEquals(Arrays.asList("d", "b", "c"), toIds(featureRepo.searchOrdered(model.getId(), "orderRank", Order.desc, 3, Collections.emptyList())));
+        assertEquals(Arrays.asList("a", "c"), toIds(featureRepo.searchOrdered(model.getId(), "orderRank", Order.asc, 2, Collections.emptyList())));
+    }
+
+    @Test
+    public void testSearchOrderedWithoutIndex() throws Exception {
+        createOrderedFeatures();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        // latest first, the other model's later feature is left out
+        assertEquals(Arrays.asList("c", "a", "d"), toIds(featureRepo.searchOrdered(model.getId(), "orderDate", Order.desc, 3, Collections.emptyList())));
+        assertEquals(Arrays.asList("b", "d", "a", "c"), toIds(featureRepo.searchOrdered(model.getId(), "orderDate", Order.asc, 10, Collections.emptyList())));
+        // filtered
+        assertEquals(Arrays.asList("b"), toIds(featureRepo.searchOrdered(model.getId(), "orderDate", Order.asc, 1,
+                Arrays.asList(new Property("testprop", "even")))));
+        assertTrue(featureRepo.searchOrdered(model.getId(), "orderDate", Order.asc, 0, Collections.emptyList()).isEmpty());
+        assertThrows(GraphIntegrityException.class, () -> featureRepo.searchOrdered(model.getId(), "orderShape", Order.asc, 1, Collections.emptyList()));
+    }
+
+    @Test
+    public void testSearchOrderedOnListAndTextValues() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("orderScores", Long.class, Cardinality.LIST));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("orderName", String.class, Cardinality.SINGLE));
+        // text mapped values can't be ordered by in the index
+        Map<String, Parameter[]> indexProps = new HashMap<>();
+        indexProps.put("orderName", new Parameter[]{Mapping.TEXT.asParameter()});
+        IndexRepository indexRepo = openFeatureStore.getIndexRepository();
+        indexRepo.createIndex(new Index(TEXT_INDEX, indexProps, IndexElementType.VERTEX, IndexType.MIXED, false, null), true);
+        indexRepo.updateIndex(TEXT_INDEX, SchemaAction.ENABLE_INDEX);
+        indexRepo.awaitIndexStatus(TEXT_INDEX, SchemaStatus.ENABLED);
+        Model listModel = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(
+                new Property("orderScores", 0L),
+                new Property("orderName", "a")
+        )));
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("x", listModel.getId(), Arrays.asList(
+                new Property("orderScores", 5L), new Property("orderScores", 50L), new Property("orderName", "beta"))));
+        featureRepo.addFeature(new Feature("y", listModel.getId(), Arrays.asList(
+                new Property("orderScores", 10L), new Property("orderScores", 20L), new Property("orderName", "alpha"))));
+        featureRepo.addFeature(new Feature("z", listModel.getId(), Arrays.asList(
+                new Property("orderScores", 7L), new Property("orderScores", 100L), new Property("orderName", "gamma"))));
+        // ordered by the smallest value ascending & the largest descending
+        assertEquals(Arrays.asList("x", "z", "y"), toIds(featureRepo.searchOrdered(listModel.getId(), "orderScores", Order.asc, 3, Collections.emptyList())));
+        assertEquals(Arrays.asList("z", "x", "y"), toIds(featureRepo.searchOrdered(listModel.getId(), "orderScores", Order.desc, 3, Collections.emptyList())));
+        assertEquals(Arrays.asList("y", "x", "z"), toIds(featureRepo.searchOrdered(listModel.getId(), "orderName", Order.asc, 3, Collections.emptyList())));
+    }
+
+    private void createOrderedFeatures() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("orderRank", Long.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("orderDate", Date.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("orderShape", Geoshape.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("testprop", String.class, Cardinality.SINGLE));
+        Map<String, Parameter[]> indexProps = new HashMap<>();
+        indexProps.put("orderRank", null);
+        IndexRepository indexRepo = openFeatureStore.getIndexRepository();
+        indexRepo.createIndex(new Index(ORDER_INDEX, indexProps, IndexElementType.VERTEX, IndexType.MIXED, false, null), true);
+        indexRepo.updateIndex(ORDER_INDEX, SchemaAction.ENABLE_INDEX);
+        indexRepo.awaitIndexStatus(ORDER_INDEX, SchemaStatus.ENABLED);
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("orderRank", 0L),
+                new Property("orderDate", new Date(0)),
+                new Property("orderShape", Geoshape.point(0, 0)),
+                new Property("testprop", "odd")
+        ));
+        model = createBasicModel(openFeatureStore, featureSchema);
+        otherModel = createBasicModel(openFeatureStore, featureSchema, false);
+        addOrderedFeature("a", model, 1L, 3000L, "odd");
+        addOrderedFeature("b", model, 30L, 1000L, "even");
+        addOrderedFeature("c", model, 20L, 4000L, "odd");
+        addOrderedFeature("d", model, 40L, 2000L, "even");
+        addOrderedFeature("other", otherModel, 100L, 9000L, "odd");
+    }
+
+    private void addOrderedFeature(String id, Model featureModel, long rank, long dateMillis, String parity) throws Exception {
+        openFeatureStore.getFeatureRepository().addFeature(new Feature(id, featureModel.getId(), Arrays.asList(
+                new Property("orderRank", rank),
+                new Property("orderDate", new Date(dateMillis)),
+                new Property("testprop", parity)
+        )));
+    }
+
+    private static List<String> toIds(List<Feature> features) {
+        return features.stream().map(Feature::getId).collect(Collectors.toList());
+    }
+
+}
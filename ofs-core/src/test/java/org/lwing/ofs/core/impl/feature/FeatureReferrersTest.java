@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.VertexNotFoundException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.property.RefPropertyKey;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureReferrersTest extends GraphTest {
+
+    @Test
+    public void testFindReferrers() throws Exception {
+        Model refedModel = createBasicModel(openFeatureStore);
+        Feature target = createBasicFeature(openFeatureStore, refedModel);
+        Feature otherTarget = createBasicFeature(openFeatureStore, refedModel);
+        openFeatureStore.getPropertyRepository().createProperty(new RefPropertyKey("parent", refedModel.getId(), Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new RefPropertyKey("related", refedModel.getId(), Cardinality.LIST));
+        Model model = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(
+                new Property("parent"),
+                new Property("related")
+        )), false);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("a", model.getId(), Arrays.asList(new Property("parent", target.getId()),
+                new Property("related", target.getId()), new Property("related", target.getId()))));
+        featureRepo.addFeature(new Feature("b", model.getId(), Arrays.asList(new Property("related", target.getId()))));
+        featureRepo.addFeature(new Feature("c", model.getId(), Arrays.asList(new Property("parent", otherTarget.getId()))));
+        assertEquals(Arrays.asList("a"), featureRepo.findReferrers(target.getId(), "parent"));
+        // a feature referencing the target more than once is listed once
+        assertEquals(Arrays.asList("a", "b"), featureRepo.findReferrers(target.getId(), "related").stream().sorted().collect(Collectors.toList()));
+        assertEquals(Arrays.asList("c"), featureRepo.findReferrers(otherTarget.getId(), "parent"));
+        assertTrue(featureRepo.findReferrers(otherTarget.getId(), "related").isEmpty());
+        List<Feature> referrers = featureRepo.findReferrers(target.getId(), "parent", Optional.of(new HashSet<>(Arrays.asList("parent"))));
+        assertEquals(1, referrers.size());
+        assertEquals("a", referrers.get(0).getId());
+        assertEquals(1, referrers.get(0).getProperties().size());
+        assertEquals("parent", referrers.get(0).getProperties().get(0).getName());
+        assertEquals(target.getId(), referrers.get(0).getProperties().get(0).getValue());
+        assertThrows(VertexNotFoundException.class, () -> featureRepo.findReferrers("missing", "parent"));
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.janusgraph.core.attribute.Geoshape;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.OpenFeatureStore;
+import org.lwing.ofs.core.api.config.OFSConfigurationParams;
+import org.lwing.ofs.core.api.exception.MissingIndexException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureSpatialIndexTest extends GraphTest {
+
+    private static final Geoshape VIEWPORT = Geoshape.box(38, -78, 40, -76);
+
+    @Test
+    public void testIndexKeptInSyncWithWrites() throws Exception {
+        OpenFeatureStore spatialStore = getOpenFeatureStore(OFSConfigurationParams.build()
+                .setSpatialIndexProperties(new HashSet<>(Arrays.asList("spatialShape"))).setSpatialIndexCellDegrees(0.5));
+        FeatureRepository featureRepo = spatialStore.getFeatureRepository();
+        Model model = createSpatialModel(spatialStore);
+        // written before the index is built, so picked up by the build
+        addSpatialFeature(featureRepo, model, "washington", Geoshape.point(38.89, -77.03));
+        addSpatialFeature(featureRepo, model, "baltimore", Geoshape.point(39.29, -76.61));
+        addSpatialFeature(featureRepo, model, "london", Geoshape.point(51.50, -0.12));
+        assertEquals(new HashSet<>(Arrays.asList("washington", "baltimore")), featureRepo.searchSpatialIndexIds("spatialShape", VIEWPORT));
+        // written after the index is built
+        addSpatialFeature(featureRepo, model, "annapolis", Geoshape.point(38.97, -76.50));
+        featureRepo.updateFeature("baltimore", Arrays.asList(new Property("spatialShape", Geoshape.point(40.71, -74.00))));
+        featureRepo.deleteFeature("washington");
+        assertEquals(new HashSet<>(Arrays.asList("annapolis")), featureRepo.searchSpatialIndexIds("spatialShape", VIEWPORT));
+        // radius query
+        assertEquals(new HashSet<>(Arrays.asList("annapolis", "baltimore")),
+                featureRepo.searchSpatialIndexIds("spatialShape", Geoshape.circle(39.5, -75.5, 200)));
+        // hydrated query
+        List<Feature> features = featureRepo.searchSpatialIndex("spatialShape", VIEWPORT, Optional.of(Collections.singleton("spatialShape")));
+        assertEquals(1, features.size());
+        assertEquals("annapolis", features.get(0).getId());
+        assertEquals(Geoshape.point(38.97, -76.50), features.get(0).getProperties().get(0).getValue());
+        assertThrows(MissingIndexException.class, () -> featureRepo.searchSpatialIndexIds("testprop", VIEWPORT));
+    }
+
+    @Test
+    public void testRebuildPicksUpOtherWriters() throws Exception {
+        OpenFeatureStore spatialStore = getOpenFeatureStore(OFSConfigurationParams.build()
+                .setSpatialIndexProperties(new HashSet<>(Arrays.asList("spatialShape"))));
+        Model model = createSpatialModel(spatialStore);
+        assertTrue(spatialStore.getFeatureRepository().searchSpatialIndexIds("spatialShape", VIEWPORT).isEmpty());
+        // another store instance doesn't update this store's index
+        addSpatialFeature(openFeatureStore.getFeatureRepository(), model, "washington", Geoshape.point(38.89, -77.03));
+        assertTrue(spatialStore.getFeatureRepository().searchSpatialIndexIds("spatialShape", VIEWPORT).isEmpty());
+        spatialStore.getFeatureRepository().rebuildSpatialIndex();
+        assertEquals(new HashSet<>(Arrays.asList("washington")), spatialStore.getFeatureRepository().searchSpatialIndexIds("spatialShape", VIEWPORT));
+    }
+
+    @Test
+    public void testShapesAcrossCellsAndDateLine() throws Exception {
+        FeatureSpatialIndex index = new FeatureSpatialIndex(new HashSet<>(Arrays.asList("shape")), 1.0);
+        index.rebuild(consumer -> {
+            consumer.accept("bigBox", shapes(Geoshape.box(10, 10, 15, 15)));
+            consumer.accept("dateLine", shapes(Geoshape.box(-5, 179, 5, -179)));
+            consumer.accept("twoPoints", shapes(Geoshape.point(0, 0), Geoshape.point(50, 50)));
+        });
+        assertEquals(new HashSet<>(Arrays.asList("bigBox")), index.search("shape", Geoshape.box(12, 12, 13, 13)));
+        assertEquals(new HashSet<>(Arrays.asList("dateLine")), index.search("shape", Geoshape.box(-1, -179.5, 1, -178)));
+        assertEquals(new HashSet<>(Arrays.asList("dateLine", "twoPoints")), index.search("shape", Geoshape.box(-1, 170, 1, 60)));
+        assertEquals(new HashSet<>(Arrays.asList("twoPoints")), index.search("shape", Geoshape.circle(50, 50, 10)));
+        index.remove("twoPoints");
+        assertTrue(index.search("shape", Geoshape.box(-1, -1, 1, 1)).isEmpty());
+        assertTrue(index.search("shape", Geoshape.box(49, 49, 51, 51)).isEmpty());
+        Set<String> all = index.search("shape", Geoshape.box(-90, -180, 90, 180));
+        assertEquals(new HashSet<>(Arrays.asList("bigBox", "dateLine")), all);
+    }
+
+    @Test
+    public void testUpdateDuringRebuild() throws Exception {
+        FeatureSpatialIndex index = new FeatureSpatialIndex(new HashSet<>(Arrays.asList("shape")), 1.0);
+        index.rebuild(consumer -> consumer.accept("moved", shapes(Geoshape.point(0, 0))));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            index.rebuild(consumer -> {
+                // the scan read the feature before it was moved & another one added
+                consumer.accept("moved", shapes(Geoshape.point(0, 0)));
+                Future<?> writer = executor.submit(() -> {
+                    index.update("moved", shapes(Geoshape.point(20, 20)));
+                    index.update("added", shapes(Geoshape.point(30, 30)));
+                });
+                // writers don't wait for the rebuild to finish
+                writer.get(10, TimeUnit.SECONDS);
+                // the index being replaced stays current while the rebuild scans
+                assertEquals(new HashSet<>(Arrays.asList("moved")), index.search("shape", Geoshape.box(19, 19, 21, 21)));
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+        // updates made during the rebuild aren't lost to it
+        assertTrue(index.search("shape", Geoshape.box(-1, -1, 1, 1)).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("moved")), index.search("shape", Geoshape.box(19, 19, 21, 21)));
+        assertEquals(new HashSet<>(Arrays.asList("added")), index.search("shape", Geoshape.box(29, 29, 31, 31)));
+    }
+
+    private static Map<String, List<Object>> shapes(Geoshape... shapes) {
+        Map<String, List<Object>> out = new HashMap<>();
+        out.put("shape", Arrays.asList((Object[]) shapes));
+        return out;
+    }
+
+    private Model createSpatialModel(OpenFeatureStore store) throws Exception {
+        store.getPropertyRepository().createProperty(new PrimitivePropertyKey("spatialShape", Geoshape.class, Cardinality.SINGLE));
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("testprop", "test"),
+                new Property("spatialShape", Geoshape.point(0, 0))
+        ));
+        store.getPropertyRepository().createProperty(new PrimitivePropertyKey("testprop", String.class, Cardinality.SINGLE));
+        return createBasicModel(store, featureSchema);
+    }
+
+    private void addSpatialFeature(FeatureRepository featureRepo, Model model, String id, Geoshape shape) throws Exception {
+        featureRepo.addFeature(new Feature(id, model.getId(), Arrays.asList(new Property("spatialShape", shape))));
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import org.janusgraph.core.attribute.Geoshape;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.config.OFSConfiguration;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.property.RefPropertyKey;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.PropertyUtil;
+import org.lwing.ofs.core.impl.feature.FeatureStreamWriter.StreamFormat;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureStreamWriterTest extends GraphTest {
+
+    @Test
+    public void testWriteGeoJson() throws Exception {
+        Model model = createStreamModel();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = featureRepo.writeSearch(g -> g.V().has(OFSConfiguration.MODEL_ID, model.getId()).order().by("streamName"),
+                out, StreamFormat.GEOJSON, "streamShape", PropertyUtil.ALL_SELECT);
+        assertEquals(2, written);
+        JsonNode collection = MappingUtil.getReader(JsonNode.class).readTree(out.toString(StandardCharsets.UTF_8));
+        assertEquals("FeatureCollection", collection.get("type").asText());
+        JsonNode first = collection.get("features").get(0);
+        assertEquals("Feature", first.get("type").asText());
+        assertEquals("first", first.get("id").asText());
+        assertEquals(model.getId(), first.get("modelId").asText());
+        assertEquals("Point", first.get("geometry").get("type").asText());
+        assertEquals(-77.03, first.get("geometry").get("coordinates").get(0).asDouble(), 0.0001);
+        JsonNode props = first.get("properties");
+        assertEquals("alpha", props.get("streamName").asText());
+        assertEquals(3L, props.get("streamCount").asLong());
+        assertTrue(props.get("streamTags").isArray());
+        assertEquals(2, props.get("streamTags").size());
+        assertTrue(props.get("streamRefs").isArray());
+        assertEquals(new HashSet<>(Arrays.asList("refA", "refB")),
+                new HashSet<>(Arrays.asList(props.get("streamRefs").get(0).asText(), props.get("streamRefs").get(1).asText())));
+        // geometry is not repeated in the properties & internal fields are not written
+        assertFalse(props.has("streamShape"));
+        assertFalse(props.has(OFSConfiguration.MODEL_ID));
+        JsonNode second = collection.get("features").get(1);
+        assertEquals("refA", second.get("properties").get("streamRefs").asText());
+        assertEquals("beta", second.get("properties").get("streamTags").asText());
+    }
+
+    @Test
+    public void testWriteNdJsonWithSelect() throws Exception {
+        Model model = createStreamModel();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = featureRepo.writeSearch(g -> g.V().has(OFSConfiguration.MODEL_ID, model.getId()).order().by("streamName"),
+                out, StreamFormat.NDJSON, null, Optional.of(new HashSet<>(Arrays.asList("streamName", "streamRefs"))));
+        assertEquals(2, written);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        JsonNode second = MappingUtil.getReader(JsonNode.class).readTree(lines[1]);
+        assertEquals("second", second.get("id").asText());
+        assertTrue(second.get("geometry").isNull());
+        assertEquals(2, second.get("properties").size());
+        assertEquals("beta", second.get("properties").get("streamName").asText());
+        assertEquals("refA", second.get("properties").get("streamRefs").asText());
+    }
+
+    @Test
+    public void testWriteMultiValuedGeometry() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("streamShapes", Geoshape.class, Cardinality.LIST));
+        Model model = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(
+                new Property("streamShapes", Geoshape.point(0, 0))
+        )), false);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("multi", model.getId(), Arrays.asList(
+                new Property("streamShapes", Geoshape.point(38.89, -77.03)),
+                new Property("streamShapes", Geoshape.point(40.71, -74.01))
+        )));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        featureRepo.writeSearch(g -> g.V().has(OFSConfiguration.MODEL_ID, model.getId()),
+                out, StreamFormat.NDJSON, "streamShapes", PropertyUtil.ALL_SELECT);
+        JsonNode feature = MappingUtil.getReader(JsonNode.class).readTree(out.toString(StandardCharsets.UTF_8).trim());
+        // every value of the geometry is kept
+        JsonNode geometry = feature.get("geometry");
+        assertEquals("GeometryCollection", geometry.get("type").asText());
+        assertEquals(2, geometry.get("geometries").size());
+        assertEquals("Point", geometry.get("geometries").get(0).get("type").asText());
+        double firstLon = geometry.get("geometries").get(0).get("coordinates").get(0).asDouble();
+        double secondLon = geometry.get("geometries").get(1).get("coordinates").get(0).asDouble();
+        assertEquals(-77.03, Math.min(firstLon, secondLon), 0.0001);
+        assertEquals(-74.01, Math.max(firstLon, secondLon), 0.0001);
+        assertFalse(feature.get("properties").has("streamShapes"));
+    }
+
+    private Model createStreamModel() throws Exception {
+        Model refModel = createBasicModel(openFeatureStore);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("refA", refModel.getId(), Arrays.asList(new Property("testprop", "a"))));
+        featureRepo.addFeature(new Feature("refB", refModel.getId(), Arrays.asList(new Property("testprop", "b"))));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("streamShape", Geoshape.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("streamName", String.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("streamCount", Long.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("streamTags", String.class, Cardinality.LIST));
+        openFeatureStore.getPropertyRepository().createProperty(new RefPropertyKey("streamRefs", refModel.getId(), Cardinality.LIST));
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("streamShape", Geoshape.point(0, 0)),
+                new Property("streamName", "unnamed"),
+                new Property("streamCount", 0L),
+                new Property("streamTags", "none"),
+                new Property("streamRefs")
+        ));
+        Model model = createBasicModel(openFeatureStore, featureSchema, false);
+        featureRepo.addFeature(new Feature("first", model.getId(), Arrays.asList(
+                new Property("streamShape", Geoshape.point(38.89, -77.03)),
+                new Property("streamName", "alpha"),
+                new Property("streamCount", 3L),
+                new Property("streamTags", "x"),
+                new Property("streamTags", "y"),
+                new Property("streamRefs", "refA"),
+                new Property("streamRefs", "refB")
+        )));
+        featureRepo.addFeature(new Feature("second", model.getId(), Arrays.asList(
+                new Property("streamName", "beta"),
+                new Property("streamTags", "beta"),
+                new Property("streamRefs", "refA")
+        )));
+        return model;
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import org.janusgraph.core.schema.Mapping;
+import org.janusgraph.core.schema.Parameter;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.exception.InternalKeywordException;
+import org.lwing.ofs.core.api.exception.MissingIndexException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.index.Index;
+import org.lwing.ofs.core.api.index.IndexElementType;
+import org.lwing.ofs.core.api.index.IndexType;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.index.IndexRepository;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureTextSearchTest extends GraphTest {
+
+    private static final String TEXT_INDEX = "textSearchIndex";
+
+    private Model model;
+
+    private Model otherModel;
+
+    @BeforeEach
+    @Override
+    public void setupTests() throws GraphIntegrityException, InterruptedException, ExecutionException, InternalKeywordException, IOException {
+        // text search needs a mixed index
+        setupTests(true);
+    }
+
+    @Test
+    public void testSearchText() throws Exception {
+        createTextFeatures();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        // the other model's feature matches too, but is filtered out
+        assertEquals(new HashSet<>(Arrays.asList("doc1", "doc2")),
+                toIds(featureRepo.searchText(model.getId(), "textTitle", "quick fox", 10)).stream().collect(Collectors.toSet()));
+        // ordered by relevance
+        assertEquals(Arrays.asList("doc2", "doc1"), toIds(featureRepo.searchText(model.getId(), "textTitle", "Quick", 10)));
+        assertEquals(1, featureRepo.searchText(model.getId(), "textTitle", "quick", 1).size());
+        assertEquals(Arrays.asList("other"), toIds(featureRepo.searchText(otherModel.getId(), "textTitle", "quick", 10)));
+        // query syntax is escaped rather than parsed
+        assertTrue(featureRepo.searchText(model.getId(), "textTitle", "textTitle:* (", 10).isEmpty());
+        assertTrue(featureRepo.searchText(model.getId(), "textTitle", "  ", 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchTextRequiresTextIndex() throws Exception {
+        createTextFeatures();
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        // string mapped properties only support exact matches
+        assertThrows(MissingIndexException.class, () -> featureRepo.searchText(model.getId(), "textCode", "abc", 10));
+        assertThrows(MissingIndexException.class, () -> featureRepo.searchText(model.getId(), "testprop", "abc", 10));
+        assertThrows(GraphIntegrityException.class, () -> featureRepo.searchText(model.getId(), "textCount", "abc", 10));
+    }
+
+    private void createTextFeatures() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("textTitle", String.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("textCode", String.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("textCount", Long.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("testprop", String.class, Cardinality.SINGLE));
+        Map<String, Parameter[]> indexProps = new HashMap<>();
+        indexProps.put("textTitle", null);
+        indexProps.put("textCode", new Parameter[]{Mapping.STRING.asParameter()});
+        IndexRepository indexRepo = openFeatureStore.getIndexRepository();
+        indexRepo.createIndex(new Index(TEXT_INDEX, indexProps, IndexElementType.VERTEX, IndexType.MIXED, false, null), true);
+        indexRepo.updateIndex(TEXT_INDEX, SchemaAction.ENABLE_INDEX);
+        indexRepo.awaitIndexStatus(TEXT_INDEX, SchemaStatus.ENABLED);
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("textTitle", "untitled"),
+                new Property("textCode", "none"),
+                new Property("textCount", 0L),
+                new Property("testprop", "test")
+        ));
+        model = createBasicModel(openFeatureStore, featureSchema);
+        otherModel = createBasicModel(openFeatureStore, featureSchema, false);
+        addTextFeature("doc1", model, "the quick brown fox");
+        addTextFeature("doc2", model, "quick quick fox jumps");
+        addTextFeature("doc3", model, "a lazy dog");
+        addTextFeature("other", otherModel, "quick fox");
+    }
+
+    private void addTextFeature(String id, Model featureModel, String title) throws Exception {
+        openFeatureStore.getFeatureRepository().addFeature(new Feature(id, featureModel.getId(), Arrays.asList(
+                new Property("textTitle", title)
+        )));
+    }
+
+    private static List<String> toIds(List<Feature> features) {
+        return features.stream().map(Feature::getId).collect(Collectors.toList());
+    }
+
+}
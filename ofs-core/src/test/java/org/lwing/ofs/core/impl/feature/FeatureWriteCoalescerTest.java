@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.VertexNotFoundException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.impl.GraphTest;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FeatureWriteCoalescerTest extends GraphTest {
+
+    @Test
+    public void testWritesShareCommit() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        String updatedId = openFeatureStore.getFeatureRepository().addFeature(new Feature(model.getId(), Arrays.asList(new Property("testprop", "test"))));
+        FeatureRepository featureRepo = Mockito.spy(openFeatureStore.getFeatureRepository());
+        List<CompletableFuture<String>> added = new ArrayList<>();
+        CompletableFuture<Void> updated;
+        try ( FeatureWriteCoalescer coalescer = new FeatureWriteCoalescer(featureRepo, 1000, 100)) {
+            for (int i = 0; i < 10; i++) {
+                added.add(coalescer.addFeature(new Feature(model.getId(), Arrays.asList(new Property("testprop", "added" + i)))));
+            }
+            updated = coalescer.updateFeature(updatedId, Arrays.asList(new Property("testprop", "updated")));
+        }
+        // all writes went in one transaction
+        verify(featureRepo, times(1)).writeFeatures(any());
+        for (int i = 0; i < added.size(); i++) {
+            Feature feature = openFeatureStore.getFeatureRepository().readFeature(added.get(i).get());
+            assertEquals("added" + i, feature.getProperties().get(0).getValue());
+        }
+        updated.get();
+        assertEquals("updated", openFeatureStore.getFeatureRepository().readFeature(updatedId).getProperties().get(0).getValue());
+    }
+
+    @Test
+    public void testFailedWriteOnlyFailsItsCaller() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        CompletableFuture<String> before;
+        CompletableFuture<Void> failed;
+        CompletableFuture<String> after;
+        try ( FeatureWriteCoalescer coalescer = new FeatureWriteCoalescer(openFeatureStore.getFeatureRepository(), 1000, 100)) {
+            before = coalescer.addFeature(new Feature(model.getId(), Arrays.asList(new Property("testprop", "before"))));
+            failed = coalescer.updateFeature("missingFeature", Arrays.asList(new Property("testprop", "updated")));
+            after = coalescer.addFeature(new Feature(model.getId(), Arrays.asList(new Property("testprop", "after"))));
+        }
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> failed.get());
+        assertInstanceOf(VertexNotFoundException.class, ex.getCause());
+        assertEquals("before", openFeatureStore.getFeatureRepository().readFeature(before.get()).getProperties().get(0).getValue());
+        assertEquals("after", openFeatureStore.getFeatureRepository().readFeature(after.get()).getProperties().get(0).getValue());
+    }
+
+    @Test
+    public void testClosedRejectsWrites() throws Exception {
+        FeatureWriteCoalescer coalescer = new FeatureWriteCoalescer(openFeatureStore.getFeatureRepository(), 10, 10);
+        coalescer.close();
+        assertThrows(IllegalStateException.class, () -> coalescer.updateFeature("featureId", new ArrayList<>()));
+    }
+
+}
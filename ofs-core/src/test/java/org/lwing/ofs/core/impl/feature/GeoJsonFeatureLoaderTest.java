@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.janusgraph.core.attribute.Geoshape;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class GeoJsonFeatureLoaderTest extends GraphTest {
+
+    private static final String GEOJSON = """
+            {
+              "type": "FeatureCollection",
+              "name": "cities",
+              "features": [
+                {"type": "Feature", "id": "a", "geometry": {"type": "Point", "coordinates": [-77.03, 38.89]},
+                 "properties": {"geoLoadName": "Washington", "population": 689545, "tags": ["capital", "east"], "ignored": true}},
+                {"type": "Feature", "id": 2, "geometry": {"type": "Polygon", "coordinates": [[[0, 0], [2, 0], [1, 1], [0, 0]]]},
+                 "properties": {"geoLoadName": "Triangle"}},
+                {"type": "Feature", "geometry": {"type": "Point", "coordinates": [0, 91]}, "properties": {}}
+              ]
+            }
+            """;
+
+    @Test
+    public void testLoadFeatureCollection() throws Exception {
+        Model model = createGeoModel();
+        GeoJsonFeatureLoader loader = new GeoJsonFeatureLoader(openFeatureStore.getFeatureRepository(),
+                openFeatureStore.getModelRepository(), openFeatureStore.getPropertyRepository());
+        GeoJsonFeatureLoader.LoadResult result;
+        try ( InputStream input = new ByteArrayInputStream(GEOJSON.getBytes(StandardCharsets.UTF_8))) {
+            result = loader.load(input, model.getId(), "geoLoadShape", 2, 1);
+        }
+        assertEquals(2, result.getLoadedCount());
+        // latitude is out of range
+        assertEquals(1, result.getFailedFeatures().size());
+        assertTrue(result.getFailedFeatures().containsKey("features[2]"));
+        Map<String, Object> props = readProps(openFeatureStore.getFeatureRepository().readFeature("a"));
+        assertEquals("Washington", props.get("geoLoadName"));
+        assertEquals(689545L, props.get("population"));
+        assertEquals(Geoshape.point(38.89, -77.03), props.get("geoLoadShape"));
+        assertEquals(2, openFeatureStore.getFeatureRepository().readFeature("a").getProperties().stream()
+                .filter(p -> p.getName().equals("tags")).count());
+        Map<String, Object> triangleProps = readProps(openFeatureStore.getFeatureRepository().readFeature("2"));
+        assertEquals(Geoshape.Type.POLYGON, ((Geoshape) triangleProps.get("geoLoadShape")).getType());
+        // defaults from the schema are used for missing properties
+        assertEquals(0L, triangleProps.get("population"));
+    }
+
+    @Test
+    public void testGeometryPropertyMustBeGeoshape() throws Exception {
+        Model model = createGeoModel();
+        GeoJsonFeatureLoader loader = new GeoJsonFeatureLoader(openFeatureStore.getFeatureRepository(),
+                openFeatureStore.getModelRepository(), openFeatureStore.getPropertyRepository());
+        try ( InputStream input = new ByteArrayInputStream(GEOJSON.getBytes(StandardCharsets.UTF_8))) {
+            assertThrows(GraphIntegrityException.class, () -> loader.load(input, model.getId(), "population", 1, 10));
+        }
+    }
+
+    private Model createGeoModel() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("geoLoadShape", Geoshape.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("geoLoadName", String.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("population", Long.class, Cardinality.SINGLE));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("tags", String.class, Cardinality.LIST));
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("geoLoadShape", Geoshape.point(0, 0)),
+                new Property("geoLoadName", "unnamed"),
+                new Property("population", 0L),
+                new Property("tags", "none")
+        ));
+        return createBasicModel(openFeatureStore, featureSchema);
+    }
+
+    private static Map<String, Object> readProps(Feature feature) {
+        Map<String, Object> props = new HashMap<>();
+        for (Property prop : feature.getProperties()) {
+            props.put(prop.getName(), prop.getValue());
+        }
+        return props;
+    }
+
+}
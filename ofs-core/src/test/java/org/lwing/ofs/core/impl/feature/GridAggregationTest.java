@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.janusgraph.core.attribute.Geoshape;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.feature.GridAggregation.GridCell;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class GridAggregationTest extends GraphTest {
+
+    @Test
+    public void testAggregateGrid() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("gridShape", Geoshape.class, Cardinality.LIST));
+        Model model = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(new Property("gridShape", Geoshape.point(0, 0)))));
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("a", model.getId(), Arrays.asList(new Property("gridShape", Geoshape.point(10.2, 20.2)))));
+        featureRepo.addFeature(new Feature("b", model.getId(), Arrays.asList(new Property("gridShape", Geoshape.point(10.6, 20.8)))));
+        // two shapes in the same cell only count once
+        featureRepo.addFeature(new Feature("c", model.getId(), Arrays.asList(
+                new Property("gridShape", Geoshape.point(10.4, 20.4)),
+                new Property("gridShape", Geoshape.point(10.5, 20.5)))));
+        // counted by the center of the shape
+        featureRepo.addFeature(new Feature("d", model.getId(), Arrays.asList(new Property("gridShape", Geoshape.box(11, 21, 12, 22)))));
+        // outside the bounds
+        featureRepo.addFeature(new Feature("e", model.getId(), Arrays.asList(new Property("gridShape", Geoshape.point(50, 50)))));
+        GridAggregation aggregation = featureRepo.aggregateGrid(model.getId(), "gridShape", Geoshape.box(10, 20, 13, 23), 1.0, 2);
+        assertEquals(4, aggregation.getTotalCount());
+        Map<String, GridCell> cells = new HashMap<>();
+        for (GridCell cell : aggregation.getCells()) {
+            cells.put(cell.getMinLat() + "," + cell.getMinLon(), cell);
+        }
+        assertEquals(2, cells.size());
+        GridCell first = cells.get("10.0,20.0");
+        assertEquals(3, first.getCount());
+        assertEquals(11.0, first.getMaxLat());
+        assertEquals(2, first.getSampleIds().size());
+        assertTrue(new HashSet<>(Arrays.asList("a", "b", "c")).containsAll(first.getSampleIds()));
+        GridCell second = cells.get("11.0,21.0");
+        assertEquals(1, second.getCount());
+        assertEquals(11.5, second.getCentroidLat(), 0.0001);
+        assertEquals(21.5, second.getCentroidLon(), 0.0001);
+        assertThrows(GraphIntegrityException.class, () -> featureRepo.aggregateGrid(model.getId(), "testModelprop",
+                Geoshape.box(10, 20, 13, 23), 1.0, 2));
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.feature;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.exception.GraphIntegrityException;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.feature.NumericAggregation.NumericStats;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class NumericAggregationTest extends GraphTest {
+
+    @Test
+    public void testAggregateNumeric() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("amount", Double.class, Cardinality.LIST));
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("status", String.class, Cardinality.SINGLE,
+                new HashSet<>(Arrays.asList("open", "closed"))));
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("amount", 0.0),
+                new Property("status", "open")
+        ));
+        Model model = createBasicModel(openFeatureStore, featureSchema);
+        Model otherModel = createBasicModel(openFeatureStore, featureSchema, false);
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        featureRepo.addFeature(new Feature("a", model.getId(), Arrays.asList(new Property("amount", 10.0), new Property("status", "open"))));
+        featureRepo.addFeature(new Feature("b", model.getId(), Arrays.asList(new Property("amount", 20.0), new Property("status", "closed"))));
+        // every value of a list is counted
+        featureRepo.addFeature(new Feature("c", otherModel.getId(), Arrays.asList(new Property("amount", 30.0),
+                new Property("amount", 40.0), new Property("status", "open"))));
+        NumericAggregation total = featureRepo.aggregateNumeric(g -> g.V(), "amount");
+        NumericStats stats = total.getTotal();
+        assertEquals(4, stats.getCount());
+        assertEquals(100.0, stats.getSum());
+        assertEquals(25.0, stats.getAvg());
+        assertEquals(10.0, stats.getMin());
+        assertEquals(40.0, stats.getMax());
+        assertEquals(20.0, stats.getPercentile(50), 20.0 * 0.01);
+        assertTrue(total.getGroups().isEmpty());
+        NumericAggregation byStatus = featureRepo.aggregateNumeric(g -> g.V(), "amount", "status");
+        assertEquals(80.0, byStatus.getGroups().get("open").getSum());
+        assertEquals(1, byStatus.getGroups().get("closed").getCount());
+        NumericAggregation byModel = featureRepo.aggregateNumericByModel(g -> g.V(), "amount");
+        assertEquals(15.0, byModel.getGroups().get(model.getId()).getAvg());
+        assertEquals(70.0, byModel.getGroups().get(otherModel.getId()).getSum());
+        assertThrows(GraphIntegrityException.class, () -> featureRepo.aggregateNumeric(g -> g.V(), "status"));
+    }
+
+    @Test
+    public void testAggregateLongSum() throws Exception {
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("bytes", Long.class, Cardinality.SINGLE));
+        Model model = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(new Property("bytes", 0L))));
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        long large = 1L << 53;
+        featureRepo.addFeature(new Feature("a", model.getId(), Arrays.asList(new Property("bytes", large))));
+        featureRepo.addFeature(new Feature("b", model.getId(), Arrays.asList(new Property("bytes", 1L))));
+        featureRepo.addFeature(new Feature("c", model.getId(), Arrays.asList(new Property("bytes", 1L))));
+        // summed as doubles each 1 would be lost to rounding
+        assertEquals(large + 2, featureRepo.aggregateNumeric(g -> g.V(), "bytes").getTotal().getLongSum());
+    }
+
+    @Test
+    public void testPercentileSketch() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = -500; i <= 10000; i++) {
+            sketch.add(i);
+        }
+        assertEquals(10501, sketch.getCount());
+        assertEquals(-500, sketch.getPercentile(0), 500 * 0.01);
+        assertEquals(0, sketch.getPercentile(500.0 / 10500 * 100), 1);
+        assertEquals(4750, sketch.getPercentile(50), 4750 * 0.01);
+        assertEquals(9895, sketch.getPercentile(99), 9895 * 0.01);
+        assertEquals(10000, sketch.getPercentile(100), 10000 * 0.01);
+        assertTrue(Double.isNaN(new QuantileSketch(0.01).getPercentile(50)));
+    }
+
+}
@@ -4,12 +4,19 @@
  */
 package org.lwing.ofs.core.impl.lock;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
@@ -42,5 +49,96 @@ public class ResourceLockImplTest {
         assertFalse(resourceLockImpl.isResourceLocked(lockResource));
         assertFalse(resourceLockImpl.isResourceLocked(lockResource2));
     }
-    
+
+    @Test
+    public void testOverlappingLocksDontDeadlock() throws Exception {
+        ResourceLockImpl resourceLockImpl = new ResourceLockImpl(60L);
+        List<Set<String>> lockSets = Arrays.asList(
+                new HashSet<>(Arrays.asList("a", "b", "c")),
+                new HashSet<>(Arrays.asList("c", "b")),
+                new HashSet<>(Arrays.asList("b", "a")),
+                new HashSet<>(Arrays.asList("c", "a"))
+        );
+        ExecutorService executor = Executors.newFixedThreadPool(lockSets.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (Set<String> lockSet : lockSets) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 500; i++) {
+                        resourceLockImpl.acquireLocks(lockSet);
+                        resourceLockImpl.releaseLocks(lockSet);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            // a deadlock would leave the callers waiting well past this
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // every lock is dropped once nobody holds or waits on it
+        for (String resource : Arrays.asList("a", "b", "c")) {
+            assertFalse(resourceLockImpl.hasLockEntry(resource));
+        }
+    }
+
+    @Test
+    public void testLockKeptWhileWaitedOn() throws Exception {
+        String lockResource = "testLock";
+        Set<String> resources = new HashSet<>(Arrays.asList(lockResource));
+        ResourceLockImpl resourceLockImpl = new ResourceLockImpl(60L);
+        resourceLockImpl.acquireLocks(resources);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch acquired = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?> waiter = executor.submit(() -> {
+                resourceLockImpl.acquireLocks(resources);
+                acquired.countDown();
+                release.await();
+                resourceLockImpl.releaseLocks(resources);
+                return null;
+            });
+            assertFalse(acquired.await(500, TimeUnit.MILLISECONDS));
+            // releasing hands the same lock to the waiter rather than dropping it
+            resourceLockImpl.releaseLocks(resources);
+            assertTrue(acquired.await(10, TimeUnit.SECONDS));
+            assertTrue(resourceLockImpl.isResourceLocked(lockResource));
+            release.countDown();
+            waiter.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertFalse(resourceLockImpl.hasLockEntry(lockResource));
+    }
+
+    @Test
+    public void testWaiterFailsOnceHolderExpires() throws Exception {
+        String heldResource = "testLock";
+        String freeResource = "otherLock";
+        ResourceLockImpl resourceLockImpl = new ResourceLockImpl(1L);
+        resourceLockImpl.acquireLocks(new HashSet<>(Arrays.asList(heldResource)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the free resource sorts first, so it's locked before waiting on the held one
+            Future<?> waiter = executor.submit(() -> {
+                assertThrows(IllegalStateException.class,
+                        () -> resourceLockImpl.acquireLocks(new HashSet<>(Arrays.asList(heldResource, freeResource))));
+                return null;
+            });
+            waiter.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        // the waiter didn't keep the locks it got before giving up
+        assertFalse(resourceLockImpl.hasLockEntry(freeResource));
+        resourceLockImpl.releaseLocks(new HashSet<>(Arrays.asList(heldResource)));
+        assertFalse(resourceLockImpl.hasLockEntry(heldResource));
+    }
+
 }
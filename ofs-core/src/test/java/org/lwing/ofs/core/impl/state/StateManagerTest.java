@@ -5,9 +5,12 @@
 package org.lwing.ofs.core.impl.state;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -15,17 +18,28 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
 import org.janusgraph.core.attribute.Geoshape;
 import org.janusgraph.core.schema.Mapping;
 import org.janusgraph.core.schema.Parameter;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.MappingUtil;
+import org.lwing.ofs.core.api.config.OFSConfigurationParams;
 import org.lwing.ofs.core.api.exception.GraphIntegrityException;
 import org.lwing.ofs.core.api.exception.InternalException;
+import org.lwing.ofs.core.api.exception.VertexNotFoundException;
 import org.lwing.ofs.core.api.exception.InternalKeywordException;
 import org.lwing.ofs.core.api.feature.Feature;
 import org.lwing.ofs.core.api.index.Index;
@@ -39,15 +53,26 @@ import org.lwing.ofs.core.api.property.RefPropertyKey;
 import org.lwing.ofs.core.api.schema.FeatureSchema;
 import org.lwing.ofs.core.api.schema.ModelSchema;
 import org.lwing.ofs.core.api.schema.ViewSchema;
+import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.ExportFilter;
+import org.lwing.ofs.core.api.state.ImportCacheProvider;
+import org.lwing.ofs.core.api.state.ImportCacheProvider.ImportCache;
+import org.lwing.ofs.core.api.state.ManifestEntry;
+import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+import org.lwing.ofs.core.api.state.StateDiff;
 import org.lwing.ofs.core.api.view.View;
 import org.lwing.ofs.core.impl.GraphTest;
 import org.lwing.ofs.core.impl.feature.FeatureITest;
+import org.lwing.ofs.core.impl.feature.FeatureRepository;
 import org.lwing.ofs.core.impl.index.IndexTest;
 import static org.lwing.ofs.core.impl.index.IndexTest.buildIndexMap;
 import org.lwing.ofs.core.impl.model.ModelSchemaRepository;
 import org.lwing.ofs.core.impl.model.ModelTest;
 import org.lwing.ofs.core.impl.property.PropertyTest;
 import org.lwing.ofs.core.impl.schema.SchemaTest;
+import org.lwing.ofs.core.impl.state.impls.FilesystemChangeLog;
+import org.lwing.ofs.core.impl.state.impls.FilesystemImportCacheProvider;
+import org.lwing.ofs.core.impl.state.impls.GraphFilesystemStorage;
 import org.lwing.ofs.core.impl.view.ViewITest;
 
 /**
@@ -58,10 +83,12 @@ public class StateManagerTest extends GraphTest {
 
     @BeforeEach
     public void setupExportTests() throws IOException {
-        // del export dir if exists
+        // del export dirs if exists
         FileUtils.deleteDirectory(getExportDir().toFile());
-        // make export dir
+        FileUtils.deleteDirectory(getDeltaExportDir().toFile());
+        // make export dirs
         Files.createDirectory(getExportDir());
+        Files.createDirectory(getDeltaExportDir());
     }
 
     @Test
@@ -114,6 +141,292 @@ public class StateManagerTest extends GraphTest {
         }
     }
 
+    @Test
+    public void testExportManifest() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        Feature feature = createBasicFeature(openFeatureStore, model);
+        assertEquals(0, openFeatureStore.getStateManager().exportOFSState(getExportDir()).getFailedResources().size());
+        Map<String, ManifestEntry> manifest = new HashMap<>();
+        int lastLayer = 0;
+        for (String line : Files.readAllLines(getExportDir().resolve("manifest.jsonl"))) {
+            ManifestEntry entry = MappingUtil.jsonStringToObject(line, ManifestEntry.class);
+            // entries are written in import order
+            assertTrue(entry.getLayer() >= lastLayer);
+            lastLayer = entry.getLayer();
+            manifest.put(entry.getResource(), entry);
+        }
+        // the dependencies spilled during the export are removed once layered
+        assertFalse(Files.exists(getExportDir().resolve("manifest-spill.jsonl")));
+        // deps are resolved & layered before what depends on them
+        String modelRes = model.calcResource().getResource();
+        String featureRes = feature.calcResource().getResource();
+        String schemaRes = DependencyResource.fromNodeId(OFSType.MODEL_SCHEMA, model.getModelSchemaId()).getResource();
+        String schemaPropRes = DependencyResource.fromProperty(OFSType.PRIM_PROPERTY, BASIC_MODEL_PROP_NAME).getResource();
+        String featurePropRes = DependencyResource.fromProperty(OFSType.PRIM_PROPERTY, "testprop").getResource();
+        assertEquals(Set.of(modelRes, featurePropRes), manifest.get(featureRes).getDependencies());
+        assertEquals(Set.of(schemaPropRes), manifest.get(schemaRes).getDependencies());
+        assertTrue(manifest.get(schemaPropRes).getLayer() < manifest.get(schemaRes).getLayer());
+        assertTrue(manifest.get(schemaRes).getLayer() < manifest.get(modelRes).getLayer());
+        assertTrue(manifest.get(modelRes).getLayer() < manifest.get(featureRes).getLayer());
+        assertFalse(manifest.values().stream().anyMatch(ManifestEntry::isCycle));
+        // manifest import
+        teardownTests();
+        setupTests(false);
+        assertEquals(0, openFeatureStore.getStateManager().importOFSState(getExportDir()).getFailedResources().size());
+        FeatureITest.verifyFeatureEquals(feature, openFeatureStore.getFeatureRepository().readFeature(feature.getId()));
+        // exports without a manifest still import
+        Files.delete(getExportDir().resolve("manifest.jsonl"));
+        teardownTests();
+        setupTests(false);
+        assertEquals(0, openFeatureStore.getStateManager().importOFSState(getExportDir()).getFailedResources().size());
+        FeatureITest.verifyFeatureEquals(feature, openFeatureStore.getFeatureRepository().readFeature(feature.getId()));
+    }
+
+    @Test
+    public void testFilteredExportImport() throws Exception {
+        Model refedModel = createBasicModel(openFeatureStore);
+        Feature refedFeature = createBasicFeature(openFeatureStore, refedModel);
+        Feature unrelatedFeature = createBasicFeature(openFeatureStore, refedModel);
+        openFeatureStore.getPropertyRepository().createProperty(new RefPropertyKey("testFilterRef", refedModel.getId(), Cardinality.SINGLE));
+        Model model = createBasicModel(openFeatureStore, new FeatureSchema(Arrays.asList(new Property("testFilterRef"))), false);
+        Feature feature = addAndReadFeature(new Feature(model.getId(), Arrays.asList(new Property("testFilterRef", refedFeature.getId()))));
+        // export the model, the closure pulls in the refed feature & its model
+        StateManager manager = openFeatureStore.getStateManager();
+        assertEquals(0, manager.exportOFSState(getExportDir(), ExportFilter.forModels(Set.of(model.getId()))).getFailedResources().size());
+        try ( Stream<Path> paths = Files.list(OFSType.FEATURE.getFolder(getExportDir()))) {
+            assertEquals(2, paths.count());
+        }
+        try ( Stream<Path> paths = Files.list(OFSType.MODEL.getFolder(getExportDir()))) {
+            assertEquals(2, paths.count());
+        }
+        // objects of an earlier export would be taken as already exported
+        StateManager filteredManager = manager;
+        assertThrows(InternalException.class, () -> filteredManager.exportOFSState(getExportDir(), ExportFilter.forModels(Set.of(model.getId()))));
+        // import the subgraph into an empty graph
+        teardownTests();
+        setupTests(false);
+        manager = openFeatureStore.getStateManager();
+        assertEquals(0, manager.importOFSState(getExportDir()).getFailedResources().size());
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        FeatureITest.verifyFeatureEquals(feature, featureRepo.readFeature(feature.getId()));
+        FeatureITest.verifyFeatureEquals(refedFeature, featureRepo.readFeature(refedFeature.getId()));
+        assertFalse(featureRepo.vertexExists(unrelatedFeature.getId()));
+        ModelTest.verifyModelEquals(refedModel, openFeatureStore.getModelRepository().readModel(refedModel.getId()));
+    }
+
+    @Test
+    public void testExportSeesChangesDuringExport() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        Feature feature = createBasicFeature(openFeatureStore, model);
+        Feature deletedFeature = createBasicFeature(openFeatureStore, model);
+        // once the first feature is written, delete the other & add a new one from another thread
+        List<Feature> addedFeatures = new ArrayList<>();
+        AtomicBoolean changed = new AtomicBoolean(false);
+        GraphFilesystemStorage storage = new GraphFilesystemStorage() {
+            @Override
+            public OutputStream openFileOutputStream(Path location) throws IOException {
+                if (location.startsWith(OFSType.FEATURE.getFolder(getExportDir())) && changed.compareAndSet(false, true)) {
+                    ExecutorService executor = Executors.newSingleThreadExecutor();
+                    try {
+                        executor.submit(() -> {
+                            openFeatureStore.getFeatureRepository().deleteFeature(deletedFeature.getId());
+                            addedFeatures.add(createBasicFeature(openFeatureStore, model));
+                            return null;
+                        }).get();
+                    } catch (InterruptedException | ExecutionException ex) {
+                        throw new IOException(ex);
+                    } finally {
+                        executor.shutdown();
+                    }
+                }
+                return super.openFileOutputStream(location);
+            }
+        };
+        openFeatureStore = getOpenFeatureStore(OFSConfigurationParams.build().setGraphStorageProvider(storage).setExportThreads(2));
+        assertEquals(0, openFeatureStore.getStateManager().exportOFSState(getExportDir()).getFailedResources().size());
+        assertTrue(changed.get());
+        // the export holds the graph as it was after the changes
+        try ( Stream<Path> paths = Files.list(OFSType.FEATURE.getFolder(getExportDir()))) {
+            assertEquals(2, paths.count());
+        }
+        teardownTests();
+        setupTests(false);
+        assertEquals(0, openFeatureStore.getStateManager().importOFSState(getExportDir()).getFailedResources().size());
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        FeatureITest.verifyFeatureEquals(feature, featureRepo.readFeature(feature.getId()));
+        FeatureITest.verifyFeatureEquals(addedFeatures.get(0), featureRepo.readFeature(addedFeatures.get(0).getId()));
+        assertFalse(featureRepo.vertexExists(deletedFeature.getId()));
+    }
+
+    @Test
+    public void testContentAddressedExportImport() throws Exception {
+        openFeatureStore = getOpenFeatureStore(OFSConfigurationParams.build().setContentAddressedStorage(true));
+        List<PrimitivePropertyKey> primProps = createTestPrimProps();
+        List<Model> models = createTestModel(createTestModelSchema().get(0).getId());
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            features.addAll(createTestFeatures(models.get(0).getId()));
+        }
+        StateManager manager = openFeatureStore.getStateManager();
+        assertEquals(0, manager.exportOFSState(getExportDir()).getFailedResources().size());
+        // features only differ by id, so they share a blob
+        Set<String> featureBlobs = new HashSet<>();
+        try ( Stream<Path> paths = Files.list(OFSType.FEATURE.getFolder(getExportDir()))) {
+            for (Path path : paths.toList()) {
+                featureBlobs.add(MappingUtil.jsonStringToObject(Files.readString(path), Map.class).get("ofsBlob").toString());
+            }
+        }
+        assertEquals(1, featureBlobs.size());
+        Map<Path, FileTime> blobs = listBlobs();
+        // exporting again only writes what changed
+        openFeatureStore.getFeatureRepository().updateFeature(features.get(0).getId(),
+                Arrays.asList(new Property("testExportProp2", 2), new Property("testExportProp1Uniq", "TestUNIQUEE")));
+        assertEquals(0, manager.exportOFSState(getExportDir()).getFailedResources().size());
+        Map<Path, FileTime> reexportedBlobs = listBlobs();
+        assertEquals(blobs.size() + 1, reexportedBlobs.size());
+        for (Map.Entry<Path, FileTime> blob : blobs.entrySet()) {
+            assertEquals(blob.getValue(), reexportedBlobs.get(blob.getKey()));
+        }
+        // exporting again after a delete sweeps the deleted feature's entry & the blob only it pointed at
+        long featureEntries;
+        try ( Stream<Path> paths = Files.list(OFSType.FEATURE.getFolder(getExportDir()))) {
+            featureEntries = paths.count();
+        }
+        openFeatureStore.getFeatureRepository().deleteFeature(features.get(0).getId());
+        assertEquals(0, manager.exportOFSState(getExportDir()).getFailedResources().size());
+        try ( Stream<Path> paths = Files.list(OFSType.FEATURE.getFolder(getExportDir()))) {
+            assertEquals(featureEntries - 1, paths.count());
+        }
+        assertEquals(blobs.keySet(), listBlobs().keySet());
+        // import without content addressing turned on
+        teardownTests();
+        setupTests(false);
+        assertEquals(0, openFeatureStore.getStateManager().importOFSState(getExportDir()).getFailedResources().size());
+        for (PrimitivePropertyKey obj : primProps) {
+            PropertyTest.verifyPropEquality(obj, openFeatureStore.getPropertyRepository().readPrimitiveProperty(obj.getName()).get());
+        }
+        ModelTest.verifyModelEquals(models.get(0), openFeatureStore.getModelRepository().readModel(models.get(0).getId()));
+        assertThrows(VertexNotFoundException.class, () -> openFeatureStore.getFeatureRepository().readFeature(features.get(0).getId()));
+        FeatureITest.verifyFeatureEquals(features.get(1), openFeatureStore.getFeatureRepository().readFeature(features.get(1).getId()));
+    }
+
+    private Map<Path, FileTime> listBlobs() throws IOException {
+        Map<Path, FileTime> blobs = new HashMap<>();
+        try ( Stream<Path> paths = Files.walk(getExportDir().resolve("blobs"))) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                blobs.put(path, Files.getLastModifiedTime(path));
+            }
+        }
+        return blobs;
+    }
+
+    @Test
+    public void testDeltaExportImport() throws Exception {
+        // use a durable change log
+        Path changeLogFile = getDeltaExportDir().resolveSibling("changes.log");
+        Files.deleteIfExists(changeLogFile);
+        openFeatureStore = getOpenFeatureStore(OFSConfigurationParams.build().setChangeLog(new FilesystemChangeLog(changeLogFile)));
+        // add base data & export it
+        Model model = createBasicModel(openFeatureStore);
+        Feature updatedFeature = createBasicFeature(openFeatureStore, model);
+        Feature deletedFeature = createBasicFeature(openFeatureStore, model);
+        openFeatureStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("testDeltaDelProp", String.class, Cardinality.SINGLE));
+        StateManager manager = openFeatureStore.getStateManager();
+        assertEquals(0, manager.exportOFSState(getExportDir()).getFailedResources().size());
+        // make changes after the full export & export them as a delta
+        Instant since = Instant.now();
+        openFeatureStore.getFeatureRepository().updateFeature(updatedFeature.getId(), Arrays.asList(new Property("testprop", "updated")));
+        openFeatureStore.getFeatureRepository().deleteFeature(deletedFeature.getId());
+        openFeatureStore.getPropertyRepository().deleteProperty("testDeltaDelProp");
+        Feature addedFeature = createBasicFeature(openFeatureStore, model);
+        assertEquals(0, manager.exportOFSStateDelta(getDeltaExportDir(), since).getFailedResources().size());
+        // only the changed feature objs should be in the delta
+        try ( Stream<Path> paths = Files.list(OFSType.FEATURE.getFolder(getDeltaExportDir()))) {
+            assertEquals(2, paths.count());
+        }
+        assertFalse(Files.exists(OFSType.MODEL.getFolder(getDeltaExportDir())));
+        // cleanup graph, then import full export & delta on top
+        teardownTests();
+        setupTests(false);
+        manager = openFeatureStore.getStateManager();
+        assertEquals(0, manager.importOFSState(getExportDir()).getFailedResources().size());
+        assertEquals(0, manager.importOFSStateDelta(getDeltaExportDir()).getFailedResources().size());
+        // verify delta was applied
+        FeatureRepository featureRepo = openFeatureStore.getFeatureRepository();
+        assertEquals("updated", featureRepo.readFeature(updatedFeature.getId()).getProperties().get(0).getValue());
+        assertFalse(featureRepo.vertexExists(deletedFeature.getId()));
+        FeatureITest.verifyFeatureEquals(addedFeature, featureRepo.readFeature(addedFeature.getId()));
+        assertFalse(openFeatureStore.getPropertyRepository().propertyExists("testDeltaDelProp"));
+        ModelTest.verifyModelEquals(model, openFeatureStore.getModelRepository().readModel(model.getId()));
+    }
+
+    @Test
+    public void testDiffExports() throws Exception {
+        Model model = createBasicModel(openFeatureStore);
+        Feature updatedFeature = createBasicFeature(openFeatureStore, model);
+        Feature deletedFeature = createBasicFeature(openFeatureStore, model);
+        StateManager manager = openFeatureStore.getStateManager();
+        assertEquals(0, manager.exportOFSState(getExportDir()).getFailedResources().size());
+        assertTrue(manager.diff(getExportDir(), getExportDir()).isEmpty());
+        // change the graph & export it somewhere else
+        openFeatureStore.getFeatureRepository().updateFeature(updatedFeature.getId(), Arrays.asList(new Property("testprop", "updated")));
+        openFeatureStore.getFeatureRepository().deleteFeature(deletedFeature.getId());
+        Feature addedFeature = createBasicFeature(openFeatureStore, model);
+        assertEquals(0, manager.exportOFSState(getDeltaExportDir()).getFailedResources().size());
+        StateDiff diff = manager.diff(getExportDir(), getDeltaExportDir());
+        StateDiff.TypeDiff featureDiff = diff.getTypeDiff(OFSType.FEATURE);
+        String updatedRes = DependencyResource.fromNodeId(OFSType.FEATURE, updatedFeature.getId()).getResource();
+        assertEquals(Set.of(DependencyResource.fromNodeId(OFSType.FEATURE, addedFeature.getId()).getResource()), featureDiff.getAdded());
+        assertEquals(Set.of(DependencyResource.fromNodeId(OFSType.FEATURE, deletedFeature.getId()).getResource()), featureDiff.getRemoved());
+        assertEquals(Set.of(updatedRes), featureDiff.getChanged().keySet());
+        assertTrue(featureDiff.getChanged().get(updatedRes).contains("properties"));
+        assertTrue(diff.getTypeDiff(OFSType.MODEL).isEmpty());
+        assertTrue(diff.getTypeDiff(OFSType.PRIM_PROPERTY).isEmpty());
+    }
+
+    @Test
+    public void testImportResumesAfterFailure() throws Exception {
+        Path cacheDir = getExportDir().resolveSibling("import-cache");
+        FileUtils.deleteDirectory(cacheDir.toFile());
+        Model model = createBasicModel(openFeatureStore);
+        List<Feature> features = Arrays.asList(createBasicFeature(openFeatureStore, model),
+                createBasicFeature(openFeatureStore, model), createBasicFeature(openFeatureStore, model));
+        assertEquals(0, openFeatureStore.getStateManager().exportOFSState(getExportDir()).getFailedResources().size());
+        teardownTests();
+        setupTests(false);
+        // die part way through the import
+        openFeatureStore = getOpenFeatureStore(OFSConfigurationParams.build()
+                .setImportCacheProvider(new FailingImportCacheProvider(new FilesystemImportCacheProvider(cacheDir), 3)));
+        assertThrows(IOException.class, () -> openFeatureStore.getStateManager().importOFSState(getExportDir()));
+        try ( Stream<Path> paths = Files.list(cacheDir)) {
+            assertTrue(paths.count() > 0);
+        }
+        // objects imported before the failure are skipped, importing them again would fail as they already exist
+        openFeatureStore = getOpenFeatureStore(OFSConfigurationParams.build()
+                .setImportCacheProvider(new FilesystemImportCacheProvider(cacheDir)));
+        assertEquals(0, openFeatureStore.getStateManager().importOFSState(getExportDir()).getFailedResources().size());
+        ModelTest.verifyModelEquals(model, openFeatureStore.getModelRepository().readModel(model.getId()));
+        for (Feature feature : features) {
+            FeatureITest.verifyFeatureEquals(feature, openFeatureStore.getFeatureRepository().readFeature(feature.getId()));
+        }
+        // the finished import's cache is deleted
+        try ( Stream<Path> paths = Files.list(cacheDir)) {
+            assertEquals(0, paths.count());
+        }
+    }
+
+    @Test
+    public void testDeltaExportRequiresChangeLog() throws Exception {
+        // the default config doesn't record changes
+        assertThrows(InternalException.class, () -> openFeatureStore.getStateManager().exportOFSStateDelta(getDeltaExportDir(), Instant.now()));
+    }
+
+    @Test
+    public void testDeltaImportRequiresDelta() throws Exception {
+        assertEquals(0, openFeatureStore.getStateManager().exportOFSState(getExportDir()).getFailedResources().size());
+        assertThrows(InternalException.class, () -> openFeatureStore.getStateManager().importOFSStateDelta(getExportDir()));
+    }
+
     private List<PrimitivePropertyKey> createTestPrimProps() throws GraphIntegrityException, InterruptedException,
             ExecutionException, InternalKeywordException, IOException, Exception {
         List<PrimitivePropertyKey> out = new ArrayList();
@@ -239,10 +552,69 @@ public class StateManagerTest extends GraphTest {
         return indices;
     }
 
+    /**
+     * Fails the import with an IOException once a number of resources were
+     * stored in the cache
+     */
+    private static class FailingImportCacheProvider implements ImportCacheProvider {
+
+        private final ImportCacheProvider provider;
+
+        private final int failAfter;
+
+        public FailingImportCacheProvider(ImportCacheProvider provider, int failAfter) {
+            this.provider = provider;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public ImportCache getImportCache() {
+            return provider.getImportCache();
+        }
+
+        @Override
+        public ImportCache getImportCache(Path stateLocation) throws IOException {
+            ImportCache cache = provider.getImportCache(stateLocation);
+            return new ImportCache() {
+
+                private int stored;
+
+                @Override
+                public void storeResource(String resource) throws IOException {
+                    cache.storeResource(resource);
+                    if (++stored == failAfter) {
+                        throw new IOException("Simulated import failure");
+                    }
+                }
+
+                @Override
+                public boolean containsResource(String resource) {
+                    return cache.containsResource(resource);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    cache.close();
+                }
+
+            };
+        }
+
+        @Override
+        public void deleteImportCache(ImportCache cache) {
+            throw new IllegalStateException("A failed import's cache must be kept");
+        }
+
+    }
+
     private Path getExportDir() {
         return Paths.get("target/export").toAbsolutePath();
     }
 
+    private Path getDeltaExportDir() {
+        return Paths.get("target/export-delta").toAbsolutePath();
+    }
+
     private PrimitivePropertyKey createAndReadPrimProp(PrimitivePropertyKey prop) throws Exception {
         openFeatureStore.getPropertyRepository().createProperty(prop);
         return openFeatureStore.getPropertyRepository().readPrimitiveProperty(prop.getName()).get();
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.impls;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.state.ChangeLog;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeEntry;
+import org.lwing.ofs.core.api.state.ChangeLog.ChangeType;
+import org.lwing.ofs.core.api.state.DependencyResource;
+import org.lwing.ofs.core.api.state.OFSTypeWrapper.OFSType;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class ChangeLogTest {
+
+    private static final Path LOG_FILE = Paths.get("target/changelog/changes.log");
+
+    @Test
+    public void testMemoryChangeLogTruncate() throws Exception {
+        verifyTruncate(new MemoryChangeLog());
+    }
+
+    @Test
+    public void testFilesystemChangeLogTruncate() throws Exception {
+        Files.createDirectories(LOG_FILE.getParent());
+        Files.deleteIfExists(LOG_FILE);
+        try ( FilesystemChangeLog changeLog = new FilesystemChangeLog(LOG_FILE)) {
+            verifyTruncate(changeLog);
+        }
+        // the truncated log is what a new instance reads
+        try ( FilesystemChangeLog changeLog = new FilesystemChangeLog(LOG_FILE)) {
+            assertEquals(List.of(resource("b"), resource("c")), readResources(changeLog, Instant.EPOCH));
+        }
+    }
+
+    @Test
+    public void testMemoryChangeLogRetention() throws Exception {
+        MemoryChangeLog changeLog = new MemoryChangeLog(Duration.ofMillis(50));
+        changeLog.recordChange(ChangeType.CREATE, DependencyResource.fromNodeId(OFSType.FEATURE, "a"));
+        Thread.sleep(100);
+        changeLog.recordChange(ChangeType.CREATE, DependencyResource.fromNodeId(OFSType.FEATURE, "b"));
+        assertEquals(List.of(resource("b")), readResources(changeLog, Instant.EPOCH));
+    }
+
+    private static void verifyTruncate(ChangeLog changeLog) throws Exception {
+        changeLog.recordChange(ChangeType.CREATE, DependencyResource.fromNodeId(OFSType.FEATURE, "a"));
+        Thread.sleep(5);
+        Instant cutoff = Instant.now();
+        Thread.sleep(5);
+        changeLog.recordChange(ChangeType.UPDATE, DependencyResource.fromNodeId(OFSType.FEATURE, "b"));
+        assertEquals(List.of(resource("b")), readResources(changeLog, cutoff));
+        changeLog.truncateBefore(cutoff);
+        // changes after a truncate are still appended
+        changeLog.recordChange(ChangeType.DELETE, DependencyResource.fromNodeId(OFSType.FEATURE, "c"));
+        assertEquals(List.of(resource("b"), resource("c")), readResources(changeLog, Instant.EPOCH));
+        changeLog.truncateBefore(Instant.now().plusSeconds(1));
+        assertTrue(changeLog.readChangesSince(Instant.EPOCH).isEmpty());
+        // left in the log for reopening it
+        changeLog.recordChange(ChangeType.UPDATE, DependencyResource.fromNodeId(OFSType.FEATURE, "b"));
+        changeLog.recordChange(ChangeType.DELETE, DependencyResource.fromNodeId(OFSType.FEATURE, "c"));
+    }
+
+    private static String resource(String featureId) {
+        return DependencyResource.fromNodeId(OFSType.FEATURE, featureId).getResource();
+    }
+
+    private static List<String> readResources(ChangeLog changeLog, Instant since) throws IOException {
+        return changeLog.readChangesSince(since).stream().map(ChangeEntry::getResource).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.impls;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.state.ImportCacheProvider.ImportCache;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class FilesystemImportCacheProviderTest {
+
+    private static final Path STATE_LOCATION = Paths.get("target/export");
+
+    @BeforeEach
+    public void setupCacheDir() throws IOException {
+        FileUtils.deleteDirectory(getCacheDir().toFile());
+    }
+
+    @Test
+    public void testResumeCache() throws IOException {
+        FilesystemImportCacheProvider provider = new FilesystemImportCacheProvider(getCacheDir());
+        try ( ImportCache cache = provider.getImportCache(STATE_LOCATION)) {
+            cache.storeResource("features/a.ofsnode");
+            cache.storeResource("features/b.ofsnode");
+            assertTrue(cache.containsResource("features/a.ofsnode"));
+            assertFalse(cache.containsResource("features/c.ofsnode"));
+        }
+        // reopen, as if the import died
+        try ( ImportCache cache = provider.getImportCache(STATE_LOCATION)) {
+            assertTrue(cache.containsResource("features/a.ofsnode"));
+            assertTrue(cache.containsResource("features/b.ofsnode"));
+            assertFalse(cache.containsResource("features/c.ofsnode"));
+        }
+        // other locations don't share the cache
+        try ( ImportCache cache = provider.getImportCache(Paths.get("target/other"))) {
+            assertFalse(cache.containsResource("features/a.ofsnode"));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsResources() throws IOException {
+        FilesystemImportCacheProvider provider = new FilesystemImportCacheProvider(getCacheDir(), 1, 1000);
+        try ( ImportCache cache = provider.getImportCache(STATE_LOCATION)) {
+            for (int i = 0; i < 2500; i++) {
+                cache.storeResource("features/" + i + ".ofsnode");
+            }
+        }
+        // 2000 compacted into the snapshot, 500 left in the log
+        assertEquals(500 * 16, Files.size(getOnlyFile(".log")));
+        assertEquals(2000 * 16, Files.size(getOnlyFile(".idx")));
+        try ( ImportCache cache = provider.getImportCache(STATE_LOCATION)) {
+            for (int i = 0; i < 2500; i++) {
+                assertTrue(cache.containsResource("features/" + i + ".ofsnode"));
+            }
+            assertFalse(cache.containsResource("features/2500.ofsnode"));
+        }
+    }
+
+    @Test
+    public void testPartialRecordDropped() throws IOException {
+        FilesystemImportCacheProvider provider = new FilesystemImportCacheProvider(getCacheDir());
+        try ( ImportCache cache = provider.getImportCache(STATE_LOCATION)) {
+            cache.storeResource("features/a.ofsnode");
+        }
+        // simulate a crash mid write
+        Files.write(getOnlyFile(".log"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        try ( ImportCache cache = provider.getImportCache(STATE_LOCATION)) {
+            assertTrue(cache.containsResource("features/a.ofsnode"));
+            cache.storeResource("features/b.ofsnode");
+        }
+        assertEquals(2 * 16, Files.size(getOnlyFile(".log")));
+    }
+
+    @Test
+    public void testDeleteCache() throws IOException {
+        FilesystemImportCacheProvider provider = new FilesystemImportCacheProvider(getCacheDir());
+        ImportCache cache = provider.getImportCache(STATE_LOCATION);
+        cache.storeResource("features/a.ofsnode");
+        provider.deleteImportCache(cache);
+        try ( ImportCache newCache = provider.getImportCache(STATE_LOCATION)) {
+            assertFalse(newCache.containsResource("features/a.ofsnode"));
+        }
+    }
+
+    private Path getOnlyFile(String ext) throws IOException {
+        try ( Stream<Path> files = Files.list(getCacheDir())) {
+            return files.filter(p -> p.toString().endsWith(ext)).findFirst().get();
+        }
+    }
+
+    private Path getCacheDir() {
+        return Paths.get("target/import-cache").toAbsolutePath();
+    }
+
+}
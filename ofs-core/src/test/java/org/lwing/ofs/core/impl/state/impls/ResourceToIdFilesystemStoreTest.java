@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.state.impls;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.api.state.ResourceToIdStore;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class ResourceToIdFilesystemStoreTest {
+
+    @BeforeEach
+    public void setupStoreDir() throws IOException {
+        FileUtils.deleteDirectory(getStoreDir().toFile());
+    }
+
+    @Test
+    public void testStoreAndReload() throws IOException {
+        try ( ResourceToIdStore store = new ResourceToIdFilesystemStore(getStoreDir())) {
+            for (int i = 0; i < 5000; i++) {
+                store.storeResourceToFileSafeId("features/" + i + ".ofsnode", "id" + i);
+            }
+            // lookups work before the buffered lines are flushed
+            assertEquals("id10", store.getFileSafeIdFromResource("features/10.ofsnode"));
+            assertEquals("features/4999.ofsnode", store.getResourceFromFileSafeId("id4999"));
+            assertNull(store.getFileSafeIdFromResource("features/5000.ofsnode"));
+            assertNull(store.getResourceFromFileSafeId("id5000"));
+        }
+        List<String> lines = Files.readAllLines(getStoreDir().resolve("resToField.properties"));
+        assertEquals(5000, lines.size());
+        assertEquals("features/0.ofsnode=id0", lines.get(0));
+        try ( ResourceToIdStore store = new ResourceToIdFilesystemStore(getStoreDir())) {
+            for (int i = 0; i < 5000; i++) {
+                assertEquals("id" + i, store.getFileSafeIdFromResource("features/" + i + ".ofsnode"));
+                assertEquals("features/" + i + ".ofsnode", store.getResourceFromFileSafeId("id" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testRestoreSameMapping() throws IOException {
+        try ( ResourceToIdStore store = new ResourceToIdFilesystemStore(getStoreDir())) {
+            store.storeResourceToFileSafeId("indices/a=b.ofsindex", "id1");
+            store.storeResourceToFileSafeId("indices/a=b.ofsindex", "id1");
+            // latest mapping wins
+            store.storeResourceToFileSafeId("indices/c.ofsindex", "id2");
+            store.storeResourceToFileSafeId("indices/c.ofsindex", "id3");
+            assertEquals("id3", store.getFileSafeIdFromResource("indices/c.ofsindex"));
+        }
+        assertEquals(3, Files.readAllLines(getStoreDir().resolve("resToField.properties")).size());
+        try ( ResourceToIdStore store = new ResourceToIdFilesystemStore(getStoreDir())) {
+            assertEquals("id1", store.getFileSafeIdFromResource("indices/a=b.ofsindex"));
+            assertEquals("indices/a=b.ofsindex", store.getResourceFromFileSafeId("id1"));
+            assertEquals("id3", store.getFileSafeIdFromResource("indices/c.ofsindex"));
+        }
+    }
+
+    @Test
+    public void testRemapDropsReplacedMappings() throws IOException {
+        try ( ResourceToIdStore store = new ResourceToIdFilesystemStore(getStoreDir())) {
+            store.storeResourceToFileSafeId("features/a.ofsnode", "id1");
+            store.storeResourceToFileSafeId("features/b.ofsnode", "id2");
+            // the resource's old file id no longer maps back to it
+            store.storeResourceToFileSafeId("features/a.ofsnode", "id3");
+            assertNull(store.getResourceFromFileSafeId("id1"));
+            assertEquals("features/a.ofsnode", store.getResourceFromFileSafeId("id3"));
+            // the file id's old resource no longer maps to it
+            store.storeResourceToFileSafeId("features/c.ofsnode", "id2");
+            assertNull(store.getFileSafeIdFromResource("features/b.ofsnode"));
+            assertEquals("features/c.ofsnode", store.getResourceFromFileSafeId("id2"));
+            // removed slots don't hide the keys probed past them
+            for (int i = 0; i < 2000; i++) {
+                store.storeResourceToFileSafeId("features/d.ofsnode", "remap" + i);
+            }
+            assertEquals("remap1999", store.getFileSafeIdFromResource("features/d.ofsnode"));
+            assertNull(store.getResourceFromFileSafeId("remap0"));
+            assertEquals("id3", store.getFileSafeIdFromResource("features/a.ofsnode"));
+        }
+        // the same mappings are dropped when the file is replayed
+        try ( ResourceToIdStore store = new ResourceToIdFilesystemStore(getStoreDir())) {
+            assertNull(store.getResourceFromFileSafeId("id1"));
+            assertNull(store.getFileSafeIdFromResource("features/b.ofsnode"));
+            assertEquals("features/c.ofsnode", store.getResourceFromFileSafeId("id2"));
+            assertEquals("features/a.ofsnode", store.getResourceFromFileSafeId("id3"));
+            assertNull(store.getResourceFromFileSafeId("remap1998"));
+            assertEquals("features/d.ofsnode", store.getResourceFromFileSafeId("remap1999"));
+        }
+    }
+
+    @Test
+    public void testReadsExistingFile() throws IOException {
+        // windows line ends & a line longer than the read buffer
+        String longResource = "features/" + StringUtils.repeat('x', 200000) + ".ofsnode";
+        Files.createDirectories(getStoreDir());
+        Files.writeString(getStoreDir().resolve("resToField.properties"),
+                "features/a.ofsnode=id1\r\n" + longResource + "=id2\r\nfeatures/b.ofsnode=id3");
+        try ( ResourceToIdStore store = new ResourceToIdFilesystemStore(getStoreDir())) {
+            assertEquals("id1", store.getFileSafeIdFromResource("features/a.ofsnode"));
+            assertEquals(longResource, store.getResourceFromFileSafeId("id2"));
+            assertEquals("features/b.ofsnode", store.getResourceFromFileSafeId("id3"));
+        }
+    }
+
+    private Path getStoreDir() {
+        return Paths.get("target/res-to-id").toAbsolutePath();
+    }
+
+}
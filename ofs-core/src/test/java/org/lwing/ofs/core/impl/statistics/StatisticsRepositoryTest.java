@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 Lucas Wing
+ * The Man, The Myth, The Legend.
+ */
+package org.lwing.ofs.core.impl.statistics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.junit.jupiter.api.Test;
+import org.lwing.ofs.core.OpenFeatureStore;
+import org.lwing.ofs.core.api.config.OFSConfigurationParams;
+import org.lwing.ofs.core.api.feature.Feature;
+import org.lwing.ofs.core.api.model.Model;
+import org.lwing.ofs.core.api.property.Cardinality;
+import org.lwing.ofs.core.api.property.PrimitivePropertyKey;
+import org.lwing.ofs.core.api.property.Property;
+import org.lwing.ofs.core.api.schema.FeatureSchema;
+import org.lwing.ofs.core.impl.GraphTest;
+import org.lwing.ofs.core.impl.feature.FeatureRepository;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ *
+ * @author Lucas Wing
+ */
+public class StatisticsRepositoryTest extends GraphTest {
+
+    private static final Path STATISTICS_FILE = Paths.get("target/statistics/features.stats");
+
+    @Test
+    public void testStatisticsKeptInSyncWithWrites() throws Exception {
+        Files.deleteIfExists(STATISTICS_FILE);
+        OpenFeatureStore statsStore = getOpenFeatureStore(OFSConfigurationParams.build()
+                .setStatisticsFile(STATISTICS_FILE).setStatisticsPersistInterval(2));
+        StatisticsRepository statsRepo = statsStore.getStatisticsRepository();
+        FeatureRepository featureRepo = statsStore.getFeatureRepository();
+        statsStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("size", Long.class, Cardinality.SINGLE));
+        statsStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("testprop", String.class, Cardinality.SINGLE));
+        Model parent = createBasicModel(statsStore, new FeatureSchema(Arrays.asList(
+                new Property("testprop", "test"),
+                new Property("size", 0L)
+        )));
+        Model child = createBasicModel(statsStore, new FeatureSchema(new ArrayList<>()), new HashSet<>(Arrays.asList(parent.getId())), false);
+        featureRepo.addFeature(new Feature("a", parent.getId(), Arrays.asList(new Property("size", 5L), new Property("testprop", "x"))));
+        featureRepo.addFeature(new Feature("b", child.getId(), Arrays.asList(new Property("size", -3L), new Property("testprop", "y"))));
+        featureRepo.addFeature(new Feature("c", child.getId(), Arrays.asList(new Property("size", 12L), new Property("testprop", "x"))));
+        assertEquals(3, statsRepo.getFeatureCount(parent.getId()));
+        assertEquals(2, statsRepo.getFeatureCount(child.getId()));
+        assertEquals(Optional.of(-3.0), statsRepo.getMin("size"));
+        assertEquals(Optional.of(12.0), statsRepo.getMax("size"));
+        assertEquals(2, statsRepo.getDistinctEstimate("testprop"));
+        // casts move the feature between models, deletes drop it
+        featureRepo.castFeatureToModel("c", parent.getId());
+        featureRepo.deleteFeature("b");
+        assertEquals(2, statsRepo.getFeatureCount(parent.getId()));
+        assertEquals(0, statsRepo.getFeatureCount(child.getId()));
+        // min only widens until a rebuild
+        assertEquals(Optional.of(-3.0), statsRepo.getMin("size"));
+        statsRepo.rebuild();
+        assertEquals(Optional.of(5.0), statsRepo.getMin("size"));
+        // persisted statistics are loaded by a new store
+        StatisticsRepository reloaded = getOpenFeatureStore(OFSConfigurationParams.build()
+                .setStatisticsFile(STATISTICS_FILE)).getStatisticsRepository();
+        assertEquals(2, reloaded.getFeatureCount(parent.getId()));
+        assertEquals(Optional.of(12.0), reloaded.getMax("size"));
+        assertEquals(1, reloaded.getDistinctEstimate("testprop"));
+    }
+
+    @Test
+    public void testWriteDuringRebuild() throws Exception {
+        OpenFeatureStore statsStore = getOpenFeatureStore();
+        StatisticsRepository statsRepo = Mockito.spy(statsStore.getStatisticsRepository());
+        statsStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("size", Long.class, Cardinality.SINGLE));
+        statsStore.getPropertyRepository().createProperty(new PrimitivePropertyKey("testprop", String.class, Cardinality.SINGLE));
+        FeatureSchema featureSchema = new FeatureSchema(Arrays.asList(
+                new Property("testprop", "test"),
+                new Property("size", 0L)
+        ));
+        Model model = createBasicModel(statsStore, featureSchema);
+        Model otherModel = createBasicModel(statsStore, featureSchema);
+        statsStore.getFeatureRepository().addFeature(new Feature("a", model.getId(), Arrays.asList(new Property("size", 5L))));
+        statsStore.getFeatureRepository().addFeature(new Feature("b", model.getId(), Arrays.asList(new Property("size", 6L))));
+        List<String> modelIds = Arrays.asList(model.getId());
+        List<String> otherModelIds = Arrays.asList(otherModel.getId());
+        List<String> scanned = new ArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            doAnswer(invocation -> {
+                String featureId = (String) ((Vertex) invocation.getArgument(0)).id();
+                if (scanned.isEmpty()) {
+                    // the first feature is moved after the scan counted it & a feature the scan doesn't see is created
+                    invocation.callRealMethod();
+                    scanned.add(featureId);
+                    // writers don't wait for the rebuild to finish
+                    executor.submit(() -> {
+                        statsRepo.recordWrite(featureId, modelIds, otherModelIds, values("size", 7L));
+                        statsRepo.recordWrite("c", new ArrayList<>(), modelIds, values("size", 20L));
+                    }).get(10, TimeUnit.SECONDS);
+                } else {
+                    // the second feature is moved before the scan reached it, it's read as moved
+                    scanned.add(featureId);
+                    executor.submit(() -> statsRepo.recordWrite(featureId, modelIds, otherModelIds, values("size", 8L)))
+                            .get(10, TimeUnit.SECONDS);
+                    invocation.callRealMethod();
+                }
+                return null;
+            }).when(statsRepo).recordScanned(any());
+            statsRepo.rebuild();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, scanned.size());
+        // writes aren't lost to the rebuild & features written during it are counted once
+        assertEquals(1, statsRepo.getFeatureCount(model.getId()));
+        assertEquals(2, statsRepo.getFeatureCount(otherModel.getId()));
+        assertEquals(Optional.of(20.0), statsRepo.getMax("size"));
+    }
+
+    @Test
+    public void testDistinctEstimate() {
+        FeatureStatistics statistics = new FeatureStatistics();
+        for (int i = 0; i < 100000; i++) {
+            // every value is seen twice
+            statistics.recordWrite(Collections.emptyList(), Collections.emptyList(), values("value" + (i % 50000)));
+        }
+        long estimate = statistics.getDistinctEstimate("name");
+        assertTrue(Math.abs(estimate - 50000) < 50000 * 0.05, "estimate was " + estimate);
+        assertEquals(0, statistics.getDistinctEstimate("missing"));
+    }
+
+    private static Map<String, List<Object>> values(String name) {
+        return values("name", name);
+    }
+
+    private static Map<String, List<Object>> values(String property, Object value) {
+        Map<String, List<Object>> out = new HashMap<>();
+        out.put(property, Arrays.asList(value));
+        return out;
+    }
+
+}